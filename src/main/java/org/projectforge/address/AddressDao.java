@@ -96,6 +96,7 @@ public class AddressDao extends BaseDao<AddressDO>
   public AddressDao()
   {
     super(AddressDO.class);
+    enableAutocompletionIndex("organization", "addressText", "postalAddressText", "privateAddressText");
   }
 
   /**
@@ -133,13 +134,7 @@ public class AddressDao extends BaseDao<AddressDO>
   @Override
   public List<AddressDO> getList(final BaseSearchFilter filter)
   {
-    final AddressFilter myFilter;
-    if (filter instanceof AddressFilter) {
-      myFilter = (AddressFilter) filter;
-    } else {
-      myFilter = new AddressFilter(filter);
-    }
-    final QueryFilter queryFilter = new QueryFilter(myFilter);
+    final AddressFilter myFilter = getAddressFilter(filter);
     if (StringUtils.isBlank(myFilter.getSearchString()) == true) {
       if (myFilter.isDeleted() == false) {
         if (myFilter.isNewest() == true) {
@@ -155,6 +150,24 @@ public class AddressDao extends BaseDao<AddressDO>
         myFilter.setSearchString("*" + myFilter.getSearchString() + "*");
       }
     }
+    final QueryFilter queryFilter = createQueryFilter(myFilter);
+    queryFilter.addOrder(Order.asc("name"));
+    final List<AddressDO> result = getList(queryFilter);
+    if (myFilter.isDoublets() == true) {
+      return getDoublets(result);
+    }
+    return result;
+  }
+
+  /**
+   * Adds the restrictions of the contact and address status.
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  protected QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    final AddressFilter myFilter = getAddressFilter(filter);
+    final QueryFilter queryFilter = new QueryFilter(myFilter);
     if (myFilter.isFilter() == true) {
       // Proceed contact status:
       // Use filter only for non deleted entries:
@@ -198,27 +211,73 @@ public class AddressDao extends BaseDao<AddressDO>
         queryFilter.add(Restrictions.in("addressStatus", col));
       }
     }
-    queryFilter.addOrder(Order.asc("name"));
-    final List<AddressDO> result = getList(queryFilter);
-    if (myFilter.isDoublets() == true) {
-      final HashSet<String> fullnames = new HashSet<String>();
-      final HashSet<String> doubletFullnames = new HashSet<String>();
-      for (final AddressDO address : result) {
-        final String fullname = getNormalizedFullname(address);
-        if (fullnames.contains(fullname) == true) {
-          doubletFullnames.add(fullname);
-        }
-        fullnames.add(fullname);
+    return queryFilter;
+  }
+
+  /**
+   * Addresses are sorted and paged by the data base, except the newest addresses, the favorites and the doublets (built by
+   * {@link #getList(BaseSearchFilter)}).
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported()
+   */
+  @Override
+  protected boolean isDatabasePagingSupported()
+  {
+    return true;
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported(org.projectforge.core.BaseSearchFilter, java.lang.String,
+   *      java.lang.String)
+   */
+  @Override
+  public boolean isDatabasePagingSupported(final BaseSearchFilter filter, final String sortProperty, final String secondSortProperty)
+  {
+    if (super.isDatabasePagingSupported(filter, sortProperty, secondSortProperty) == false) {
+      return false;
+    }
+    final AddressFilter myFilter = getAddressFilter(filter);
+    if (myFilter.isDeleted() == false && (myFilter.isNewest() == true || myFilter.isMyFavorites() == true)) {
+      return false;
+    }
+    return myFilter.isDoublets() == false;
+  }
+
+  /**
+   * The select access depends on the task of the address.
+   * @see org.projectforge.core.BaseDao#isSelectAccessCheckedPerObject()
+   */
+  @Override
+  protected boolean isSelectAccessCheckedPerObject()
+  {
+    return true;
+  }
+
+  private AddressFilter getAddressFilter(final BaseSearchFilter filter)
+  {
+    if (filter instanceof AddressFilter) {
+      return (AddressFilter) filter;
+    }
+    return new AddressFilter(filter);
+  }
+
+  private List<AddressDO> getDoublets(final List<AddressDO> result)
+  {
+    final HashSet<String> fullnames = new HashSet<String>();
+    final HashSet<String> doubletFullnames = new HashSet<String>();
+    for (final AddressDO address : result) {
+      final String fullname = getNormalizedFullname(address);
+      if (fullnames.contains(fullname) == true) {
+        doubletFullnames.add(fullname);
       }
-      final List<AddressDO> doublets = new LinkedList<AddressDO>();
-      for (final AddressDO address : result) {
-        if (doubletFullnames.contains(getNormalizedFullname(address)) == true) {
-          doublets.add(address);
-        }
+      fullnames.add(fullname);
+    }
+    final List<AddressDO> doublets = new LinkedList<AddressDO>();
+    for (final AddressDO address : result) {
+      if (doubletFullnames.contains(getNormalizedFullname(address)) == true) {
+        doublets.add(address);
       }
-      return doublets;
     }
-    return result;
+    return doublets;
   }
 
   private String getNormalizedFullname(final AddressDO address)
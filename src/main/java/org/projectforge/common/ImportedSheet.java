@@ -79,6 +79,16 @@ public class ImportedSheet<T> implements Serializable
     return elements;
   }
 
+  /**
+   * Imports which store their elements outside of the storage (e. g. the DATEV import of Buchungssätze) set the elements only while the
+   * sheet is processed or displayed and release them (null) afterwards. The statistics must be calculated before the elements are released.
+   * @param elements
+   */
+  public void setElements(final List<ImportedElement<T>> elements)
+  {
+    this.elements = elements;
+  }
+
   public void addElement(final ImportedElement<T> element)
   {
     if (elements == null) {
@@ -0,0 +1,63 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simple map with least recently used eviction. If the maximum size is reached the eldest accessed entry will be removed. Please note: This
+ * map isn't thread safe, synchronize the access by yourself if needed.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class LRUMap<K, V> extends LinkedHashMap<K, V>
+{
+  private static final long serialVersionUID = 4618226826305787343L;
+
+  private final int maxSize;
+
+  /**
+   * @param maxSize The maximum number of entries held by this map.
+   */
+  public LRUMap(final int maxSize)
+  {
+    super(16, 0.75f, true);
+    this.maxSize = maxSize;
+  }
+
+  public int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /**
+   * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+   */
+  @Override
+  protected boolean removeEldestEntry(final Map.Entry<K, V> eldest)
+  {
+    return size() > maxSize;
+  }
+}
@@ -23,7 +23,10 @@
 
 package org.projectforge.common;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.lang.ClassUtils;
 
@@ -31,10 +34,20 @@ public class MyBeanComparator<T> implements Comparator<T>
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(MyBeanComparator.class);
 
+  /**
+   * The errors are logged only once per class and property, because the comparison of all entries would fail the same way.
+   */
+  private static final Set<String> loggedErrors = Collections.synchronizedSet(new HashSet<String>());
+
   private String property, secondProperty;
 
   private boolean ascending, secondAscending;
 
+  /**
+   * The split nested properties (calculated once instead of for every comparison).
+   */
+  private String[] propertyPath, secondPropertyPath;
+
   public MyBeanComparator(final String property)
   {
     this(property, true);
@@ -43,8 +56,7 @@ public class MyBeanComparator<T> implements Comparator<T>
 
   public MyBeanComparator(final String property, final boolean asc)
   {
-    this.property = property;
-    this.ascending = asc;
+    this(property, asc, null, true);
   }
 
   public MyBeanComparator(final String property, final boolean ascending, final String secondProperty, final boolean secondAscending)
@@ -53,27 +65,29 @@ public class MyBeanComparator<T> implements Comparator<T>
     this.ascending = ascending;
     this.secondProperty = secondProperty;
     this.secondAscending = secondAscending;
+    this.propertyPath = property != null ? PropertyAccessor.getPropertyPath(property) : null;
+    this.secondPropertyPath = secondProperty != null ? PropertyAccessor.getPropertyPath(secondProperty) : null;
   }
 
   public int compare(final T o1, final T o2)
   {
-    final int result = compare(o1, o2, property, ascending);
+    final int result = compare(o1, o2, property, propertyPath, ascending);
     if (result != 0) {
       return result;
     }
-    return compare(o1, o2, secondProperty, secondAscending);
+    return compare(o1, o2, secondProperty, secondPropertyPath, secondAscending);
   }
 
   @SuppressWarnings({ "unchecked", "rawtypes"})
-  private int compare(final T o1, final T o2, final String prop, final boolean asc)
+  private int compare(final T o1, final T o2, final String prop, final String[] path, final boolean asc)
   {
     if (prop == null) {
       // Not comparable.
       return 0;
     }
     try {
-      final Object value1 = BeanHelper.getNestedProperty(o1, prop);
-      final Object value2 = BeanHelper.getNestedProperty(o2, prop);
+      final Object value1 = PropertyAccessor.getNestedProperty(o1, path);
+      final Object value2 = PropertyAccessor.getNestedProperty(o2, path);
       if (value1 == null) {
         if (value2 == null)
           return 0;
@@ -98,7 +112,10 @@ public class MyBeanComparator<T> implements Comparator<T>
         }
       }
     } catch (final Exception ex) {
-      log.error("Exception while comparing values of property '" + prop + "': " + ex.getMessage());
+      final String key = (o1 != null ? o1.getClass().getName() : "null") + "." + prop;
+      if (loggedErrors.add(key) == true) {
+        log.error("Exception while comparing values of property '" + prop + "' (logged only once): " + ex.getMessage());
+      }
       return 0;
     }
   }
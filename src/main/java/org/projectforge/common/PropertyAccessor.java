@@ -0,0 +1,245 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Getter and setter of a bean property. The methods are looked up only once per class and property and are cached, so per-row operations
+ * such as sorting, comparing or copying of beans need only the method invocations instead of the reflection lookups.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class PropertyAccessor
+{
+  private static final ConcurrentMap<Class< ? >, ConcurrentMap<String, PropertyAccessor>> accessors =
+      new ConcurrentHashMap<Class< ? >, ConcurrentMap<String, PropertyAccessor>>();
+
+  /**
+   * Marker for properties without getter and setter (ConcurrentHashMap doesn't support null values).
+   */
+  private static final PropertyAccessor NONE = new PropertyAccessor(null, null, null);
+
+  private final String property;
+
+  private final Method getter;
+
+  private final Method setter;
+
+  /**
+   * @param clazz
+   * @param property The name of the (simple, not nested) property.
+   * @return The cached accessor or null if the given class has neither a getter nor a setter for the given property.
+   */
+  public static PropertyAccessor getAccessor(final Class< ? > clazz, final String property)
+  {
+    ConcurrentMap<String, PropertyAccessor> map = accessors.get(clazz);
+    if (map == null) {
+      map = new ConcurrentHashMap<String, PropertyAccessor>();
+      final ConcurrentMap<String, PropertyAccessor> existingMap = accessors.putIfAbsent(clazz, map);
+      if (existingMap != null) {
+        map = existingMap;
+      }
+    }
+    PropertyAccessor accessor = map.get(property);
+    if (accessor == null) {
+      accessor = create(clazz, property);
+      map.putIfAbsent(property, accessor);
+    }
+    return accessor == NONE ? null : accessor;
+  }
+
+  /**
+   * @param bean
+   * @param property The name of the (simple, not nested) property.
+   * @return The value of the property or null if the given bean is null.
+   * @throws IllegalArgumentException if the bean has no getter for the given property.
+   */
+  public static Object getProperty(final Object bean, final String property)
+  {
+    if (bean == null) {
+      return null;
+    }
+    final PropertyAccessor accessor = getAccessor(bean.getClass(), property);
+    if (accessor == null) {
+      throw new IllegalArgumentException("Property '" + property + "' not found in class " + bean.getClass().getName() + ".");
+    }
+    return accessor.get(bean);
+  }
+
+  /**
+   * @param bean
+   * @param nestedProperty Nested property such as "task.title".
+   * @return The value of the property or null if the bean or any object of the path is null.
+   * @see #getNestedProperty(Object, String[])
+   */
+  public static Object getNestedProperty(final Object bean, final String nestedProperty)
+  {
+    return getNestedProperty(bean, getPropertyPath(nestedProperty));
+  }
+
+  /**
+   * Please use this method in loops with a pre-calculated property path (avoids the splitting of the nested property for every bean).
+   * @param bean
+   * @param propertyPath
+   * @return The value of the property or null if the bean or any object of the path is null.
+   * @see #getPropertyPath(String)
+   */
+  public static Object getNestedProperty(final Object bean, final String[] propertyPath)
+  {
+    Object value = bean;
+    for (final String property : propertyPath) {
+      if (value == null) {
+        return null;
+      }
+      value = getProperty(value, property);
+    }
+    return value;
+  }
+
+  /**
+   * @param nestedProperty
+   * @return The single properties of the given nested property, e. g. ["task", "title"] for "task.title".
+   */
+  public static String[] getPropertyPath(final String nestedProperty)
+  {
+    return StringUtils.split(nestedProperty, '.');
+  }
+
+  private static PropertyAccessor create(final Class< ? > clazz, final String property)
+  {
+    final String capitalized = StringUtils.capitalize(property);
+    Method getter = getMethod(clazz, "get" + capitalized);
+    if (getter == null) {
+      getter = getMethod(clazz, "is" + capitalized);
+      if (getter != null && getter.getReturnType() != Boolean.TYPE && getter.getReturnType() != Boolean.class) {
+        getter = null;
+      }
+    }
+    if (getter != null && getter.getReturnType() == Void.TYPE) {
+      getter = null;
+    }
+    Method setter = null;
+    for (final Method method : clazz.getMethods()) {
+      if (method.getName().equals("set" + capitalized) == true
+          && method.getParameterTypes().length == 1
+          && (getter == null || method.getParameterTypes()[0].isAssignableFrom(getter.getReturnType()) == true)) {
+        setter = method;
+        break;
+      }
+    }
+    if (getter == null && setter == null) {
+      return NONE;
+    }
+    return new PropertyAccessor(property, getter, setter);
+  }
+
+  private static Method getMethod(final Class< ? > clazz, final String name)
+  {
+    try {
+      final Method method = clazz.getMethod(name);
+      method.setAccessible(true); // Speeds up invocations (no access checks).
+      return method;
+    } catch (final NoSuchMethodException ex) {
+      return null;
+    } catch (final SecurityException ex) {
+      return null;
+    }
+  }
+
+  private PropertyAccessor(final String property, final Method getter, final Method setter)
+  {
+    this.property = property;
+    this.getter = getter;
+    this.setter = setter;
+    if (setter != null) {
+      setter.setAccessible(true);
+    }
+  }
+
+  public String getProperty()
+  {
+    return property;
+  }
+
+  /**
+   * @return the getter or null if not exist.
+   */
+  public Method getGetter()
+  {
+    return getter;
+  }
+
+  /**
+   * @return the setter or null if not exist.
+   */
+  public Method getSetter()
+  {
+    return setter;
+  }
+
+  /**
+   * @param bean
+   * @return The value of the property of the given bean.
+   */
+  public Object get(final Object bean)
+  {
+    if (getter == null) {
+      throw new IllegalArgumentException("No getter found for property '" + property + "' of " + bean.getClass().getName() + ".");
+    }
+    return invoke(getter, bean);
+  }
+
+  /**
+   * @param bean
+   * @param value
+   */
+  public void set(final Object bean, final Object value)
+  {
+    if (setter == null) {
+      throw new IllegalArgumentException("No setter found for property '" + property + "' of " + bean.getClass().getName() + ".");
+    }
+    invoke(setter, bean, value);
+  }
+
+  private Object invoke(final Method method, final Object bean, final Object... args)
+  {
+    try {
+      return method.invoke(bean, args);
+    } catch (final IllegalAccessException ex) {
+      throw new RuntimeException("Can't access " + method.getName() + " of " + bean.getClass().getName() + ": " + ex.getMessage(), ex);
+    } catch (final InvocationTargetException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw new RuntimeException("Exception while invoking " + method.getName() + " of " + bean.getClass().getName() + ": "
+          + ex.getCause(), ex.getCause());
+    }
+  }
+}
@@ -36,6 +36,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.Basic;
 import javax.persistence.Column;
@@ -64,6 +66,8 @@ public abstract class AbstractBaseDO<I extends Serializable> implements Extended
 
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(AbstractBaseDO.class);
 
+  private static final ConcurrentMap<Class< ? >, Field[]> copyableFieldsCache = new ConcurrentHashMap<Class< ? >, Field[]>();
+
   @PropertyInfo(i18nKey = "created")
   private Date created;
 
@@ -225,12 +229,11 @@ public abstract class AbstractBaseDO<I extends Serializable> implements Extended
   private static ModificationStatus copyDeclaredFields(final Class< ? > srcClazz, final BaseDO< ? > src, final BaseDO< ? > dest,
       final String... ignoreFields)
   {
-    final Field[] fields = srcClazz.getDeclaredFields();
-    AccessibleObject.setAccessible(fields, true);
+    final Field[] fields = getCopyableFields(srcClazz);
     ModificationStatus modificationStatus = null;
     for (final Field field : fields) {
       final String fieldName = field.getName();
-      if ((ignoreFields != null && ArrayUtils.contains(ignoreFields, fieldName) == true) || accept(field) == false) {
+      if (ignoreFields != null && ArrayUtils.contains(ignoreFields, fieldName) == true) {
         continue;
       }
       try {
@@ -355,6 +358,31 @@ public abstract class AbstractBaseDO<I extends Serializable> implements Extended
     return modificationStatus;
   }
 
+  /**
+   * The declared and accepted fields of the given class are determined only once and made accessible.
+   * @param clazz
+   * @return The fields to copy (without the fields of the super classes).
+   * @see #accept(Field)
+   */
+  private static Field[] getCopyableFields(final Class< ? > clazz)
+  {
+    Field[] fields = copyableFieldsCache.get(clazz);
+    if (fields != null) {
+      return fields;
+    }
+    final List<Field> list = new ArrayList<Field>();
+    final Field[] declaredFields = clazz.getDeclaredFields();
+    AccessibleObject.setAccessible(declaredFields, true);
+    for (final Field field : declaredFields) {
+      if (accept(field) == true) {
+        list.add(field);
+      }
+    }
+    fields = list.toArray(new Field[list.size()]);
+    copyableFieldsCache.putIfAbsent(clazz, fields);
+    return fields;
+  }
+
   protected static ModificationStatus getModificationStatus(final ModificationStatus currentStatus, final BaseDO< ? > src,
       final String modifiedField)
   {
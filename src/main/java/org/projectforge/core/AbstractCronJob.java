@@ -23,6 +23,8 @@
 
 package org.projectforge.core;
 
+import java.util.Date;
+
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 
@@ -44,4 +46,72 @@ public abstract class AbstractCronJob implements Job
     }
     return result;
   }
+
+  /**
+   * Runs the given task on only one node if several ProjectForge instances share the data base (e. g. data base fixes or MEB polling).
+   * Exceptions of the task are logged and stored as outcome of the run.
+   * @param context
+   * @param name The name of the task used for locking (unique for all cron jobs).
+   * @param leaseMillis The maximum run time of the task. After this time other nodes may run the task (e. g. if this node died).
+   * @param task
+   * @return true if the task was run by this node, false if it was run (or is running) on another node.
+   * @see CronJobDao
+   */
+  protected boolean runOnOneNode(final JobExecutionContext context, final String name, final long leaseMillis, final Runnable task)
+  {
+    final CronJobDao cronJobDao = (CronJobDao) context.getMergedJobDataMap().get("cronJobDao");
+    if (cronJobDao == null) {
+      // Not configured (single node).
+      run(name, task);
+      return true;
+    }
+    try {
+      if (cronJobDao.tryLock(name, context.getScheduledFireTime(), leaseMillis) == false) {
+        return false;
+      }
+    } catch (final RuntimeException ex) {
+      log.error("While locking cron job '" + name + "' (job not run): " + ex.getMessage(), ex);
+      return false;
+    }
+    final Throwable failure = run(name, task);
+    try {
+      cronJobDao.unlock(name, failure);
+    } catch (final Throwable ex) {
+      log.error("While releasing the lock of cron job '" + name + "': " + ex.getMessage(), ex);
+    }
+    return true;
+  }
+
+  /**
+   * Runs the given task on every node, e. g. tasks working on local resources such as the search index or in-memory caches. Exceptions
+   * of the task are logged and stored as outcome of the run of this node.
+   * @param context
+   * @param name The name of the task.
+   * @param task
+   */
+  protected void runOnEachNode(final JobExecutionContext context, final String name, final Runnable task)
+  {
+    final Date start = new Date();
+    final Throwable failure = run(name, task);
+    final CronJobDao cronJobDao = (CronJobDao) context.getMergedJobDataMap().get("cronJobDao");
+    if (cronJobDao == null) {
+      return;
+    }
+    try {
+      cronJobDao.storeLocalRun(name, start, failure);
+    } catch (final Throwable ex) {
+      log.error("While storing the run of cron job '" + name + "': " + ex.getMessage(), ex);
+    }
+  }
+
+  private Throwable run(final String name, final Runnable task)
+  {
+    try {
+      task.run();
+      return null;
+    } catch (final Throwable ex) {
+      log.error("While executing cron job '" + name + "': " + ex.getMessage(), ex);
+      return ex;
+    }
+  }
 }
@@ -0,0 +1,260 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * In-memory index for auto-completion of string properties of a dao (e. g. organization of addresses). Every value is indexed by its lower
+ * case representation and by all of its words, so a lookup matches the beginning of the value or the beginning of any word of the value.
+ * The results are sorted by frequency (most used values first) and alphabetically.<br/>
+ * The index is filled by {@link BaseDao} (from the data base on first use and on every insert, update and (un)delete). It's thread safe.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#enableAutocompletionIndex(String...)
+ */
+public class AutocompletionIndex
+{
+  /**
+   * Maximum number of values returned by {@link #getMatches(String, String)}.
+   */
+  public static final int MAX_RESULTS = 50;
+
+  private static final String WORD_SEPARATOR_CHARS = " \t\n\r,;:-/()\"'";
+
+  private final Map<String, PropertyIndex> indexes = new HashMap<String, PropertyIndex>();
+
+  /**
+   * @param properties The properties to index.
+   */
+  public AutocompletionIndex(final String... properties)
+  {
+    for (final String property : properties) {
+      indexes.put(property, new PropertyIndex());
+    }
+  }
+
+  /**
+   * @return true if the given property is registered for this index.
+   */
+  public boolean isIndexed(final String property)
+  {
+    return indexes.containsKey(property);
+  }
+
+  public Set<String> getProperties()
+  {
+    return indexes.keySet();
+  }
+
+  /**
+   * @param property
+   * @return true if the index of the given property was initialized and didn't expire.
+   */
+  public boolean isLoaded(final String property, final long maxAge)
+  {
+    final PropertyIndex index = indexes.get(property);
+    synchronized (index) {
+      return index.timeOfLoad > 0 && System.currentTimeMillis() - index.timeOfLoad <= maxAge;
+    }
+  }
+
+  /**
+   * Replaces the index of the given property completely.
+   * @param property
+   * @param frequencies Values with their number of occurrences.
+   */
+  public void load(final String property, final Map<String, Integer> frequencies)
+  {
+    final PropertyIndex index = indexes.get(property);
+    synchronized (index) {
+      index.frequencies.clear();
+      index.keys.clear();
+      for (final Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+        index.add(entry.getKey(), entry.getValue());
+      }
+      index.timeOfLoad = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Increases the frequency of the given value (adds the value, if not yet indexed).
+   */
+  public void add(final String property, final String value)
+  {
+    final PropertyIndex index = indexes.get(property);
+    synchronized (index) {
+      index.add(value, 1);
+    }
+  }
+
+  /**
+   * Decreases the frequency of the given value (removes the value, if it's not longer in use).
+   */
+  public void remove(final String property, final String value)
+  {
+    final PropertyIndex index = indexes.get(property);
+    synchronized (index) {
+      index.remove(value);
+    }
+  }
+
+  /**
+   * Does nothing if oldValue equals newValue.
+   */
+  public void replace(final String property, final String oldValue, final String newValue)
+  {
+    if (StringUtils.equals(oldValue, newValue) == true) {
+      return;
+    }
+    final PropertyIndex index = indexes.get(property);
+    synchronized (index) {
+      index.remove(oldValue);
+      index.add(newValue, 1);
+    }
+  }
+
+  /**
+   * @param property
+   * @param searchString Case insensitive prefix of the value or of any word of the value.
+   * @return The matching values, most frequently used values first (max. {@link #MAX_RESULTS}).
+   */
+  public List<String> getMatches(final String property, final String searchString)
+  {
+    final String prefix = StringUtils.lowerCase(StringUtils.trim(searchString));
+    if (StringUtils.isEmpty(prefix) == true) {
+      return new ArrayList<String>();
+    }
+    final PropertyIndex index = indexes.get(property);
+    final List<String> result;
+    final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+    synchronized (index) {
+      final SortedMap<String, Set<String>> subMap = index.keys.subMap(prefix, prefix + Character.MAX_VALUE);
+      for (final Set<String> values : subMap.values()) {
+        for (final String value : values) {
+          frequencies.put(value, index.frequencies.get(value));
+        }
+      }
+    }
+    result = new ArrayList<String>(frequencies.keySet());
+    Collections.sort(result, new Comparator<String>() {
+      @Override
+      public int compare(final String o1, final String o2)
+      {
+        final int f1 = frequencies.get(o1);
+        final int f2 = frequencies.get(o2);
+        if (f1 != f2) {
+          return f1 > f2 ? -1 : 1;
+        }
+        return o1.compareToIgnoreCase(o2);
+      }
+    });
+    if (result.size() > MAX_RESULTS) {
+      return new ArrayList<String>(result.subList(0, MAX_RESULTS));
+    }
+    return result;
+  }
+
+  /**
+   * @return The lower case value itself and the lower case suffixes of the value beginning with any word.
+   */
+  static Set<String> getKeys(final String value)
+  {
+    final Set<String> keys = new HashSet<String>();
+    final String lower = value.toLowerCase();
+    keys.add(lower);
+    for (int i = 1; i < lower.length(); i++) {
+      if (WORD_SEPARATOR_CHARS.indexOf(lower.charAt(i - 1)) >= 0 && WORD_SEPARATOR_CHARS.indexOf(lower.charAt(i)) < 0) {
+        keys.add(lower.substring(i));
+      }
+    }
+    return keys;
+  }
+
+  private static class PropertyIndex
+  {
+    final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+
+    final TreeMap<String, Set<String>> keys = new TreeMap<String, Set<String>>();
+
+    long timeOfLoad = -1;
+
+    void add(final String value, final int count)
+    {
+      if (StringUtils.isBlank(value) == true) {
+        return;
+      }
+      final Integer frequency = frequencies.get(value);
+      if (frequency != null) {
+        frequencies.put(value, frequency + count);
+        return;
+      }
+      frequencies.put(value, count);
+      for (final String key : getKeys(value)) {
+        Set<String> values = keys.get(key);
+        if (values == null) {
+          values = new HashSet<String>();
+          keys.put(key, values);
+        }
+        values.add(value);
+      }
+    }
+
+    void remove(final String value)
+    {
+      if (StringUtils.isBlank(value) == true) {
+        return;
+      }
+      final Integer frequency = frequencies.get(value);
+      if (frequency == null) {
+        return;
+      }
+      if (frequency > 1) {
+        frequencies.put(value, frequency - 1);
+        return;
+      }
+      frequencies.remove(value);
+      for (final String key : getKeys(value)) {
+        final Set<String> values = keys.get(key);
+        if (values != null) {
+          values.remove(value);
+          if (values.isEmpty() == true) {
+            keys.remove(key);
+          }
+        }
+      }
+    }
+  }
+}
@@ -23,17 +23,24 @@
 
 package org.projectforge.core;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -46,26 +53,38 @@ import org.apache.commons.lang.ClassUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.util.Version;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.search.FullTextQuery;
 import org.hibernate.search.FullTextSession;
 import org.hibernate.search.Search;
 import org.hibernate.search.annotations.DocumentId;
+import org.hibernate.type.Type;
 import org.projectforge.access.AccessChecker;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.OperationType;
+import org.projectforge.common.AbstractCache;
 import org.projectforge.common.BeanHelper;
 import org.projectforge.common.DateFormats;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
+import org.projectforge.common.LRUMap;
 import org.projectforge.database.DatabaseDao;
 import org.projectforge.lucene.ClassicAnalyzer;
 import org.projectforge.user.PFUserContext;
@@ -76,9 +95,12 @@ import org.projectforge.user.UserRightId;
 import org.projectforge.user.UserRights;
 import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import de.micromata.hibernate.history.Historizable;
@@ -103,12 +125,29 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   public static final Version LUCENE_VERSION = Version.LUCENE_31;
 
   /**
-   * Maximum allowed mass updates within one massUpdate call.
+   * Maximum number of entries of mass updates done synchronously by the web pages. Larger mass updates should be started as background job.
+   * @see #startMassUpdate(List, ExtendedBaseDO)
    */
   public static final int MAX_MASS_UPDATE = 100;
 
+  /**
+   * Number of entries updated within one transaction by {@link #massUpdate(List, ExtendedBaseDO)}.
+   */
+  public static final int MASS_UPDATE_CHUNK_SIZE = 100;
+
   public static final String MAX_MASS_UPDATE_EXCEEDED_EXCEPTION_I18N = "massUpdate.error.maximumNumberOfAllowedMassUpdatesExceeded";
 
+  /**
+   * Number of history entries fetched at once by the edit pages.
+   * @see #getDisplayHistoryPage(ExtendedBaseDO, DisplayHistoryPage, int)
+   */
+  public static final int HISTORY_PAGE_SIZE = 50;
+
+  /**
+   * Number of entries fetched at once from the data base cursor by {@link #scroll(BaseSearchFilter, ScrollCallback, Order...)}.
+   */
+  public static final int SCROLL_FETCH_SIZE = 100;
+
   private static final List<DisplayHistoryEntry> EMPTY_HISTORY_ENTRIES = new ArrayList<DisplayHistoryEntry>();
 
   private static final Logger log = Logger.getLogger(BaseDao.class);
@@ -138,6 +177,16 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
 
   private static final String[] HISTORY_SEARCH_FIELDS = { "delta.oldValue", "delta.newValue"};
 
+  /**
+   * Maximum number of parsed full text queries cached per dao.
+   */
+  private static final int PARSED_QUERY_CACHE_SIZE = 100;
+
+  /**
+   * Maximum age of the in-memory auto-completion index of a property before it'll be reloaded from the data base.
+   */
+  private static final long AUTOCOMPLETION_INDEX_MAX_AGE = AbstractCache.TICKS_PER_HOUR;
+
   protected Class<O> clazz;
 
   protected AccessChecker accessChecker;
@@ -148,9 +197,27 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
 
   protected HistoryAdapter historyAdapter;
 
+  protected HistoryOutboxWriter historyOutboxWriter;
+
+  protected MassUpdateExecutor massUpdateExecutor;
+
+  protected CacheChangeLog cacheChangeLog;
+
   protected TransactionTemplate txTemplate;
 
-  protected String[] searchFields;
+  protected volatile String[] searchFields;
+
+  /**
+   * Analyzers of Lucene are thread safe (token streams are re-used per thread), so one instance per dao is enough.
+   */
+  private final Analyzer searchAnalyzer = new ClassicAnalyzer(LUCENE_VERSION);
+
+  /**
+   * Parsed Lucene queries (key is search fields and the unmodified search string). Access must be synchronized.
+   * @see #createFullTextQuery(String[], QueryFilter, String, boolean)
+   */
+  private final LRUMap<String, org.apache.lucene.search.Query> parsedQueryCache = new LRUMap<String, org.apache.lucene.search.Query>(
+      PARSED_QUERY_CACHE_SIZE);
 
   protected BaseDaoReindexRegistry baseDaoReindexRegistry = BaseDaoReindexRegistry.getSingleton();
 
@@ -168,13 +235,48 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
    */
   protected boolean supportAfterUpdate = false;
 
+  /**
+   * If given, auto-completions of the registered properties are served from memory.
+   * @see #enableAutocompletionIndex(String...)
+   */
+  private AutocompletionIndex autocompletionIndex;
+
+  /**
+   * Modifications of the auto-completion values (property, old value, new value) of the current transaction, applied to the index after
+   * the commit.
+   */
+  private final TransactionResource<List<String[]>> autocompletionChanges = new TransactionResource<List<String[]>>() {
+    @Override
+    protected List<String[]> create()
+    {
+      return new ArrayList<String[]>();
+    }
+
+    @Override
+    protected void afterCommit(final List<String[]> changes)
+    {
+      for (final String[] change : changes) {
+        autocompletionIndex.replace(change[0], change[1], change[2]);
+      }
+    }
+  };
+
   /**
    * Get all declared hibernate search fields. These fields are defined over annotations in the database object class. The names are the
    * property names or, if defined the name declared in the annotation of a field. <br/>
    * The user can search in these fields explicit by typing e. g. authors:beck (<field>:<searchString>)
    * @return
    */
-  public synchronized String[] getSearchFields()
+  public String[] getSearchFields()
+  {
+    final String[] result = searchFields;
+    if (result != null) {
+      return result;
+    }
+    return initSearchFields();
+  }
+
+  private synchronized String[] initSearchFields()
   {
     if (searchFields != null) {
       return searchFields;
@@ -216,10 +318,11 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
         fieldNames.add(str);
       }
     }
-    searchFields = new String[fieldNames.size()];
-    fieldNames.toArray(searchFields);
-    log.info("Search fields for '" + clazz + "': " + ArrayUtils.toString(searchFields));
-    return searchFields;
+    final String[] result = new String[fieldNames.size()];
+    fieldNames.toArray(result);
+    log.info("Search fields for '" + clazz + "': " + ArrayUtils.toString(result));
+    searchFields = result;
+    return result;
   }
 
   /**
@@ -266,6 +369,21 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     this.historyAdapter = historyAdapter;
   }
 
+  public void setHistoryOutboxWriter(final HistoryOutboxWriter historyOutboxWriter)
+  {
+    this.historyOutboxWriter = historyOutboxWriter;
+  }
+
+  public void setMassUpdateExecutor(final MassUpdateExecutor massUpdateExecutor)
+  {
+    this.massUpdateExecutor = massUpdateExecutor;
+  }
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    this.cacheChangeLog = cacheChangeLog;
+  }
+
   @Override
   protected void initDao()
   {
@@ -280,6 +398,16 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     this.clazz = clazz;
   }
 
+  /**
+   * Call this method in the constructor of your dao for serving {@link #getAutocompletion(String, String)} of the given properties from
+   * an in-memory index instead of querying the data base on every key stroke.
+   * @param properties String properties of the DO class.
+   */
+  protected void enableAutocompletionIndex(final String... properties)
+  {
+    this.autocompletionIndex = new AutocompletionIndex(properties);
+  }
+
   public Class<O> getDOClass()
   {
     return this.clazz;
@@ -363,10 +491,313 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<O> getList(final BaseSearchFilter filter)
   {
-    final QueryFilter queryFilter = new QueryFilter(filter);
+    final QueryFilter queryFilter = createQueryFilter(filter);
     return getList(queryFilter);
   }
 
+  /**
+   * Builds the query filter for the given search filter. Used by {@link #getList(BaseSearchFilter)} as well as by the data base paging
+   * ({@link #getCount(BaseSearchFilter)} and {@link #getPage(BaseSearchFilter, String, boolean, String, boolean, Object, Object,
+   * Serializable, int, int)}). Please don't add any order to the returned filter, the data base paging adds its own.
+   * @param filter
+   * @return new QueryFilter(filter) at default.
+   */
+  protected QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    return new QueryFilter(filter);
+  }
+
+  /**
+   * Overwrite this method for enabling the data base paging of list pages (sorting, counting and paging inside the data base instead of
+   * loading and sorting the whole result list). This is only allowed, if the result list is completely built by
+   * {@link #createQueryFilter(BaseSearchFilter)} (further logic of getList(BaseSearchFilter) has to be excluded by overwriting
+   * {@link #isDatabasePagingSupported(BaseSearchFilter, String, String)}) and {@link #sort(List)} isn't overwritten. If the select access
+   * depends on the single objects, {@link #isSelectAccessCheckedPerObject()} has to be overwritten too.
+   * @return false at default.
+   */
+  protected boolean isDatabasePagingSupported()
+  {
+    return false;
+  }
+
+  /**
+   * Overwrite this method and return true, if the select access of the user depends on the single objects (e. g. on the task of the
+   * object). The data base paging checks the select access of every entry then: the pages are filled up with further entries and the
+   * count iterates over all entries of the filter (without holding them in memory).
+   * @return false at default.
+   */
+  protected boolean isSelectAccessCheckedPerObject()
+  {
+    return false;
+  }
+
+  /**
+   * @param filter
+   * @param sortProperty The property to sort by or null.
+   * @param secondSortProperty The property to sort by secondly or null.
+   * @return true, if the list of the given filter may be sorted and paged by the data base, otherwise the complete list has to be loaded
+   *         via {@link #getList(BaseSearchFilter)}. Full text searches, the modification filter as well as computed, nested or associated
+   *         sort properties aren't supported.
+   * @see #isDatabasePagingSupported()
+   */
+  public boolean isDatabasePagingSupported(final BaseSearchFilter filter, final String sortProperty, final String secondSortProperty)
+  {
+    if (isDatabasePagingSupported() == false || filter == null) {
+      return false;
+    }
+    if (filter.isSearchNotEmpty() == true || filter.isUseModificationFilter() == true) {
+      return false;
+    }
+    return (sortProperty == null || isSortableProperty(sortProperty) == true)
+        && (secondSortProperty == null || isSortableProperty(secondSortProperty) == true);
+  }
+
+  /**
+   * Counts the entries of the given filter inside the data base (for the data base paging). If the select access is checked per object,
+   * only the entries with select access of the logged in user are counted.
+   * @param filter
+   * @return The number of entries.
+   * @see #isDatabasePagingSupported(BaseSearchFilter, String, String)
+   * @see #isSelectAccessCheckedPerObject()
+   */
+  @Transactional(readOnly = true, propagation = Propagation.REQUIRED)
+  public long getCount(final BaseSearchFilter filter)
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    if (isSelectAccessCheckedPerObject() == true) {
+      try {
+        return scroll(filter, new ScrollCallback<O>() {
+          public void handle(final O obj)
+          {
+            // Only counted.
+          }
+        });
+      } catch (final IOException ex) {
+        // Not thrown by the callback above.
+        throw new RuntimeException(ex);
+      }
+    }
+    final QueryFilter queryFilter = createQueryFilter(filter);
+    addDefaultRestrictions(queryFilter);
+    final Criteria criteria = queryFilter.buildCriteria(getSession(), clazz);
+    criteria.setProjection(Projections.rowCount());
+    final Number count = (Number) criteria.uniqueResult();
+    return count != null ? count.longValue() : 0;
+  }
+
+  /**
+   * Gets one page of the list of the given filter sorted by the data base. If the last entry of the previous page is given (lastId and the
+   * last sort values) and the sort properties aren't nullable, the page is selected by its keys (keyset pagination) instead of the offset
+   * firstResult, so the data base doesn't have to read all preceding entries.<br/>
+   * Entries without select access of the logged in user are skipped and the page is filled up with the following entries. If the select
+   * access is checked per object (see {@link #isSelectAccessCheckedPerObject()}), the offset firstResult counts only the entries with
+   * select access (as {@link #getCount(BaseSearchFilter)} does), so all preceding entries have to be read.
+   * @param filter
+   * @param sortProperty The property to sort by or null (the id is always used as last sort property).
+   * @param ascending
+   * @param secondSortProperty The property to sort by secondly or null.
+   * @param secondAscending
+   * @param lastSortValue The value of the sort property of the last entry of the previous page, if any.
+   * @param lastSecondSortValue The value of the second sort property of the last entry of the previous page, if any.
+   * @param lastId The id of the last entry of the previous page, if any.
+   * @param firstResult Used if the keyset pagination isn't possible.
+   * @param maxResults
+   * @return The entries of the page with select access of the logged in user.
+   * @see #isDatabasePagingSupported(BaseSearchFilter, String, String)
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> getPage(final BaseSearchFilter filter, final String sortProperty, final boolean ascending, final String secondSortProperty,
+      final boolean secondAscending, final Object lastSortValue, final Object lastSecondSortValue, final Serializable lastId,
+      final int firstResult, final int maxResults)
+  {
+    checkLoggedInUserSelectAccess();
+    final List<O> result = new ArrayList<O>();
+    if (accessChecker.isRestrictedUser() == true || maxResults <= 0) {
+      return result;
+    }
+    final ClassMetadata classMetadata = getSessionFactory().getClassMetadata(clazz);
+    final String idProperty = classMetadata.getIdentifierPropertyName();
+    final List<String> properties = new ArrayList<String>();
+    final List<Boolean> ascendings = new ArrayList<Boolean>();
+    final List<Object> lastValues = new ArrayList<Object>();
+    if (sortProperty != null && sortProperty.equals(idProperty) == false) {
+      properties.add(sortProperty);
+      ascendings.add(ascending);
+      lastValues.add(lastSortValue);
+    }
+    if (secondSortProperty != null && secondSortProperty.equals(idProperty) == false && properties.contains(secondSortProperty) == false) {
+      properties.add(secondSortProperty);
+      ascendings.add(secondAscending);
+      lastValues.add(lastSecondSortValue);
+    }
+    properties.add(idProperty);
+    ascendings.add(ascending);
+    lastValues.add(lastId);
+    boolean keyset = lastId != null;
+    for (int i = 0; keyset == true && i < properties.size() - 1; i++) {
+      keyset = lastValues.get(i) != null && isNullableProperty(classMetadata, properties.get(i)) == false;
+    }
+    final boolean perObject = isSelectAccessCheckedPerObject();
+    // Number of entries with select access to skip (offset pagination with object dependent select access):
+    int skip = keyset == false && perObject == true ? firstResult : 0;
+    int rowOffset = keyset == false && perObject == false ? firstResult : 0;
+    while (true) {
+      final QueryFilter queryFilter = createQueryFilter(filter);
+      addDefaultRestrictions(queryFilter);
+      final Criteria criteria = queryFilter.buildCriteria(getSession(), clazz);
+      setCacheRegion(criteria);
+      if (keyset == true) {
+        criteria.add(createKeysetCriterion(properties, ascendings, lastValues, 0));
+      }
+      for (int i = 0; i < properties.size(); i++) {
+        criteria.addOrder(ascendings.get(i) == true ? Order.asc(properties.get(i)) : Order.desc(properties.get(i)));
+      }
+      if (rowOffset > 0) {
+        criteria.setFirstResult(rowOffset);
+      }
+      criteria.setMaxResults(maxResults);
+      final List<O> list = criteria.list();
+      for (final O obj : list) {
+        if (hasLoggedInUserSelectAccess(obj, false) == false) {
+          continue;
+        }
+        if (skip > 0) {
+          --skip;
+          continue;
+        }
+        afterLoad(obj);
+        result.add(obj);
+        if (result.size() == maxResults) {
+          return result;
+        }
+      }
+      if (list.size() < maxResults) {
+        // No further entries.
+        return result;
+      }
+      rowOffset += list.size();
+    }
+  }
+
+  /**
+   * (p0 > v0) or (p0 = v0 and p1 > v1) or ... (or &lt; for descending properties).
+   */
+  private Criterion createKeysetCriterion(final List<String> properties, final List<Boolean> ascendings, final List<Object> lastValues,
+      final int index)
+  {
+    final String property = properties.get(index);
+    final Object value = lastValues.get(index);
+    final Criterion criterion = ascendings.get(index) == true ? Restrictions.gt(property, value) : Restrictions.lt(property, value);
+    if (index == properties.size() - 1) {
+      return criterion;
+    }
+    return Restrictions.or(criterion,
+        Restrictions.and(Restrictions.eq(property, value), createKeysetCriterion(properties, ascendings, lastValues, index + 1)));
+  }
+
+  /**
+   * Iterates over the entries of the given filter without loading the whole result list into memory (e. g. for streaming exports). The
+   * entries are read by a forward-only cursor of the data base and every entry is evicted from the session after its callback, so the
+   * memory usage doesn't grow with the number of entries. The query filter is built by {@link #createQueryFilter(BaseSearchFilter)} (as
+   * for the data base paging), full text searches and the modification filter aren't supported. Collections of the entries are loaded by
+   * separate selects (not joined) and every entry is given only once to the callback.<br/>
+   * A (read-only) transaction is needed, because some data bases (e. g. PostgreSQL) use a cursor only inside a transaction.
+   * @param filter
+   * @param callback Is called for every entry with select access of the logged in user.
+   * @param orders
+   * @return The number of entries given to the callback.
+   * @throws IOException thrown by the callback.
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.REQUIRED)
+  public int scroll(final BaseSearchFilter filter, final ScrollCallback< ? super O> callback, final Order... orders) throws IOException
+  {
+    Validate.isTrue(filter.isSearchNotEmpty() == false && filter.isUseModificationFilter() == false,
+        "Full text search and modification filter not supported by scroll.");
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    final QueryFilter queryFilter = createQueryFilter(filter);
+    addDefaultRestrictions(queryFilter);
+    final Session session = getSession();
+    final Criteria criteria = queryFilter.buildCriteria(session, clazz);
+    for (final Order order : orders) {
+      criteria.addOrder(order);
+    }
+    // Collections (e. g. eager positions of invoices) mustn't be outer joined: The cursor would return one row per collection element and
+    // the partially initialized entity would be evicted after the first row.
+    final ClassMetadata classMetadata = getSessionFactory().getClassMetadata(clazz);
+    for (final String property : classMetadata.getPropertyNames()) {
+      if (classMetadata.getPropertyType(property).isCollectionType() == true) {
+        criteria.setFetchMode(property, FetchMode.SELECT);
+      }
+    }
+    criteria.setReadOnly(true).setFetchSize(SCROLL_FETCH_SIZE);
+    final ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+    // Joined collections of associated entities may still result in duplicate rows:
+    final Set<Serializable> processedIds = new HashSet<Serializable>();
+    int counter = 0;
+    try {
+      while (results.next() == true) {
+        final O obj = (O) results.get(0);
+        if (processedIds.add(obj.getId()) == false) {
+          session.evict(obj);
+          continue;
+        }
+        if (hasLoggedInUserSelectAccess(obj, false) == true) {
+          afterLoad(obj);
+          callback.handle(obj);
+          ++counter;
+        }
+        session.evict(obj);
+      }
+    } finally {
+      results.close();
+    }
+    return counter;
+  }
+
+  /**
+   * @return true for the id and simple persistent properties (no associations, collections or components).
+   */
+  private boolean isSortableProperty(final String property)
+  {
+    final ClassMetadata classMetadata = getSessionFactory().getClassMetadata(clazz);
+    if (property.equals(classMetadata.getIdentifierPropertyName()) == true) {
+      return true;
+    }
+    if (ArrayUtils.contains(classMetadata.getPropertyNames(), property) == false) {
+      return false;
+    }
+    final Type type = classMetadata.getPropertyType(property);
+    return type.isAssociationType() == false && type.isCollectionType() == false && type.isComponentType() == false;
+  }
+
+  private boolean isNullableProperty(final ClassMetadata classMetadata, final String property)
+  {
+    if (property.equals(classMetadata.getIdentifierPropertyName()) == true) {
+      return false;
+    }
+    final int index = ArrayUtils.indexOf(classMetadata.getPropertyNames(), property);
+    return index < 0 || classMetadata.getPropertyNullability()[index] == true;
+  }
+
+  private void addDefaultRestrictions(final QueryFilter filter)
+  {
+    final BaseSearchFilter searchFilter = filter.getFilter();
+    if (searchFilter.isIgnoreDeleted() == false) {
+      filter.add(Restrictions.eq("deleted", searchFilter.isDeleted()));
+    }
+    if (searchFilter.getModifiedSince() != null) {
+      filter.add(Restrictions.ge("lastUpdate", searchFilter.getModifiedSince()));
+    }
+  }
+
   /**
    * Gets the list filtered by the given filter.
    * @param filter
@@ -398,23 +829,18 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   {
     final BaseSearchFilter searchFilter = filter.getFilter();
     filter.clearErrorMessage();
-    if (searchFilter.isIgnoreDeleted() == false) {
-      filter.add(Restrictions.eq("deleted", searchFilter.isDeleted()));
-    }
-    if (searchFilter.getModifiedSince() != null) {
-      filter.add(Restrictions.ge("lastUpdate", searchFilter.getModifiedSince()));
-    }
+    addDefaultRestrictions(filter);
 
     List<O> list = null;
     {
       final Criteria criteria = filter.buildCriteria(getSession(), clazz);
       setCacheRegion(criteria);
       if (searchFilter.isSearchNotEmpty() == true) {
-        final String searchString = modifySearchString(searchFilter.getSearchString());
+        final String searchString = searchFilter.getSearchString();
         final String[] searchFields = searchFilter.getSearchFields() != null ? searchFilter.getSearchFields() : getSearchFields();
         try {
           final FullTextSession fullTextSession = Search.getFullTextSession(getSession());
-          final org.apache.lucene.search.Query query = createFullTextQuery(searchFields, filter, searchString);
+          final org.apache.lucene.search.Query query = createFullTextQuery(searchFields, filter, searchString, true);
           if (query == null) {
             // An error occured:
             return new ArrayList<O>();
@@ -476,29 +902,44 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return list;
   }
 
+  /**
+   * Parsed queries are cached (LRU) for repeated search strings, so the query parser is only needed for new search strings. The returned
+   * query is always a clone of the cached one.
+   * @param searchFields
+   * @param queryFilter If given, any error message will be set.
+   * @param searchString
+   * @param modify If true, the search string will be modified via {@link #modifySearchString(String)} before parsing.
+   * @return The query or null if the search string couldn't be parsed.
+   */
   private org.apache.lucene.search.Query createFullTextQuery(final String[] searchFields, final QueryFilter queryFilter,
-      final String searchString)
+      final String searchString, final boolean modify)
   {
-    final MultiFieldQueryParser parser = new MultiFieldQueryParser(LUCENE_VERSION, searchFields, new ClassicAnalyzer(Version.LUCENE_31));
+    final String cacheKey = StringUtils.join(searchFields, ',') + (modify == true ? "|m|" : "|u|") + searchString;
+    org.apache.lucene.search.Query query;
+    synchronized (parsedQueryCache) {
+      query = parsedQueryCache.get(cacheKey);
+    }
+    if (query != null) {
+      return (org.apache.lucene.search.Query) query.clone();
+    }
+    final String str = modify == true ? modifySearchString(searchString) : searchString;
+    // Query parsers aren't thread safe, therefore a new one is needed (but the analyzer is re-used).
+    final MultiFieldQueryParser parser = new MultiFieldQueryParser(LUCENE_VERSION, searchFields, searchAnalyzer);
     parser.setAllowLeadingWildcard(true);
-    org.apache.lucene.search.Query query = null;
     try {
-      query = parser.parse(searchString);
+      query = parser.parse(str);
     } catch (final org.apache.lucene.queryParser.ParseException ex) {
-      final String errorMsg = "Lucene error message: "
-          + ex.getMessage()
-          + " (for "
-          + this.getClass().getSimpleName()
-          + ": "
-          + searchString
-          + ").";
+      final String errorMsg = "Lucene error message: " + ex.getMessage() + " (for " + this.getClass().getSimpleName() + ": " + str + ").";
       if (queryFilter != null) {
         queryFilter.setErrorMessage(errorMsg);
       }
       log.info(errorMsg);
       return null;
     }
-    return query;
+    synchronized (parsedQueryCache) {
+      parsedQueryCache.put(cacheKey, query);
+    }
+    return (org.apache.lucene.search.Query) query.clone();
   }
 
   /**
@@ -673,11 +1114,31 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   public HistoryEntry[] internalGetHistoryEntries(final BaseDO< ? > obj)
   {
     accessChecker.checkRestrictedUser();
+    writePendingHistory(obj);
     final HistoryAdapter ad = new HistoryAdapter();
     ad.setSessionFactory(getHibernateTemplate().getSessionFactory());
     return ad.getHistoryEntries(obj);
   }
 
+  /**
+   * The history is written asynchronously after the commit by the {@link HistoryOutboxWriter}, so the pending history of the object (of the
+   * current and of already committed transactions) has to be written before reading.
+   */
+  private void writePendingHistory(final BaseDO< ? > obj)
+  {
+    if (historyOutboxWriter == null) {
+      return;
+    }
+    if (obj.getId() instanceof Integer) {
+      historyOutboxWriter.writePendingEntries(Hibernate.getClass(obj), (Integer) obj.getId());
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      // The modifications are stored in the outbox while flushing:
+      getHibernateTemplate().flush();
+      historyOutboxWriter.writeTransactionEntries();
+    }
+  }
+
   /**
    * Gets the history entries of the object in flat format.<br/>
    * Please note: If user has no access an empty list will be returned.
@@ -700,9 +1161,137 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
         return convertAll(entries, session);
       }
     });
+    final List<HistoryChildObject> childs = getHistoryChildObjects(obj);
+    if (result == null || childs == null || childs.isEmpty() == true) {
+      return result;
+    }
+    for (final HistoryChildObject child : childs) {
+      final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(child.getObject());
+      for (final DisplayHistoryEntry entry : entries) {
+        prependPropertyName(entry, child.getPrefix());
+      }
+      result.addAll(entries);
+    }
+    Collections.sort(result, new Comparator<DisplayHistoryEntry>() {
+      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
+      {
+        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
+      }
+    });
     return result;
   }
 
+  /**
+   * Gets one page of the history entries of the object and of its child objects (see {@link #getHistoryChildObjects(ExtendedBaseDO)}) in
+   * flat format, newest first. The pages are fetched by keyset (timestamp and id of the last history entry of the previous page), so the
+   * costs of fetching a page don't depend on the number of all history entries of the object.<br/>
+   * Please note: If user has no access an empty page will be returned.
+   * @param obj
+   * @param previousPage The previous page or null for fetching the first page.
+   * @param maxHistoryEntries Maximum number of history entries of the page (every history entry results in one display entry per modified
+   *          property).
+   * @return The page. Its entries are empty if no more entries exist.
+   * @see #HISTORY_PAGE_SIZE
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public DisplayHistoryPage getDisplayHistoryPage(final O obj, final DisplayHistoryPage previousPage, final int maxHistoryEntries)
+  {
+    if (obj.getId() == null || hasLoggedInUserHistoryAccess(obj, false) == false) {
+      return new DisplayHistoryPage(EMPTY_HISTORY_ENTRIES, null, null, false);
+    }
+    accessChecker.checkRestrictedUser();
+    final List<HistoryChildObject> childs = getHistoryChildObjects(obj);
+    if (previousPage == null) {
+      writePendingHistory(obj);
+      if (childs != null) {
+        for (final HistoryChildObject child : childs) {
+          writePendingHistory(child.getObject());
+        }
+      }
+    }
+    return getHibernateTemplate().execute(new HibernateCallback<DisplayHistoryPage>() {
+      @SuppressWarnings("unchecked")
+      public DisplayHistoryPage doInHibernate(final Session session) throws HibernateException, SQLException
+      {
+        final String idProperty = session.getSessionFactory().getClassMetadata(HistoryEntry.class).getIdentifierPropertyName();
+        // Key is class name and entity id of every object, value is the prefix of the property names of it's history entries.
+        final Map<String, String> prefixes = new HashMap<String, String>();
+        final Disjunction objects = Restrictions.disjunction();
+        objects.add(getHistoryObjectCriterion(clazz, obj.getId(), null, prefixes));
+        if (childs != null) {
+          for (final HistoryChildObject child : childs) {
+            final BaseDO< ? > childObj = child.getObject();
+            if (childObj.getId() != null) {
+              objects.add(getHistoryObjectCriterion(Hibernate.getClass(childObj), childObj.getId(), child.getPrefix(), prefixes));
+            }
+          }
+        }
+        final Criteria criteria = session.createCriteria(HistoryEntry.class).add(objects);
+        if (previousPage != null && previousPage.getLastHistoryEntryId() != null) {
+          final Timestamp timestamp = previousPage.getLastTimestamp();
+          final Serializable historyEntryId = previousPage.getLastHistoryEntryId();
+          criteria.add(Restrictions.or(Restrictions.lt("timestamp", timestamp),
+              Restrictions.and(Restrictions.eq("timestamp", timestamp), Restrictions.lt(idProperty, historyEntryId))));
+        }
+        // One more history entry is fetched for detecting whether further pages exist:
+        criteria.addOrder(Order.desc("timestamp")).addOrder(Order.desc(idProperty)).setMaxResults(maxHistoryEntries + 1);
+        List<HistoryEntry> entries = criteria.list();
+        final boolean moreEntries = entries.size() > maxHistoryEntries;
+        if (moreEntries == true) {
+          entries = entries.subList(0, maxHistoryEntries);
+        }
+        final List<DisplayHistoryEntry> list = new ArrayList<DisplayHistoryEntry>();
+        Timestamp lastTimestamp = null;
+        Serializable lastHistoryEntryId = null;
+        for (final HistoryEntry entry : entries) {
+          final Serializable historyEntryId = session.getIdentifier(entry);
+          lastTimestamp = entry.getTimestamp();
+          lastHistoryEntryId = historyEntryId;
+          final String prefix = prefixes.get(entry.getClassName() + "#" + entry.getEntityId());
+          for (final DisplayHistoryEntry displayEntry : convert(entry, session)) {
+            displayEntry.setHistoryEntryId(historyEntryId);
+            if (prefix != null) {
+              prependPropertyName(displayEntry, prefix);
+            }
+            list.add(displayEntry);
+          }
+        }
+        return new DisplayHistoryPage(list, lastTimestamp, lastHistoryEntryId, moreEntries);
+      }
+    });
+  }
+
+  private Criterion getHistoryObjectCriterion(final Class< ? > objClass, final Serializable id, final String prefix,
+      final Map<String, String> prefixes)
+  {
+    final String className = ClassUtils.getShortClassName(objClass);
+    if (prefix != null) {
+      prefixes.put(className + "#" + id, prefix);
+    }
+    return Restrictions.and(Restrictions.eq("className", className), Restrictions.eq("entityId", id));
+  }
+
+  /**
+   * Override this method, if the history of child objects should be displayed in the history of the object (e. g. the positions of an
+   * order). The property names of the history entries of the childs are prepended by the prefix (e. g. "#1:netSum").
+   * @param obj
+   * @return The child objects with their prefixes or null (default) if no child objects exist.
+   */
+  protected List<HistoryChildObject> getHistoryChildObjects(final O obj)
+  {
+    return null;
+  }
+
+  private void prependPropertyName(final DisplayHistoryEntry entry, final String prefix)
+  {
+    final String propertyName = entry.getPropertyName();
+    if (propertyName != null) {
+      entry.setPropertyName(prefix + ":" + propertyName);
+    } else {
+      entry.setPropertyName(prefix);
+    }
+  }
+
   public List<DisplayHistoryEntry> internalGetDisplayHistoryEntries(final BaseDO< ? > obj)
   {
     accessChecker.checkRestrictedUser();
@@ -814,18 +1403,78 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   }
 
   /**
-   * Call save(O) for every object in the given list.
+   * Saves all objects of the given list.
    * @param objects
-   * @return the generated identifier.
    * @throws AccessException
+   * @see #saveAll(Collection)
    */
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
   public void save(final List<O> objects) throws AccessException
+  {
+    saveAll(objects);
+  }
+
+  /**
+   * Checks the insert access for every object and saves all of them in one transaction via {@link #internalSaveAll(Collection)}.
+   * @param objects
+   * @return the generated identifiers in the order of the given objects.
+   * @throws AccessException
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
+  public List<Serializable> saveAll(final Collection<O> objects) throws AccessException
+  {
+    Validate.notNull(objects);
+    accessChecker.checkRestrictedOrDemoUser();
+    for (final O obj : objects) {
+      Validate.notNull(obj);
+      if (avoidNullIdCheckBeforeSave == false) {
+        Validate.isTrue(obj.getId() == null);
+      }
+      checkLoggedInUserInsertAccess(obj);
+    }
+    return internalSaveAll(objects);
+  }
+
+  /**
+   * Saves all given objects with only one flush at the end, so the inserts of the objects and their history entries are sent to the data
+   * base as JDBC batches (hibernate.jdbc.batch_size). The full text index is written once for all objects. The hooks (onSave,
+   * onSaveOrModify, afterSaveOrModify, afterSave) are called for every object as done by {@link #internalSave(ExtendedBaseDO)}. Please use
+   * this method for imports.
+   * @param objects
+   * @return the generated identifiers in the order of the given objects.
+   */
+  @Transactional(readOnly = false, propagation = Propagation.REQUIRED, isolation = Isolation.REPEATABLE_READ)
+  public List<Serializable> internalSaveAll(final Collection<O> objects)
   {
     Validate.notNull(objects);
+    final List<Serializable> ids = new ArrayList<Serializable>(objects.size());
+    if (objects.isEmpty() == true) {
+      return ids;
+    }
+    final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     for (final O obj : objects) {
-      save(obj);
+      Validate.notNull(obj);
+      obj.setCreated();
+      obj.setLastUpdate();
+      onSave(obj);
+      onSaveOrModify(obj);
+      final Serializable id = session.save(obj);
+      if (log.isDebugEnabled() == true) {
+        log.debug("New object added (" + id + "): " + obj.toString());
+      }
+      prepareHibernateSearch(obj, OperationType.INSERT);
+      ids.add(id);
+    }
+    session.flush();
+    Search.getFullTextSession(session).flushToIndexes();
+    log.info(objects.size() + " new objects of type " + clazz.getSimpleName() + " added.");
+    for (final O obj : objects) {
+      updateAutocompletionIndex(null, obj);
+      logCacheChange(obj);
+      afterSaveOrModify(obj);
+      afterSave(obj);
     }
+    return ids;
   }
 
   /**
@@ -855,6 +1504,17 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
 
   }
 
+  /**
+   * Logs the modification for invalidating the caches of other ProjectForge instances sharing the same data base (only in cluster mode).
+   * @see CacheChangeLog
+   */
+  private void logCacheChange(final O obj)
+  {
+    if (cacheChangeLog != null && cacheChangeLog.isClusterMode() == true) {
+      cacheChangeLog.logChange(clazz, obj.getId(), useOwnCriteriaCacheRegion() == true ? getClass().getName() : null);
+    }
+  }
+
   /**
    * This method will be called after inserting, updating, deleting or marking the data object as deleted. This method is for example needed
    * for expiring the UserGroupCache after inserting or updating a user or group data object. Does nothing at default.
@@ -959,6 +1619,8 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     prepareHibernateSearch(obj, OperationType.INSERT);
     session.flush();
     Search.getFullTextSession(session).flushToIndexes();
+    updateAutocompletionIndex(null, obj);
+    logCacheChange(obj);
     afterSaveOrModify(obj);
     afterSave(obj);
     return id;
@@ -989,12 +1651,22 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     currentProxy.saveOrUpdate(list);
   }
 
+  /**
+   * Updates all objects with id and saves all new objects via {@link #internalSaveAll(Collection)}.
+   * @param col
+   */
   @Transactional(readOnly = false, propagation = Propagation.REQUIRED, isolation = Isolation.REPEATABLE_READ)
   public void internalSaveOrUpdate(final Collection<O> col)
   {
+    final List<O> newObjects = new ArrayList<O>();
     for (final O obj : col) {
-      internalSaveOrUpdate(obj);
+      if (obj.getId() != null) {
+        internalUpdate(obj);
+      } else {
+        newObjects.add(obj);
+      }
     }
+    internalSaveAll(newObjects);
   }
 
   @Transactional(readOnly = false, propagation = Propagation.REQUIRED)
@@ -1070,6 +1742,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
       dbObjBackup = null;
     }
     final boolean wantsReindexAllDependentObjects = wantsReindexAllDependentObjects(obj, dbObj);
+    final Map<String, String> autocompletionValues = getAutocompletionValues(dbObj);
     // Copy all values of modified user to database object, ignore field 'deleted'.
     final ModificationStatus result = copyValues(obj, dbObj, "deleted");
     if (result != ModificationStatus.NONE) {
@@ -1082,6 +1755,12 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     session.flush();
     Search.getFullTextSession(session).flushToIndexes();
+    if (result != ModificationStatus.NONE && dbObj.isDeleted() == false) {
+      updateAutocompletionIndex(autocompletionValues, dbObj);
+    }
+    if (result != ModificationStatus.NONE) {
+      logCacheChange(obj);
+    }
     afterSaveOrModify(obj);
     if (supportAfterUpdate == true) {
       afterUpdate(obj, dbObjBackup, result != ModificationStatus.NONE);
@@ -1156,12 +1835,15 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     onDelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     onSaveOrModify(obj);
+    final Map<String, String> autocompletionValues = dbObj.isDeleted() == false ? getAutocompletionValues(dbObj) : null;
     copyValues(obj, dbObj, "deleted"); // If user has made additional changes.
     dbObj.setDeleted(true);
     dbObj.setLastUpdate();
     final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     session.flush();
     Search.getFullTextSession(session).flushToIndexes();
+    updateAutocompletionIndex(autocompletionValues, null);
+    logCacheChange(obj);
     afterSaveOrModify(obj);
     afterDelete(obj);
     getSession().flush();
@@ -1190,8 +1872,11 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     onDelete(obj);
     final O dbObj = getHibernateTemplate().load(clazz, obj.getId(), LockMode.PESSIMISTIC_WRITE);
     checkLoggedInUserDeleteAccess(obj, dbObj);
+    final Map<String, String> autocompletionValues = getAutocompletionValues(dbObj);
     getHibernateTemplate().delete(dbObj);
+    updateAutocompletionIndex(autocompletionValues, null);
     log.info("Object deleted: " + obj.toString());
+    logCacheChange(obj);
     afterSaveOrModify(obj);
     afterDelete(obj);
   }
@@ -1228,6 +1913,8 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     final Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
     session.flush();
     Search.getFullTextSession(session).flushToIndexes();
+    updateAutocompletionIndex(null, dbObj);
+    logCacheChange(obj);
     afterSaveOrModify(obj);
     afterUndelete(obj);
   }
@@ -1547,6 +2234,10 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return dest.copyValuesFrom(src, ignoreFields);
   }
 
+  /**
+   * The history entry is written behind the current transaction by the {@link HistoryOutboxWriter} if the values are supported by the
+   * outbox (null, strings or collections of data base objects), otherwise it's written directly.
+   */
   protected void createHistoryEntry(final Object entity, final Number id, final String property, final Class< ? > valueClass,
       final Object oldValue, final Object newValue)
   {
@@ -1556,6 +2247,10 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     if (userPk == null) {
       log.warn("No user found for creating history entry.");
     }
+    if (historyOutboxWriter != null
+        && historyOutboxWriter.add(entity, id, userPk, property, valueClass, oldValue, newValue) == true) {
+      return;
+    }
     historyAdapter.createHistoryEntry(entity, id, new HistoryUserRetriever() {
       public String getPrincipal()
       {
@@ -1577,6 +2272,17 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     if (StringUtils.isBlank(searchString) == true) {
       return null;
     }
+    if (autocompletionIndex != null && autocompletionIndex.isIndexed(property) == true) {
+      if (autocompletionIndex.isLoaded(property, AUTOCOMPLETION_INDEX_MAX_AGE) == false) {
+        synchronized (autocompletionIndex) {
+          // Check again, the index may be loaded by a concurrent thread in the mean time:
+          if (autocompletionIndex.isLoaded(property, AUTOCOMPLETION_INDEX_MAX_AGE) == false) {
+            loadAutocompletionIndex(property);
+          }
+        }
+      }
+      return autocompletionIndex.getMatches(property, searchString);
+    }
     final String hql = "select distinct "
         + property
         + " from "
@@ -1594,6 +2300,71 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return list;
   }
 
+  /**
+   * Loads all values (with their frequencies) of the given property modified or updated in the last 2 years.
+   */
+  @SuppressWarnings("unchecked")
+  private void loadAutocompletionIndex(final String property)
+  {
+    final String hql = "select t."
+        + property
+        + ", count(*) from "
+        + clazz.getSimpleName()
+        + " t where deleted=false and lastUpdate > ? and t."
+        + property
+        + " is not null group by t."
+        + property;
+    final Query query = getSession().createQuery(hql);
+    final DateHolder dh = new DateHolder();
+    dh.add(Calendar.YEAR, -2); // Index only entries of the last 2 years.
+    query.setDate(0, dh.getDate());
+    final List<Object[]> list = query.list();
+    final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+    for (final Object[] row : list) {
+      frequencies.put((String) row[0], ((Number) row[1]).intValue());
+    }
+    autocompletionIndex.load(property, frequencies);
+    log.info("Auto-completion index of " + clazz.getSimpleName() + "." + property + " loaded: " + frequencies.size() + " values.");
+  }
+
+  /**
+   * @return The current values of all properties of the auto-completion index or null if no auto-completion index is used.
+   */
+  private Map<String, String> getAutocompletionValues(final O obj)
+  {
+    if (autocompletionIndex == null || obj == null) {
+      return null;
+    }
+    final Map<String, String> values = new HashMap<String, String>();
+    for (final String property : autocompletionIndex.getProperties()) {
+      values.put(property, (String) BeanHelper.getProperty(obj, property));
+    }
+    return values;
+  }
+
+  /**
+   * The index is updated after the commit of the current transaction (if any), so values of rolled back modifications aren't indexed.
+   * @param oldValues The values before modification (null for new or undeleted objects).
+   * @param obj The modified object or null for deleted objects.
+   */
+  private void updateAutocompletionIndex(final Map<String, String> oldValues, final O obj)
+  {
+    if (autocompletionIndex == null) {
+      return;
+    }
+    final List<String[]> changes = autocompletionChanges.get();
+    for (final String property : autocompletionIndex.getProperties()) {
+      final String oldValue = oldValues != null ? oldValues.get(property) : null;
+      final String newValue = obj != null ? (String) BeanHelper.getProperty(obj, property) : null;
+      if (changes != null) {
+        changes.add(new String[] { property, oldValue, newValue});
+      } else {
+        // No transaction active:
+        autocompletionIndex.replace(property, oldValue, newValue);
+      }
+    }
+  }
+
   /**
    * Re-indexes the entries of the last day, 1,000 at max.
    * @see DatabaseDao#createReindexSettings(boolean)
@@ -1624,26 +2395,218 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     HibernateSearchDependentObjectsReindexer.getSingleton().reindexDependents(getHibernateTemplate(), obj);
   }
 
-  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  /**
+   * Updates all entries of the given list with the values of the master (see {@link #massUpdateEntry(ExtendedBaseDO, ExtendedBaseDO, Object)}).
+   * The entries are processed in chunks of {@link #MASS_UPDATE_CHUNK_SIZE} entries, every chunk in its own transaction, so there is no
+   * limit of the number of entries. Please use {@link #startMassUpdate(List, ExtendedBaseDO)} for large lists.<br/>
+   * If only plain columns are modified (see {@link #getMassUpdateBulkProperties(ExtendedBaseDO)}), every chunk is updated by one bulk
+   * statement and its history entries are written in one batch.
+   * @param list
+   * @param master
+   */
   public void massUpdate(final List<O> list, final O master)
+  {
+    massUpdate(list, master, null);
+  }
+
+  /**
+   * Starts the mass update as background job (queued by the {@link MassUpdateExecutor}).
+   * @param list
+   * @param master
+   * @return The job for getting the progress.
+   * @see #massUpdate(List, ExtendedBaseDO)
+   * @see MassUpdateExecutor#getJob(String)
+   */
+  public MassUpdateJob<O> startMassUpdate(final List<O> list, final O master)
+  {
+    accessChecker.checkRestrictedOrDemoUser();
+    final MassUpdateJob<O> job = new MassUpdateJob<O>(this, list, master, PFUserContext.getUser());
+    massUpdateExecutor.start(job);
+    return job;
+  }
+
+  void massUpdate(final List<O> list, final O master, final MassUpdateJob<O> job)
   {
     if (list == null || list.size() == 0) {
       // No entries to update.
       return;
     }
-    if (list.size() > MAX_MASS_UPDATE) {
-      throw new UserException(MAX_MASS_UPDATE_EXCEEDED_EXCEPTION_I18N, new Object[] { MAX_MASS_UPDATE});
+    final String[] bulkProperties = getMassUpdateBulkProperties(master);
+    if (bulkProperties != null) {
+      for (int fromIndex = 0; fromIndex < list.size(); fromIndex += MASS_UPDATE_CHUNK_SIZE) {
+        final List<O> chunk = list.subList(fromIndex, Math.min(fromIndex + MASS_UPDATE_CHUNK_SIZE, list.size()));
+        txTemplate.execute(new TransactionCallback() {
+          public Object doInTransaction(final TransactionStatus status)
+          {
+            massUpdateBulk(chunk, master, bulkProperties, job);
+            return null;
+          }
+        });
+        if (job != null) {
+          log.info("Mass update in progress: " + job);
+          if (Thread.currentThread().isInterrupted() == true) {
+            log.warn("Mass update interrupted: " + job);
+            return;
+          }
+        }
+      }
+      return;
+    }
+    final Object store = txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        return prepareMassUpdateStore(list, master);
+      }
+    });
+    for (int fromIndex = 0; fromIndex < list.size(); fromIndex += MASS_UPDATE_CHUNK_SIZE) {
+      final List<O> chunk = list.subList(fromIndex, Math.min(fromIndex + MASS_UPDATE_CHUNK_SIZE, list.size()));
+      // Every chunk in its own transaction:
+      txTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          for (final O entry : chunk) {
+            final boolean update = massUpdateEntry(entry, master, store);
+            boolean success = false;
+            if (update == true) {
+              try {
+                update(entry);
+                success = true;
+              } catch (final Exception ex) {
+                log.info("Exception occured while updating entry inside mass update: " + entry);
+              }
+            }
+            if (job != null) {
+              job.entryProcessed(update, success);
+            }
+          }
+          return null;
+        }
+      });
+      if (job != null) {
+        log.info("Mass update in progress: " + job);
+        if (Thread.currentThread().isInterrupted() == true) {
+          log.warn("Mass update interrupted: " + job);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the given properties of the master for all entries of the chunk by one HQL update statement. The update access is checked for
+   * every entry (with the new values) and entries without any modification aren't updated. The history entries of the modified properties
+   * are written in one batch. Afterwards the updated entries are re-indexed and the hook {@link #afterSaveOrModify(ExtendedBaseDO)} is
+   * called for them.
+   */
+  @SuppressWarnings("unchecked")
+  private void massUpdateBulk(final List<O> chunk, final O master, final String[] properties, final MassUpdateJob<O> job)
+  {
+    accessChecker.checkRestrictedOrDemoUser();
+    final Session session = getSession();
+    final ClassMetadata classMetadata = getSessionFactory().getClassMetadata(clazz);
+    final Type[] types = new Type[properties.length];
+    final Object[] values = new Object[properties.length];
+    for (int i = 0; i < properties.length; i++) {
+      types[i] = classMetadata.getPropertyType(properties[i]);
+      Validate.isTrue(types[i].isAssociationType() == false && types[i].isComponentType() == false,
+          "Only plain columns are supported by the bulk mass update: " + properties[i]);
+      values[i] = BeanHelper.getProperty(master, properties[i]);
+    }
+    final List<Serializable> ids = new ArrayList<Serializable>(chunk.size());
+    for (final O entry : chunk) {
+      ids.add(entry.getId());
+    }
+    final Map<Serializable, O> dbObjects = new HashMap<Serializable, O>();
+    for (final O dbObj : (List<O>) session.createCriteria(clazz).add(Restrictions.in("id", ids)).list()) {
+      dbObjects.put(dbObj.getId(), dbObj);
     }
-    final Object store = prepareMassUpdateStore(list, master);
-    for (final O entry : list) {
-      if (massUpdateEntry(entry, master, store) == true) {
-        try {
-          update(entry);
-        } catch (final Exception ex) {
-          log.info("Exception occured while updating entry inside mass update: " + entry);
+    final PFUserDO contextUser = PFUserContext.getUser();
+    final String userPk = contextUser != null ? contextUser.getId().toString() : null;
+    final List<Serializable> updateIds = new ArrayList<Serializable>();
+    final Map<Serializable, Map<String, String>> autocompletionValues = new HashMap<Serializable, Map<String, String>>();
+    final List<HistoryOutboxDO> historyEntries = new ArrayList<HistoryOutboxDO>();
+    for (final O entry : chunk) {
+      final O dbObj = dbObjects.get(entry.getId());
+      boolean success = false;
+      if (dbObj != null) {
+        for (int i = 0; i < properties.length; i++) {
+          BeanHelper.setProperty(entry, properties[i], values[i]);
+        }
+        if (hasLoggedInUserUpdateAccess(entry, dbObj, false) == true) {
+          success = true;
+          for (int i = 0; i < properties.length; i++) {
+            final Object oldValue = BeanHelper.getProperty(dbObj, properties[i]);
+            if (types[i].isEqual(oldValue, values[i]) == true) {
+              continue;
+            }
+            if (updateIds.contains(dbObj.getId()) == false) {
+              updateIds.add(dbObj.getId());
+              autocompletionValues.put(dbObj.getId(), getAutocompletionValues(dbObj));
+            }
+            final Class< ? > valueClass = types[i].getReturnedClass();
+            final HistoryOutboxDO historyEntry = historyOutboxWriter != null ? historyOutboxWriter.createEntry(dbObj,
+                (Number) dbObj.getId(), userPk, properties[i], valueClass, oldValue, values[i]) : null;
+            if (historyEntry != null) {
+              historyEntries.add(historyEntry);
+            } else {
+              createHistoryEntry(dbObj, (Number) dbObj.getId(), properties[i], valueClass, oldValue, values[i]);
+            }
+          }
+        } else {
+          log.info("No update access for entry inside mass update: " + entry);
         }
       }
+      if (job != null) {
+        job.entryProcessed(true, success);
+      }
+    }
+    if (updateIds.isEmpty() == true) {
+      return;
+    }
+    for (final O dbObj : dbObjects.values()) {
+      session.evict(dbObj);
     }
+    final StringBuilder hql = new StringBuilder();
+    hql.append("update ").append(clazz.getName()).append(" set lastUpdate = :lastUpdate");
+    for (int i = 0; i < properties.length; i++) {
+      hql.append(", ").append(properties[i]).append(" = :p").append(i);
+    }
+    hql.append(" where id in (:ids)");
+    final Query query = session.createQuery(hql.toString()).setTimestamp("lastUpdate", new Date()).setParameterList("ids", updateIds);
+    for (int i = 0; i < properties.length; i++) {
+      query.setParameter("p" + i, values[i], types[i]);
+    }
+    final int counter = query.executeUpdate();
+    if (historyEntries.isEmpty() == false) {
+      historyOutboxWriter.store(session, historyEntries);
+    }
+    log.info(counter + " objects of type " + clazz.getSimpleName() + " updated by mass update: " + StringUtils.join(properties, ", "));
+    // The bulk update bypasses the full text index:
+    final FullTextSession fullTextSession = Search.getFullTextSession(session);
+    final List<O> updated = session.createCriteria(clazz).add(Restrictions.in("id", updateIds)).list();
+    for (final O obj : updated) {
+      prepareHibernateSearch(obj, OperationType.UPDATE);
+      fullTextSession.index(obj);
+    }
+    fullTextSession.flushToIndexes();
+    for (final O obj : updated) {
+      updateAutocompletionIndex(autocompletionValues.get(obj.getId()), obj);
+      logCacheChange(obj);
+      afterSaveOrModify(obj);
+    }
+  }
+
+  /**
+   * Overwrite this method for updating plain columns (no associations) of all entries of a mass update by one bulk statement per chunk
+   * instead of updating every entry via {@link #massUpdateEntry(ExtendedBaseDO, ExtendedBaseDO, Object)}. Only the update access is
+   * checked for every entry, the hooks onSaveOrModify, onChange and afterUpdate aren't called. So return the properties only, if they don't
+   * need any further logic.
+   * @param master
+   * @return The properties of the master to set for all entries or null (default), if the entries have to be updated one by one.
+   */
+  protected String[] getMassUpdateBulkProperties(final O master)
+  {
+    return null;
   }
 
   /**
@@ -1723,7 +2686,7 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
       final String searchString = buf.toString() + modifySearchString(filter.getSearchString()) + ")";
       try {
         final FullTextSession fullTextSession = Search.getFullTextSession(getSession());
-        final org.apache.lucene.search.Query query = createFullTextQuery(HISTORY_SEARCH_FIELDS, null, searchString);
+        final org.apache.lucene.search.Query query = createFullTextQuery(HISTORY_SEARCH_FIELDS, null, searchString, false);
         if (query == null) {
           // An error occured:
           return;
@@ -21,35 +21,20 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
-package org.projectforge.plugins.todo;
 
-import org.apache.wicket.injection.Injector;
-import org.apache.wicket.model.Model;
-import org.apache.wicket.spring.injection.annot.SpringBean;
+package org.projectforge.core;
 
 /**
- * Represents the counter for displaying the open to-do entries as white number in red bubble beside the to-do menu entry.
+ * Caches implementing this interface and registered at {@link CacheChangeLog} are notified about modifications done by other ProjectForge
+ * instances sharing the same data base.
  * @author Kai Reinhard (k.reinhard@micromata.de)
- * 
  */
-public class MenuCounterOpenToDos extends Model<Integer>
+public interface CacheChangeListener
 {
-  private static final long serialVersionUID = -1500489863982107802L;
-
-  @SpringBean(name = "toDoDao")
-  private ToDoDao toDoDao;
-
-  public void setToDoDao(final ToDoDao toDoDao)
-  {
-    this.toDoDao = toDoDao;
-  }
-
-  @Override
-  public Integer getObject()
-  {
-    if (toDoDao == null) {
-      Injector.get().inject(this);
-    }
-    return toDoDao.getOpenToDoEntries(null);
-  }
+  /**
+   * Is called by the poller thread of {@link CacheChangeLog}.
+   * @param entityClass The class of the inserted, updated or deleted entity.
+   * @param id The id of the entity (may be null).
+   */
+  public void onRemoteChange(Class< ? > entityClass, Integer id);
 }
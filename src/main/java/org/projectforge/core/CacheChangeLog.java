@@ -0,0 +1,419 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.UpdateTimestampsCache;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.springframework.orm.hibernate3.HibernateCallback;
+import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Change log for invalidating the caches of other ProjectForge instances (nodes) sharing the same data base. Every insert, update or
+ * deletion done by {@link BaseDao} is logged (after the commit) with the id of this node. A poller thread of each node reads the
+ * entries of the other nodes and
+ * <ul>
+ * <li>invalidates the cached query results depending on the tables of the entity (and evicts the own query cache region of the dao) and
+ * evicts the second level cache entry of the entity and</li>
+ * <li>notifies the registered {@link CacheChangeListener}s (TaskTree, UserGroupCache, KostCache, RechnungCache etc.) which update or expire
+ * their data.</li>
+ * </ul>
+ * Entries older than one hour are deleted.<br/>
+ * The change log is only written and polled in cluster mode (see {@link ConfigXml#isClusterMode()}).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class CacheChangeLog extends HibernateDaoSupport
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(CacheChangeLog.class);
+
+  /**
+   * Entries are stamped before their (short) transaction is committed and the ids aren't committed in ascending order. Therefore the
+   * entries of the last poll interval plus this grace period are read again (already applied entries are skipped). This also covers
+   * moderate clock skews between the nodes.
+   */
+  private static final long GRACE_MILLIS = 2 * 60 * 1000;
+
+  private static final long KEEP_ENTRIES_MILLIS = 60 * 60 * 1000;
+
+  private final String nodeId = UUID.randomUUID().toString();
+
+  private final List<CacheChangeListener> listeners = new CopyOnWriteArrayList<CacheChangeListener>();
+
+  private TransactionTemplate txTemplate;
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
+  /**
+   * The entries of the current transaction, written after commit.
+   */
+  private final TransactionResource<List<CacheChangeLogDO>> transactionEntries = new TransactionResource<List<CacheChangeLogDO>>() {
+    @Override
+    protected List<CacheChangeLogDO> create()
+    {
+      return new ArrayList<CacheChangeLogDO>();
+    }
+
+    @Override
+    protected void afterCommit(final List<CacheChangeLogDO> entries)
+    {
+      try {
+        save(entries);
+      } catch (final Exception ex) {
+        log.error("Can't write cache change log (caches of other nodes are updated not until they expire): " + ex.getMessage(), ex);
+      }
+    }
+  };
+
+  private long pollIntervalMillis = 10000;
+
+  private ConfigXml configXml;
+
+  private Boolean clusterMode;
+
+  /**
+   * Ids of already applied entries (with their creation time in millis).
+   */
+  private final Map<Integer, Long> appliedIds = new HashMap<Integer, Long>();
+
+  private long lastCleanUp;
+
+  private Thread pollerThread;
+
+  private volatile boolean shutdown;
+
+  public void register(final CacheChangeListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * Logs the modification after the commit of the current transaction (in a new transaction), so the entries are stamped with the time of
+   * the commit and not with the time of the modification: Otherwise the entries of transactions running longer than the grace period would
+   * be committed too late for being read by the other nodes. The entries aren't written if the transaction is rolled back.<br/>
+   * Without a transaction the modification is logged immediately.
+   * @param entityClass
+   * @param id
+   * @param cacheRegion The own query cache region of the dao or null.
+   */
+  public void logChange(final Class< ? > entityClass, final Serializable id, final String cacheRegion)
+  {
+    if (isClusterMode() == false) {
+      return;
+    }
+    final CacheChangeLogDO entry = new CacheChangeLogDO().setNodeId(nodeId).setEntityClass(entityClass.getName())
+        .setCacheRegion(cacheRegion);
+    if (id instanceof Integer) {
+      entry.setEntityId((Integer) id);
+    }
+    final List<CacheChangeLogDO> entries = transactionEntries.get();
+    if (entries == null) {
+      // No transaction active:
+      save(Collections.singletonList(entry));
+      return;
+    }
+    entries.add(entry);
+  }
+
+  private void save(final List<CacheChangeLogDO> entries)
+  {
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final Date now = new Date();
+        for (final CacheChangeLogDO entry : entries) {
+          getHibernateTemplate().save(entry.setCreated(now));
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return true if the change log is used (see {@link ConfigXml#isClusterMode()}).
+   */
+  public boolean isClusterMode()
+  {
+    if (clusterMode != null) {
+      return clusterMode;
+    }
+    return configXml != null && configXml.isClusterMode() == true;
+  }
+
+  /**
+   * Starts the poller thread (only in cluster mode).
+   */
+  public synchronized void start()
+  {
+    if (pollerThread != null || isClusterMode() == false) {
+      return;
+    }
+    shutdown = false;
+    pollerThread = new Thread("CacheChangeLogPoller") {
+      @Override
+      public void run()
+      {
+        log.info("Cache change log poller started (node id " + nodeId + ").");
+        while (shutdown == false) {
+          try {
+            poll();
+          } catch (final Throwable ex) {
+            log.error("Error while polling the cache change log: " + ex.getMessage(), ex);
+          }
+          synchronized (this) {
+            if (shutdown == true) {
+              break;
+            }
+            try {
+              wait(pollIntervalMillis);
+            } catch (final InterruptedException ex) {
+              break;
+            }
+          }
+        }
+        log.info("Cache change log poller stopped.");
+      }
+    };
+    pollerThread.setDaemon(true);
+    pollerThread.start();
+  }
+
+  public synchronized void shutdown()
+  {
+    shutdown = true;
+    if (pollerThread != null) {
+      synchronized (pollerThread) {
+        pollerThread.notify();
+      }
+      pollerThread = null;
+    }
+  }
+
+  /**
+   * Reads and applies the changes of the other nodes since the last poll. Is called by the poller thread.
+   * @return Number of applied changes.
+   */
+  public synchronized int poll()
+  {
+    final long since = System.currentTimeMillis() - pollIntervalMillis - GRACE_MILLIS;
+    final List<CacheChangeLogDO> entries = getEntries(new Date(since));
+    final Set<String> cacheRegions = new LinkedHashSet<String>();
+    final Set<CacheChangeLogDO> changes = new LinkedHashSet<CacheChangeLogDO>();
+    for (final CacheChangeLogDO entry : entries) {
+      if (appliedIds.containsKey(entry.getId()) == true) {
+        continue;
+      }
+      appliedIds.put(entry.getId(), entry.getCreated().getTime());
+      if (containsChange(changes, entry) == true) {
+        continue;
+      }
+      changes.add(entry);
+      if (entry.getCacheRegion() != null) {
+        cacheRegions.add(entry.getCacheRegion());
+      }
+    }
+    if (changes.isEmpty() == false) {
+      final SessionFactory sessionFactory = getSessionFactory();
+      for (final String cacheRegion : cacheRegions) {
+        sessionFactory.evictQueries(cacheRegion);
+      }
+      txTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          for (final CacheChangeLogDO change : changes) {
+            apply(sessionFactory, change);
+          }
+          return null;
+        }
+      });
+      log.info("Changes of other nodes applied to the caches: " + changes.size());
+    }
+    final Iterator<Map.Entry<Integer, Long>> it = appliedIds.entrySet().iterator();
+    while (it.hasNext() == true) {
+      if (it.next().getValue() < since) {
+        it.remove();
+      }
+    }
+    cleanUp();
+    return changes.size();
+  }
+
+  private void apply(final SessionFactory sessionFactory, final CacheChangeLogDO change)
+  {
+    final Class< ? > entityClass;
+    try {
+      entityClass = Class.forName(change.getEntityClass());
+    } catch (final ClassNotFoundException ex) {
+      log.warn("Class '" + change.getEntityClass() + "' of cache change log entry not found (ignoring entry).");
+      return;
+    }
+    if (change.getEntityId() != null) {
+      sessionFactory.evict(entityClass, change.getEntityId());
+    } else {
+      sessionFactory.evict(entityClass);
+    }
+    invalidateQuerySpaces(sessionFactory, entityClass);
+    for (final CacheChangeListener listener : listeners) {
+      try {
+        listener.onRemoteChange(entityClass, change.getEntityId());
+      } catch (final Exception ex) {
+        log.error("Error while applying change of " + change.getEntityClass() + "#" + change.getEntityId() + " to " + listener + ": "
+            + ex.getMessage(), ex);
+      }
+    }
+  }
+
+  /**
+   * Marks the tables of the given entity as modified in the update timestamps cache of Hibernate, so only the cached query results
+   * depending on these tables are invalidated (as done by Hibernate for the modifications of this node).
+   */
+  private void invalidateQuerySpaces(final SessionFactory sessionFactory, final Class< ? > entityClass)
+  {
+    final SessionFactoryImplementor factory = (SessionFactoryImplementor) sessionFactory;
+    final UpdateTimestampsCache updateTimestampsCache = factory.getUpdateTimestampsCache();
+    if (updateTimestampsCache == null) {
+      // Query cache is disabled.
+      return;
+    }
+    try {
+      updateTimestampsCache.invalidate(factory.getEntityPersister(entityClass.getName()).getQuerySpaces());
+    } catch (final MappingException ex) {
+      log.warn("Class '" + entityClass.getName() + "' of cache change log entry isn't an entity, all query caches are evicted.");
+      sessionFactory.evictQueries();
+    }
+  }
+
+  private boolean containsChange(final Set<CacheChangeLogDO> changes, final CacheChangeLogDO entry)
+  {
+    for (final CacheChangeLogDO change : changes) {
+      if (change.getEntityClass().equals(entry.getEntityClass()) == true
+          && ObjectUtils.equals(change.getEntityId(), entry.getEntityId()) == true) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void cleanUp()
+  {
+    final long now = System.currentTimeMillis();
+    if (now - lastCleanUp < KEEP_ENTRIES_MILLIS) {
+      return;
+    }
+    lastCleanUp = now;
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        return getHibernateTemplate().execute(new HibernateCallback() {
+          public Object doInHibernate(final Session session) throws HibernateException, SQLException
+          {
+            final int deleted = session.createQuery("delete from CacheChangeLogDO c where c.created < ?")
+                .setTimestamp(0, new Date(now - KEEP_ENTRIES_MILLIS)).executeUpdate();
+            if (deleted > 0) {
+              log.debug("Old cache change log entries deleted: " + deleted);
+            }
+            return null;
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * The query isn't cached (the query cache doesn't know about inserts of other nodes).
+   * @return The entries of the other nodes created since the given date.
+   */
+  @SuppressWarnings("unchecked")
+  private List<CacheChangeLogDO> getEntries(final Date since)
+  {
+    return (List<CacheChangeLogDO>) getHibernateTemplate().execute(new HibernateCallback() {
+      public Object doInHibernate(final Session session) throws HibernateException, SQLException
+      {
+        return session.createQuery("from CacheChangeLogDO c where c.created >= ? and c.nodeId <> ? order by c.id").setCacheable(false)
+            .setTimestamp(0, since).setString(1, nodeId).list();
+      }
+    }, true);
+  }
+
+  /**
+   * @return The id of this node used in the change log.
+   */
+  public String getNodeId()
+  {
+    return nodeId;
+  }
+
+  /**
+   * @param pollIntervalMillis Default is 10 seconds.
+   */
+  public void setPollIntervalMillis(final long pollIntervalMillis)
+  {
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  public void setConfigXml(final ConfigXml configXml)
+  {
+    this.configXml = configXml;
+  }
+
+  /**
+   * For test cases: overrides the cluster mode of the configuration.
+   * @param clusterMode
+   */
+  void setClusterMode(final Boolean clusterMode)
+  {
+    this.clusterMode = clusterMode;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
+  {
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
+  }
+}
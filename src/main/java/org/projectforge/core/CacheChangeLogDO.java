@@ -0,0 +1,155 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Entry of the change log used for invalidating the caches of other ProjectForge instances sharing the same data base.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see CacheChangeLog
+ */
+@Entity
+@Table(name = "t_cache_change_log")
+public class CacheChangeLogDO
+{
+  private Integer id;
+
+  private Date created;
+
+  private String nodeId;
+
+  private String entityClass;
+
+  private Integer entityId;
+
+  private String cacheRegion;
+
+  @Id
+  @GeneratedValue
+  @Column(name = "pk")
+  public Integer getId()
+  {
+    return id;
+  }
+
+  public void setId(final Integer id)
+  {
+    this.id = id;
+  }
+
+  @Column(nullable = false)
+  public Date getCreated()
+  {
+    return created;
+  }
+
+  /**
+   * @param created
+   * @return this for chaining.
+   */
+  public CacheChangeLogDO setCreated(final Date created)
+  {
+    this.created = created;
+    return this;
+  }
+
+  /**
+   * Id of the ProjectForge instance which modified the entity.
+   */
+  @Column(name = "node_id", length = 40, nullable = false)
+  public String getNodeId()
+  {
+    return nodeId;
+  }
+
+  /**
+   * @param nodeId
+   * @return this for chaining.
+   */
+  public CacheChangeLogDO setNodeId(final String nodeId)
+  {
+    this.nodeId = nodeId;
+    return this;
+  }
+
+  @Column(name = "entity_class", length = 255, nullable = false)
+  public String getEntityClass()
+  {
+    return entityClass;
+  }
+
+  /**
+   * @param entityClass
+   * @return this for chaining.
+   */
+  public CacheChangeLogDO setEntityClass(final String entityClass)
+  {
+    this.entityClass = entityClass;
+    return this;
+  }
+
+  @Column(name = "entity_id")
+  public Integer getEntityId()
+  {
+    return entityId;
+  }
+
+  /**
+   * @param entityId
+   * @return this for chaining.
+   */
+  public CacheChangeLogDO setEntityId(final Integer entityId)
+  {
+    this.entityId = entityId;
+    return this;
+  }
+
+  /**
+   * The own query cache region of the dao (if any).
+   * @see BaseDao#useOwnCriteriaCacheRegion()
+   */
+  @Column(name = "cache_region", length = 255)
+  public String getCacheRegion()
+  {
+    return cacheRegion;
+  }
+
+  /**
+   * @param cacheRegion
+   * @return this for chaining.
+   */
+  public CacheChangeLogDO setCacheRegion(final String cacheRegion)
+  {
+    this.cacheRegion = cacheRegion;
+    return this;
+  }
+}
@@ -187,6 +187,8 @@ public class ConfigXml
 
   private boolean portletMode;
 
+  private boolean clusterMode;
+
   private AccountingConfig accountingConfig;
 
   private LdapConfig ldapConfig;
@@ -259,6 +261,7 @@ public class ConfigXml
     accountingConfig = new AccountingConfig();
     accountingConfig.reset();
     ldapConfig = new LdapConfig();
+    clusterMode = false;
   }
 
   protected ConfigXml()
@@ -1114,6 +1117,15 @@ public class ConfigXml
     return portletMode;
   }
 
+  /**
+   * If true, multiple ProjectForge instances (nodes) share one data base and the caches of the other nodes are invalidated via the
+   * {@link CacheChangeLog}. Default is false (single instance): no change log is written or polled.
+   */
+  public boolean isClusterMode()
+  {
+    return clusterMode;
+  }
+
   /**
    * @return the accountingConfig
    */
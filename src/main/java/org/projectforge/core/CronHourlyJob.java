@@ -55,23 +55,27 @@ public class CronHourlyJob extends AbstractCronJob
       log.fatal("Job not configured, aborting.");
       return;
     }
-    try {
-      final int numberOfFixedEntries = databaseUpdateDao.internalFixDBHistoryEntries();
-      if (numberOfFixedEntries > 0) {
-        log.info("Data-base-fix-history-entries job finished successfully: " + numberOfFixedEntries + " entries fixed.");
+    // The data base is shared by all nodes:
+    runOnOneNode(context, "hourlyJob.fixDBHistoryEntries", DateHelper.MILLIS_HOUR, new Runnable() {
+      public void run()
+      {
+        final int numberOfFixedEntries = databaseUpdateDao.internalFixDBHistoryEntries();
+        if (numberOfFixedEntries > 0) {
+          log.info("Data-base-fix-history-entries job finished successfully: " + numberOfFixedEntries + " entries fixed.");
+        }
       }
-    } catch (final Throwable ex) {
-      log.error("While executing fix job for data base history entries: " + ex.getMessage(), ex);
-    }
-    try {
-      log.info("Starting (re-)indexing of history entries of the last 24 hours.");
-      final Calendar cal = Calendar.getInstance(DateHelper.UTC);
-      cal.add(Calendar.DAY_OF_YEAR, -1);
-      final ReindexSettings settings = new ReindexSettings(cal.getTime(), null);
-      hibernateSearchReindexer.rebuildDatabaseSearchIndices(settings, HistoryEntry.class);
-    } catch (final Throwable ex) {
-      log.error("While executing fix job for data base history entries: " + ex.getMessage(), ex);
-    }
+    });
+    // The search index is local:
+    runOnEachNode(context, "hourlyJob.reindexHistoryEntries", new Runnable() {
+      public void run()
+      {
+        log.info("Starting (re-)indexing of history entries of the last 24 hours.");
+        final Calendar cal = Calendar.getInstance(DateHelper.UTC);
+        cal.add(Calendar.DAY_OF_YEAR, -1);
+        final ReindexSettings settings = new ReindexSettings(cal.getTime(), null);
+        hibernateSearchReindexer.rebuildDatabaseSearchIndices(settings, HistoryEntry.class);
+      }
+    });
     log.info("Hourly job job finished.");
   }
 
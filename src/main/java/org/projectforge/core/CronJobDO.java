@@ -0,0 +1,246 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Lock and last run of a cron job (or of a part of a cron job) shared by all ProjectForge instances (nodes) of the data base.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see CronJobDao
+ */
+@Entity
+@Table(name = "t_cron_job")
+public class CronJobDO
+{
+  public static final int MAX_MESSAGE_LENGTH = 1000;
+
+  private String name;
+
+  private String lockedBy;
+
+  private Date lockedUntil;
+
+  private Date lastFireTime;
+
+  private String lastNode;
+
+  private Date lastStart;
+
+  private Date lastEnd;
+
+  private Long lastDuration;
+
+  private CronJobStatus lastStatus;
+
+  private String lastMessage;
+
+  @Id
+  @Column(length = 100)
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * @param name
+   * @return this for chaining.
+   */
+  public CronJobDO setName(final String name)
+  {
+    this.name = name;
+    return this;
+  }
+
+  /**
+   * The node holding the lock.
+   */
+  @Column(name = "locked_by", length = 100)
+  public String getLockedBy()
+  {
+    return lockedBy;
+  }
+
+  /**
+   * @param lockedBy
+   * @return this for chaining.
+   */
+  public CronJobDO setLockedBy(final String lockedBy)
+  {
+    this.lockedBy = lockedBy;
+    return this;
+  }
+
+  /**
+   * End of the lease of the lock. After this time the job may be started by other nodes (e. g. if the locking node died).
+   */
+  @Column(name = "locked_until")
+  public Date getLockedUntil()
+  {
+    return lockedUntil;
+  }
+
+  /**
+   * @param lockedUntil
+   * @return this for chaining.
+   */
+  public CronJobDO setLockedUntil(final Date lockedUntil)
+  {
+    this.lockedUntil = lockedUntil;
+    return this;
+  }
+
+  /**
+   * The scheduled fire time of the last run. All nodes have the same scheduled fire times, so the job is run only once per fire time.
+   */
+  @Column(name = "last_fire_time")
+  public Date getLastFireTime()
+  {
+    return lastFireTime;
+  }
+
+  /**
+   * @param lastFireTime
+   * @return this for chaining.
+   */
+  public CronJobDO setLastFireTime(final Date lastFireTime)
+  {
+    this.lastFireTime = lastFireTime;
+    return this;
+  }
+
+  /**
+   * The node of the last run.
+   */
+  @Column(name = "last_node", length = 100)
+  public String getLastNode()
+  {
+    return lastNode;
+  }
+
+  /**
+   * @param lastNode
+   * @return this for chaining.
+   */
+  public CronJobDO setLastNode(final String lastNode)
+  {
+    this.lastNode = lastNode;
+    return this;
+  }
+
+  @Column(name = "last_start")
+  public Date getLastStart()
+  {
+    return lastStart;
+  }
+
+  /**
+   * @param lastStart
+   * @return this for chaining.
+   */
+  public CronJobDO setLastStart(final Date lastStart)
+  {
+    this.lastStart = lastStart;
+    return this;
+  }
+
+  @Column(name = "last_end")
+  public Date getLastEnd()
+  {
+    return lastEnd;
+  }
+
+  /**
+   * @param lastEnd
+   * @return this for chaining.
+   */
+  public CronJobDO setLastEnd(final Date lastEnd)
+  {
+    this.lastEnd = lastEnd;
+    return this;
+  }
+
+  /**
+   * Duration of the last run in milliseconds.
+   */
+  @Column(name = "last_duration")
+  public Long getLastDuration()
+  {
+    return lastDuration;
+  }
+
+  /**
+   * @param lastDuration
+   * @return this for chaining.
+   */
+  public CronJobDO setLastDuration(final Long lastDuration)
+  {
+    this.lastDuration = lastDuration;
+    return this;
+  }
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "last_status", length = 20)
+  public CronJobStatus getLastStatus()
+  {
+    return lastStatus;
+  }
+
+  /**
+   * @param lastStatus
+   * @return this for chaining.
+   */
+  public CronJobDO setLastStatus(final CronJobStatus lastStatus)
+  {
+    this.lastStatus = lastStatus;
+    return this;
+  }
+
+  /**
+   * The error message of the last failed run.
+   */
+  @Column(name = "last_message", length = MAX_MESSAGE_LENGTH)
+  public String getLastMessage()
+  {
+    return lastMessage;
+  }
+
+  /**
+   * @param lastMessage
+   * @return this for chaining.
+   */
+  public CronJobDO setLastMessage(final String lastMessage)
+  {
+    this.lastMessage = lastMessage;
+    return this;
+  }
+}
@@ -0,0 +1,212 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Per-job locks of the cron jobs for running ProjectForge on several nodes with one data base (table t_cron_job). Every node runs the
+ * Quartz scheduler, but a job (or part of a job) locked by this dao is executed by only one node per scheduled fire time: the first node
+ * getting the lock runs the job, the other nodes skip it. The lock is a lease: if the locking node dies, the lock expires after the given
+ * lease time.<br/>
+ * The start, end, duration and outcome of the last run is stored for every job and shown on the admin page.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see AbstractCronJob#runOnOneNode(org.quartz.JobExecutionContext, String, long, Runnable)
+ */
+public class CronJobDao extends HibernateDaoSupport
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(CronJobDao.class);
+
+  private final String nodeName = createNodeName();
+
+  private TransactionTemplate txTemplate;
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
+  /**
+   * Tries to lock the job for this node. The lock is got if the job isn't locked by any other node and the job wasn't already run for
+   * the given fire time.
+   * @param name The name of the job.
+   * @param fireTime The scheduled fire time of the Quartz trigger (the same for all nodes).
+   * @param leaseMillis Maximum run time of the job. After this time other nodes may start the job (e. g. if this node died).
+   * @return true if this node got the lock and has to run the job, otherwise false.
+   * @throws RuntimeException on any data base error other than a concurrent creation of the job entry by another node.
+   */
+  public boolean tryLock(final String name, final Date fireTime, final long leaseMillis)
+  {
+    try {
+      final Boolean result = (Boolean) requiresNewTxTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          final Session session = getSession();
+          final Date now = new Date();
+          CronJobDO job = (CronJobDO) session.get(CronJobDO.class, name, LockMode.UPGRADE);
+          if (job == null) {
+            job = new CronJobDO().setName(name);
+            session.save(job);
+          } else if (job.getLockedUntil() != null && job.getLockedUntil().after(now) == true) {
+            log.info("Cron job '" + name + "' is already running on node '" + job.getLockedBy() + "', skipping it.");
+            return false;
+          } else if (fireTime != null && job.getLastFireTime() != null && job.getLastFireTime().before(fireTime) == false) {
+            log.info("Cron job '" + name + "' was already run by node '" + job.getLastNode() + "', skipping it.");
+            return false;
+          }
+          job.setLockedBy(nodeName).setLockedUntil(new Date(now.getTime() + leaseMillis)).setLastFireTime(fireTime).setLastNode(nodeName)
+          .setLastStart(now).setLastEnd(null).setLastDuration(null).setLastStatus(CronJobStatus.RUNNING).setLastMessage(null);
+          session.flush();
+          return true;
+        }
+      });
+      return result == Boolean.TRUE;
+    } catch (final DataIntegrityViolationException ex) {
+      // Concurrent creation of the job entry by another node (unique constraint violation translated on commit).
+      log.info("Cron job '" + name + "' is locked by another node, skipping it: " + ex.getMessage());
+      return false;
+    } catch (final ConstraintViolationException ex) {
+      // Concurrent creation of the job entry by another node (unique constraint violation on flush).
+      log.info("Cron job '" + name + "' is locked by another node, skipping it: " + ex.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Releases the lock and stores the outcome of the run.
+   * @param name The name of the job.
+   * @param failure The exception if the job failed, otherwise null.
+   */
+  public void unlock(final String name, final Throwable failure)
+  {
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final CronJobDO job = (CronJobDO) getSession().get(CronJobDO.class, name, LockMode.UPGRADE);
+        if (job == null || nodeName.equals(job.getLockedBy()) == false) {
+          log.warn("Lock of cron job '" + name + "' was taken over by another node (lease expired?).");
+          return null;
+        }
+        job.setLockedBy(null).setLockedUntil(null);
+        setResult(job, failure);
+        getSession().flush();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Stores the outcome of a run of a job executed on every node (no lock). The name of this node is appended to the name of the job.
+   * @param name The name of the job.
+   * @param start The start of the run.
+   * @param failure The exception if the job failed, otherwise null.
+   */
+  public void storeLocalRun(final String name, final Date start, final Throwable failure)
+  {
+    final String jobName = StringUtils.abbreviate(name + "@" + nodeName, 100);
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        CronJobDO job = (CronJobDO) getSession().get(CronJobDO.class, jobName);
+        if (job == null) {
+          job = new CronJobDO().setName(jobName);
+          getSession().save(job);
+        }
+        job.setLastNode(nodeName).setLastStart(start);
+        setResult(job, failure);
+        getSession().flush();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return All cron jobs with their locks and last runs ordered by name (not cached).
+   */
+  @SuppressWarnings("unchecked")
+  public List<CronJobDO> getJobs()
+  {
+    return (List<CronJobDO>) txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        return getSession().createQuery("from CronJobDO j order by j.name").setCacheable(false).list();
+      }
+    });
+  }
+
+  /**
+   * @return The name of this node used for locking (host name and a random suffix for distinguishing several instances on one host).
+   */
+  public String getNodeName()
+  {
+    return nodeName;
+  }
+
+  private void setResult(final CronJobDO job, final Throwable failure)
+  {
+    final Date now = new Date();
+    job.setLastEnd(now);
+    if (job.getLastStart() != null) {
+      job.setLastDuration(now.getTime() - job.getLastStart().getTime());
+    }
+    if (failure == null) {
+      job.setLastStatus(CronJobStatus.OK).setLastMessage(null);
+    } else {
+      job.setLastStatus(CronJobStatus.FAILED).setLastMessage(
+          StringUtils.abbreviate(failure.getClass().getName() + ": " + failure.getMessage(), CronJobDO.MAX_MESSAGE_LENGTH));
+    }
+  }
+
+  private static String createNodeName()
+  {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (final Exception ex) {
+      host = "unknown";
+    }
+    return StringUtils.abbreviate(host, 80) + ":" + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
+  {
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
+  }
+}
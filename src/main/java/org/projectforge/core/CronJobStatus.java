@@ -21,31 +21,19 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
-package org.projectforge.web;
 
-import org.apache.wicket.injection.Injector;
-import org.apache.wicket.model.Model;
-import org.apache.wicket.spring.injection.annot.SpringBean;
-import org.projectforge.meb.MebDao;
+package org.projectforge.core;
 
-public class MenuNewCounterMeb extends Model<Integer>
+/**
+ * Outcome of the last run of a cron job, see {@link CronJobDO}.
+ * <ul>
+ * <li>RUNNING - The job is running (or the node died while running the job).</li>
+ * <li>OK - The job finished successfully.</li>
+ * <li>FAILED - The job terminated with an exception.</li>
+ * </ul>
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public enum CronJobStatus
 {
-  private static final long serialVersionUID = 6890654355525850696L;
-
-  @SpringBean(name = "mebDao")
-  private MebDao mebDao;
-
-  public void setMebDao(final MebDao mebDao)
-  {
-    this.mebDao = mebDao;
-  }
-
-  @Override
-  public Integer getObject()
-  {
-    if (mebDao == null) {
-      Injector.get().inject(this);
-    }
-    return mebDao.getRecentMEBEntries(null);
-  }
+  RUNNING, OK, FAILED;
 }
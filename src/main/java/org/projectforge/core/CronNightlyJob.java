@@ -23,6 +23,8 @@
 
 package org.projectforge.core;
 
+import org.projectforge.common.DateHelper;
+import org.projectforge.fibu.kost.MonthlyBalanceDao;
 import org.projectforge.meb.MebJobExecutor;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -40,23 +42,37 @@ public class CronNightlyJob extends AbstractCronJob
 
   private MebJobExecutor mebJobExecutor;
 
+  private MonthlyBalanceDao monthlyBalanceDao;
+
   public void execute(final JobExecutionContext context) throws JobExecutionException
   {
     log.info("Nightly job started.");
     if (hibernateSearchReindexer == null) {
       wire(context);
     }
-    try {
-      hibernateSearchReindexer.execute();
-    } catch (final Throwable ex) {
-      log.error("While executing hibernate search re-index job: " + ex.getMessage(), ex);
+    // The search index is local:
+    runOnEachNode(context, "nightlyJob.reindex", new Runnable() {
+      public void run()
+      {
+        hibernateSearchReindexer.execute();
+      }
+    });
+    // Corrects the monthly balances of months whose re-calculation failed (e. g. on a node shut down before the re-calculation):
+    if (monthlyBalanceDao != null) {
+      runOnOneNode(context, "nightlyJob.monthlyBalances", 2 * DateHelper.MILLIS_HOUR, new Runnable() {
+        public void run()
+        {
+          monthlyBalanceDao.rebuild();
+        }
+      });
     }
     if (mebJobExecutor != null) {
-      try {
-        mebJobExecutor.execute(true);
-      } catch (final Throwable ex) {
-        log.error("While executing MEB job: " + ex.getMessage(), ex);
-      }
+      runOnOneNode(context, "nightlyJob.meb", 6 * DateHelper.MILLIS_HOUR, new Runnable() {
+        public void run()
+        {
+          mebJobExecutor.execute(true);
+        }
+      });
     }
     log.info("Nightly job job finished.");
   }
@@ -66,5 +82,6 @@ public class CronNightlyJob extends AbstractCronJob
   {
     hibernateSearchReindexer = (HibernateSearchReindexer) wire(context, "hibernateSearchReindexer");
     mebJobExecutor = (MebJobExecutor) wire(context, "mebJobExecutor");
+    monthlyBalanceDao = (MonthlyBalanceDao) wire(context, "monthlyBalanceDao");
   }
 }
@@ -29,6 +29,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.projectforge.database.MyDatabaseUpdateDao;
 import org.projectforge.database.MyDatabaseUpdater;
+import org.projectforge.fibu.kost.MonthlyBalanceDao;
 import org.projectforge.meb.MebJobExecutor;
 import org.projectforge.meb.MebPollingJob;
 import org.quartz.CronTrigger;
@@ -56,6 +57,10 @@ public class CronSetup
 
   private MebJobExecutor mebJobExecutor;
 
+  private MonthlyBalanceDao monthlyBalanceDao;
+
+  private CronJobDao cronJobDao;
+
   /**
    * Should be called at the start-up time of the application.<br/>
    * Initializes and starts the scheduler.
@@ -85,7 +90,7 @@ public class CronSetup
           "hibernateSearchReindexer", hibernateSearchReindexer);
       // run every morning at 2:30 AM (UTC): 0 30 2 * * ?
       createCron("nightlyJob", CronNightlyJob.class, "0 30 2 * * ?", cfg.getCronExpressionNightlyJob(), "hibernateSearchReindexer",
-          hibernateSearchReindexer, "mebJobExecutor", mebJobExecutor);
+          hibernateSearchReindexer, "mebJobExecutor", mebJobExecutor, "monthlyBalanceDao", monthlyBalanceDao);
       if (mebJobExecutor != null) {
         // run every 10 minutes (5, 15, 25, ...): 0 5/10 * * * ?
         createCron("mebPollingJob", MebPollingJob.class, "0 5/10 * * * ?", cfg.getCronExpressionMebPollingJob(), "mebJobExecutor",
@@ -128,6 +133,10 @@ public class CronSetup
   {
     // Define job instance (group = "default")
     final JobDetail job = new JobDetail(name, "default", jobClass);
+    if (cronJobDao != null) {
+      // Used by the jobs for locking, see AbstractCronJob.runOnOneNode.
+      job.getJobDataMap().put("cronJobDao", cronJobDao);
+    }
     if (params != null) {
       Validate.isTrue(params.length % 2 == 0);
       final JobDataMap map = job.getJobDataMap();
@@ -173,4 +182,14 @@ public class CronSetup
   {
     this.mebJobExecutor = mebJobExecutor;
   }
+
+  public void setMonthlyBalanceDao(final MonthlyBalanceDao monthlyBalanceDao)
+  {
+    this.monthlyBalanceDao = monthlyBalanceDao;
+  }
+
+  public void setCronJobDao(final CronJobDao cronJobDao)
+  {
+    this.cronJobDao = cronJobDao;
+  }
 }
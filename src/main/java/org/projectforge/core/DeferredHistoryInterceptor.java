@@ -0,0 +1,296 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.CallbackException;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.EntityMode;
+import org.hibernate.Interceptor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.type.Type;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.orm.hibernate3.SessionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import de.micromata.hibernate.history.ExtendedHistorizable;
+import de.micromata.hibernate.history.Historizable;
+
+/**
+ * Wraps the history interceptor (de.micromata.hibernate.history.HistoryInterceptor) and moves the history of modified entities behind the
+ * transaction of the modifying user: The modified historizable properties of updated entities are stored as change records in the outbox
+ * of the {@link HistoryOutboxWriter} inside the transaction of the user (so they're committed or rolled back together with the
+ * modification) and the writer thread writes the history entries after the commit. If any modified property isn't supported by the outbox
+ * (or no transaction is active), the update is passed to the history interceptor, which writes the history synchronously as before.
+ * Inserts, deletions and collections are always passed to the history interceptor.<br/>
+ * Only the public interfaces of the history library are used (Interceptor, Historizable and HistoryAdapter).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class DeferredHistoryInterceptor implements Interceptor, BeanFactoryAware, Serializable
+{
+  private static final long serialVersionUID = -3962528451786095142L;
+
+  private Interceptor delegate;
+
+  private transient BeanFactory beanFactory;
+
+  private String historyOutboxWriterBeanName;
+
+  private transient volatile HistoryOutboxWriter historyOutboxWriter;
+
+  /**
+   * The change records collected while flushing, stored in the outbox after the flush (see {@link #postFlush(Iterator)}).
+   */
+  private final transient TransactionResource<List<HistoryOutboxDO>> pendingEntries = new TransactionResource<List<HistoryOutboxDO>>() {
+    @Override
+    protected List<HistoryOutboxDO> create()
+    {
+      return new ArrayList<HistoryOutboxDO>();
+    }
+  };
+
+  public boolean onFlushDirty(final Object entity, final Serializable id, final Object[] currentState, final Object[] previousState,
+      final String[] propertyNames, final Type[] types) throws CallbackException
+  {
+    final List<HistoryOutboxDO> entries = createEntries(entity, id, currentState, previousState, propertyNames, types);
+    if (entries == null || entries.isEmpty() == true) {
+      return delegate.onFlushDirty(entity, id, currentState, previousState, propertyNames, types);
+    }
+    pendingEntries.get().addAll(entries);
+    // The state isn't modified:
+    return false;
+  }
+
+  public void postFlush(@SuppressWarnings("rawtypes") final Iterator entities) throws CallbackException
+  {
+    final List<HistoryOutboxDO> entries = pendingEntries.getIfExists();
+    if (entries != null && entries.isEmpty() == false) {
+      final List<HistoryOutboxDO> entriesToStore = new ArrayList<HistoryOutboxDO>(entries);
+      entries.clear();
+      store(entriesToStore);
+    }
+    delegate.postFlush(entities);
+  }
+
+  /**
+   * @return The change records of the modified historizable properties or null if the modification should be passed to the history
+   *         interceptor (no transaction, not historizable or any modified property isn't supported by the outbox).
+   */
+  private List<HistoryOutboxDO> createEntries(final Object entity, final Serializable id, final Object[] currentState,
+      final Object[] previousState, final String[] propertyNames, final Type[] types)
+  {
+    if (entity instanceof Historizable == false || previousState == null || id instanceof Integer == false
+        || getCurrentSession() == null) {
+      return null;
+    }
+    final HistoryOutboxWriter writer = getHistoryOutboxWriter();
+    final PFUserDO user = PFUserContext.getUser();
+    final String userPk = user != null ? user.getId().toString() : null;
+    final List<HistoryOutboxDO> entries = new ArrayList<HistoryOutboxDO>();
+    for (int i = 0; i < propertyNames.length; i++) {
+      if (types[i].isCollectionType() == true || isHistorizable(entity, propertyNames[i]) == false
+          || types[i].isEqual(previousState[i], currentState[i]) == true) {
+        // Collections are historized by the history interceptor (onCollectionUpdate).
+        continue;
+      }
+      if (types[i].isComponentType() == true) {
+        return null;
+      }
+      final HistoryOutboxDO entry = writer.createEntry(entity, (Integer) id, userPk, propertyNames[i], types[i].getReturnedClass(),
+          previousState[i], currentState[i]);
+      if (entry == null) {
+        return null;
+      }
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  private boolean isHistorizable(final Object entity, final String property)
+  {
+    if (entity instanceof ExtendedHistorizable == false) {
+      return true;
+    }
+    final Set<String> historizableAttributes = ((ExtendedHistorizable) entity).getHistorizableAttributes();
+    if (historizableAttributes != null && historizableAttributes.contains(property) == false) {
+      return false;
+    }
+    final Set<String> nonHistorizableAttributes = ((ExtendedHistorizable) entity).getNonHistorizableAttributes();
+    return nonHistorizableAttributes == null || nonHistorizableAttributes.contains(property) == false;
+  }
+
+  /**
+   * The flushing session mustn't be used for storing entities, so a temporary session on the connection (and therefore in the transaction)
+   * of the flushing session is used.
+   */
+  @SuppressWarnings("deprecation")
+  private void store(final List<HistoryOutboxDO> entries)
+  {
+    final Session session = getCurrentSession();
+    final Session tempSession = session.getSessionFactory().openSession(session.connection(), EmptyInterceptor.INSTANCE);
+    try {
+      getHistoryOutboxWriter().store(tempSession, entries);
+    } finally {
+      tempSession.close();
+    }
+  }
+
+  /**
+   * @return The session of the current transaction or null if no transaction is active.
+   */
+  private Session getCurrentSession()
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+      return null;
+    }
+    final SessionFactory sessionFactory = getHistoryOutboxWriter().getSessionFactory();
+    final SessionHolder sessionHolder = (SessionHolder) TransactionSynchronizationManager.getResource(sessionFactory);
+    return sessionHolder != null ? sessionHolder.getSession() : null;
+  }
+
+  private HistoryOutboxWriter getHistoryOutboxWriter()
+  {
+    if (historyOutboxWriter == null) {
+      // Looked up lazily: the writer depends on the session factory using this interceptor.
+      historyOutboxWriter = (HistoryOutboxWriter) beanFactory.getBean(historyOutboxWriterBeanName);
+    }
+    return historyOutboxWriter;
+  }
+
+  public boolean onLoad(final Object entity, final Serializable id, final Object[] state, final String[] propertyNames,
+      final Type[] types) throws CallbackException
+  {
+    return delegate.onLoad(entity, id, state, propertyNames, types);
+  }
+
+  public boolean onSave(final Object entity, final Serializable id, final Object[] state, final String[] propertyNames,
+      final Type[] types) throws CallbackException
+  {
+    return delegate.onSave(entity, id, state, propertyNames, types);
+  }
+
+  public void onDelete(final Object entity, final Serializable id, final Object[] state, final String[] propertyNames,
+      final Type[] types) throws CallbackException
+  {
+    delegate.onDelete(entity, id, state, propertyNames, types);
+  }
+
+  public void onCollectionRecreate(final Object collection, final Serializable key) throws CallbackException
+  {
+    delegate.onCollectionRecreate(collection, key);
+  }
+
+  public void onCollectionRemove(final Object collection, final Serializable key) throws CallbackException
+  {
+    delegate.onCollectionRemove(collection, key);
+  }
+
+  public void onCollectionUpdate(final Object collection, final Serializable key) throws CallbackException
+  {
+    delegate.onCollectionUpdate(collection, key);
+  }
+
+  public void preFlush(@SuppressWarnings("rawtypes") final Iterator entities) throws CallbackException
+  {
+    delegate.preFlush(entities);
+  }
+
+  public Boolean isTransient(final Object entity)
+  {
+    return delegate.isTransient(entity);
+  }
+
+  public int[] findDirty(final Object entity, final Serializable id, final Object[] currentState, final Object[] previousState,
+      final String[] propertyNames, final Type[] types)
+  {
+    return delegate.findDirty(entity, id, currentState, previousState, propertyNames, types);
+  }
+
+  public Object instantiate(final String entityName, final EntityMode entityMode, final Serializable id) throws CallbackException
+  {
+    return delegate.instantiate(entityName, entityMode, id);
+  }
+
+  public String getEntityName(final Object object) throws CallbackException
+  {
+    return delegate.getEntityName(object);
+  }
+
+  public Object getEntity(final String entityName, final Serializable id) throws CallbackException
+  {
+    return delegate.getEntity(entityName, id);
+  }
+
+  public void afterTransactionBegin(final Transaction tx)
+  {
+    delegate.afterTransactionBegin(tx);
+  }
+
+  public void beforeTransactionCompletion(final Transaction tx)
+  {
+    delegate.beforeTransactionCompletion(tx);
+  }
+
+  public void afterTransactionCompletion(final Transaction tx)
+  {
+    delegate.afterTransactionCompletion(tx);
+  }
+
+  public String onPrepareStatement(final String sql)
+  {
+    return delegate.onPrepareStatement(sql);
+  }
+
+  /**
+   * @param delegate The history interceptor.
+   */
+  public void setDelegate(final Interceptor delegate)
+  {
+    this.delegate = delegate;
+  }
+
+  public void setBeanFactory(final BeanFactory beanFactory)
+  {
+    this.beanFactory = beanFactory;
+  }
+
+  /**
+   * @param historyOutboxWriterBeanName The writer storing the change records.
+   */
+  public void setHistoryOutboxWriterBeanName(final String historyOutboxWriterBeanName)
+  {
+    this.historyOutboxWriterBeanName = historyOutboxWriterBeanName;
+  }
+}
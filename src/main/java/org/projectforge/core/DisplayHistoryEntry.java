@@ -66,6 +66,8 @@ public class DisplayHistoryEntry implements Serializable
 
   private final Timestamp timestamp;
 
+  private Serializable historyEntryId;
+
   public DisplayHistoryEntry(final UserGroupCache userCache, final HistoryEntry entry)
   {
     this.timestamp = entry.getTimestamp();
@@ -237,6 +239,20 @@ public class DisplayHistoryEntry implements Serializable
     return timestamp;
   }
 
+  /**
+   * @return The id of the underlying history entry (only given for entries fetched page-wise).
+   * @see BaseDao#getDisplayHistoryPage(ExtendedBaseDO, DisplayHistoryPage, int)
+   */
+  public Serializable getHistoryEntryId()
+  {
+    return historyEntryId;
+  }
+
+  public void setHistoryEntryId(final Serializable historyEntryId)
+  {
+    this.historyEntryId = historyEntryId;
+  }
+
   /**
    * Returns string containing all fields (except the password, via ReflectionToStringBuilder).
    * @return
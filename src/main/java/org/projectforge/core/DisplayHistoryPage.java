@@ -0,0 +1,90 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * One page of the history of an object in flat format. The pages are delimited by history entries (not by display entries, every history
+ * entry results in one display entry per modified property): the timestamp and id of the last history entry of a page are the keyset of
+ * the next page.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#getDisplayHistoryPage(ExtendedBaseDO, DisplayHistoryPage, int)
+ */
+public class DisplayHistoryPage implements Serializable
+{
+  private static final long serialVersionUID = 6003581283604545128L;
+
+  private final List<DisplayHistoryEntry> entries;
+
+  private final Timestamp lastTimestamp;
+
+  private final Serializable lastHistoryEntryId;
+
+  private final boolean moreEntries;
+
+  public DisplayHistoryPage(final List<DisplayHistoryEntry> entries, final Timestamp lastTimestamp, final Serializable lastHistoryEntryId,
+      final boolean moreEntries)
+  {
+    this.entries = entries;
+    this.lastTimestamp = lastTimestamp;
+    this.lastHistoryEntryId = lastHistoryEntryId;
+    this.moreEntries = moreEntries;
+  }
+
+  /**
+   * @return The display entries of all history entries of this page.
+   */
+  public List<DisplayHistoryEntry> getEntries()
+  {
+    return entries;
+  }
+
+  /**
+   * @return The timestamp of the last history entry of this page or null if the page is empty.
+   */
+  public Timestamp getLastTimestamp()
+  {
+    return lastTimestamp;
+  }
+
+  /**
+   * @return The id of the last history entry of this page or null if the page is empty.
+   */
+  public Serializable getLastHistoryEntryId()
+  {
+    return lastHistoryEntryId;
+  }
+
+  /**
+   * @return true if further history entries exist after this page.
+   */
+  public boolean isMoreEntries()
+  {
+    return moreEntries;
+  }
+}
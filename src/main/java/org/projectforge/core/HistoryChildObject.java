@@ -0,0 +1,58 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+/**
+ * A child object (e. g. a position of an order) whose history entries are displayed in the history of its parent object.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#getHistoryChildObjects(ExtendedBaseDO)
+ */
+public class HistoryChildObject
+{
+  private final String prefix;
+
+  private final BaseDO< ? > object;
+
+  /**
+   * @param prefix The property names of the history entries of the child object are prepended by this prefix (e. g. "#1:netSum"). The
+   *          prefix is only used for display and needn't be unique.
+   * @param object
+   */
+  public HistoryChildObject(final String prefix, final BaseDO< ? > object)
+  {
+    this.prefix = prefix;
+    this.object = object;
+  }
+
+  public String getPrefix()
+  {
+    return prefix;
+  }
+
+  public BaseDO< ? > getObject()
+  {
+    return object;
+  }
+}
@@ -0,0 +1,235 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Change record of a history entry which isn't yet written to the history tables. The entries are inserted inside the transaction of the
+ * modifying user and are written and deleted afterwards in order of their primary keys by the {@link HistoryOutboxWriter}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+@Entity
+@Table(name = "t_history_outbox")
+public class HistoryOutboxDO
+{
+  public static final int MAX_VALUE_LENGTH = 10000;
+
+  private Integer id;
+
+  private Date created;
+
+  private String entityClass;
+
+  private Integer entityId;
+
+  private String userPk;
+
+  private String property;
+
+  private String valueClass;
+
+  private String elementClass;
+
+  private String oldValue;
+
+  private String newValue;
+
+  @Id
+  @GeneratedValue
+  @Column(name = "pk")
+  public Integer getId()
+  {
+    return id;
+  }
+
+  public void setId(final Integer id)
+  {
+    this.id = id;
+  }
+
+  @Column(nullable = false)
+  public Date getCreated()
+  {
+    return created;
+  }
+
+  /**
+   * @param created
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setCreated(final Date created)
+  {
+    this.created = created;
+    return this;
+  }
+
+  /**
+   * Class name of the historized entity.
+   */
+  @Column(name = "entity_class", length = 255, nullable = false)
+  public String getEntityClass()
+  {
+    return entityClass;
+  }
+
+  /**
+   * @param entityClass
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setEntityClass(final String entityClass)
+  {
+    this.entityClass = entityClass;
+    return this;
+  }
+
+  @Column(name = "entity_id", nullable = false)
+  public Integer getEntityId()
+  {
+    return entityId;
+  }
+
+  /**
+   * @param entityId
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setEntityId(final Integer entityId)
+  {
+    this.entityId = entityId;
+    return this;
+  }
+
+  /**
+   * Principal (id of the user) who modified the entity.
+   */
+  @Column(name = "user_pk", length = 255)
+  public String getUserPk()
+  {
+    return userPk;
+  }
+
+  /**
+   * @param userPk
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setUserPk(final String userPk)
+  {
+    this.userPk = userPk;
+    return this;
+  }
+
+  @Column(length = 255, nullable = false)
+  public String getProperty()
+  {
+    return property;
+  }
+
+  /**
+   * @param property
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setProperty(final String property)
+  {
+    this.property = property;
+    return this;
+  }
+
+  /**
+   * Class name of the value class (given to the history adapter).
+   */
+  @Column(name = "value_class", length = 255, nullable = false)
+  public String getValueClass()
+  {
+    return valueClass;
+  }
+
+  /**
+   * @param valueClass
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setValueClass(final String valueClass)
+  {
+    this.valueClass = valueClass;
+    return this;
+  }
+
+  /**
+   * Class name of the collection elements if the values are collections of data base objects (java.lang.Object if both collections are
+   * empty). The values contain the comma separated ids of the elements.
+   */
+  @Column(name = "element_class", length = 255)
+  public String getElementClass()
+  {
+    return elementClass;
+  }
+
+  /**
+   * @param elementClass
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setElementClass(final String elementClass)
+  {
+    this.elementClass = elementClass;
+    return this;
+  }
+
+  @Column(name = "old_value", length = MAX_VALUE_LENGTH)
+  public String getOldValue()
+  {
+    return oldValue;
+  }
+
+  /**
+   * @param oldValue
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setOldValue(final String oldValue)
+  {
+    this.oldValue = oldValue;
+    return this;
+  }
+
+  @Column(name = "new_value", length = MAX_VALUE_LENGTH)
+  public String getNewValue()
+  {
+    return newValue;
+  }
+
+  /**
+   * @param newValue
+   * @return this for chaining.
+   */
+  public HistoryOutboxDO setNewValue(final String newValue)
+  {
+    this.newValue = newValue;
+    return this;
+  }
+}
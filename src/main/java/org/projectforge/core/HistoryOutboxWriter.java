@@ -0,0 +1,616 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.orm.hibernate3.HibernateCallback;
+import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.micromata.hibernate.history.HistoryAdapter;
+import de.micromata.hibernate.history.HistoryEntry;
+import de.micromata.hibernate.history.HistoryUserRetriever;
+
+/**
+ * Writes the history entries created by {@link BaseDao#createHistoryEntry(Object, Number, String, Class, Object, Object)} and the
+ * modifications of historizable entities recorded by the {@link DeferredHistoryInterceptor} behind the transaction of the modifying user.
+ * The change records are stored as {@link HistoryOutboxDO} in the transaction of the user (so they're committed or rolled back together
+ * with the modification). After the commit the writer thread is woken up and writes them asynchronously in order of their primary keys.
+ * History read by the dao is written before (see {@link #writePendingEntries(Class, Integer)}). The history entries get the time stamp of
+ * the modification. The history entries and the deletion of the outbox entries are done in the same transaction, so every change
+ * record is written exactly once. The outbox entries are selected for update, so multiple ProjectForge instances sharing one data base
+ * don't write an entry twice.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class HistoryOutboxWriter extends HibernateDaoSupport
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(HistoryOutboxWriter.class);
+
+  /**
+   * Maximum number of outbox entries written in one transaction.
+   */
+  public static final int BATCH_SIZE = 100;
+
+  /**
+   * The outbox is checked at least every minute (e. g. for entries left by an aborted writer or another instance).
+   */
+  private static final long POLL_INTERVAL_MILLIS = 60 * 1000;
+
+  /**
+   * Classes of single values (besides strings, data base objects, enums and time zones) supported by the outbox.
+   */
+  private static final Set<Class< ? >> VALUE_CLASSES = new HashSet<Class< ? >>(Arrays.asList(new Class< ? >[] { Integer.class,
+      Long.class, Short.class, Byte.class, Double.class, Float.class, BigDecimal.class, BigInteger.class, Boolean.class,
+      Date.class, java.sql.Date.class, Timestamp.class }));
+
+  private HistoryAdapter historyAdapter;
+
+  private TransactionTemplate txTemplate;
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
+  /**
+   * The ids of the outbox entries stored by the current transaction. The writer thread is woken up after commit.
+   */
+  private final TransactionResource<List<Integer>> transactionEntryIds = new TransactionResource<List<Integer>>() {
+    @Override
+    protected List<Integer> create()
+    {
+      return new ArrayList<Integer>();
+    }
+
+    @Override
+    protected void afterCommit(final List<Integer> ids)
+    {
+      if (ids.isEmpty() == false) {
+        wakeUp();
+      }
+    }
+  };
+
+  private final Object writeLock = new Object();
+
+  private Thread writerThread;
+
+  private volatile boolean wakeUpRequested;
+
+  private volatile boolean shutdown;
+
+  /**
+   * Stores the change record in the outbox (inside the current transaction). The change records of the current transaction are written
+   * after the commit.
+   * @param entity
+   * @param id
+   * @param userPk The principal of the modifying user.
+   * @param property
+   * @param valueClass
+   * @param oldValue
+   * @param newValue
+   * @return true if the change record was stored in the outbox, false if the values aren't supported by the outbox (the history entry
+   *         should be written synchronously by the caller).
+   */
+  public boolean add(final Object entity, final Number id, final String userPk, final String property, final Class< ? > valueClass,
+      final Object oldValue, final Object newValue)
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+      return false;
+    }
+    final HistoryOutboxDO entry = createEntry(entity, id, userPk, property, valueClass, oldValue, newValue);
+    if (entry == null) {
+      return false;
+    }
+    getHibernateTemplate().save(entry);
+    transactionEntryIds.get().add(entry.getId());
+    return true;
+  }
+
+  /**
+   * Stores the given change records in the outbox using the given session (inside the current transaction), e. g. a temporary session on
+   * the connection of the flushing session of the {@link DeferredHistoryInterceptor}. The session is flushed.
+   * @param session
+   * @param entries The entries created by {@link #createEntry(Object, Number, String, String, Class, Object, Object)}.
+   */
+  public void store(final Session session, final List<HistoryOutboxDO> entries)
+  {
+    for (final HistoryOutboxDO entry : entries) {
+      session.save(entry);
+    }
+    session.flush();
+    final List<Integer> ids = transactionEntryIds.get();
+    if (ids == null) {
+      // No transaction synchronization, e. g. a session of a test case or the console.
+      wakeUp();
+      return;
+    }
+    for (final HistoryOutboxDO entry : entries) {
+      ids.add(entry.getId());
+    }
+  }
+
+  /**
+   * @return The change record (not yet stored) or null if the values aren't supported by the outbox.
+   * @see #add(Object, Number, String, String, Class, Object, Object)
+   */
+  public HistoryOutboxDO createEntry(final Object entity, final Number id, final String userPk, final String property,
+      final Class< ? > valueClass, final Object oldValue, final Object newValue)
+  {
+    if (id instanceof Integer == false) {
+      return null;
+    }
+    final boolean collection = Collection.class.isAssignableFrom(valueClass);
+    final Class< ? > elementClass = getCommonElementClass(getElementClass(oldValue, collection), getElementClass(newValue, collection));
+    if (elementClass == null) {
+      return null;
+    }
+    final String oldString = asString(oldValue);
+    final String newString = asString(newValue);
+    if (StringUtils.length(oldString) > HistoryOutboxDO.MAX_VALUE_LENGTH
+        || StringUtils.length(newString) > HistoryOutboxDO.MAX_VALUE_LENGTH) {
+      return null;
+    }
+    final HistoryOutboxDO entry = new HistoryOutboxDO().setCreated(new Date())
+        .setEntityClass(HibernateProxyHelper.getClassWithoutInitializingProxy(entity).getName()).setEntityId((Integer) id)
+        .setUserPk(userPk).setProperty(property).setValueClass(valueClass.getName());
+    if (elementClass != Void.class && elementClass != String.class) {
+      entry.setElementClass(elementClass.getName());
+    }
+    return entry.setOldValue(oldString).setNewValue(newString);
+  }
+
+  /**
+   * Writes the change records stored in the outbox by the current transaction until now (inside the current transaction), e. g. for
+   * reading the history inside the modifying transaction. Does nothing outside of a transaction.
+   */
+  public void writeTransactionEntries()
+  {
+    final List<Integer> ids = transactionEntryIds.getIfExists();
+    if (ids == null || ids.isEmpty() == true) {
+      return;
+    }
+    final List<Integer> idsToWrite = new ArrayList<Integer>(ids);
+    ids.clear();
+    writeEntries(idsToWrite);
+  }
+
+  /**
+   * Writes all pending outbox entries in the current thread. Is called by the writer thread and may be called e. g. by tests for writing
+   * the history synchronously.
+   * @return Number of written history entries.
+   */
+  public int writePendingEntries()
+  {
+    int counter = 0;
+    synchronized (writeLock) {
+      while (true) {
+        final Integer written = (Integer) txTemplate.execute(new TransactionCallback() {
+          public Object doInTransaction(final TransactionStatus status)
+          {
+            return writeBatch();
+          }
+        });
+        counter += written;
+        if (written < BATCH_SIZE) {
+          break;
+        }
+      }
+    }
+    if (counter > 0) {
+      log.debug("Written history entries from outbox: " + counter);
+    }
+    return counter;
+  }
+
+  /**
+   * Writes the pending outbox entries of the given entity in a new transaction, e. g. before displaying its history. Entries locked by
+   * other transactions (e. g. by the writer thread) are skipped, they're written anyway. The entries of the current transaction (not yet
+   * committed) are written by {@link #writeTransactionEntries()}.
+   * @param entityClass
+   * @param entityId
+   */
+  public void writePendingEntries(final Class< ? > entityClass, final Integer entityId)
+  {
+    try {
+      requiresNewTxTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          getHibernateTemplate().execute(new HibernateCallback() {
+            @SuppressWarnings("unchecked")
+            public Object doInHibernate(final Session session) throws HibernateException, SQLException
+            {
+              final List<HistoryOutboxDO> entries = session
+                  .createQuery("from HistoryOutboxDO o where o.entityClass = :entityClass and o.entityId = :entityId order by o.id")
+                  .setString("entityClass", entityClass.getName()).setInteger("entityId", entityId).setCacheable(false)
+                  .setLockMode("o", LockMode.UPGRADE_NOWAIT).list();
+              write(session, entries);
+              return null;
+            }
+          }, true);
+          return null;
+        }
+      });
+    } catch (final DataAccessException ex) {
+      log.info("Pending history entries of " + entityClass.getName() + "#" + entityId + " are locked (written by another transaction): "
+          + ex.getMessage());
+    }
+  }
+
+  /**
+   * Wakes up the writer thread (the thread will be started if not yet running).
+   */
+  public void wakeUp()
+  {
+    final Thread thread = startWriterThreadIfNotRunning();
+    if (thread == null) {
+      return;
+    }
+    synchronized (thread) {
+      wakeUpRequested = true;
+      thread.notify();
+    }
+  }
+
+  /**
+   * Stops the writer thread. Pending outbox entries remain in the data base and will be written after the next start.
+   */
+  public void shutdown()
+  {
+    final Thread thread;
+    synchronized (this) {
+      shutdown = true;
+      thread = writerThread;
+    }
+    if (thread != null) {
+      synchronized (thread) {
+        thread.notify();
+      }
+    }
+  }
+
+  /**
+   * The writer thread checks the outbox periodically for entries left behind.
+   * @return The writer thread or null if shut down.
+   */
+  private synchronized Thread startWriterThreadIfNotRunning()
+  {
+    if (shutdown == true) {
+      return null;
+    }
+    if (writerThread == null) {
+      startWriterThread();
+    }
+    return writerThread;
+  }
+
+  /**
+   * Writes the given outbox entries inside the current transaction (already written entries are skipped).
+   */
+  private void writeEntries(final List<Integer> ids)
+  {
+    getHibernateTemplate().execute(new HibernateCallback() {
+      @SuppressWarnings("unchecked")
+      public Object doInHibernate(final Session session) throws HibernateException, SQLException
+      {
+        final List<HistoryOutboxDO> entries = session.createQuery("from HistoryOutboxDO o where o.id in (:ids) order by o.id")
+            .setParameterList("ids", ids).setCacheable(false).setLockMode("o", LockMode.UPGRADE).list();
+        write(session, entries);
+        return null;
+      }
+    }, true);
+  }
+
+  private Integer writeBatch()
+  {
+    return (Integer) getHibernateTemplate().execute(new HibernateCallback() {
+      @SuppressWarnings("unchecked")
+      public Object doInHibernate(final Session session) throws HibernateException, SQLException
+      {
+        // Native session and uncached query: the query cache of the template would return already deleted entries.
+        final List<HistoryOutboxDO> entries = session.createQuery("from HistoryOutboxDO o order by o.id").setCacheable(false)
+            .setLockMode("o", LockMode.UPGRADE).setMaxResults(BATCH_SIZE).list();
+        write(session, entries);
+        return entries.size();
+      }
+    }, true);
+  }
+
+  private void write(final Session session, final List<HistoryOutboxDO> entries)
+  {
+    for (final HistoryOutboxDO entry : entries) {
+      write(session, entry);
+      session.delete(entry);
+    }
+    session.flush();
+  }
+
+  private void write(final Session session, final HistoryOutboxDO entry)
+  {
+    final Class< ? > entityClass = forName(entry.getEntityClass());
+    final Object entity = session.get(entityClass, entry.getEntityId());
+    if (entity == null) {
+      log.warn("Entity " + entry.getEntityClass() + "#" + entry.getEntityId() + " doesn't exist anymore, history entry of property '"
+          + entry.getProperty() + "' is skipped.");
+      return;
+    }
+    final Class< ? > valueClass = forName(entry.getValueClass());
+    final boolean collection = Collection.class.isAssignableFrom(valueClass);
+    final Class< ? > elementClass = entry.getElementClass() != null ? forName(entry.getElementClass()) : null;
+    final String userPk = entry.getUserPk();
+    final Integer lastHistoryEntryId = (Integer) session.createQuery("select max(h.id) from " + HistoryEntry.class.getName() + " h")
+        .setCacheable(false).uniqueResult();
+    historyAdapter.createHistoryEntry(entity, entry.getEntityId(), new HistoryUserRetriever() {
+      public String getPrincipal()
+      {
+        return userPk;
+      }
+    }, entry.getProperty(), valueClass, asValue(session, collection, elementClass, entry.getOldValue()),
+        asValue(session, collection, elementClass, entry.getNewValue()));
+    session.flush();
+    // The history adapter stamps the entry with the current time, but the history should show the time of the modification:
+    final Query query = session.createQuery("update " + HistoryEntry.class.getName()
+        + " h set h.timestamp = :timestamp where h.id > :lastId and h.entityId = :entityId"
+        + (userPk != null ? " and h.userName = :userName" : " and h.userName is null"))
+        .setTimestamp("timestamp", entry.getCreated()).setInteger("lastId", lastHistoryEntryId != null ? lastHistoryEntryId : 0)
+        .setInteger("entityId", entry.getEntityId());
+    if (userPk != null) {
+      query.setString("userName", userPk);
+    }
+    query.executeUpdate();
+  }
+
+  private void startWriterThread()
+  {
+    writerThread = new Thread("HistoryOutboxWriter") {
+      @Override
+      public void run()
+      {
+        while (true) {
+          try {
+            writePendingEntries();
+          } catch (final Throwable ex) {
+            log.error("Error while writing history entries from outbox (will be retried later): " + ex.getMessage(), ex);
+          }
+          synchronized (this) {
+            if (shutdown == true) {
+              break;
+            }
+            if (wakeUpRequested == false) {
+              try {
+                wait(POLL_INTERVAL_MILLIS);
+              } catch (final InterruptedException ex) {
+                break;
+              }
+            }
+            wakeUpRequested = false;
+            if (shutdown == true) {
+              break;
+            }
+          }
+        }
+        log.info("History outbox writer stopped.");
+      }
+    };
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * @param value
+   * @param collection True if the values of the property are collections.
+   * @return Void.class if the value is null, String.class for strings, the class of the elements if the value is a collection of data base
+   *         objects (Object.class for empty collections), the class of the value for other supported values (see
+   *         {@link #getValueClass(Object)}) and null if the value isn't supported.
+   */
+  private Class< ? > getElementClass(final Object value, final boolean collection)
+  {
+    if (value == null) {
+      return Void.class;
+    }
+    if (value instanceof String) {
+      return String.class;
+    }
+    if (collection == false) {
+      return getValueClass(value);
+    }
+    if (value instanceof Collection< ? > == false) {
+      return null;
+    }
+    Class< ? > elementClass = Object.class;
+    for (final Object element : (Collection< ? >) value) {
+      if (element instanceof BaseDO< ? > == false || ((BaseDO< ? >) element).getId() instanceof Integer == false) {
+        return null;
+      }
+      final Class< ? > clazz = Hibernate.getClass(element);
+      if (elementClass != Object.class && elementClass != clazz) {
+        return null;
+      }
+      elementClass = clazz;
+    }
+    return elementClass;
+  }
+
+  /**
+   * @return The class of the single value: the entity class of data base objects with integer ids, the enum class of enums, TimeZone.class
+   *         for time zones, the class of numbers, booleans and dates or null if the value isn't supported.
+   */
+  private Class< ? > getValueClass(final Object value)
+  {
+    if (value instanceof BaseDO< ? >) {
+      return ((BaseDO< ? >) value).getId() instanceof Integer ? HibernateProxyHelper.getClassWithoutInitializingProxy(value) : null;
+    }
+    if (value instanceof Enum< ? >) {
+      return ((Enum< ? >) value).getDeclaringClass();
+    }
+    if (value instanceof TimeZone) {
+      return TimeZone.class;
+    }
+    return VALUE_CLASSES.contains(value.getClass()) == true ? value.getClass() : null;
+  }
+
+  /**
+   * @return The element class for both values (see {@link #getElementClass(Object)}) or null if the values aren't compatible.
+   */
+  private Class< ? > getCommonElementClass(final Class< ? > oldElementClass, final Class< ? > newElementClass)
+  {
+    if (oldElementClass == null || newElementClass == null) {
+      return null;
+    }
+    if (oldElementClass == Void.class || oldElementClass == newElementClass) {
+      return newElementClass;
+    }
+    if (newElementClass == Void.class) {
+      return oldElementClass;
+    }
+    if (oldElementClass == String.class || newElementClass == String.class) {
+      // String and collection or single value.
+      return null;
+    }
+    if (oldElementClass == Object.class) {
+      // Empty collection:
+      return newElementClass;
+    }
+    if (newElementClass == Object.class) {
+      return oldElementClass;
+    }
+    return null;
+  }
+
+  private String asString(final Object value)
+  {
+    if (value == null || value instanceof String) {
+      return (String) value;
+    }
+    if (value instanceof BaseDO< ? >) {
+      return String.valueOf(((BaseDO< ? >) value).getId());
+    }
+    if (value instanceof Enum< ? >) {
+      return ((Enum< ? >) value).name();
+    }
+    if (value instanceof Date) {
+      return String.valueOf(((Date) value).getTime());
+    }
+    if (value instanceof TimeZone) {
+      return ((TimeZone) value).getID();
+    }
+    if (value instanceof Collection< ? > == false) {
+      return value.toString();
+    }
+    final StringBuffer buf = new StringBuffer();
+    boolean first = true;
+    for (final Object element : (Collection< ? >) value) {
+      if (first == true) {
+        first = false;
+      } else {
+        buf.append(",");
+      }
+      buf.append(((BaseDO< ? >) element).getId());
+    }
+    return buf.toString();
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes"})
+  private Object asValue(final Session session, final boolean collection, final Class< ? > elementClass, final String value)
+  {
+    if (elementClass == null || value == null) {
+      return value;
+    }
+    if (collection == false) {
+      if (BaseDO.class.isAssignableFrom(elementClass) == true) {
+        return session.get(elementClass, Integer.valueOf(value));
+      }
+      if (elementClass.isEnum() == true) {
+        return Enum.valueOf((Class) elementClass, value);
+      }
+      if (elementClass == TimeZone.class) {
+        return TimeZone.getTimeZone(value);
+      }
+      try {
+        if (Date.class.isAssignableFrom(elementClass) == true) {
+          return elementClass.getConstructor(long.class).newInstance(Long.valueOf(value));
+        }
+        // Numbers and booleans:
+        return elementClass.getConstructor(String.class).newInstance(value);
+      } catch (final Exception ex) {
+        throw new RuntimeException("Can't restore value '" + value + "' of class '" + elementClass.getName() + "' of history outbox entry: "
+            + ex.getMessage(), ex);
+      }
+    }
+    final List<Integer> ids = new ArrayList<Integer>();
+    for (final String id : StringUtils.split(value, ',')) {
+      ids.add(Integer.valueOf(id));
+    }
+    if (ids.isEmpty() == true) {
+      return new ArrayList<Object>();
+    }
+    return session.createCriteria(elementClass).add(Restrictions.in("id", ids)).list();
+  }
+
+  private Class< ? > forName(final String className)
+  {
+    try {
+      return Class.forName(className);
+    } catch (final ClassNotFoundException ex) {
+      throw new RuntimeException("Class '" + className + "' of history outbox entry not found: " + ex.getMessage(), ex);
+    }
+  }
+
+  public void setHistoryAdapter(final HistoryAdapter historyAdapter)
+  {
+    this.historyAdapter = historyAdapter;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
+  {
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
+  }
+}
@@ -0,0 +1,150 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.projectforge.common.DateHelper;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+
+/**
+ * Runs the {@link MassUpdateJob}s started by {@link BaseDao#startMassUpdate(java.util.List, ExtendedBaseDO)} on a small pool of daemon
+ * threads. Further jobs are queued, so the number of parallel mass updates (and data base connections used by them) is limited. The jobs
+ * are available for getting the progress until {@link #MAX_AGE_MILLIS} after they're finished.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class MassUpdateExecutor
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(MassUpdateExecutor.class);
+
+  /**
+   * Finished jobs are removed after one day.
+   */
+  public static final long MAX_AGE_MILLIS = DateHelper.MILLIS_DAY;
+
+  private final Map<String, MassUpdateJob< ? >> jobs = new ConcurrentHashMap<String, MassUpdateJob< ? >>();
+
+  private int maxThreads = 2;
+
+  private ExecutorService executor;
+
+  private boolean shutdown;
+
+  /**
+   * Queues the given job.
+   * @param job
+   */
+  public <O extends ExtendedBaseDO< ? extends Serializable>> void start(final MassUpdateJob<O> job)
+  {
+    removeExpiredJobs();
+    final ExecutorService executorService = getExecutor();
+    jobs.put(job.getId(), job);
+    executorService.execute(job);
+    log.info("Mass update queued: " + job);
+  }
+
+  /**
+   * @param id
+   * @return The job with the given id if started by the context user, otherwise null.
+   */
+  public MassUpdateJob< ? > getJob(final String id)
+  {
+    final MassUpdateJob< ? > job = jobs.get(id);
+    if (job == null || ObjectUtils.equals(PFUserContext.getUserId(), getUserId(job.getUser())) == false) {
+      return null;
+    }
+    return job;
+  }
+
+  private Integer getUserId(final PFUserDO user)
+  {
+    return user != null ? user.getId() : null;
+  }
+
+  /**
+   * Removes the finished jobs older than {@link #MAX_AGE_MILLIS}.
+   */
+  void removeExpiredJobs()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<MassUpdateJob< ? >> it = jobs.values().iterator();
+    while (it.hasNext() == true) {
+      final MassUpdateJob< ? > job = it.next();
+      if (job.isFinished() == true && job.getFinishedAt().getTime() + MAX_AGE_MILLIS < now) {
+        it.remove();
+      }
+    }
+  }
+
+  private synchronized ExecutorService getExecutor()
+  {
+    if (shutdown == true) {
+      throw new IllegalStateException("MassUpdateExecutor is already shut down.");
+    }
+    if (executor == null) {
+      final AtomicInteger threadCounter = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(maxThreads, new ThreadFactory() {
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "MassUpdate-" + threadCounter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Stops the threads. Queued jobs are discarded, running jobs are interrupted after the current chunk (the chunks already processed are
+   * committed).
+   */
+  public synchronized void shutdown()
+  {
+    shutdown = true;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * The number of mass updates running in parallel (default is 2).
+   * @param maxThreads
+   */
+  public synchronized void setMaxThreads(final int maxThreads)
+  {
+    this.maxThreads = maxThreads;
+  }
+}
@@ -0,0 +1,194 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+
+/**
+ * Runs a mass update of {@link BaseDao#massUpdate(List, ExtendedBaseDO)} in background (see {@link MassUpdateExecutor}) and provides the
+ * progress.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see BaseDao#startMassUpdate(List, ExtendedBaseDO)
+ */
+public class MassUpdateJob<O extends ExtendedBaseDO< ? extends Serializable>> implements Runnable
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(MassUpdateJob.class);
+
+  private final String id = UUID.randomUUID().toString();
+
+  private final BaseDao<O> dao;
+
+  private final List<O> list;
+
+  private final O master;
+
+  private final PFUserDO user;
+
+  private final Date started = new Date();
+
+  private volatile int processed, updated, failed;
+
+  private volatile boolean finished;
+
+  private volatile Date finishedAt;
+
+  MassUpdateJob(final BaseDao<O> dao, final List<O> list, final O master, final PFUserDO user)
+  {
+    this.dao = dao;
+    this.list = list;
+    this.master = master;
+    this.user = user;
+  }
+
+  /**
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run()
+  {
+    PFUserContext.setUser(user);
+    try {
+      dao.massUpdate(list, master, this);
+    } catch (final Exception ex) {
+      log.error("Exception while running mass update: " + ex.getMessage(), ex);
+    } finally {
+      finishedAt = new Date();
+      finished = true;
+      PFUserContext.setUser(null);
+      log.info("Mass update finished: " + this);
+    }
+  }
+
+  void entryProcessed(final boolean update, final boolean success)
+  {
+    ++processed;
+    if (update == true) {
+      if (success == true) {
+        ++updated;
+      } else {
+        ++failed;
+      }
+    }
+  }
+
+  /**
+   * @return The id for getting this job from the {@link MassUpdateExecutor}.
+   */
+  public String getId()
+  {
+    return id;
+  }
+
+  /**
+   * @return The user who started this job.
+   */
+  public PFUserDO getUser()
+  {
+    return user;
+  }
+
+  /**
+   * @return The number of entries to process.
+   */
+  public int getTotal()
+  {
+    return list.size();
+  }
+
+  /**
+   * @return The number of already processed entries.
+   */
+  public int getProcessed()
+  {
+    return processed;
+  }
+
+  /**
+   * @return The number of successfully updated entries.
+   */
+  public int getUpdated()
+  {
+    return updated;
+  }
+
+  /**
+   * @return The number of entries which couldn't be updated due to errors.
+   */
+  public int getFailed()
+  {
+    return failed;
+  }
+
+  /**
+   * @return The progress in percent (0-100).
+   */
+  public int getProgress()
+  {
+    if (list.isEmpty() == true) {
+      return 100;
+    }
+    return 100 * processed / list.size();
+  }
+
+  public boolean isFinished()
+  {
+    return finished;
+  }
+
+  public Date getStarted()
+  {
+    return started;
+  }
+
+  /**
+   * @return The time the job was finished or null if not yet finished.
+   */
+  public Date getFinishedAt()
+  {
+    return finishedAt;
+  }
+
+  @Override
+  public String toString()
+  {
+    return dao.getDataObjectType().getSimpleName()
+        + ": processed="
+        + processed
+        + "/"
+        + list.size()
+        + ", updated="
+        + updated
+        + ", failed="
+        + failed
+        + ", finished="
+        + finished;
+  }
+}
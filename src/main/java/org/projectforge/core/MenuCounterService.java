@@ -0,0 +1,347 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Computes the counters displayed as badges beside the menu entries (e. g. the number of open to-do entries, recent MEB entries or closed
+ * but not invoiced orders) in a background thread. The menu only reads the last computed values, so no page rendering has to wait for a
+ * count query. A counter is recomputed
+ * <ul>
+ * <li>after {@link #setExpired(String)} is called (after completion of the current transaction, e. g. by the daos after any
+ * modification),</li>
+ * <li>after modifications of the registered entities by other ProjectForge instances (see {@link CacheChangeLog}) and</li>
+ * <li>every {@link #REFRESH_INTERVAL_MILLIS}.</li>
+ * </ul>
+ * User specific counters are only computed for users who have displayed the menu within the last {@link #USER_IDLE_MILLIS}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class MenuCounterService implements CacheChangeListener
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(MenuCounterService.class);
+
+  /**
+   * Counters are recomputed at least every five minutes (for modifications not done via the daos).
+   */
+  public static final long REFRESH_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+  /**
+   * User specific counters of users without any menu access within the last 30 minutes are removed.
+   */
+  public static final long USER_IDLE_MILLIS = 30 * 60 * 1000;
+
+  /**
+   * A counter registered by a dao.
+   */
+  public interface Counter
+  {
+    /**
+     * @return true if the counter is computed for each user, false for one global counter.
+     */
+    public boolean isUserSpecific();
+
+    /**
+     * Is called by the counter thread, there is no logged-in user.
+     * @param userId The user for user specific counters, otherwise null.
+     * @return The current value of the counter.
+     */
+    public int count(Integer userId);
+  }
+
+  private final Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+  private final Map<String, Class< ? >[]> entityClassesMap = new ConcurrentHashMap<String, Class< ? >[]>();
+
+  private final Map<CounterKey, Integer> values = new ConcurrentHashMap<CounterKey, Integer>();
+
+  /**
+   * Time of the last menu access in millis of every user.
+   */
+  private final Map<Integer, Long> activeUsers = new ConcurrentHashMap<Integer, Long>();
+
+  private final Set<CounterKey> pendingKeys = new LinkedHashSet<CounterKey>();
+
+  private final Object lock = new Object();
+
+  private Thread counterThread;
+
+  private volatile boolean wakeUpRequested;
+
+  private volatile boolean shutdown;
+
+  /**
+   * @param id The id of the counter used by the menu entries.
+   * @param counter
+   * @param entityClasses Modifications of these entities by other ProjectForge instances expire the counter.
+   */
+  public void register(final String id, final Counter counter, final Class< ? >... entityClasses)
+  {
+    counters.put(id, counter);
+    entityClassesMap.put(id, entityClasses);
+  }
+
+  /**
+   * Doesn't block: If the counter isn't yet computed for the given user, the computation is requested and null is returned.
+   * @param id
+   * @param userId The user for user specific counters (ignored for global counters).
+   * @return The last computed value or null if not yet available or no counter with the given id is registered.
+   */
+  public Integer getCounter(final String id, final Integer userId)
+  {
+    final Counter counter = counters.get(id);
+    if (counter == null) {
+      return null;
+    }
+    final CounterKey key;
+    if (counter.isUserSpecific() == true) {
+      if (userId == null) {
+        return null;
+      }
+      activeUsers.put(userId, System.currentTimeMillis());
+      key = new CounterKey(id, userId);
+    } else {
+      key = new CounterKey(id, null);
+    }
+    final Integer value = values.get(key);
+    if (value == null) {
+      request(key);
+    }
+    return value;
+  }
+
+  /**
+   * Requests the recomputation of all values of the given counter after completion of the current transaction (if any). The old values are
+   * displayed until the new ones are computed.
+   * @param id
+   */
+  public void setExpired(final String id)
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          expire(id);
+        }
+      });
+    } else {
+      expire(id);
+    }
+  }
+
+  /**
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    for (final Map.Entry<String, Class< ? >[]> entry : entityClassesMap.entrySet()) {
+      if (Arrays.asList(entry.getValue()).contains(entityClass) == true) {
+        expire(entry.getKey());
+      }
+    }
+  }
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * Starts the counter thread.
+   */
+  public synchronized void start()
+  {
+    if (counterThread != null) {
+      return;
+    }
+    shutdown = false;
+    counterThread = new Thread("MenuCounterService") {
+      @Override
+      public void run()
+      {
+        log.info("Menu counter service started.");
+        long lastRefresh = System.currentTimeMillis();
+        while (shutdown == false) {
+          try {
+            if (System.currentTimeMillis() - lastRefresh >= REFRESH_INTERVAL_MILLIS) {
+              lastRefresh = System.currentTimeMillis();
+              expireAll();
+            }
+            computePendingCounters();
+          } catch (final Throwable ex) {
+            log.error("Error while computing the menu counters: " + ex.getMessage(), ex);
+          }
+          synchronized (lock) {
+            if (wakeUpRequested == false && shutdown == false) {
+              try {
+                lock.wait(Math.max(1, REFRESH_INTERVAL_MILLIS - (System.currentTimeMillis() - lastRefresh)));
+              } catch (final InterruptedException ex) {
+                break;
+              }
+            }
+            wakeUpRequested = false;
+          }
+        }
+        log.info("Menu counter service stopped.");
+      }
+    };
+    counterThread.setDaemon(true);
+    counterThread.start();
+  }
+
+  public synchronized void shutdown()
+  {
+    shutdown = true;
+    wakeUp();
+    counterThread = null;
+  }
+
+  /**
+   * Computes all requested or expired counter values in the current thread. Is called by the counter thread and may be called e. g. by
+   * tests for computing the counters synchronously.
+   * @return Number of computed values.
+   */
+  public int computePendingCounters()
+  {
+    int counter = 0;
+    final long now = System.currentTimeMillis();
+    for (;;) {
+      final CounterKey key;
+      synchronized (pendingKeys) {
+        final Iterator<CounterKey> it = pendingKeys.iterator();
+        if (it.hasNext() == false) {
+          break;
+        }
+        key = it.next();
+        it.remove();
+      }
+      if (key.userId != null) {
+        final Long lastAccess = activeUsers.get(key.userId);
+        if (lastAccess == null || now - lastAccess > USER_IDLE_MILLIS) {
+          values.remove(key);
+          continue;
+        }
+      }
+      final Counter menuCounter = counters.get(key.id);
+      if (menuCounter == null) {
+        continue;
+      }
+      try {
+        values.put(key, menuCounter.count(key.userId));
+        ++counter;
+      } catch (final Throwable ex) {
+        log.error("Error while computing menu counter '" + key.id + "': " + ex.getMessage(), ex);
+      }
+    }
+    return counter;
+  }
+
+  private void expire(final String id)
+  {
+    for (final CounterKey key : values.keySet()) {
+      if (key.id.equals(id) == true) {
+        request(key);
+      }
+    }
+  }
+
+  /**
+   * Removes the idle users and requests the recomputation of all other values.
+   */
+  private void expireAll()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<Map.Entry<Integer, Long>> it = activeUsers.entrySet().iterator();
+    while (it.hasNext() == true) {
+      if (now - it.next().getValue() > USER_IDLE_MILLIS) {
+        it.remove();
+      }
+    }
+    for (final CounterKey key : values.keySet()) {
+      if (key.userId != null && activeUsers.containsKey(key.userId) == false) {
+        values.remove(key);
+      } else {
+        request(key);
+      }
+    }
+  }
+
+  private void request(final CounterKey key)
+  {
+    synchronized (pendingKeys) {
+      if (pendingKeys.add(key) == false) {
+        return; // Already requested.
+      }
+    }
+    wakeUp();
+  }
+
+  private void wakeUp()
+  {
+    synchronized (lock) {
+      wakeUpRequested = true;
+      lock.notifyAll();
+    }
+  }
+
+  private static class CounterKey
+  {
+    private final String id;
+
+    private final Integer userId;
+
+    private CounterKey(final String id, final Integer userId)
+    {
+      this.id = id;
+      this.userId = userId;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (obj instanceof CounterKey == false) {
+        return false;
+      }
+      final CounterKey other = (CounterKey) obj;
+      return id.equals(other.id) == true && ObjectUtils.equals(userId, other.userId) == true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * id.hashCode() + (userId != null ? userId.hashCode() : 0);
+    }
+  }
+}
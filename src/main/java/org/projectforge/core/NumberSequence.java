@@ -0,0 +1,116 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.io.Serializable;
+
+/**
+ * Definition of a number sequence (e. g. for invoice or order numbers) served by the {@link NumberSequenceDao}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class NumberSequence implements Serializable
+{
+  private static final long serialVersionUID = -1402591346146457522L;
+
+  private final String name;
+
+  private final Class< ? > entityClass;
+
+  private final String property;
+
+  private final int startNumber;
+
+  private boolean gapless = true;
+
+  private int blockSize = 1;
+
+  /**
+   * @param name Unique name of the sequence (primary key of the counter table).
+   * @param entityClass The entity using the numbers. If the sequence doesn't yet exist in the data base, the sequence will be initialized
+   *          with the highest number used by the entities.
+   * @param property The number property of the entity.
+   * @param startNumber Number of the first entry.
+   */
+  public NumberSequence(final String name, final Class< ? > entityClass, final String property, final int startNumber)
+  {
+    this.name = name;
+    this.entityClass = entityClass;
+    this.property = property;
+    this.startNumber = startNumber;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public Class< ? > getEntityClass()
+  {
+    return entityClass;
+  }
+
+  public String getProperty()
+  {
+    return property;
+  }
+
+  public int getStartNumber()
+  {
+    return startNumber;
+  }
+
+  /**
+   * If true (default) every number is assigned inside the transaction of the saving user under a lock of the counter row, so no number
+   * will be lost. Otherwise the numbers are reserved in blocks per ProjectForge instance and numbers may be lost (e. g. if an instance
+   * crashes).
+   */
+  public boolean isGapless()
+  {
+    return gapless;
+  }
+
+  /**
+   * Sets gapless to false.
+   * @param blockSize Number of numbers reserved by each ProjectForge instance at once.
+   * @return this for chaining.
+   */
+  public NumberSequence setBlockSize(final int blockSize)
+  {
+    this.gapless = false;
+    this.blockSize = blockSize;
+    return this;
+  }
+
+  public int getBlockSize()
+  {
+    return blockSize;
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
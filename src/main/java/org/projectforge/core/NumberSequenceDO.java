@@ -0,0 +1,79 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Counter of a {@link NumberSequence}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+@Entity
+@Table(name = "t_number_sequence")
+public class NumberSequenceDO
+{
+  private String name;
+
+  private Integer nextNumber;
+
+  @Id
+  @Column(length = 100)
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * @param name
+   * @return this for chaining.
+   */
+  public NumberSequenceDO setName(final String name)
+  {
+    this.name = name;
+    return this;
+  }
+
+  /**
+   * The next number not yet assigned or reserved by any ProjectForge instance.
+   */
+  @Column(name = "next_number", nullable = false)
+  public Integer getNextNumber()
+  {
+    return nextNumber;
+  }
+
+  /**
+   * @param nextNumber
+   * @return this for chaining.
+   */
+  public NumberSequenceDO setNextNumber(final Integer nextNumber)
+  {
+    this.nextNumber = nextNumber;
+    return this;
+  }
+}
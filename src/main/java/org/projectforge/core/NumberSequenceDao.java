@@ -0,0 +1,356 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Transactional number sequences backed by the counter table t_number_sequence (replaces select max(nummer) for every new order or
+ * invoice).
+ * <ul>
+ * <li>Gapless sequences (invoices): The counter row is locked and incremented inside the transaction of the saving user. If the transaction
+ * is rolled back, the counter is rolled back too.</li>
+ * <li>Other sequences (orders): Every ProjectForge instance reserves a block of numbers in an own transaction and assigns the numbers from
+ * memory. Numbers of rolled back transactions are stored in the table t_number_sequence_free and are re-used first by all instances (also
+ * after a restart). The unused numbers of the block are given back to the counter on shutdown, or stored as free numbers if another
+ * instance reserved numbers in the mean time. Numbers already used by existing entities are skipped.</li>
+ * </ul>
+ * A missing counter row is created in an own transaction. If another instance creates it concurrently, the unique constraint violation is
+ * ignored and the row of the other instance is used.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class NumberSequenceDao extends HibernateDaoSupport
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(NumberSequenceDao.class);
+
+  private final Map<String, Block> blocks = new HashMap<String, Block>();
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
+  /**
+   * Numbers reserved by this instance for a non-gapless sequence.
+   */
+  private static class Block
+  {
+    private final NumberSequence sequence;
+
+    private int next;
+
+    private int end;
+
+    private Block(final NumberSequence sequence)
+    {
+      this.sequence = sequence;
+    }
+
+    private boolean isEmpty()
+    {
+      return next >= end;
+    }
+  }
+
+  /**
+   * Gets the next number without reserving it (e. g. for displaying the number of a new invoice or order in the edit form).
+   * @param sequence
+   * @return The number which will be accepted by {@link #reserveNumber(NumberSequence, Integer)} if no other user reserves it before.
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public Integer getNextNumber(final NumberSequence sequence)
+  {
+    if (sequence.isGapless() == false) {
+      final Integer freeNumber = getFirstFreeNumber(getSession(), sequence);
+      if (freeNumber != null) {
+        return freeNumber;
+      }
+      synchronized (blocks) {
+        final Block block = getBlock(sequence);
+        if (block.isEmpty() == false) {
+          return block.next;
+        }
+      }
+    }
+    final NumberSequenceDO counter = (NumberSequenceDO) getSession().get(NumberSequenceDO.class, sequence.getName());
+    if (counter != null) {
+      return counter.getNextNumber();
+    }
+    return getInitialNumber(getSession(), sequence);
+  }
+
+  /**
+   * Reserves the given number inside the current transaction. If the transaction is rolled back, the number will be available again.
+   * @param sequence
+   * @param number
+   * @return true if the number was the next number of the sequence and is reserved now, otherwise false (nothing is reserved).
+   */
+  @Transactional(propagation = Propagation.REQUIRED)
+  public boolean reserveNumber(final NumberSequence sequence, final Integer number)
+  {
+    if (number == null) {
+      return false;
+    }
+    if (sequence.isGapless() == true) {
+      final NumberSequenceDO counter = getCounterForUpdate(getSession(), sequence);
+      if (number.equals(counter.getNextNumber()) == false) {
+        return false;
+      }
+      counter.setNextNumber(number + 1);
+      getSession().flush();
+      return true;
+    }
+    if (isNumberUsed(getSession(), sequence, number) == true) {
+      // Number is already used by an existing entity (e. g. modified number of an entity), skip it:
+      removeFreeNumber(getSession(), sequence, number);
+      synchronized (blocks) {
+        final Block block = getBlock(sequence);
+        if (number.intValue() == block.next && block.isEmpty() == false) {
+          block.next++;
+        }
+      }
+      return false;
+    }
+    if (removeFreeNumber(getSession(), sequence, number) == true) {
+      // If the current transaction is rolled back, the free number is restored by the data base.
+      return true;
+    }
+    synchronized (blocks) {
+      final Block block = getBlock(sequence);
+      if (block.isEmpty() == true) {
+        reserveBlock(block);
+      }
+      if (number.intValue() != block.next) {
+        return false;
+      }
+      block.next++;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+            storeFreeNumber(sequence, number);
+          }
+        }
+      });
+    }
+    return true;
+  }
+
+  /**
+   * Should be called if an existing entity gets a new number. Ensures that the sequence doesn't assign this number to new entities.
+   * @param sequence
+   * @param number The number used by an existing entity.
+   */
+  @Transactional(propagation = Propagation.REQUIRED)
+  public void numberUsed(final NumberSequence sequence, final Integer number)
+  {
+    if (number == null) {
+      return;
+    }
+    final NumberSequenceDO counter = getCounterForUpdate(getSession(), sequence);
+    if (counter.getNextNumber() <= number) {
+      counter.setNextNumber(number + 1);
+      getSession().flush();
+    }
+  }
+
+  /**
+   * Gives the unused numbers of the reserved blocks back to the counter if no other instance reserved numbers after this instance,
+   * otherwise the unused numbers are stored as free numbers. Is called on shutdown.
+   */
+  public void releaseBlocks()
+  {
+    synchronized (blocks) {
+      for (final Block block : blocks.values()) {
+        if (block.isEmpty() == true) {
+          continue;
+        }
+        try {
+          requiresNewTxTemplate.execute(new TransactionCallback() {
+            public Object doInTransaction(final TransactionStatus status)
+            {
+              final NumberSequenceDO counter = getCounterForUpdate(getSession(), block.sequence);
+              if (counter.getNextNumber() == block.end) {
+                counter.setNextNumber(block.next);
+                log.info("Unused numbers [" + block.next + ", " + block.end + ") of sequence '" + block.sequence + "' released.");
+              } else {
+                for (int number = block.next; number < block.end; number++) {
+                  getSession().save(new NumberSequenceFreeNumberDO().setSequenceName(block.sequence.getName()).setNumber(number));
+                }
+                log.info("Unused numbers [" + block.next + ", " + block.end + ") of sequence '" + block.sequence
+                    + "' stored as free numbers, because further numbers were reserved by another instance.");
+              }
+              getSession().flush();
+              return null;
+            }
+          });
+        } catch (final Exception ex) {
+          log.error("Can't release unused numbers of sequence '" + block.sequence + "': " + ex.getMessage(), ex);
+        }
+        block.next = block.end;
+      }
+    }
+  }
+
+  private Block getBlock(final NumberSequence sequence)
+  {
+    Block block = blocks.get(sequence.getName());
+    if (block == null) {
+      block = new Block(sequence);
+      blocks.put(sequence.getName(), block);
+    }
+    return block;
+  }
+
+  /**
+   * Reserves the next block in an own transaction, so the block is reserved even if the current transaction is rolled back.
+   */
+  private void reserveBlock(final Block block)
+  {
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final NumberSequenceDO counter = getCounterForUpdate(getSession(), block.sequence);
+        block.next = counter.getNextNumber();
+        block.end = block.next + block.sequence.getBlockSize();
+        counter.setNextNumber(block.end);
+        return null;
+      }
+    });
+    log.debug("Numbers [" + block.next + ", " + block.end + ") of sequence '" + block.sequence + "' reserved.");
+  }
+
+  /**
+   * Stores the number of a rolled back transaction in an own transaction, so it will be re-used by any instance.
+   */
+  private void storeFreeNumber(final NumberSequence sequence, final Integer number)
+  {
+    try {
+      requiresNewTxTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          getSession().save(new NumberSequenceFreeNumberDO().setSequenceName(sequence.getName()).setNumber(number));
+          getSession().flush();
+          return null;
+        }
+      });
+    } catch (final RuntimeException ex) {
+      log.error("Can't store free number " + number + " of sequence '" + sequence + "' (number is lost): " + ex.getMessage(), ex);
+    }
+  }
+
+  private Integer getFirstFreeNumber(final Session session, final NumberSequence sequence)
+  {
+    return (Integer) session
+        .createQuery("select min(f.number) from NumberSequenceFreeNumberDO f where f.sequenceName = ?")
+        .setParameter(0, sequence.getName()).uniqueResult();
+  }
+
+  /**
+   * Deletes the free number inside the current transaction.
+   * @return true if the number was a free number.
+   */
+  private boolean removeFreeNumber(final Session session, final NumberSequence sequence, final Integer number)
+  {
+    return session.createQuery("delete from NumberSequenceFreeNumberDO f where f.sequenceName = ? and f.number = ?")
+        .setParameter(0, sequence.getName()).setParameter(1, number).executeUpdate() > 0;
+  }
+
+  private NumberSequenceDO getCounterForUpdate(final Session session, final NumberSequence sequence)
+  {
+    NumberSequenceDO counter = (NumberSequenceDO) session.get(NumberSequenceDO.class, sequence.getName(), LockMode.UPGRADE);
+    if (counter == null) {
+      createCounter(sequence);
+      counter = (NumberSequenceDO) session.get(NumberSequenceDO.class, sequence.getName(), LockMode.UPGRADE);
+    }
+    return counter;
+  }
+
+  /**
+   * Creates the missing counter row in an own transaction. A unique constraint violation means that the row was created concurrently by
+   * another thread or instance, so it's ignored.
+   */
+  private void createCounter(final NumberSequence sequence)
+  {
+    try {
+      requiresNewTxTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          final Session session = getSession();
+          if (session.get(NumberSequenceDO.class, sequence.getName()) != null) {
+            return null;
+          }
+          final NumberSequenceDO counter = new NumberSequenceDO().setName(sequence.getName()).setNextNumber(
+              getInitialNumber(session, sequence));
+          log.info("Creating number sequence '" + sequence + "' starting with " + counter.getNextNumber() + ".");
+          session.save(counter);
+          session.flush();
+          return null;
+        }
+      });
+    } catch (final DataIntegrityViolationException ex) {
+      log.info("Number sequence '" + sequence + "' was created concurrently: " + ex.getMessage());
+    } catch (final ConstraintViolationException ex) {
+      log.info("Number sequence '" + sequence + "' was created concurrently: " + ex.getMessage());
+    }
+  }
+
+  private boolean isNumberUsed(final Session session, final NumberSequence sequence, final Integer number)
+  {
+    final Number count = (Number) session
+        .createQuery("select count(*) from " + sequence.getEntityClass().getName() + " t where t." + sequence.getProperty() + " = ?")
+        .setParameter(0, number).uniqueResult();
+    return count != null && count.intValue() > 0;
+  }
+
+  private Integer getInitialNumber(final Session session, final NumberSequence sequence)
+  {
+    final Number max = (Number) session.createQuery(
+        "select max(t." + sequence.getProperty() + ") from " + sequence.getEntityClass().getName() + " t").uniqueResult();
+    if (max == null) {
+      return sequence.getStartNumber();
+    }
+    return max.intValue() + 1;
+  }
+
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
+  {
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
+  }
+}
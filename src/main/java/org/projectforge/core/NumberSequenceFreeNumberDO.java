@@ -0,0 +1,96 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Number of a non-gapless {@link NumberSequence} which was reserved by a ProjectForge instance but not used (rolled back transaction or
+ * unused rest of a block which couldn't be given back to the counter). These numbers are assigned first by every instance.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+@Entity
+@Table(name = "t_number_sequence_free", uniqueConstraints = { @UniqueConstraint(columnNames = { "sequence_name", "free_number"})})
+public class NumberSequenceFreeNumberDO
+{
+  private Integer id;
+
+  private String sequenceName;
+
+  private Integer number;
+
+  @Id
+  @GeneratedValue
+  @Column(name = "pk")
+  public Integer getId()
+  {
+    return id;
+  }
+
+  public void setId(final Integer id)
+  {
+    this.id = id;
+  }
+
+  /**
+   * The name of the {@link NumberSequence}.
+   */
+  @Column(name = "sequence_name", length = 100, nullable = false)
+  public String getSequenceName()
+  {
+    return sequenceName;
+  }
+
+  /**
+   * @param sequenceName
+   * @return this for chaining.
+   */
+  public NumberSequenceFreeNumberDO setSequenceName(final String sequenceName)
+  {
+    this.sequenceName = sequenceName;
+    return this;
+  }
+
+  @Column(name = "free_number", nullable = false)
+  public Integer getNumber()
+  {
+    return number;
+  }
+
+  /**
+   * @param number
+   * @return this for chaining.
+   */
+  public NumberSequenceFreeNumberDO setNumber(final Integer number)
+  {
+    this.number = number;
+    return this;
+  }
+}
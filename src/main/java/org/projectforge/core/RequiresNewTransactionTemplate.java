@@ -0,0 +1,74 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Executes callbacks in a new transaction independent of the caller's transaction (e. g. work done after the commit or reservations which
+ * should survive a rollback of the caller). One instance is shared by all daos (bean requiresNewTxTemplate). This isn't a
+ * {@link TransactionTemplate}, so the beans autowired by type still get the default template (bean txTemplate).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class RequiresNewTransactionTemplate
+{
+  private TransactionTemplate template;
+
+  private TransactionTemplate repeatableReadTemplate;
+
+  /**
+   * @param action
+   * @return The result of the callback.
+   * @see TransactionTemplate#execute(TransactionCallback)
+   */
+  public Object execute(final TransactionCallback action)
+  {
+    return template.execute(action);
+  }
+
+  /**
+   * Executes the callback in a new transaction with isolation level repeatable read (e. g. for imports checking the existing entries).
+   * @param action
+   * @return The result of the callback.
+   */
+  public Object executeRepeatableRead(final TransactionCallback action)
+  {
+    return repeatableReadTemplate.execute(action);
+  }
+
+  public void setTransactionManager(final PlatformTransactionManager transactionManager)
+  {
+    final TransactionTemplate newTemplate = new TransactionTemplate(transactionManager);
+    newTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    final TransactionTemplate newRepeatableReadTemplate = new TransactionTemplate(transactionManager);
+    newRepeatableReadTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    newRepeatableReadTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    this.template = newTemplate;
+    this.repeatableReadTemplate = newRepeatableReadTemplate;
+  }
+}
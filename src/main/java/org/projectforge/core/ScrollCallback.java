@@ -21,31 +21,22 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
-package org.projectforge.web;
 
-import org.apache.wicket.injection.Injector;
-import org.apache.wicket.model.Model;
-import org.apache.wicket.spring.injection.annot.SpringBean;
-import org.projectforge.fibu.AuftragDao;
+package org.projectforge.core;
 
-public class MenuNewCounterOrder extends Model<Integer>
-{
-  private static final long serialVersionUID = -2101644474960685808L;
-
-  @SpringBean(name = "auftragDao")
-  private AuftragDao auftragDao;
+import java.io.IOException;
 
-  @Override
-  public Integer getObject()
-  {
-    if (auftragDao == null) {
-      Injector.get().inject(this);
-    }
-    return auftragDao.getAbgeschlossenNichtFakturiertAnzahl();
-  }
-
-  public void setAuftragDao(final AuftragDao auftragDao)
-  {
-    this.auftragDao = auftragDao;
-  }
+/**
+ * Handles the entries of {@link BaseDao#scroll(BaseSearchFilter, ScrollCallback, org.hibernate.criterion.Order...)} one by one, e. g. for
+ * writing them directly to the output stream of an export.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public interface ScrollCallback<O>
+{
+  /**
+   * The entry is evicted from the session after this call, so don't hold any references to it.
+   * @param obj
+   * @throws IOException
+   */
+  public void handle(O obj) throws IOException;
 }
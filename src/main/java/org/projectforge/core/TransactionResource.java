@@ -0,0 +1,113 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A resource bound to the current transaction, e. g. the entries collected by a dao during the transaction and processed after the commit.
+ * The resource is created on first access and bound to the transaction until its completion. While the transaction is suspended (e. g. by
+ * a new transaction started after the commit), the resource is unbound, so the new transaction gets its own resource.<br/>
+ * Usage: Define an instance (anonymous subclass) as field and get the resource of the current transaction via {@link #get()}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public abstract class TransactionResource<T>
+{
+  /**
+   * @return The resource of the current transaction (created on first access) or null if no transaction synchronization is active.
+   */
+  @SuppressWarnings("unchecked")
+  public T get()
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == false) {
+      return null;
+    }
+    final T resource = (T) TransactionSynchronizationManager.getResource(this);
+    if (resource != null) {
+      return resource;
+    }
+    final T newResource = create();
+    TransactionSynchronizationManager.bindResource(this, newResource);
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit()
+      {
+        TransactionResource.this.afterCommit(newResource);
+      }
+
+      @Override
+      public void suspend()
+      {
+        TransactionSynchronizationManager.unbindResource(TransactionResource.this);
+      }
+
+      @Override
+      public void resume()
+      {
+        TransactionSynchronizationManager.bindResource(TransactionResource.this, newResource);
+      }
+
+      @Override
+      public void afterCompletion(final int status)
+      {
+        TransactionSynchronizationManager.unbindResourceIfPossible(TransactionResource.this);
+        TransactionResource.this.afterCompletion(newResource, status);
+      }
+    });
+    return newResource;
+  }
+
+  /**
+   * @return The resource of the current transaction or null if no resource was created by this transaction until now.
+   */
+  @SuppressWarnings("unchecked")
+  public T getIfExists()
+  {
+    return (T) TransactionSynchronizationManager.getResource(this);
+  }
+
+  /**
+   * Creates the resource on first access in a transaction.
+   */
+  protected abstract T create();
+
+  /**
+   * Called after the commit of the transaction (the resource is still bound). Does nothing at default.
+   * @param resource
+   */
+  protected void afterCommit(final T resource)
+  {
+  }
+
+  /**
+   * Called after commit or rollback (after the resource is unbound). Does nothing at default.
+   * @param resource
+   * @param status See {@link org.springframework.transaction.support.TransactionSynchronization#afterCompletion(int)}.
+   */
+  protected void afterCompletion(final T resource, final int status)
+  {
+  }
+}
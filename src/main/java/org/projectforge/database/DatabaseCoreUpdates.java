@@ -28,12 +28,18 @@ import java.util.List;
 
 import org.projectforge.address.AddressDO;
 import org.projectforge.continuousdb.DatabaseResultRow;
+import org.projectforge.continuousdb.SchemaGenerator;
 import org.projectforge.continuousdb.Table;
 import org.projectforge.continuousdb.TableAttribute;
 import org.projectforge.continuousdb.UpdateEntry;
 import org.projectforge.continuousdb.UpdateEntryImpl;
 import org.projectforge.continuousdb.UpdatePreCheckStatus;
 import org.projectforge.continuousdb.UpdateRunningStatus;
+import org.projectforge.core.CacheChangeLogDO;
+import org.projectforge.core.CronJobDO;
+import org.projectforge.core.HistoryOutboxDO;
+import org.projectforge.core.NumberSequenceDO;
+import org.projectforge.core.NumberSequenceFreeNumberDO;
 import org.projectforge.fibu.AuftragDO;
 import org.projectforge.fibu.AuftragsPositionDO;
 import org.projectforge.fibu.EingangsrechnungDO;
@@ -41,6 +47,8 @@ import org.projectforge.fibu.KontoDO;
 import org.projectforge.fibu.KundeDO;
 import org.projectforge.fibu.ProjektDO;
 import org.projectforge.fibu.RechnungDO;
+import org.projectforge.fibu.datev.BuchungssatzStagingDO;
+import org.projectforge.fibu.kost.MonthlyBalanceDO;
 import org.projectforge.registry.Registry;
 import org.projectforge.scripting.ScriptDO;
 import org.projectforge.task.TaskDO;
@@ -63,6 +71,71 @@ public class DatabaseCoreUpdates
   public static List<UpdateEntry> getUpdateEntries()
   {
     final List<UpdateEntry> list = new ArrayList<UpdateEntry>();
+    // /////////////////////////////////////////////////////////////////
+    // 5.3
+    // /////////////////////////////////////////////////////////////////
+    list.add(new UpdateEntryImpl(CORE_REGION_ID, "5.3", "2013-06-03",
+        "Adds tables t_history_outbox, t_number_sequence, t_number_sequence_free, t_cache_change_log, t_cron_job, t_fibu_monthly_balance, "
+            + "t_fibu_buchungssatz_staging and t_fibu_auftrag.{completely_invoiced|closed_not_invoiced}.") {
+      @Override
+      public UpdatePreCheckStatus runPreCheck()
+      {
+        if (dao.doEntitiesExist(HistoryOutboxDO.class) == true //
+            && dao.doEntitiesExist(NumberSequenceDO.class) == true //
+            && dao.doEntitiesExist(NumberSequenceFreeNumberDO.class) == true //
+            && dao.doEntitiesExist(CacheChangeLogDO.class) == true //
+            && dao.doEntitiesExist(CronJobDO.class) == true //
+            && dao.doEntitiesExist(MonthlyBalanceDO.class) == true //
+            && dao.doEntitiesExist(BuchungssatzStagingDO.class) == true //
+            && dao.doTableAttributesExist(AuftragDO.class, "completelyInvoiced", "closedNotInvoiced") == true) {
+          return UpdatePreCheckStatus.ALREADY_UPDATED;
+        }
+        return UpdatePreCheckStatus.READY_FOR_UPDATE;
+      }
+
+      @Override
+      public UpdateRunningStatus runUpdate()
+      {
+        if (dao.doEntitiesExist(HistoryOutboxDO.class) == false) {
+          new SchemaGenerator(dao).add(HistoryOutboxDO.class).createSchema();
+        }
+        if (dao.doEntitiesExist(NumberSequenceDO.class) == false) {
+          // The counters are initialized with the highest used numbers on first usage.
+          new SchemaGenerator(dao).add(NumberSequenceDO.class).createSchema();
+        }
+        if (dao.doEntitiesExist(NumberSequenceFreeNumberDO.class) == false) {
+          new SchemaGenerator(dao).add(NumberSequenceFreeNumberDO.class).createSchema();
+        }
+        if (dao.doEntitiesExist(CacheChangeLogDO.class) == false) {
+          new SchemaGenerator(dao).add(CacheChangeLogDO.class).createSchema();
+        }
+        if (dao.doEntitiesExist(CronJobDO.class) == false) {
+          new SchemaGenerator(dao).add(CronJobDO.class).createSchema();
+        }
+        if (dao.doEntitiesExist(MonthlyBalanceDO.class) == false) {
+          // The monthly balances are calculated on first usage.
+          new SchemaGenerator(dao).add(MonthlyBalanceDO.class).createSchema();
+        }
+        if (dao.doEntitiesExist(BuchungssatzStagingDO.class) == false) {
+          new SchemaGenerator(dao).add(BuchungssatzStagingDO.class).createSchema();
+        }
+        if (dao.doTableAttributesExist(AuftragDO.class, "completelyInvoiced", "closedNotInvoiced") == false) {
+          final Table orderTable = new Table(AuftragDO.class);
+          dao.addTableAttributes(orderTable, new TableAttribute(AuftragDO.class, "completelyInvoiced").setDefaultValue("false"),
+              new TableAttribute(AuftragDO.class, "closedNotInvoiced").setDefaultValue("false"));
+          // Same rules as AuftragDO.isVollstaendigFakturiert() and AuftragDO.isAbgeschlossenUndNichtVollstaendigFakturiert():
+          dao.update("update t_fibu_auftrag set completely_invoiced=true where status='ABGESCHLOSSEN' and not exists "
+              + "(select p.pk from t_fibu_auftrag_position p where p.auftrag_fk=t_fibu_auftrag.pk and p.vollstaendig_fakturiert=false "
+              + "and (p.status is null or p.status<>'NICHT_BEAUFTRAGT'))");
+          dao.update("update t_fibu_auftrag set closed_not_invoiced=true where (status='ABGESCHLOSSEN' and completely_invoiced=false) "
+              + "or exists (select p.pk from t_fibu_auftrag_position p where p.auftrag_fk=t_fibu_auftrag.pk "
+              + "and p.status='ABGESCHLOSSEN' and p.vollstaendig_fakturiert=false)");
+        }
+        dao.createMissingIndices();
+        return UpdateRunningStatus.DONE;
+      }
+    });
+
     // /////////////////////////////////////////////////////////////////
     // 5.2
     // /////////////////////////////////////////////////////////////////
@@ -50,6 +50,8 @@ class HibernateCoreEntities
     org.projectforge.fibu.kost.Kost2DO.class, //
     org.projectforge.fibu.kost.Kost2ArtDO.class, //
     org.projectforge.fibu.kost.KostZuweisungDO.class, //
+    org.projectforge.fibu.kost.MonthlyBalanceDO.class, //
+    org.projectforge.fibu.datev.BuchungssatzStagingDO.class, //
     org.projectforge.fibu.KontoDO.class, //
     org.projectforge.fibu.KundeDO.class, //
     org.projectforge.fibu.ProjektDO.class, //
@@ -59,6 +61,11 @@ class HibernateCoreEntities
     org.projectforge.address.PersonalAddressDO.class, //
     org.projectforge.book.BookDO.class, //
     org.projectforge.core.ConfigurationDO.class, //
+    org.projectforge.core.HistoryOutboxDO.class, //
+    org.projectforge.core.NumberSequenceDO.class, //
+    org.projectforge.core.NumberSequenceFreeNumberDO.class, //
+    org.projectforge.core.CacheChangeLogDO.class, //
+    org.projectforge.core.CronJobDO.class, //
     org.projectforge.database.DatabaseUpdateDO.class, //
     org.projectforge.gantt.GanttChartDO.class, //
     org.projectforge.humanresources.HRPlanningDO.class, //
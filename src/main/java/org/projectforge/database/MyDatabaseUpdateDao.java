@@ -122,6 +122,12 @@ public class MyDatabaseUpdateDao extends DatabaseUpdateDao
     if (createIndex("idx_timesheet_user_time", "t_timesheet", "user_id, start_time") == true) {
       ++result;
     }
+    if (createIndex("idx_fibu_buchungssatz_staging_import", "t_fibu_buchungssatz_staging", "import_id, sheet_name") == true) {
+      ++result;
+    }
+    if (createIndex("idx_history_outbox_entity", "t_history_outbox", "entity_id, entity_class") == true) {
+      ++result;
+    }
     for (final AbstractPlugin plugin : PluginsRegistry.instance().getPlugins()) {
       if (plugin.isInitialized() == false) {
         // Plug-in not (yet) initialized, skip. this is normal on first start-up phase.
@@ -0,0 +1,207 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.jndi.JndiTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes read-only transactions of DAOs marked with {@link ReadFromReplica} to a replica data base (e. g. a PostgreSQL hot standby), all
+ * other connections are served by the primary data source. If no replica is configured or the replica lags behind more than
+ * {@link #setMaxLagSeconds(int)}, the primary data source is used.<br/>
+ * This data source has to be wrapped by a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, because the
+ * transaction manager fetches the connection before the read-only flag of the transaction is set.<br/>
+ * The routing is done per connection: The {@link ReplicaRoutingInterceptor} runs the calls of replica DAOs with an own session (and
+ * connection), because the session of the OpenSessionInViewFilter holds its (primary) connection until the end of the request.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(ReplicaRoutingDataSource.class);
+
+  static final String PRIMARY = "primary";
+
+  static final String REPLICA = "replica";
+
+  private static final ThreadLocal<Boolean> replicaRequested = new ThreadLocal<Boolean>();
+
+  private DataSource primaryDataSource;
+
+  private DataSource replicaDataSource;
+
+  private String replicaJndiName;
+
+  private String lagQuery;
+
+  private int maxLagSeconds = 10;
+
+  private long lagCheckIntervalMillis = 10000;
+
+  private long lastLagCheck;
+
+  private boolean replicaUpToDate;
+
+  /**
+   * Called by {@link ReplicaRoutingInterceptor}.
+   * @param requested
+   */
+  static void setReplicaRequested(final boolean requested)
+  {
+    if (requested == true) {
+      replicaRequested.set(Boolean.TRUE);
+    } else {
+      replicaRequested.remove();
+    }
+  }
+
+  static boolean isReplicaRequested()
+  {
+    return replicaRequested.get() != null;
+  }
+
+  @Override
+  public void afterPropertiesSet()
+  {
+    if (replicaDataSource == null && StringUtils.isNotBlank(replicaJndiName) == true) {
+      try {
+        replicaDataSource = (DataSource) new JndiTemplate().lookup(replicaJndiName, DataSource.class);
+      } catch (final NamingException ex) {
+        log.info("No replica data source '" + replicaJndiName + "' found, all connections are served by the primary data source.");
+      }
+    }
+    final Map<Object, Object> targetDataSources = new HashMap<Object, Object>();
+    targetDataSources.put(PRIMARY, primaryDataSource);
+    if (replicaDataSource != null) {
+      targetDataSources.put(REPLICA, replicaDataSource);
+      log.info("Read-only transactions of DAOs marked with @ReadFromReplica are served by the replica data source (max lag: "
+          + maxLagSeconds + "s).");
+    }
+    setTargetDataSources(targetDataSources);
+    setDefaultTargetDataSource(primaryDataSource);
+    super.afterPropertiesSet();
+  }
+
+  /**
+   * @return true if a replica data source is given or was found via the replica jndi name.
+   */
+  public boolean isReplicaConfigured()
+  {
+    return replicaDataSource != null;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey()
+  {
+    if (replicaDataSource == null
+        || isReplicaRequested() == false
+        || TransactionSynchronizationManager.isCurrentTransactionReadOnly() == false) {
+      return PRIMARY;
+    }
+    return isReplicaUpToDate() == true ? REPLICA : PRIMARY;
+  }
+
+  /**
+   * The lag of the replica is checked at maximum once per lag check interval.
+   * @return true if the replica's lag is less than max lag seconds or no lag query is given.
+   */
+  synchronized boolean isReplicaUpToDate()
+  {
+    if (StringUtils.isBlank(lagQuery) == true) {
+      return true;
+    }
+    final long now = System.currentTimeMillis();
+    if (now - lastLagCheck < lagCheckIntervalMillis) {
+      return replicaUpToDate;
+    }
+    lastLagCheck = now;
+    try {
+      final Number lag = (Number) new JdbcTemplate(replicaDataSource).queryForObject(lagQuery, Number.class);
+      final boolean upToDate = lag != null && lag.doubleValue() <= maxLagSeconds;
+      if (upToDate != replicaUpToDate) {
+        log.info("Replica lag is " + lag + "s, read-only transactions are now served by the " + (upToDate == true ? "replica" : "primary")
+            + " data source.");
+      }
+      replicaUpToDate = upToDate;
+    } catch (final Exception ex) {
+      if (replicaUpToDate == true) {
+        log.error("Can't check lag of replica (using primary data source): " + ex.getMessage(), ex);
+      }
+      replicaUpToDate = false;
+    }
+    return replicaUpToDate;
+  }
+
+  public void setPrimaryDataSource(final DataSource primaryDataSource)
+  {
+    this.primaryDataSource = primaryDataSource;
+  }
+
+  /**
+   * Optional replica data source (if not given, the replica is looked up via the replica jndi name).
+   */
+  public void setReplicaDataSource(final DataSource replicaDataSource)
+  {
+    this.replicaDataSource = replicaDataSource;
+  }
+
+  /**
+   * @param replicaJndiName e. g. java:comp/env/jdbc/ProjectForgeReplicaDS. If the name isn't bound, no replica is used.
+   */
+  public void setReplicaJndiName(final String replicaJndiName)
+  {
+    this.replicaJndiName = replicaJndiName;
+  }
+
+  /**
+   * @param lagQuery SQL query executed on the replica returning the lag of the replica in seconds. If not given, the replica is assumed to
+   *          be up to date.
+   */
+  public void setLagQuery(final String lagQuery)
+  {
+    this.lagQuery = lagQuery;
+  }
+
+  /**
+   * @param maxLagSeconds If the replica lags behind more seconds, the primary data source is used (default is 10 seconds).
+   */
+  public void setMaxLagSeconds(final int maxLagSeconds)
+  {
+    this.maxLagSeconds = maxLagSeconds;
+  }
+
+  public void setLagCheckIntervalMillis(final long lagCheckIntervalMillis)
+  {
+    this.lagCheckIntervalMillis = lagCheckIntervalMillis;
+  }
+}
@@ -0,0 +1,115 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.database;
+
+import java.lang.reflect.Method;
+
+import javax.sql.DataSource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.orm.hibernate3.SessionFactoryUtils;
+import org.springframework.orm.hibernate3.SessionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Requests the replica data base for calls of DAOs (classes or methods) marked with {@link ReadFromReplica}, if a replica is configured
+ * (see {@link ReplicaRoutingDataSource}). This interceptor must be placed before the transaction interceptor. The request is inherited by
+ * nested DAO calls, but only read-only transactions are routed to the replica. Calls inside of an already active transaction are served
+ * by the connection of this transaction.<br/>
+ * The call is done with an own session (bound instead of the session of the open session in view filter and closed afterwards), so the
+ * entities read from the replica aren't attached to the session of the request and the connection of the request's session isn't used.
+ * They aren't put into the second level cache (cache mode GET), so the cache isn't polluted by (slightly) outdated data. Therefore the
+ * results of such DAO calls should be fully initialized inside the call.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class ReplicaRoutingInterceptor implements MethodInterceptor
+{
+  private SessionFactory sessionFactory;
+
+  private boolean replicaConfigured;
+
+  public Object invoke(final MethodInvocation invocation) throws Throwable
+  {
+    if (replicaConfigured == false
+        || ReplicaRoutingDataSource.isReplicaRequested() == true
+        || TransactionSynchronizationManager.isActualTransactionActive() == true
+        || isReadFromReplica(invocation) == false) {
+      return invocation.proceed();
+    }
+    final Object requestSessionHolder = TransactionSynchronizationManager.getResource(sessionFactory);
+    if (requestSessionHolder != null) {
+      TransactionSynchronizationManager.unbindResource(sessionFactory);
+    }
+    final Session session = sessionFactory.openSession();
+    session.setFlushMode(FlushMode.MANUAL);
+    session.setCacheMode(CacheMode.GET);
+    TransactionSynchronizationManager.bindResource(sessionFactory, new SessionHolder(session));
+    ReplicaRoutingDataSource.setReplicaRequested(true);
+    try {
+      return invocation.proceed();
+    } finally {
+      ReplicaRoutingDataSource.setReplicaRequested(false);
+      TransactionSynchronizationManager.unbindResource(sessionFactory);
+      SessionFactoryUtils.closeSession(session);
+      if (requestSessionHolder != null) {
+        TransactionSynchronizationManager.bindResource(sessionFactory, requestSessionHolder);
+      }
+    }
+  }
+
+  private boolean isReadFromReplica(final MethodInvocation invocation)
+  {
+    final Class< ? > targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null;
+    final Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+    return method.isAnnotationPresent(ReadFromReplica.class) == true
+        || (targetClass != null && targetClass.isAnnotationPresent(ReadFromReplica.class) == true);
+  }
+
+  public void setSessionFactory(final SessionFactory sessionFactory)
+  {
+    this.sessionFactory = sessionFactory;
+  }
+
+  /**
+   * The data source of the session factory: If it's (a proxy of) a {@link ReplicaRoutingDataSource} with a configured replica, the calls
+   * are routed, otherwise this interceptor does nothing.
+   */
+  public void setDataSource(final DataSource dataSource)
+  {
+    DataSource target = dataSource;
+    while (target instanceof DelegatingDataSource) {
+      target = ((DelegatingDataSource) target).getTargetDataSource();
+    }
+    this.replicaConfigured = target instanceof ReplicaRoutingDataSource
+        && ((ReplicaRoutingDataSource) target).isReplicaConfigured() == true;
+  }
+}
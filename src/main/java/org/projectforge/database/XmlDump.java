@@ -64,6 +64,7 @@ import org.hibernate.SessionFactory;
 import org.projectforge.access.AccessEntryDO;
 import org.projectforge.access.GroupTaskAccessDO;
 import org.projectforge.common.BeanHelper;
+import org.projectforge.common.PropertyAccessor;
 import org.projectforge.core.AbstractBaseDO;
 import org.projectforge.core.ConfigurationDO;
 import org.projectforge.database.xstream.HibernateXmlConverter;
@@ -575,8 +576,8 @@ public class XmlDump
   IllegalAccessException
   {
     Object val = null;
-    final Method getter = BeanHelper.determineGetter(obj.getClass(), field.getName());
-    final Method getter2 = BeanHelper.determineGetter(compareObj.getClass(), field.getName());
+    final Method getter = getGetter(obj.getClass(), field.getName());
+    final Method getter2 = getGetter(compareObj.getClass(), field.getName());
     if (getter != null
         && getter.isAnnotationPresent(Transient.class) == false
         && getter2 != null
@@ -589,6 +590,12 @@ public class XmlDump
     return val;
   }
 
+  private Method getGetter(final Class< ? > clazz, final String property)
+  {
+    final PropertyAccessor accessor = PropertyAccessor.getAccessor(clazz, property);
+    return accessor != null ? accessor.getGetter() : null;
+  }
+
   /**
    * @param field
    * @return true, if the given field should be compared.
@@ -67,6 +67,8 @@ public class XStreamSavingConverter implements Converter
   /** The logger */
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(XStreamSavingConverter.class);
 
+  private final Map<String, Method> historySetters = new HashMap<String, Method>();
+
   private final ConverterLookup defaultConv;
 
   private final Map<Class< ? >, List<Object>> allObjects = new HashMap<Class< ? >, List<Object>>();
@@ -260,8 +262,13 @@ public class XStreamSavingConverter implements Converter
   private void invokeHistorySetter(final HistoryEntry entry, final String name, final Class< ? > parameterType, final Object value)
   {
     try {
-      final Method method = HistoryEntry.class.getDeclaredMethod(name, parameterType);
-      method.setAccessible(true);
+      Method method = historySetters.get(name);
+      if (method == null) {
+        // Looked up only once (this method is called for every history entry):
+        method = HistoryEntry.class.getDeclaredMethod(name, parameterType);
+        method.setAccessible(true);
+        historySetters.put(name, method);
+      }
       method.invoke(entry, value);
     } catch (final IllegalArgumentException ex) {
       log.error("Can't modify id of history entry. This results in a corrupted history: " + entry);
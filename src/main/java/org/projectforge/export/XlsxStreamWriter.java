@@ -0,0 +1,509 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.projectforge.calendar.DayHolder;
+import org.projectforge.common.DateFormatType;
+import org.projectforge.common.DateFormats;
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.DateHolder;
+import org.projectforge.user.PFUserContext;
+
+/**
+ * Writes Excel files (Office Open XML, *.xlsx) row by row directly to the given output stream. In contrast to the ExportWorkbook no
+ * workbook is built in memory: The memory usage doesn't depend on the number of rows and the first bytes are sent before the last row is
+ * read. Therefore the sheets have to be written one after another.<br/>
+ * Supported cell values are numbers, booleans, dates, calendars and DateHolders. All other values are written as strings.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class XlsxStreamWriter
+{
+  public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+  public static final String FILENAME_EXTENSION = ".xlsx";
+
+  /**
+   * Column of a sheet: The title is written as bold head row, the width is given in characters and the optional format is an Excel
+   * number format such as "#,##0.00" or "dd.MM.yyyy".
+   */
+  public static class Column
+  {
+    final String title;
+
+    final int width;
+
+    final String format;
+
+    public Column(final String title, final int width)
+    {
+      this(title, width, null);
+    }
+
+    public Column(final String title, final int width, final String format)
+    {
+      this.title = title;
+      this.width = width;
+      this.format = format;
+    }
+  }
+
+  private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+  private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+  private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+  private static final String CONTENT_TYPE_PREFIX = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+
+  /**
+   * Excel's serial number of 1970-01-01 (1900 date system).
+   */
+  private static final int SERIAL_NUMBER_OF_EPOCH = 25569;
+
+  /**
+   * The ids of the custom number formats start after the built-in formats.
+   */
+  private static final int FIRST_CUSTOM_NUMBER_FORMAT_ID = 164;
+
+  private static final int MAX_SHEET_NAME_LENGTH = 31;
+
+  private static final int FONT_BOLD = 1;
+
+  private static final int FILL_GREY = 2;
+
+  private final ZipOutputStream zip;
+
+  private final Writer writer;
+
+  private final TimeZone timeZone;
+
+  private final List<String> sheetNames = new ArrayList<String>();
+
+  private final Set<String> sheetNamesLowerCase = new HashSet<String>();
+
+  private final List<String> numberFormats = new ArrayList<String>();
+
+  private final List<int[]> cellStyles = new ArrayList<int[]>();
+
+  private final Map<String, Integer> cellStyleIndexes = new HashMap<String, Integer>();
+
+  private int[] columnFormats;
+
+  private int rowCounter = -1;
+
+  private boolean stripedRows;
+
+  private boolean closed;
+
+  /**
+   * Date values of type java.util.Date (e. g. time stamps) are written in the time zone of the logged-in user.
+   * @param out Isn't closed by this writer.
+   */
+  public XlsxStreamWriter(final OutputStream out)
+  {
+    this.zip = new ZipOutputStream(out);
+    this.writer = new BufferedWriter(new OutputStreamWriter(zip, Charset.forName("UTF-8")));
+    this.timeZone = PFUserContext.getTimeZone();
+    getCellStyle(0, 0, 0); // Default style.
+  }
+
+  /**
+   * @param stripedRows If true, every second data row of the sheets started afterwards is highlighted grey.
+   * @return this for chaining.
+   */
+  public XlsxStreamWriter setStripedRows(final boolean stripedRows)
+  {
+    this.stripedRows = stripedRows;
+    return this;
+  }
+
+  /**
+   * Finishes the current sheet (if any) and starts a new one with the titles of the given columns as (frozen) head row.
+   * @param title The sheet name, invalid characters are replaced and the name is made unique.
+   * @param columns
+   * @throws IOException
+   */
+  public void startSheet(final String title, final Column... columns) throws IOException
+  {
+    Validate.isTrue(closed == false, "Writer is already closed.");
+    endSheet();
+    sheetNames.add(getUniqueSheetName(title));
+    zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+    writer.write(XML_HEADER);
+    writer.write("<worksheet xmlns=\"" + NS_MAIN + "\">");
+    writer.write("<sheetViews><sheetView workbookViewId=\"0\">");
+    writer.write("<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>");
+    writer.write("</sheetView></sheetViews>");
+    columnFormats = new int[columns.length];
+    if (columns.length > 0) {
+      writer.write("<cols>");
+      for (int i = 0; i < columns.length; i++) {
+        writer.write("<col min=\"" + (i + 1) + "\" max=\"" + (i + 1) + "\" width=\"" + columns[i].width + "\" customWidth=\"1\"/>");
+        columnFormats[i] = getNumberFormatId(columns[i].format);
+      }
+      writer.write("</cols>");
+    }
+    writer.write("<sheetData>");
+    rowCounter = 0;
+    final Object[] titles = new Object[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      titles[i] = columns[i].title;
+    }
+    writeRow(titles, true);
+  }
+
+  /**
+   * Adds a row to the current sheet. The values are formatted by the formats of the columns, null values are left empty.
+   * @param values
+   * @throws IOException
+   */
+  public void addRow(final Object... values) throws IOException
+  {
+    Validate.isTrue(rowCounter >= 0, "No sheet started.");
+    writeRow(values, false);
+  }
+
+  /**
+   * @return The number of rows of the current sheet including the head row.
+   */
+  public int getRowCounter()
+  {
+    return rowCounter;
+  }
+
+  /**
+   * Finishes the current sheet and writes the workbook, the styles and the relations. The given output stream is only flushed, not closed.
+   * @throws IOException
+   */
+  public void close() throws IOException
+  {
+    if (closed == true) {
+      return;
+    }
+    if (sheetNames.isEmpty() == true) {
+      // Excel doesn't open workbooks without any sheet.
+      startSheet(null);
+    }
+    endSheet();
+    writeEntry("xl/styles.xml", getStylesXml());
+    writeEntry("xl/workbook.xml", getWorkbookXml());
+    writeEntry("xl/_rels/workbook.xml.rels", getWorkbookRelationsXml());
+    writeEntry("_rels/.rels", XML_HEADER
+        + "<Relationships xmlns=\""
+        + NS_PACKAGE_RELATIONSHIPS
+        + "\"><Relationship Id=\"rId1\" Type=\""
+        + NS_RELATIONSHIPS
+        + "/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+    writeEntry("[Content_Types].xml", getContentTypesXml());
+    zip.finish();
+    zip.flush();
+    closed = true;
+  }
+
+  private void endSheet() throws IOException
+  {
+    if (rowCounter < 0) {
+      return;
+    }
+    writer.write("</sheetData></worksheet>");
+    writer.flush();
+    zip.closeEntry();
+    rowCounter = -1;
+  }
+
+  private void writeRow(final Object[] values, final boolean headRow) throws IOException
+  {
+    ++rowCounter;
+    writer.write("<row r=\"" + rowCounter + "\">");
+    if (values != null) {
+      final int fontId = headRow == true ? FONT_BOLD : 0;
+      // Head row is row 1: Highlight the rows 3, 5, 7...
+      final int fillId = headRow == false && stripedRows == true && rowCounter % 2 == 1 ? FILL_GREY : 0;
+      for (int col = 0; col < values.length; col++) {
+        writeCell(col, values[col], headRow == true || col >= columnFormats.length ? 0 : columnFormats[col], fontId, fillId);
+      }
+    }
+    writer.write("</row>");
+  }
+
+  private void writeCell(final int col, final Object value, final int numberFormatId, final int fontId, final int fillId)
+      throws IOException
+  {
+    if (value == null) {
+      return;
+    }
+    final String ref = getColumnName(col) + rowCounter;
+    if (value instanceof Number) {
+      writer.write("<c r=\"" + ref + "\"" + getStyleAttribute(numberFormatId, fontId, fillId) + "><v>");
+      writer.write(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+      writer.write("</v></c>");
+    } else if (value instanceof Boolean) {
+      writer.write("<c r=\"" + ref + "\" t=\"b\"" + getStyleAttribute(numberFormatId, fontId, fillId) + "><v>");
+      writer.write(((Boolean) value) == true ? "1" : "0");
+      writer.write("</v></c>");
+    } else if (value instanceof Date || value instanceof Calendar || value instanceof DateHolder) {
+      int formatId = numberFormatId;
+      if (formatId == 0) {
+        final DateFormatType type = value instanceof java.sql.Date || value instanceof DayHolder ? DateFormatType.DATE
+            : DateFormatType.DATE_TIME_MINUTES;
+        formatId = getNumberFormatId(DateFormats.getExcelFormatString(type));
+      }
+      writer.write("<c r=\"" + ref + "\"" + getStyleAttribute(formatId, fontId, fillId) + "><v>");
+      writer.write(getSerialNumber(value));
+      writer.write("</v></c>");
+    } else {
+      final String str = value.toString();
+      if (str.length() == 0) {
+        return;
+      }
+      writer.write("<c r=\"" + ref + "\" t=\"inlineStr\"" + getStyleAttribute(numberFormatId, fontId, fillId) + ">");
+      writer.write("<is><t xml:space=\"preserve\">");
+      writer.write(escapeXml(str));
+      writer.write("</t></is></c>");
+    }
+  }
+
+  private String getStyleAttribute(final int numberFormatId, final int fontId, final int fillId)
+  {
+    final int index = getCellStyle(numberFormatId, fontId, fillId);
+    return index == 0 ? "" : " s=\"" + index + "\"";
+  }
+
+  private int getCellStyle(final int numberFormatId, final int fontId, final int fillId)
+  {
+    final String key = numberFormatId + "," + fontId + "," + fillId;
+    Integer index = cellStyleIndexes.get(key);
+    if (index == null) {
+      index = cellStyles.size();
+      cellStyles.add(new int[] { numberFormatId, fontId, fillId});
+      cellStyleIndexes.put(key, index);
+    }
+    return index;
+  }
+
+  private int getNumberFormatId(final String format)
+  {
+    if (StringUtils.isEmpty(format) == true) {
+      return 0;
+    }
+    int index = numberFormats.indexOf(format);
+    if (index < 0) {
+      index = numberFormats.size();
+      numberFormats.add(format);
+    }
+    return FIRST_CUSTOM_NUMBER_FORMAT_ID + index;
+  }
+
+  /**
+   * java.sql.Date (day without time) is interpreted in the default time zone of the system (used by Hibernate), calendars and DateHolders
+   * in their own time zone and all other dates in the time zone of the user.
+   */
+  private String getSerialNumber(final Object value)
+  {
+    final long millis;
+    final TimeZone zone;
+    if (value instanceof DateHolder || value instanceof Calendar) {
+      final Calendar cal = value instanceof DateHolder ? ((DateHolder) value).getCalendar() : (Calendar) value;
+      millis = cal.getTimeInMillis();
+      zone = cal.getTimeZone();
+    } else {
+      millis = ((Date) value).getTime();
+      zone = value instanceof java.sql.Date ? TimeZone.getDefault() : timeZone;
+    }
+    final BigDecimal days = new BigDecimal(millis + zone.getOffset(millis)).divide(new BigDecimal(DateHelper.MILLIS_DAY), 10,
+        RoundingMode.HALF_UP);
+    return days.add(new BigDecimal(SERIAL_NUMBER_OF_EPOCH)).stripTrailingZeros().toPlainString();
+  }
+
+  private String getUniqueSheetName(final String title)
+  {
+    String name = title != null ? title.replaceAll("[\\[\\]:*?/\\\\]", "_").trim() : "";
+    if (name.length() == 0) {
+      name = "Sheet" + (sheetNames.size() + 1);
+    }
+    name = StringUtils.left(name, MAX_SHEET_NAME_LENGTH);
+    String result = name;
+    for (int i = 2; sheetNamesLowerCase.contains(result.toLowerCase()) == true; i++) {
+      final String suffix = " (" + i + ")";
+      result = StringUtils.left(name, MAX_SHEET_NAME_LENGTH - suffix.length()) + suffix;
+    }
+    sheetNamesLowerCase.add(result.toLowerCase());
+    return result;
+  }
+
+  private void writeEntry(final String name, final String content) throws IOException
+  {
+    zip.putNextEntry(new ZipEntry(name));
+    writer.write(content);
+    writer.flush();
+    zip.closeEntry();
+  }
+
+  private String getStylesXml()
+  {
+    final StringBuilder buf = new StringBuilder();
+    buf.append(XML_HEADER).append("<styleSheet xmlns=\"").append(NS_MAIN).append("\">");
+    if (numberFormats.isEmpty() == false) {
+      buf.append("<numFmts count=\"").append(numberFormats.size()).append("\">");
+      for (int i = 0; i < numberFormats.size(); i++) {
+        buf.append("<numFmt numFmtId=\"").append(FIRST_CUSTOM_NUMBER_FORMAT_ID + i).append("\" formatCode=\"")
+        .append(escapeXml(numberFormats.get(i))).append("\"/>");
+      }
+      buf.append("</numFmts>");
+    }
+    buf.append("<fonts count=\"2\"><font><sz val=\"10\"/><name val=\"Arial\"/></font>") //
+    .append("<font><b/><sz val=\"10\"/><name val=\"Arial\"/></font></fonts>") //
+    .append("<fills count=\"3\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill>") //
+    .append("<fill><patternFill patternType=\"solid\"><fgColor rgb=\"FFC0C0C0\"/><bgColor indexed=\"64\"/></patternFill></fill></fills>") //
+    .append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>") //
+    .append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>") //
+    .append("<cellXfs count=\"").append(cellStyles.size()).append("\">");
+    for (final int[] style : cellStyles) {
+      buf.append("<xf numFmtId=\"").append(style[0]).append("\" fontId=\"").append(style[1]).append("\" fillId=\"").append(style[2])
+      .append("\" borderId=\"0\" xfId=\"0\"");
+      if (style[0] != 0) {
+        buf.append(" applyNumberFormat=\"1\"");
+      }
+      if (style[1] != 0) {
+        buf.append(" applyFont=\"1\"");
+      }
+      if (style[2] != 0) {
+        buf.append(" applyFill=\"1\"");
+      }
+      buf.append("/>");
+    }
+    buf.append("</cellXfs><cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles></styleSheet>");
+    return buf.toString();
+  }
+
+  private String getWorkbookXml()
+  {
+    final StringBuilder buf = new StringBuilder();
+    buf.append(XML_HEADER).append("<workbook xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_RELATIONSHIPS).append("\">")
+    .append("<sheets>");
+    for (int i = 0; i < sheetNames.size(); i++) {
+      buf.append("<sheet name=\"").append(escapeXml(sheetNames.get(i))).append("\" sheetId=\"").append(i + 1).append("\" r:id=\"rId")
+      .append(i + 1).append("\"/>");
+    }
+    buf.append("</sheets></workbook>");
+    return buf.toString();
+  }
+
+  private String getWorkbookRelationsXml()
+  {
+    final StringBuilder buf = new StringBuilder();
+    buf.append(XML_HEADER).append("<Relationships xmlns=\"").append(NS_PACKAGE_RELATIONSHIPS).append("\">");
+    for (int i = 1; i <= sheetNames.size(); i++) {
+      buf.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(NS_RELATIONSHIPS)
+      .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+    }
+    buf.append("<Relationship Id=\"rId").append(sheetNames.size() + 1).append("\" Type=\"").append(NS_RELATIONSHIPS)
+    .append("/styles\" Target=\"styles.xml\"/></Relationships>");
+    return buf.toString();
+  }
+
+  private String getContentTypesXml()
+  {
+    final StringBuilder buf = new StringBuilder();
+    buf.append(XML_HEADER).append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+    .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+    .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+    .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"").append(CONTENT_TYPE_PREFIX).append("sheet.main+xml\"/>")
+    .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"").append(CONTENT_TYPE_PREFIX).append("styles+xml\"/>");
+    for (int i = 1; i <= sheetNames.size(); i++) {
+      buf.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"").append(CONTENT_TYPE_PREFIX)
+      .append("worksheet+xml\"/>");
+    }
+    buf.append("</Types>");
+    return buf.toString();
+  }
+
+  /**
+   * @param col 0-based column index.
+   * @return The Excel name of the column: A, B, ..., Z, AA, AB, ...
+   */
+  static String getColumnName(final int col)
+  {
+    final StringBuilder buf = new StringBuilder();
+    for (int i = col + 1; i > 0; i = (i - 1) / 26) {
+      buf.insert(0, (char) ('A' + (i - 1) % 26));
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Escapes the XML special characters and removes all characters not allowed in XML 1.0 (such as control characters).
+   */
+  static String escapeXml(final String str)
+  {
+    final StringBuilder buf = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); i++) {
+      final char ch = str.charAt(i);
+      switch (ch) {
+        case '&':
+          buf.append("&amp;");
+          break;
+        case '<':
+          buf.append("&lt;");
+          break;
+        case '>':
+          buf.append("&gt;");
+          break;
+        case '"':
+          buf.append("&quot;");
+          break;
+        default:
+          if (ch >= 0x20 && ch != 0xFFFE && ch != 0xFFFF || ch == '\t' || ch == '\n' || ch == '\r') {
+            buf.append(ch);
+          }
+      }
+    }
+    return buf.toString();
+  }
+}
@@ -246,12 +246,30 @@ public abstract class AbstractRechnungDO<T extends AbstractRechnungsPositionDO>
   }
 
   @Transient
-  public abstract boolean isBezahlt();
+  public boolean isBezahlt()
+  {
+    return isBezahlt(getNetSum());
+  }
+
+  /**
+   * @param netSum The net sum of the positions (e. g. summed up by the data base, so the positions aren't needed).
+   * @see #isBezahlt()
+   */
+  abstract boolean isBezahlt(final BigDecimal netSum);
 
   @Transient
   public boolean isUeberfaellig()
   {
-    if (isBezahlt() == true) {
+    return isUeberfaellig(getNetSum());
+  }
+
+  /**
+   * @param netSum The net sum of the positions (e. g. summed up by the data base, so the positions aren't needed).
+   * @see #isUeberfaellig()
+   */
+  boolean isUeberfaellig(final BigDecimal netSum)
+  {
+    if (isBezahlt(netSum) == true) {
       return false;
     }
     final DayHolder today = new DayHolder();
@@ -62,8 +62,17 @@ public class AbstractRechnungsStatistik<T extends AbstractRechnungDO< ? >> imple
 
   public void add(final T rechnung)
   {
-    final BigDecimal netto = rechnung.getNetSum();
-    final BigDecimal brutto = rechnung.getGrossSum();
+    add(rechnung, rechnung.getNetSum(), rechnung.getGrossSum());
+  }
+
+  /**
+   * Adds the invoice with the given sums of its positions (e. g. summed up by the data base), the positions of the invoice aren't used.
+   * @param rechnung
+   * @param netto The net sum of the positions.
+   * @param brutto The gross sum of the positions.
+   */
+  public void add(final T rechnung, final BigDecimal netto, final BigDecimal brutto)
+  {
     final BigDecimal gezahlt = rechnung.getZahlBetrag();
     this.nettoSum = add(nettoSum, netto);
     this.bruttoSum = add(bruttoSum, brutto);
@@ -74,7 +83,7 @@ public class AbstractRechnungsStatistik<T extends AbstractRechnungDO< ? >> imple
       }
     } else {
       offenSum = add(offenSum, brutto);
-      if (rechnung.isUeberfaellig() == true) {
+      if (rechnung.isUeberfaellig(netto) == true) {
         ueberfaelligSum = add(ueberfaelligSum, brutto);
       }
     }
@@ -123,8 +123,13 @@ public class AuftragDO extends DefaultBaseDO
 
   protected AuftragUIStatus uiStatus;
 
+  private boolean completelyInvoiced;
+
+  private boolean closedNotInvoiced;
+
   static {
-    AbstractHistorizableBaseDO.putNonHistorizableProperty(AuftragDO.class, "uiStatusAsXml", "uiStatus");
+    AbstractHistorizableBaseDO.putNonHistorizableProperty(AuftragDO.class, "uiStatusAsXml", "uiStatus", "completelyInvoiced",
+        "closedNotInvoiced");
   }
 
   /**
@@ -455,7 +460,7 @@ public class AuftragDO extends DefaultBaseDO
   @Transient
   public boolean isAbgeschlossenUndNichtVollstaendigFakturiert()
   {
-    if (getAuftragsStatus().isIn(AuftragsStatus.ABGESCHLOSSEN) == true && isVollstaendigFakturiert() == false) {
+    if (getAuftragsStatus() == AuftragsStatus.ABGESCHLOSSEN && isVollstaendigFakturiert() == false) {
       return true;
     }
     if (getPositionen() != null) {
@@ -613,6 +618,44 @@ public class AuftragDO extends DefaultBaseDO
     return this;
   }
 
+  /**
+   * Persisted value of {@link #isVollstaendigFakturiert()} for selecting orders by the data base. It's set by the AuftragDao on every save
+   * or update.
+   */
+  @Column(name = "completely_invoiced", nullable = false)
+  public boolean isCompletelyInvoiced()
+  {
+    return completelyInvoiced;
+  }
+
+  /**
+   * @return this for chaining.
+   */
+  public AuftragDO setCompletelyInvoiced(final boolean completelyInvoiced)
+  {
+    this.completelyInvoiced = completelyInvoiced;
+    return this;
+  }
+
+  /**
+   * Persisted value of {@link #isAbgeschlossenUndNichtVollstaendigFakturiert()} for selecting and counting orders by the data base. It's
+   * set by the AuftragDao on every save or update.
+   */
+  @Column(name = "closed_not_invoiced", nullable = false)
+  public boolean isClosedNotInvoiced()
+  {
+    return closedNotInvoiced;
+  }
+
+  /**
+   * @return this for chaining.
+   */
+  public AuftragDO setClosedNotInvoiced(final boolean closedNotInvoiced)
+  {
+    this.closedNotInvoiced = closedNotInvoiced;
+    return this;
+  }
+
   /**
    * @return the rechungUiStatus
    */
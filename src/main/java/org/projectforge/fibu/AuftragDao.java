@@ -23,23 +23,24 @@
 
 package org.projectforge.fibu;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.Validate;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.projectforge.access.OperationType;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.NumberHelper;
@@ -47,8 +48,12 @@ import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.HistoryChildObject;
+import org.projectforge.core.MenuCounterService;
 import org.projectforge.core.MessageParam;
 import org.projectforge.core.MessageParamType;
+import org.projectforge.core.NumberSequence;
+import org.projectforge.core.NumberSequenceDao;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
 import org.projectforge.database.SQLHelper;
@@ -71,8 +76,25 @@ public class AuftragDao extends BaseDao<AuftragDO>
 
   public final static int START_NUMBER = 1;
 
+  /**
+   * Id of the menu counter of closed and not invoiced orders (see {@link MenuCounterService}).
+   */
+  public static final String MENU_COUNTER_ID = "ORDER_BOOK";
+
+  /**
+   * Order numbers don't need to be gapless, so every instance reserves blocks of 10 numbers.
+   */
+  static final NumberSequence NUMBER_SEQUENCE = new NumberSequence("fibu.auftrag", AuftragDO.class, "nummer", START_NUMBER)
+      .setBlockSize(10);
+
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(AuftragDao.class);
 
+  private static final String STATISTIK_QUERY = "select p.auftrag.id, p.status, sum(p.nettoSumme) from AuftragsPositionDO p"
+      + " where p.auftrag.id in (:ids) group by p.auftrag.id, p.status";
+
+  private static final String POSITION_STATUS_QUERY = "select p.auftrag.id, p.number, p.status from AuftragsPositionDO p"
+      + " where p.auftrag.id in (:ids)";
+
   private static final Class< ? >[] ADDITIONAL_HISTORY_SEARCH_DOS = new Class[] { AuftragsPositionDO.class};
 
   private static final String[] ADDITIONAL_SEARCH_FIELDS = new String[] { "contactPerson.username", "contactPerson.firstname",
@@ -85,9 +107,11 @@ public class AuftragDao extends BaseDao<AuftragDO>
 
   private ProjektDao projektDao;
 
+  private NumberSequenceDao numberSequenceDao;
+
   private SendMail sendMail;
 
-  private Integer abgeschlossenNichtFakturiert;
+  private MenuCounterService menuCounterService;
 
   private RechnungCache rechnungCache;
 
@@ -110,6 +134,31 @@ public class AuftragDao extends BaseDao<AuftragDO>
     this.projektDao = projektDao;
   }
 
+  public void setNumberSequenceDao(final NumberSequenceDao numberSequenceDao)
+  {
+    this.numberSequenceDao = numberSequenceDao;
+  }
+
+  /**
+   * Registers the counter of closed and not invoiced orders.
+   * @param menuCounterService
+   */
+  public void setMenuCounterService(final MenuCounterService menuCounterService)
+  {
+    this.menuCounterService = menuCounterService;
+    menuCounterService.register(MENU_COUNTER_ID, new MenuCounterService.Counter() {
+      public boolean isUserSpecific()
+      {
+        return false;
+      }
+
+      public int count(final Integer userId)
+      {
+        return getAbgeschlossenNichtFakturiertAnzahl();
+      }
+    }, AuftragDO.class);
+  }
+
   public void setRechnungCache(final RechnungCache rechnungCache)
   {
     this.rechnungCache = rechnungCache;
@@ -184,12 +233,133 @@ public class AuftragDao extends BaseDao<AuftragDO>
     return result;
   }
 
+  /**
+   * The net sums of the positions are summed up by the data base (grouped by order and position status) and the invoiced sums are got
+   * from the {@link RechnungCache} instead of iterating over all positions.
+   * @param list
+   * @return The statistics of the given orders.
+   * @see #buildStatistikInMemory(List)
+   */
   public AuftragsStatistik buildStatistik(final List<AuftragDO> list)
   {
-    final AuftragsStatistik stats = new AuftragsStatistik();
     if (list == null) {
+      return new AuftragsStatistik();
+    }
+    final AuftragsStatistik stats = buildStatistikByDataBase(list);
+    if (stats != null) {
       return stats;
     }
+    return buildStatistikInMemory(list);
+  }
+
+  /**
+   * @return The statistics or null if the sums couldn't be summed up by the data base.
+   */
+  private AuftragsStatistik buildStatistikByDataBase(final List<AuftragDO> list)
+  {
+    final List<Integer> ids = StatistikQueryHelper.getIds(list);
+    if (ids == null) {
+      return null;
+    }
+    final List<Object[]> rows = StatistikQueryHelper.find(getHibernateTemplate(), STATISTIK_QUERY, ids);
+    if (rows == null) {
+      return null;
+    }
+    // Net sums per order: [0] all positions except the not ordered ones, [1] ordered positions, [2] closed positions.
+    final Map<Integer, BigDecimal[]> sumsMap = new HashMap<Integer, BigDecimal[]>();
+    for (final Object[] row : rows) {
+      final AuftragsPositionsStatus status = (AuftragsPositionsStatus) row[1];
+      final BigDecimal netto = StatistikQueryHelper.toBigDecimal(row[2]);
+      final BigDecimal[] sums = getSums(sumsMap, (Integer) row[0]);
+      if (status != AuftragsPositionsStatus.NICHT_BEAUFTRAGT) {
+        sums[0] = sums[0].add(netto);
+      }
+      if (status != null
+          && status.isIn(AuftragsPositionsStatus.ABGESCHLOSSEN, AuftragsPositionsStatus.BEAUFTRAGT,
+              AuftragsPositionsStatus.BEAUFTRAGTE_OPTION) == true) {
+        sums[1] = sums[1].add(netto);
+      }
+      if (status == AuftragsPositionsStatus.ABGESCHLOSSEN) {
+        sums[2] = sums[2].add(netto);
+      }
+    }
+    final Map<Integer, Set<Short>> closedPositionsMap = getClosedPositionNumbers(list);
+    if (closedPositionsMap == null) {
+      return null;
+    }
+    final AuftragsStatistik stats = new AuftragsStatistik();
+    for (final AuftragDO auftrag : list) {
+      final BigDecimal[] sums = getSums(sumsMap, auftrag.getId());
+      final Set<RechnungsPositionVO> invoicePositions = rechnungCache.getRechnungsPositionVOSetByAuftragId(auftrag.getId());
+      // The sum to invoice is only used for closed and not completely invoiced orders (the closed positions are only got for them).
+      BigDecimal zuFakturieren = sums[2];
+      final Set<Short> closedPositions = closedPositionsMap.get(auftrag.getId());
+      if (closedPositions != null && invoicePositions != null) {
+        for (final RechnungsPositionVO invoicePosition : invoicePositions) {
+          if (closedPositions.contains(invoicePosition.getAuftragsPositionNummer()) == true) {
+            zuFakturieren = zuFakturieren.subtract(invoicePosition.getNettoSumme());
+          }
+        }
+      }
+      stats.add(auftrag.getAuftragsStatus(), auftrag.isCompletelyInvoiced(), sums[0], sums[1], zuFakturieren,
+          RechnungDao.getNettoSumme(invoicePositions));
+    }
+    return stats;
+  }
+
+  private static BigDecimal[] getSums(final Map<Integer, BigDecimal[]> sumsMap, final Integer auftragId)
+  {
+    BigDecimal[] sums = sumsMap.get(auftragId);
+    if (sums == null) {
+      sums = new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+      sumsMap.put(auftragId, sums);
+    }
+    return sums;
+  }
+
+  /**
+   * @return The numbers of the closed positions of all closed and not completely invoiced orders of the given list or null if the query
+   *         failed.
+   */
+  private Map<Integer, Set<Short>> getClosedPositionNumbers(final List<AuftragDO> list)
+  {
+    final List<Integer> ids = new ArrayList<Integer>();
+    for (final AuftragDO auftrag : list) {
+      if (auftrag.getAuftragsStatus() == AuftragsStatus.ABGESCHLOSSEN && auftrag.isCompletelyInvoiced() == false) {
+        ids.add(auftrag.getId());
+      }
+    }
+    final Map<Integer, Set<Short>> result = new HashMap<Integer, Set<Short>>();
+    if (ids.isEmpty() == true) {
+      return result;
+    }
+    final List<Object[]> rows = StatistikQueryHelper.find(getHibernateTemplate(), POSITION_STATUS_QUERY, ids);
+    if (rows == null) {
+      return null;
+    }
+    for (final Object[] row : rows) {
+      if (row[2] != AuftragsPositionsStatus.ABGESCHLOSSEN) {
+        continue;
+      }
+      Set<Short> set = result.get(row[0]);
+      if (set == null) {
+        set = new HashSet<Short>();
+        result.put((Integer) row[0], set);
+      }
+      set.add((Short) row[1]);
+    }
+    return result;
+  }
+
+  /**
+   * Calculates the statistics by iterating over all positions of the given orders. Used as fallback if the sums can't be summed up by the
+   * data base.
+   * @param list
+   * @return The statistics of the given orders.
+   */
+  AuftragsStatistik buildStatistikInMemory(final List<AuftragDO> list)
+  {
+    final AuftragsStatistik stats = new AuftragsStatistik();
     for (final AuftragDO auftrag : list) {
       calculateInvoicedSum(auftrag);
       stats.add(auftrag);
@@ -309,17 +479,18 @@ public class AuftragDao extends BaseDao<AuftragDO>
     return list.get(0).getPosition(positionNummer);
   }
 
-  public synchronized int getAbgeschlossenNichtFakturiertAnzahl()
+  /**
+   * Counts the orders with {@link AuftragDO#isClosedNotInvoiced()} by the data base. The result isn't cached, the menu displays the value
+   * computed in background by the {@link MenuCounterService}.
+   * @return Number of closed and not completely invoiced orders.
+   */
+  public int getAbgeschlossenNichtFakturiertAnzahl()
   {
-    if (abgeschlossenNichtFakturiert != null) {
-      return abgeschlossenNichtFakturiert;
-    }
-    final AuftragFilter filter = new AuftragFilter();
-    filter.setListType(AuftragFilter.FILTER_ABGESCHLOSSEN_NF);
     try {
-      final List<AuftragDO> list = getList(filter, false);
-      abgeschlossenNichtFakturiert = list != null ? list.size() : 0;
-      return abgeschlossenNichtFakturiert;
+      @SuppressWarnings("unchecked")
+      final List<Number> list = getHibernateTemplate().find(
+          "select count(*) from AuftragDO t where t.deleted = false and t.closedNotInvoiced = true");
+      return CollectionUtils.isEmpty(list) == false && list.get(0) != null ? list.get(0).intValue() : 0;
     } catch (final Exception ex) {
       log.error("Exception ocurred while getting number of closed and not invoiced orders: " + ex.getMessage(), ex);
       // Exception e. g. if data-base update is needed.
@@ -355,26 +526,21 @@ public class AuftragDao extends BaseDao<AuftragDO>
       queryFilter.add(Restrictions.between("angebotsDatum", lo, hi));
     }
     queryFilter.addOrder(Order.desc("nummer"));
-    Boolean vollstaendigFakturiert = null;
+    // The invoicing status is selected via the persisted flags (see onSaveOrModify).
     if (myFilter.isShowBeauftragtNochNichtVollstaendigFakturiert() == true) {
       queryFilter.add(Restrictions.not(Restrictions.in("auftragsStatus", new AuftragsStatus[] { AuftragsStatus.ABGELEHNT,
           AuftragsStatus.ERSETZT, AuftragsStatus.GELEGT, AuftragsStatus.GROB_KALKULATION, AuftragsStatus.IN_ERSTELLUNG})));
-      vollstaendigFakturiert = false;
+      queryFilter.add(Restrictions.eq("completelyInvoiced", false));
     } else if (myFilter.isShowNochNichtVollstaendigFakturiert() == true) {
       queryFilter.add(Restrictions.not(Restrictions.in("auftragsStatus", new AuftragsStatus[] { AuftragsStatus.ABGELEHNT,
           AuftragsStatus.ERSETZT})));
-      vollstaendigFakturiert = false;
+      queryFilter.add(Restrictions.eq("completelyInvoiced", false));
     } else if (myFilter.isShowVollstaendigFakturiert() == true) {
-      vollstaendigFakturiert = true;
+      queryFilter.add(Restrictions.eq("completelyInvoiced", true));
     } else if (myFilter.isShowAbgelehnt() == true) {
       queryFilter.add(Restrictions.eq("auftragsStatus", AuftragsStatus.ABGELEHNT));
     } else if (myFilter.isShowAbgeschlossenNichtFakturiert() == true) {
-      queryFilter.createAlias("positionen", "position").add(
-          Restrictions.or(
-              Restrictions.eq("auftragsStatus", AuftragsStatus.ABGESCHLOSSEN),
-              Restrictions.and(Restrictions.eq("position.status", AuftragsPositionsStatus.ABGESCHLOSSEN),
-                  Restrictions.eq("position.vollstaendigFakturiert", false))));
-      vollstaendigFakturiert = false; // Und noch nicht fakturiert.
+      queryFilter.add(Restrictions.eq("closedNotInvoiced", true));
     } else if (myFilter.isShowAkquise() == true) {
       queryFilter.add(Restrictions.in("auftragsStatus", new AuftragsStatus[] { AuftragsStatus.GELEGT, AuftragsStatus.IN_ERSTELLUNG,
           AuftragsStatus.GROB_KALKULATION}));
@@ -384,40 +550,17 @@ public class AuftragDao extends BaseDao<AuftragDO>
     } else if (myFilter.isShowErsetzt() == true) {
       queryFilter.add(Restrictions.eq("auftragsStatus", AuftragsStatus.ERSETZT));
     }
+    if (myFilter.getAuftragsPositionsArt() != null) {
+      final DetachedCriteria positions = DetachedCriteria.forClass(AuftragsPositionDO.class)
+          .add(Restrictions.eq("art", myFilter.getAuftragsPositionsArt())).setProjection(Projections.property("auftrag.id"));
+      queryFilter.add(Subqueries.propertyIn("id", positions));
+    }
     final List<AuftragDO> list;
     if (checkAccess == true) {
       list = getList(queryFilter);
     } else {
       list = internalGetList(queryFilter);
     }
-    if (vollstaendigFakturiert != null || myFilter.getAuftragsPositionsArt() != null) {
-      final Boolean fakturiert = vollstaendigFakturiert;
-      final AuftragFilter fil = myFilter;
-      CollectionUtils.filter(list, new Predicate() {
-        public boolean evaluate(final Object object)
-        {
-          final AuftragDO auftrag = (AuftragDO) object;
-          if (fil.getAuftragsPositionsArt() != null) {
-            boolean match = false;
-            if (CollectionUtils.isNotEmpty(auftrag.getPositionen()) == true) {
-              for (final AuftragsPositionDO position : auftrag.getPositionen()) {
-                if (fil.getAuftragsPositionsArt() == position.getArt()) {
-                  match = true;
-                  break;
-                }
-              }
-            }
-            if (match == false) {
-              return false;
-            }
-          }
-          if (fakturiert != null) {
-            return auftrag.isVollstaendigFakturiert() == fakturiert;
-          }
-          return true;
-        }
-      });
-    }
     return list;
   }
 
@@ -430,8 +573,7 @@ public class AuftragDao extends BaseDao<AuftragDO>
     }
     if (obj.getId() == null) {
       // Neuer Auftrag/Angebot
-      final Integer next = getNextNumber(obj);
-      if (next.intValue() != obj.getNummer().intValue()) {
+      if (numberSequenceDao.reserveNumber(NUMBER_SEQUENCE, obj.getNummer()) == false) {
         throw new UserException("fibu.auftrag.error.nummerIstNichtFortlaufend");
       }
     } else {
@@ -440,6 +582,9 @@ public class AuftragDao extends BaseDao<AuftragDO>
       if (list != null && list.size() > 0) {
         throw new UserException("fibu.auftrag.error.nummerBereitsVergeben");
       }
+      if (obj.getNummer() >= numberSequenceDao.getNextNumber(NUMBER_SEQUENCE)) {
+        numberSequenceDao.numberUsed(NUMBER_SEQUENCE, obj.getNummer());
+      }
     }
     if (CollectionUtils.isEmpty(obj.getPositionen()) == true) {
       throw new UserException("fibu.auftrag.error.auftragHatKeinePositionen");
@@ -459,7 +604,8 @@ public class AuftragDao extends BaseDao<AuftragDO>
         position.checkVollstaendigFakturiert();
       }
     }
-    abgeschlossenNichtFakturiert = null;
+    obj.setCompletelyInvoiced(obj.isVollstaendigFakturiert());
+    obj.setClosedNotInvoiced(obj.isAbgeschlossenUndNichtVollstaendigFakturiert());
     final String uiStatusAsXml = XmlObjectWriter.writeAsXml(obj.getUiStatus());
     obj.setUiStatusAsXml(uiStatusAsXml);
   }
@@ -468,9 +614,15 @@ public class AuftragDao extends BaseDao<AuftragDO>
   protected void afterSaveOrModify(final AuftragDO obj)
   {
     super.afterSaveOrModify(obj);
+    if (menuCounterService != null) {
+      menuCounterService.setExpired(MENU_COUNTER_ID);
+    }
     if (taskTree != null) {
       taskTree.refreshOrderPositionReferences();
     }
+    if (rechnungCache != null) {
+      rechnungCache.setAuftragDirty(obj.getId()); // The numbers of the order positions may be changed.
+    }
   }
 
   @Override
@@ -548,12 +700,12 @@ public class AuftragDao extends BaseDao<AuftragDO>
   }
 
   /**
-   * Gets the highest Auftragsnummer.
+   * Gets the next Auftragsnummer of the number sequence (without reserving it, the number is reserved on save).
    * @param auftrag wird benötigt, damit geschaut werden kann, ob dieser Auftrag ggf. schon existiert. Wenn er schon eine Nummer hatte, so
    *          kann verhindert werden, dass er eine nächst höhere Nummer bekommt. Ein solcher Auftrag bekommt die alte Nummer wieder
    *          zugeordnet.
+   * @see NumberSequenceDao#getNextNumber(NumberSequence)
    */
-  @SuppressWarnings("unchecked")
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public Integer getNextNumber(final AuftragDO auftrag)
   {
@@ -564,48 +716,24 @@ public class AuftragDao extends BaseDao<AuftragDO>
         return orig.getNummer();
       }
     }
-    final List<Integer> list = getSession().createQuery("select max(t.nummer) from AuftragDO t").list();
-    Validate.notNull(list);
-    if (list.size() == 0 || list.get(0) == null) {
-      log.info("First entry of AuftragDO");
-      return START_NUMBER;
-    }
-    Integer number = list.get(0);
-    return ++number;
+    return numberSequenceDao.getNextNumber(NUMBER_SEQUENCE);
   }
 
   /**
-   * Gets history entries of super and adds all history entries of the AuftragsPositionDO childs.
-   * @see org.projectforge.core.BaseDao#getDisplayHistoryEntries(org.projectforge.core.ExtendedBaseDO)
+   * The history entries of the AuftragsPositionDO childs are displayed in the history of the order.
+   * @see org.projectforge.core.BaseDao#getHistoryChildObjects(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
-  public List<DisplayHistoryEntry> getDisplayHistoryEntries(final AuftragDO obj)
+  protected List<HistoryChildObject> getHistoryChildObjects(final AuftragDO obj)
   {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
-    if (hasLoggedInUserHistoryAccess(obj, false) == false) {
-      return list;
+    if (CollectionUtils.isEmpty(obj.getPositionen()) == true) {
+      return null;
     }
-    if (CollectionUtils.isNotEmpty(obj.getPositionen()) == true) {
-      for (final AuftragsPositionDO position : obj.getPositionen()) {
-        final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(position);
-        for (final DisplayHistoryEntry entry : entries) {
-          final String propertyName = entry.getPropertyName();
-          if (propertyName != null) {
-            entry.setPropertyName("#" + position.getNumber() + ":" + entry.getPropertyName()); // Prepend number of positon.
-          } else {
-            entry.setPropertyName("#" + position.getNumber());
-          }
-        }
-        list.addAll(entries);
-      }
+    final List<HistoryChildObject> childs = new ArrayList<HistoryChildObject>();
+    for (final AuftragsPositionDO position : obj.getPositionen()) {
+      childs.add(new HistoryChildObject("#" + position.getNumber(), position)); // Prepend number of positon.
     }
-    Collections.sort(list, new Comparator<DisplayHistoryEntry>() {
-      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
-      {
-        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
-      }
-    });
-    return list;
+    return childs;
   }
 
   @Override
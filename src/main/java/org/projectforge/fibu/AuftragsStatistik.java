@@ -61,24 +61,38 @@ public class AuftragsStatistik implements Serializable
 
   public void add(final AuftragDO auftrag)
   {
-    final BigDecimal netto = auftrag.getNettoSumme();
-    if (auftrag.getAuftragsStatus() != null) {
-      if (auftrag.getAuftragsStatus().isIn(AuftragsStatus.GROB_KALKULATION, AuftragsStatus.IN_ERSTELLUNG, AuftragsStatus.GELEGT) == true) {
+    add(auftrag.getAuftragsStatus(), auftrag.isVollstaendigFakturiert(), auftrag.getNettoSumme(), auftrag.getBeauftragtNettoSumme(),
+        auftrag.getZuFakturierenSum(), auftrag.getFakturiertSum());
+  }
+
+  /**
+   * Adds an order with the given sums of its positions (e. g. summed up by the data base), the positions of the order aren't used.
+   * @param auftragsStatus
+   * @param vollstaendigFakturiert
+   * @param netto See {@link AuftragDO#getNettoSumme()}.
+   * @param beauftragtNetto See {@link AuftragDO#getBeauftragtNettoSumme()}.
+   * @param zuFakturieren See {@link AuftragDO#getZuFakturierenSum()}.
+   * @param invoiced See {@link AuftragDO#getFakturiertSum()}.
+   */
+  public void add(final AuftragsStatus auftragsStatus, final boolean vollstaendigFakturiert, final BigDecimal netto,
+      final BigDecimal beauftragtNetto, final BigDecimal zuFakturieren, final BigDecimal invoiced)
+  {
+    if (auftragsStatus != null) {
+      if (auftragsStatus.isIn(AuftragsStatus.GROB_KALKULATION, AuftragsStatus.IN_ERSTELLUNG, AuftragsStatus.GELEGT) == true) {
         akquiseSum = add(akquiseSum, netto);
         counterAkquise++;
-      } else if (auftrag.getAuftragsStatus().isIn(AuftragsStatus.LOI, AuftragsStatus.BEAUFTRAGT, AuftragsStatus.ESKALATION) == true) {
-        beauftragtSum = add(beauftragtSum, auftrag.getBeauftragtNettoSumme());
+      } else if (auftragsStatus.isIn(AuftragsStatus.LOI, AuftragsStatus.BEAUFTRAGT, AuftragsStatus.ESKALATION) == true) {
+        beauftragtSum = add(beauftragtSum, beauftragtNetto);
         counterBeauftragt++;
-      } else if (auftrag.getAuftragsStatus().isIn(AuftragsStatus.ABGESCHLOSSEN) == true && auftrag.isVollstaendigFakturiert() == false) {
-        zuFakturierenSum = add(zuFakturierenSum, auftrag.getZuFakturierenSum());
+      } else if (auftragsStatus.isIn(AuftragsStatus.ABGESCHLOSSEN) == true && vollstaendigFakturiert == false) {
+        zuFakturierenSum = add(zuFakturierenSum, zuFakturieren);
         counterZuFakturieren++;
       }
     }
-    final BigDecimal invoiced = auftrag.getFakturiertSum();
     if (NumberHelper.isNotZero(invoiced) == true) {
       fakturiertSum = add(fakturiertSum, invoiced);
       counterFakturiert++;
-    } else if (auftrag.isVollstaendigFakturiert() == true) {
+    } else if (vollstaendigFakturiert == true) {
       counterFakturiert++;
     }
     counter++;
@@ -155,10 +155,9 @@ public class EingangsrechnungDO extends AbstractRechnungDO<EingangsrechnungsPosi
    * (this.status == EingangsrechnungStatus.BEZAHLT && this.bezahlDatum != null && this.zahlBetrag != null)
    */
   @Override
-  @Transient
-  public boolean isBezahlt()
+  boolean isBezahlt(final BigDecimal netSum)
   {
-    if (this.getNetSum() == null || this.getNetSum().compareTo(BigDecimal.ZERO) == 0) {
+    if (netSum == null || netSum.compareTo(BigDecimal.ZERO) == 0) {
       return true;
     }
     return (this.bezahlDatum != null && this.zahlBetrag != null);
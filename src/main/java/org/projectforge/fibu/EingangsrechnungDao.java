@@ -26,7 +26,6 @@ package org.projectforge.fibu;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
@@ -35,7 +34,7 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
-import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.HistoryChildObject;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
 import org.projectforge.database.SQLHelper;
@@ -57,10 +56,13 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
 
   private KontoDao kontoDao;
 
+  private PaymentStatisticsCache paymentStatisticsCache;
+
   public EingangsrechnungDao()
   {
     super(EingangsrechnungDO.class);
     userRightId = USER_RIGHT_ID;
+    enableAutocompletionIndex("kreditor");
   }
 
   /**
@@ -74,12 +76,34 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
     return SQLHelper.getYears(list);
   }
 
+  /**
+   * The net and gross sums are summed up by the data base (grouped by invoice) instead of iterating over all positions.
+   * @param list
+   * @return The statistics of the given invoices.
+   * @see #buildStatistikInMemory(List)
+   */
   public EingangsrechnungsStatistik buildStatistik(final List<EingangsrechnungDO> list)
   {
     final EingangsrechnungsStatistik stats = new EingangsrechnungsStatistik();
     if (list == null) {
       return stats;
     }
+    if (StatistikQueryHelper.addRechnungen(stats, list, getHibernateTemplate(), "EingangsrechnungsPositionDO",
+        "eingangsrechnung") == true) {
+      return stats;
+    }
+    return buildStatistikInMemory(list);
+  }
+
+  /**
+   * Calculates the statistics by iterating over all positions of the given invoices. Used as fallback if the sums can't be summed up by
+   * the data base.
+   * @param list
+   * @return The statistics of the given invoices.
+   */
+  EingangsrechnungsStatistik buildStatistikInMemory(final List<EingangsrechnungDO> list)
+  {
+    final EingangsrechnungsStatistik stats = new EingangsrechnungsStatistik();
     for (final EingangsrechnungDO rechnung : list) {
       stats.add(rechnung);
     }
@@ -126,6 +150,14 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
     RechnungDao.writeUiStatusToXml(obj);
   }
 
+  @Override
+  protected void afterSaveOrModify(final EingangsrechnungDO obj)
+  {
+    if (paymentStatisticsCache != null) {
+      paymentStatisticsCache.setEingangsrechnungDirty(obj.getId());
+    }
+  }
+
   @Override
   protected void afterLoad(final EingangsrechnungDO obj)
   {
@@ -138,15 +170,15 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
     return ADDITIONAL_SEARCH_FIELDS;
   }
 
+  /**
+   * Restricts the invoices by the given period (from and to date or year and month). The list type (paid, unpaid etc.) isn't part of the
+   * query filter.
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
   @Override
-  public List<EingangsrechnungDO> getList(final BaseSearchFilter filter)
+  protected QueryFilter createQueryFilter(final BaseSearchFilter filter)
   {
-    final RechnungFilter myFilter;
-    if (filter instanceof RechnungFilter) {
-      myFilter = (RechnungFilter) filter;
-    } else {
-      myFilter = new RechnungFilter(filter);
-    }
+    final RechnungFilter myFilter = filter instanceof RechnungFilter ? (RechnungFilter) filter : new RechnungFilter(filter);
     final QueryFilter queryFilter = new QueryFilter(myFilter);
     if (myFilter.getFromDate() != null || myFilter.getToDate() != null) {
       if (myFilter.getFromDate() != null && myFilter.getToDate() != null) {
@@ -159,6 +191,19 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
     } else {
       queryFilter.setYearAndMonth("datum", myFilter.getYear(), myFilter.getMonth());
     }
+    return queryFilter;
+  }
+
+  @Override
+  public List<EingangsrechnungDO> getList(final BaseSearchFilter filter)
+  {
+    final RechnungFilter myFilter;
+    if (filter instanceof RechnungFilter) {
+      myFilter = (RechnungFilter) filter;
+    } else {
+      myFilter = new RechnungFilter(filter);
+    }
+    final QueryFilter queryFilter = createQueryFilter(myFilter);
     queryFilter.addOrder(Order.desc("datum"));
     queryFilter.addOrder(Order.desc("kreditor"));
     final List<EingangsrechnungDO> list = getList(queryFilter);
@@ -187,52 +232,26 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
   }
 
   /**
-   * Gets history entries of super and adds all history entries of the EingangsrechnungsPositionDO childs.
-   * @see org.projectforge.core.BaseDao#getDisplayHistoryEntries(org.projectforge.core.ExtendedBaseDO)
+   * The history entries of the EingangsrechnungsPositionDO childs (and of their KostZuweisungDO childs) are displayed in the history of the invoice.
+   * @see org.projectforge.core.BaseDao#getHistoryChildObjects(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
-  public List<DisplayHistoryEntry> getDisplayHistoryEntries(final EingangsrechnungDO obj)
+  protected List<HistoryChildObject> getHistoryChildObjects(final EingangsrechnungDO obj)
   {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
-    if (hasLoggedInUserHistoryAccess(obj, false) == false) {
-      return list;
+    if (CollectionUtils.isEmpty(obj.getPositionen()) == true) {
+      return null;
     }
-    if (CollectionUtils.isNotEmpty(obj.getPositionen()) == true) {
-      for (final EingangsrechnungsPositionDO position : obj.getPositionen()) {
-        final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(position);
-        for (final DisplayHistoryEntry entry : entries) {
-          final String propertyName = entry.getPropertyName();
-          if (propertyName != null) {
-            entry.setPropertyName("#" + position.getNumber() + ":" + entry.getPropertyName()); // Prepend number of positon.
-          } else {
-            entry.setPropertyName("#" + position.getNumber());
-          }
-        }
-        list.addAll(entries);
-        if (CollectionUtils.isNotEmpty(position.getKostZuweisungen()) == true) {
-          for (final KostZuweisungDO zuweisung : position.getKostZuweisungen()) {
-            final List<DisplayHistoryEntry> kostEntries = internalGetDisplayHistoryEntries(zuweisung);
-            for (final DisplayHistoryEntry entry : kostEntries) {
-              final String propertyName = entry.getPropertyName();
-              if (propertyName != null) {
-                entry.setPropertyName("#" + position.getNumber() + ".kost#" + zuweisung.getIndex() + ":" + entry.getPropertyName()); // Prepend
-                // number of positon and index of zuweisung.
-              } else {
-                entry.setPropertyName("#" + position.getNumber() + ".kost#" + zuweisung.getIndex());
-              }
-            }
-            list.addAll(kostEntries);
-          }
+    final List<HistoryChildObject> childs = new ArrayList<HistoryChildObject>();
+    for (final EingangsrechnungsPositionDO position : obj.getPositionen()) {
+      childs.add(new HistoryChildObject("#" + position.getNumber(), position)); // Prepend number of positon.
+      if (CollectionUtils.isNotEmpty(position.getKostZuweisungen()) == true) {
+        for (final KostZuweisungDO zuweisung : position.getKostZuweisungen()) {
+          // Prepend number of positon and index of zuweisung:
+          childs.add(new HistoryChildObject("#" + position.getNumber() + ".kost#" + zuweisung.getIndex(), zuweisung));
         }
       }
     }
-    Collections.sort(list, new Comparator<DisplayHistoryEntry>() {
-      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
-      {
-        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
-      }
-    });
-    return list;
+    return childs;
   }
 
   @Override
@@ -277,6 +296,11 @@ public class EingangsrechnungDao extends BaseDao<EingangsrechnungDO>
     this.kontoDao = kontoDao;
   }
 
+  public void setPaymentStatisticsCache(final PaymentStatisticsCache paymentStatisticsCache)
+  {
+    this.paymentStatisticsCache = paymentStatisticsCache;
+  }
+
 
   /**
    * @see org.projectforge.core.BaseDao#useOwnCriteriaCacheRegion()
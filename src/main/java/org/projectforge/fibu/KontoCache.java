@@ -31,34 +31,73 @@ import org.apache.commons.collections.MapUtils;
 import org.apache.log4j.Logger;
 import org.hibernate.LazyInitializationException;
 import org.projectforge.common.AbstractCache;
+import org.projectforge.core.CacheChangeListener;
+import org.projectforge.core.CacheChangeLog;
 import org.springframework.orm.hibernate3.HibernateTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
- * Caches the DATEV accounts.
+ * Caches the DATEV accounts. Modified accounts are updated by {@link KontoDao} (and for modifications of other ProjectForge instances via
+ * {@link CacheChangeLog}), the full reload after the expire time remains as consistency check.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class KontoCache extends AbstractCache
+public class KontoCache extends AbstractCache implements CacheChangeListener
 {
   private static Logger log = Logger.getLogger(KontoCache.class);
 
   private HibernateTemplate hibernateTemplate;
 
-  /** The key is the order id. */
+  /** The key is the account id, includes the deleted accounts. */
   private Map<Integer, KontoDO> accountMapById;
 
+  /** The key is the account number, includes the deleted accounts (if no account with the same number exists which isn't deleted). */
+  private Map<Integer, KontoDO> accountMapByNummer;
+
+  /**
+   * @return true if no account exists (which isn't deleted).
+   */
   public boolean isEmpty()
   {
     checkRefresh();
-    return MapUtils.isEmpty(accountMapById);
+    if (MapUtils.isEmpty(accountMapById) == true) {
+      return true;
+    }
+    for (final KontoDO konto : accountMapById.values()) {
+      if (konto.isDeleted() == false) {
+        return false;
+      }
+    }
+    return true;
   }
 
+  /**
+   * @param id
+   * @return The account or null, if not found or deleted.
+   */
   public KontoDO getKonto(final Integer id)
   {
     if (id == null) {
       return null;
     }
     checkRefresh();
-    return accountMapById.get(id);
+    final KontoDO konto = accountMapById.get(id);
+    return konto != null && konto.isDeleted() == false ? konto : null;
+  }
+
+  /**
+   * Gets the account by its number without any data base access, e. g. for resolving the accounts of thousands of imported DATEV records.
+   * As the former data base lookup, deleted accounts are found too (the not deleted account is preferred if the number is used twice).
+   * @param nummer The account number.
+   * @return The account or null, if not found.
+   */
+  public KontoDO getKontoByNummer(final Integer nummer)
+  {
+    if (nummer == null) {
+      return null;
+    }
+    checkRefresh();
+    return accountMapByNummer.get(nummer);
   }
 
   /**
@@ -128,6 +167,75 @@ public class KontoCache extends AbstractCache
     return konto;
   }
 
+  /**
+   * Updates the given account. The maps are replaced (copy on write), so readers aren't affected.<br/>
+   * Inside a transaction the cache is updated after the commit, so other threads don't see uncommitted (or rolled back) modifications.
+   * @param konto
+   */
+  void updateKonto(final KontoDO konto)
+  {
+    final Integer id = konto.getId();
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          if (status == STATUS_COMMITTED) {
+            updateKonto(id, konto);
+          }
+        }
+      });
+    } else {
+      updateKonto(id, konto);
+    }
+  }
+
+  /**
+   * @param id
+   * @param konto The account or null if removed from the data base.
+   */
+  private synchronized void updateKonto(final Integer id, final KontoDO konto)
+  {
+    checkRefresh();
+    if (accountMapById == null || id == null) {
+      return;
+    }
+    final Map<Integer, KontoDO> map = new HashMap<Integer, KontoDO>(accountMapById);
+    final Map<Integer, KontoDO> mapByNummer = new HashMap<Integer, KontoDO>(accountMapByNummer);
+    final KontoDO old = map.remove(id);
+    if (konto != null) {
+      map.put(id, konto);
+    }
+    if (old != null && old.getNummer() != null && mapByNummer.get(old.getNummer()) == old) {
+      // Another (e. g. deleted) account with the same number may exist:
+      mapByNummer.remove(old.getNummer());
+      for (final KontoDO other : map.values()) {
+        putByNummer(mapByNummer, other, old.getNummer());
+      }
+    }
+    if (konto != null) {
+      putByNummer(mapByNummer, konto, null);
+    }
+    this.accountMapById = map;
+    this.accountMapByNummer = mapByNummer;
+  }
+
+  /**
+   * Puts the account if no account with the same number is mapped yet or if the mapped account is deleted and the given one not.
+   * @param nummer If given, only accounts with this number are put.
+   */
+  private static void putByNummer(final Map<Integer, KontoDO> mapByNummer, final KontoDO konto, final Integer nummer)
+  {
+    if (konto.getNummer() == null || nummer != null && nummer.equals(konto.getNummer()) == false) {
+      return;
+    }
+    final KontoDO existing = mapByNummer.get(konto.getNummer());
+    if (existing == null || existing.getId().equals(konto.getId()) == true
+        || existing.isDeleted() == true && konto.isDeleted() == false) {
+      mapByNummer.put(konto.getNummer(), konto);
+    }
+  }
+
   /**
    * This method will be called by CacheHelper and is synchronized via getData();
    */
@@ -138,11 +246,14 @@ public class KontoCache extends AbstractCache
     log.info("Initializing KontoCache ...");
     // This method must not be synchronized because it works with a new copy of maps.
     final Map<Integer, KontoDO> map = new HashMap<Integer, KontoDO>();
-    final List<KontoDO> list = hibernateTemplate.find("from KontoDO t where deleted=false");
+    final Map<Integer, KontoDO> mapByNummer = new HashMap<Integer, KontoDO>();
+    final List<KontoDO> list = hibernateTemplate.find("from KontoDO t");
     for (final KontoDO konto : list) {
       map.put(konto.getId(), konto);
+      putByNummer(mapByNummer, konto, null);
     }
     this.accountMapById = map;
+    this.accountMapByNummer = mapByNummer;
     log.info("Initializing of KontoCache done.");
   }
 
@@ -150,4 +261,25 @@ public class KontoCache extends AbstractCache
   {
     this.hibernateTemplate = hibernateTemplate;
   }
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * Updates the accounts modified by other ProjectForge instances.
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    if (entityClass != KontoDO.class) {
+      return;
+    }
+    if (id == null) {
+      setExpired();
+      return;
+    }
+    updateKonto(id, (KontoDO) hibernateTemplate.get(KontoDO.class, id));
+  }
 }
@@ -47,7 +47,7 @@ public class KontoDao extends BaseDao<KontoDO>
   @Override
   protected void afterSaveOrModify(final KontoDO obj)
   {
-    kontoCache.refresh();
+    kontoCache.updateKonto(obj);
   }
 
   @SuppressWarnings("unchecked")
@@ -85,4 +85,14 @@ public class KontoDao extends BaseDao<KontoDO>
   {
     this.kontoCache = kontoCache;
   }
+
+  /**
+   * Accounts are sorted and paged by the data base (no object dependent select access).
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported()
+   */
+  @Override
+  protected boolean isDatabasePagingSupported()
+  {
+    return true;
+  }
 }
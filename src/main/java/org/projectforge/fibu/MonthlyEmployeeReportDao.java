@@ -23,13 +23,31 @@
 
 package org.projectforge.fibu;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.projectforge.common.DateHolder;
+import org.projectforge.common.MyBeanComparator;
+import org.projectforge.common.StringHelper;
+import org.projectforge.database.ReadFromReplica;
+import org.projectforge.fibu.kost.Kost1DO;
+import org.projectforge.fibu.kost.Kost1Dao;
+import org.projectforge.renderer.PdfBatchJob;
+import org.projectforge.renderer.PdfBatchJob.OutputFormat;
+import org.projectforge.renderer.PdfBatchRenderer;
 import org.projectforge.timesheet.TimesheetDO;
 import org.projectforge.timesheet.TimesheetDao;
 import org.projectforge.timesheet.TimesheetFilter;
+import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
+import org.projectforge.user.UserDao;
+import org.projectforge.web.calendar.DateTimeFormatter;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -38,12 +56,23 @@ import org.springframework.transaction.annotation.Transactional;
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+@ReadFromReplica
 public class MonthlyEmployeeReportDao extends HibernateDaoSupport
 {
+  public static final String PDF_STYLE_SHEET = "fo-styles/monthlyEmployeeReport-template-fo.xsl";
+
+  public static final String PDF_XML_DATA = "fo-styles/monthlyEmployeeReport2pdf.xml";
+
   private TimesheetDao timesheetDao;
 
   private EmployeeDao employeeDao;
 
+  private Kost1Dao kost1Dao;
+
+  private UserDao userDao;
+
+  private PdfBatchRenderer pdfBatchRenderer;
+
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public MonthlyEmployeeReport getReport(int year, int month, PFUserDO user)
   {
@@ -73,6 +102,120 @@ public class MonthlyEmployeeReportDao extends HibernateDaoSupport
     return report;
   }
 
+  /**
+   * @param year
+   * @param month 0-based.
+   * @param employee
+   * @return The file name of the PDF export of the monthly employee report, e. g. MonthlyEmployeeReport_Reinhard_2013-06.pdf.
+   */
+  public String getPdfFilename(final int year, final int month, final PFUserDO employee)
+  {
+    final StringBuffer buf = new StringBuffer();
+    buf.append(PFUserContext.getLocalizedString("menu.monthlyEmployeeReport.fileprefix")).append("_");
+    buf.append(employee.getLastname()).append("_").append(year).append("-").append(StringHelper.format2DigitNumber(month + 1))
+    .append(".pdf");
+    return buf.toString();
+  }
+
+  /**
+   * Gets the report and the localized labels for rendering the monthly employee report with {@link #PDF_STYLE_SHEET} and
+   * {@link #PDF_XML_DATA}.
+   * @param year
+   * @param month 0-based.
+   * @param employee
+   * @return The data for {@link org.projectforge.renderer.PdfRenderer#render(String, String, Map)}.
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public Map<String, Object> getPdfData(final int year, final int month, final PFUserDO employee)
+  {
+    final MonthlyEmployeeReport report = getReport(year, month, employee);
+    final Map<String, Object> data = new HashMap<String, Object>();
+    data.put("systemDate", DateTimeFormatter.instance().getFormattedDateTime(new Date()));
+    data.put("title", PFUserContext.getLocalizedString("menu.monthlyEmployeeReport"));
+    data.put("employeeLabel", PFUserContext.getLocalizedString("timesheet.user"));
+    data.put("employee", employee.getFullname());
+    data.put("monthLabel", PFUserContext.getLocalizedString("calendar.month"));
+    data.put("year", year);
+    data.put("month", StringHelper.format2DigitNumber(month + 1));
+    data.put("workingDaysLabel", PFUserContext.getLocalizedString("fibu.common.workingDays"));
+    data.put("workingDays", report.getNumberOfWorkingDays());
+    data.put("kost1Label", PFUserContext.getLocalizedString("fibu.kost1"));
+    final Kost1DO kost1 = kost1Dao.internalGetById(report.getKost1Id());
+    data.put("kost1", kost1 != null ? kost1.getFormattedNumber() : "--");
+    data.put("kost2Label", PFUserContext.getLocalizedString("fibu.kost2"));
+    data.put("kundeLabel", PFUserContext.getLocalizedString("fibu.kunde"));
+    data.put("projektLabel", PFUserContext.getLocalizedString("fibu.projekt"));
+    data.put("kost2ArtLabel", PFUserContext.getLocalizedString("fibu.kost2.art"));
+    data.put("sumLabel", PFUserContext.getLocalizedString("sum"));
+    data.put("netSumLabel", PFUserContext.getLocalizedString("sum"));
+    data.put("totalSumLabel", PFUserContext.getLocalizedString("fibu.monthlyEmployeeReport.totalSum"));
+    data.put("report", report);
+    data.put("signatureEmployeeLabel", PFUserContext.getLocalizedString("timesheet.signatureEmployee") + ": " + employee.getFullname());
+    data.put("signatureProjectLeaderLabel", PFUserContext.getLocalizedString("timesheet.signatureProjectLeader"));
+    data.put("unbookedWorkingDaysLabel", PFUserContext.getLocalizedString("fibu.monthlyEmployeeReport.withoutTimesheets"));
+    return data;
+  }
+
+  /**
+   * @param year
+   * @param month 0-based.
+   * @return The users of all employees employed at least one day of the given month, sorted by name.
+   */
+  public List<PFUserDO> getEmployeeUsers(final int year, final int month)
+  {
+    final DateHolder dh = new DateHolder();
+    dh.setDate(year, month, 1, 0, 0, 0);
+    final Date fromDate = dh.getDate();
+    dh.setEndOfMonth();
+    final Date toDate = dh.getDate();
+    final List<PFUserDO> users = new ArrayList<PFUserDO>();
+    for (final EmployeeDO employee : employeeDao.getList(new EmployeeFilter())) {
+      if (employee.getUser() == null
+          || (employee.getEintrittsDatum() != null && employee.getEintrittsDatum().after(toDate) == true)
+          || (employee.getAustrittsDatum() != null && employee.getAustrittsDatum().before(fromDate) == true)) {
+        continue;
+      }
+      users.add(employee.getUser());
+    }
+    Collections.sort(users, new MyBeanComparator<PFUserDO>("fullname"));
+    return users;
+  }
+
+  /**
+   * Renders the monthly employee reports of the given employees in background (one document per employee).
+   * @param year
+   * @param month 0-based.
+   * @param employees
+   * @param outputFormat Zip archive of single documents or one merged PDF.
+   * @return The job for getting the progress and the result file.
+   * @see PdfBatchRenderer#getJob(String)
+   */
+  public PdfBatchJob startPdfBatch(final int year, final int month, final Collection<PFUserDO> employees, final OutputFormat outputFormat)
+  {
+    final List<PdfBatchJob.Entry> entries = new ArrayList<PdfBatchJob.Entry>(employees.size());
+    for (final PFUserDO employee : employees) {
+      final Integer userId = employee.getId();
+      final String filename = getPdfFilename(year, month, employee);
+      entries.add(new PdfBatchJob.Entry() {
+        public String getFilename()
+        {
+          return filename;
+        }
+
+        public Map<String, Object> getData()
+        {
+          return getPdfData(year, month, userDao.getById(userId));
+        }
+      });
+    }
+    final String name = PFUserContext.getLocalizedString("menu.monthlyEmployeeReport.fileprefix")
+        + "_"
+        + year
+        + "-"
+        + StringHelper.format2DigitNumber(month + 1);
+    return pdfBatchRenderer.start(name, PDF_STYLE_SHEET, PDF_XML_DATA, entries, outputFormat);
+  }
+
   public void setTimesheetDao(TimesheetDao timesheetDao)
   {
     this.timesheetDao = timesheetDao;
@@ -82,4 +225,19 @@ public class MonthlyEmployeeReportDao extends HibernateDaoSupport
   {
     this.employeeDao = employeeDao;
   }
+
+  public void setKost1Dao(final Kost1Dao kost1Dao)
+  {
+    this.kost1Dao = kost1Dao;
+  }
+
+  public void setUserDao(final UserDao userDao)
+  {
+    this.userDao = userDao;
+  }
+
+  public void setPdfBatchRenderer(final PdfBatchRenderer pdfBatchRenderer)
+  {
+    this.pdfBatchRenderer = pdfBatchRenderer;
+  }
 }
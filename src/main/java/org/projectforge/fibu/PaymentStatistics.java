@@ -0,0 +1,105 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu;
+
+import java.io.Serializable;
+
+/**
+ * Immutable aggregation of the payment times of paid invoices (e. g. of one customer), used for calculating the expected dates of payment
+ * of open invoices. Values may be added and removed, so the statistics are maintained incrementally (see {@link PaymentStatisticsCache}).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class PaymentStatistics implements Serializable
+{
+  private static final long serialVersionUID = -2719583204745935718L;
+
+  public static final PaymentStatistics EMPTY = new PaymentStatistics(0, 0, 0, 0);
+
+  private final int numberOfValues;
+
+  private final long sum;
+
+  private final long weightedSum;
+
+  private final long weightSum;
+
+  private PaymentStatistics(final int numberOfValues, final long sum, final long weightedSum, final long weightSum)
+  {
+    this.numberOfValues = numberOfValues;
+    this.sum = sum;
+    this.weightedSum = weightedSum;
+    this.weightSum = weightSum;
+  }
+
+  /**
+   * @param timeForPayment Days between date of invoice and date of payment.
+   * @param amount The weight (gross sum of the invoice).
+   * @return New statistics including the given value.
+   */
+  public PaymentStatistics add(final int timeForPayment, final int amount)
+  {
+    return new PaymentStatistics(numberOfValues + 1, sum + timeForPayment, weightedSum + (long) timeForPayment * amount,
+        weightSum + amount);
+  }
+
+  /**
+   * @param timeForPayment Days between date of invoice and date of payment.
+   * @param amount The weight (gross sum of the invoice).
+   * @return New statistics without the given (previously added) value.
+   */
+  public PaymentStatistics remove(final int timeForPayment, final int amount)
+  {
+    if (numberOfValues <= 1) {
+      return EMPTY;
+    }
+    return new PaymentStatistics(numberOfValues - 1, sum - timeForPayment, weightedSum - (long) timeForPayment * amount,
+        weightSum - amount);
+  }
+
+  public int getNumberOfValues()
+  {
+    return numberOfValues;
+  }
+
+  /**
+   * @return The mean time for payment in days.
+   */
+  public int getAverage()
+  {
+    return numberOfValues > 0 ? (int) (sum / numberOfValues) : 0;
+  }
+
+  /**
+   * @return The mean time for payment in days weighted by the amounts of the invoices. If the sum of all amounts is zero, the (not
+   *         weighted) average is returned.
+   */
+  public int getWeightedAverage()
+  {
+    if (weightSum == 0) {
+      return getAverage();
+    }
+    return (int) (weightedSum / weightSum);
+  }
+}
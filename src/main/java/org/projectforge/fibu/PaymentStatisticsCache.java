@@ -0,0 +1,422 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.projectforge.calendar.DayHolder;
+import org.projectforge.common.AbstractCache;
+import org.projectforge.core.CacheChangeListener;
+import org.projectforge.core.CacheChangeLog;
+import org.springframework.orm.hibernate3.HibernateTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Caches the payment times of the debitor and creditor invoices paid within the last year, aggregated per project, customer, account and
+ * customer or creditor text (see the KEY_* constants). Used by the liquidity forecast for calculating the expected dates of payment of
+ * the open invoices without loading all paid invoices every time.<br/>
+ * Modified invoices are marked as dirty by the daos and only these invoices are reloaded on the next access, their old values are
+ * removed from and the new ones added to the statistics. The full reload once a day moves the time window of one year.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class PaymentStatisticsCache extends AbstractCache implements CacheChangeListener
+{
+  private static Logger log = Logger.getLogger(PaymentStatisticsCache.class);
+
+  public static final String KEY_PROJECT = "project#";
+
+  public static final String KEY_CUSTOMER = "customer#";
+
+  public static final String KEY_ACCOUNT = "account#";
+
+  public static final String KEY_CUSTOMER_TEXT = "customer:";
+
+  public static final String KEY_SHORT_CUSTOMER_TEXT = "shortCustomer:";
+
+  public static final String KEY_CREDITOR_TEXT = "creditor:";
+
+  public static final String KEY_SHORT_CREDITOR_TEXT = "shortCreditor:";
+
+  /**
+   * Customer and creditor texts are additionally aggregated by their first five characters.
+   */
+  public static final int SHORT_TEXT_LENGTH = 5;
+
+  private static final String DEBITOR_QUERY = "select distinct r from RechnungDO r left join fetch r.positionen"
+      + " left join fetch r.projekt p left join fetch p.kunde left join fetch r.kunde"
+      + " where r.deleted = false and r.bezahlDatum is not null and r.datum >= :fromDate";
+
+  private static final String CREDITOR_QUERY = "select distinct r from EingangsrechnungDO r left join fetch r.positionen"
+      + " where r.deleted = false and r.bezahlDatum is not null and r.datum >= :fromDate";
+
+  private HibernateTemplate hibernateTemplate;
+
+  private KontoCache kontoCache;
+
+  /** Only invoices since this date are considered. */
+  private java.sql.Date fromDate;
+
+  private Map<String, PaymentStatistics> debitorStatistics;
+
+  private Map<String, PaymentStatistics> creditorStatistics;
+
+  /** The key is the invoice id. */
+  private Map<Integer, PaymentRecord> debitorRecords;
+
+  /** The key is the invoice id. */
+  private Map<Integer, PaymentRecord> creditorRecords;
+
+  private final Set<Integer> dirtyRechnungIds = new HashSet<Integer>();
+
+  private final Set<Integer> dirtyEingangsrechnungIds = new HashSet<Integer>();
+
+  public PaymentStatisticsCache()
+  {
+    super(TICKS_PER_HOUR * 24);
+  }
+
+  /**
+   * @return The statistics of the debitor invoices. The statistics are immutable, but the map is updated incrementally (copy it for a
+   *         consistent snapshot). An empty map, if the statistics couldn't be loaded.
+   */
+  public Map<String, PaymentStatistics> getDebitorStatistics()
+  {
+    checkRefresh();
+    return unmodifiableMap(debitorStatistics);
+  }
+
+  /**
+   * @return The statistics of the creditor invoices. An empty map, if the statistics couldn't be loaded.
+   */
+  public Map<String, PaymentStatistics> getCreditorStatistics()
+  {
+    checkRefresh();
+    return unmodifiableMap(creditorStatistics);
+  }
+
+  private static Map<String, PaymentStatistics> unmodifiableMap(final Map<String, PaymentStatistics> statistics)
+  {
+    if (statistics == null) {
+      // The first refresh failed.
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(statistics);
+  }
+
+  /**
+   * The given invoice will be reloaded on the next access (after completion of the current transaction, if any).
+   * @param rechnungId
+   */
+  void setRechnungDirty(final Integer rechnungId)
+  {
+    setDirty(dirtyRechnungIds, rechnungId);
+  }
+
+  /**
+   * The given creditor invoice will be reloaded on the next access (after completion of the current transaction, if any).
+   * @param eingangsrechnungId
+   */
+  void setEingangsrechnungDirty(final Integer eingangsrechnungId)
+  {
+    setDirty(dirtyEingangsrechnungIds, eingangsrechnungId);
+  }
+
+  private void setDirty(final Set<Integer> dirtyIds, final Integer id)
+  {
+    if (id == null) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          addDirtyId(dirtyIds, id);
+        }
+      });
+    } else {
+      addDirtyId(dirtyIds, id);
+    }
+  }
+
+  private static void addDirtyId(final Set<Integer> dirtyIds, final Integer id)
+  {
+    synchronized (dirtyIds) {
+      dirtyIds.add(id);
+    }
+  }
+
+  private static Set<Integer> getAndClearDirtyIds(final Set<Integer> dirtyIds)
+  {
+    synchronized (dirtyIds) {
+      if (dirtyIds.isEmpty() == true) {
+        return null;
+      }
+      final Set<Integer> ids = new HashSet<Integer>(dirtyIds);
+      dirtyIds.clear();
+      return ids;
+    }
+  }
+
+  /**
+   * Updates the statistics with the dirty invoices after checking the expire time.
+   * @see org.projectforge.common.AbstractCache#checkRefresh()
+   */
+  @Override
+  protected synchronized void checkRefresh()
+  {
+    super.checkRefresh();
+    if (isRefreshInProgress() == true || debitorStatistics == null) {
+      return;
+    }
+    final Set<Integer> rechnungIds = getAndClearDirtyIds(dirtyRechnungIds);
+    final Set<Integer> eingangsrechnungIds = getAndClearDirtyIds(dirtyEingangsrechnungIds);
+    try {
+      if (rechnungIds != null) {
+        final List<PaymentRecord> records = new LinkedList<PaymentRecord>();
+        for (final RechnungDO invoice : find(DEBITOR_QUERY, rechnungIds, RechnungDO.class)) {
+          records.add(createRecord(invoice));
+        }
+        update(debitorRecords, debitorStatistics, rechnungIds, records);
+      }
+      if (eingangsrechnungIds != null) {
+        final List<PaymentRecord> records = new LinkedList<PaymentRecord>();
+        for (final EingangsrechnungDO invoice : find(CREDITOR_QUERY, eingangsrechnungIds, EingangsrechnungDO.class)) {
+          records.add(createRecord(invoice));
+        }
+        update(creditorRecords, creditorStatistics, eingangsrechnungIds, records);
+      }
+    } catch (final RuntimeException ex) {
+      log.error("Error while updating the payment statistics, forcing full reload: " + ex.getMessage(), ex);
+      setExpired();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> List<T> find(final String query, final Set<Integer> ids, final Class<T> type)
+  {
+    if (ids == null) {
+      return hibernateTemplate.findByNamedParam(query, "fromDate", fromDate);
+    }
+    return hibernateTemplate.findByNamedParam(query + " and r.id in (:ids)", new String[] { "fromDate", "ids"},
+        new Object[] { fromDate, ids});
+  }
+
+  /**
+   * Removes the old values of the given invoices from the statistics and adds the new ones.
+   */
+  private static void update(final Map<Integer, PaymentRecord> recordsMap, final Map<String, PaymentStatistics> statistics,
+      final Set<Integer> ids, final List<PaymentRecord> records)
+  {
+    for (final Integer id : ids) {
+      final PaymentRecord record = recordsMap.remove(id);
+      if (record != null) {
+        for (final String key : record.keys) {
+          final PaymentStatistics values = statistics.get(key);
+          if (values != null) {
+            final PaymentStatistics newValues = values.remove(record.timeForPayment, record.amount);
+            if (newValues.getNumberOfValues() == 0) {
+              statistics.remove(key);
+            } else {
+              statistics.put(key, newValues);
+            }
+          }
+        }
+      }
+    }
+    add(recordsMap, statistics, records);
+  }
+
+  private static void add(final Map<Integer, PaymentRecord> recordsMap, final Map<String, PaymentStatistics> statistics,
+      final List<PaymentRecord> records)
+  {
+    for (final PaymentRecord record : records) {
+      if (record == null) {
+        continue;
+      }
+      recordsMap.put(record.id, record);
+      for (final String key : record.keys) {
+        PaymentStatistics values = statistics.get(key);
+        if (values == null) {
+          values = PaymentStatistics.EMPTY;
+        }
+        statistics.put(key, values.add(record.timeForPayment, record.amount));
+      }
+    }
+  }
+
+  private PaymentRecord createRecord(final RechnungDO invoice)
+  {
+    if (invoice.getDatum() == null || invoice.getBezahlDatum() == null) {
+      return null;
+    }
+    final List<String> keys = new LinkedList<String>();
+    if (invoice.getProjektId() != null) {
+      keys.add(KEY_PROJECT + invoice.getProjektId());
+    }
+    if (invoice.getKundeId() != null) {
+      keys.add(KEY_CUSTOMER + invoice.getKundeId());
+    }
+    final KontoDO account = kontoCache.getKonto(invoice);
+    if (account != null) {
+      keys.add(KEY_ACCOUNT + account.getId());
+    }
+    addTextKeys(keys, KEY_CUSTOMER_TEXT, KEY_SHORT_CUSTOMER_TEXT, invoice.getKundeText());
+    return new PaymentRecord(invoice, keys);
+  }
+
+  private PaymentRecord createRecord(final EingangsrechnungDO invoice)
+  {
+    if (invoice.getDatum() == null || invoice.getBezahlDatum() == null) {
+      return null;
+    }
+    final List<String> keys = new LinkedList<String>();
+    if (invoice.getKontoId() != null) {
+      keys.add(KEY_ACCOUNT + invoice.getKontoId());
+    }
+    addTextKeys(keys, KEY_CREDITOR_TEXT, KEY_SHORT_CREDITOR_TEXT, invoice.getKreditor());
+    return new PaymentRecord(invoice, keys);
+  }
+
+  private static void addTextKeys(final List<String> keys, final String prefix, final String shortPrefix, final String text)
+  {
+    if (text == null) {
+      return;
+    }
+    final String lowerCase = text.toLowerCase();
+    keys.add(prefix + lowerCase);
+    keys.add(shortPrefix + getShortText(lowerCase));
+  }
+
+  /**
+   * @param text
+   * @return The first {@link #SHORT_TEXT_LENGTH} characters of the given text.
+   */
+  public static String getShortText(final String text)
+  {
+    if (text == null || text.length() <= SHORT_TEXT_LENGTH) {
+      return text;
+    }
+    return text.substring(0, SHORT_TEXT_LENGTH);
+  }
+
+  /**
+   * This method will be called by CacheHelper and is synchronized via getData();
+   */
+  @Override
+  protected void refresh()
+  {
+    log.info("Initializing PaymentStatisticsCache ...");
+    // Invoices modified from now on will be updated after this refresh:
+    getAndClearDirtyIds(dirtyRechnungIds);
+    getAndClearDirtyIds(dirtyEingangsrechnungIds);
+    // Consider only invoices of the last year:
+    fromDate = new DayHolder().add(Calendar.DAY_OF_YEAR, -365).getSQLDate();
+    final Map<Integer, PaymentRecord> newDebitorRecords = new HashMap<Integer, PaymentRecord>();
+    final Map<String, PaymentStatistics> newDebitorStatistics = new ConcurrentHashMap<String, PaymentStatistics>();
+    final List<PaymentRecord> records = new LinkedList<PaymentRecord>();
+    for (final RechnungDO invoice : find(DEBITOR_QUERY, null, RechnungDO.class)) {
+      records.add(createRecord(invoice));
+    }
+    add(newDebitorRecords, newDebitorStatistics, records);
+    final Map<Integer, PaymentRecord> newCreditorRecords = new HashMap<Integer, PaymentRecord>();
+    final Map<String, PaymentStatistics> newCreditorStatistics = new ConcurrentHashMap<String, PaymentStatistics>();
+    records.clear();
+    for (final EingangsrechnungDO invoice : find(CREDITOR_QUERY, null, EingangsrechnungDO.class)) {
+      records.add(createRecord(invoice));
+    }
+    add(newCreditorRecords, newCreditorStatistics, records);
+    this.debitorRecords = newDebitorRecords;
+    this.debitorStatistics = newDebitorStatistics;
+    this.creditorRecords = newCreditorRecords;
+    this.creditorStatistics = newCreditorStatistics;
+    log.info("Initializing of PaymentStatisticsCache done (" + newDebitorRecords.size() + " paid invoices and " + newCreditorRecords.size()
+        + " paid creditor invoices).");
+  }
+
+  public void setHibernateTemplate(final HibernateTemplate hibernateTemplate)
+  {
+    this.hibernateTemplate = hibernateTemplate;
+  }
+
+  public void setKontoCache(final KontoCache kontoCache)
+  {
+    this.kontoCache = kontoCache;
+  }
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    if (entityClass == RechnungDO.class) {
+      if (id != null) {
+        addDirtyId(dirtyRechnungIds, id);
+      } else {
+        setExpired();
+      }
+    } else if (entityClass == EingangsrechnungDO.class) {
+      if (id != null) {
+        addDirtyId(dirtyEingangsrechnungIds, id);
+      } else {
+        setExpired();
+      }
+    }
+  }
+
+  private static class PaymentRecord
+  {
+    private final Integer id;
+
+    private final int timeForPayment;
+
+    private final int amount;
+
+    private final String[] keys;
+
+    private PaymentRecord(final AbstractRechnungDO< ? > invoice, final List<String> keys)
+    {
+      this.id = invoice.getId();
+      this.timeForPayment = new DayHolder(invoice.getDatum()).daysBetween(invoice.getBezahlDatum());
+      this.amount = invoice.getGrossSum().intValue();
+      this.keys = keys.toArray(new String[keys.size()]);
+    }
+  }
+}
@@ -21,27 +21,40 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
+
 package org.projectforge.fibu;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
+import org.projectforge.core.CacheChangeListener;
+import org.projectforge.core.CacheChangeLog;
 import org.springframework.orm.hibernate3.HibernateTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 
 /**
- * Caches the order positions assigned to invoice positions.
+ * Caches the order positions assigned to invoice positions.<br/>
+ * Modified invoices are marked as dirty by the daos and only the positions of these invoices are reloaded on the next access. The sets
+ * are replaced (copy on write), so the sets returned by this cache aren't modified afterwards. The full reload after the expire time
+ * remains as consistency check.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class RechnungCache extends AbstractCache
+public class RechnungCache extends AbstractCache implements CacheChangeListener
 {
   private static Logger log = Logger.getLogger(RechnungCache.class);
 
+  private static final String QUERY = "from RechnungsPositionDO t left join fetch t.auftragsPosition"
+      + " left join fetch t.auftragsPosition.auftrag where t.auftragsPosition is not null";
+
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the order id. */
@@ -50,60 +63,233 @@ public class RechnungCache extends AbstractCache
   /** The key is the order position id. */
   private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragsPositionId;
 
+  /** The key is the invoice id, the values are the ids of the orders assigned to the invoice positions. */
+  private Map<Integer, Set<Integer>> auftragIdsByRechnungId;
+
+  /** The key is the invoice id, the values are the ids of the order positions assigned to the invoice positions. */
+  private Map<Integer, Set<Integer>> auftragsPositionIdsByRechnungId;
+
+  /** Ids of the modified invoices which have to be reloaded. */
+  private final Set<Integer> dirtyRechnungIds = new HashSet<Integer>();
+
   public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragId(final Integer auftragId)
   {
+    if (auftragId == null) {
+      return null;
+    }
     checkRefresh();
     return invoicePositionMapByAuftragId.get(auftragId);
   }
 
   public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragsPositionId(final Integer auftragsPositionId)
   {
+    if (auftragsPositionId == null) {
+      return null;
+    }
     checkRefresh();
     return invoicePositionMapByAuftragsPositionId.get(auftragsPositionId);
   }
 
   /**
-   * This method will be called by CacheHelper and is synchronized via getData();
+   * The positions of the given invoice will be reloaded on the next access. If a transaction is active the invoice is marked after
+   * completion of the transaction (after commit as well as after rollback).
+   * @param rechnungId
+   */
+  void setRechnungDirty(final Integer rechnungId)
+  {
+    if (rechnungId == null) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          addDirtyRechnungId(rechnungId);
+        }
+      });
+    } else {
+      addDirtyRechnungId(rechnungId);
+    }
+  }
+
+  /**
+   * Marks all invoices assigned to the given order as dirty, e. g. after the numbers of the order positions were modified.
+   * @param auftragId
+   * @see #setRechnungDirty(Integer)
+   */
+  void setAuftragDirty(final Integer auftragId)
+  {
+    final Set<RechnungsPositionVO> set = getRechnungsPositionVOSetByAuftragId(auftragId);
+    if (set == null) {
+      return;
+    }
+    for (final RechnungsPositionVO vo : set) {
+      setRechnungDirty(vo.getRechnungId());
+    }
+  }
+
+  private void addDirtyRechnungId(final Integer rechnungId)
+  {
+    synchronized (dirtyRechnungIds) {
+      dirtyRechnungIds.add(rechnungId);
+    }
+  }
+
+  private Set<Integer> getAndClearDirtyRechnungIds()
+  {
+    synchronized (dirtyRechnungIds) {
+      if (dirtyRechnungIds.isEmpty() == true) {
+        return null;
+      }
+      final Set<Integer> ids = new HashSet<Integer>(dirtyRechnungIds);
+      dirtyRechnungIds.clear();
+      return ids;
+    }
+  }
+
+  /**
+   * Reloads the positions of the dirty invoices after checking the expire time.
+   * @see org.projectforge.common.AbstractCache#checkRefresh()
    */
   @Override
+  protected synchronized void checkRefresh()
+  {
+    super.checkRefresh();
+    if (isRefreshInProgress() == true || invoicePositionMapByAuftragId == null) {
+      return;
+    }
+    final Set<Integer> ids = getAndClearDirtyRechnungIds();
+    if (ids == null) {
+      return;
+    }
+    try {
+      update(ids);
+    } catch (final RuntimeException ex) {
+      log.error("Error while updating the invoices " + ids + ", forcing full reload: " + ex.getMessage(), ex);
+      setExpired();
+    }
+  }
+
   @SuppressWarnings("unchecked")
-  protected void refresh()
+  private void update(final Set<Integer> ids)
   {
-    log.info("Initializing RechnungCache ...");
-    // This method must not be synchronized because it works with a new copy of maps.
+    log.debug("Updating the order positions of the invoices " + ids + ".");
     final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId = new HashMap<Integer, Set<RechnungsPositionVO>>();
     final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId = new HashMap<Integer, Set<RechnungsPositionVO>>();
-    final List<RechnungsPositionDO> list = hibernateTemplate.find("from RechnungsPositionDO t left join fetch t.auftragsPosition left join fetch t.auftragsPosition.auftrag where t.auftragsPosition is not null");
+    final Map<Integer, Set<Integer>> newAuftragIdsByRechnungId = new HashMap<Integer, Set<Integer>>();
+    final Map<Integer, Set<Integer>> newAuftragsPositionIdsByRechnungId = new HashMap<Integer, Set<Integer>>();
+    final List<RechnungsPositionDO> list = hibernateTemplate.findByNamedParam(QUERY + " and t.rechnung.id in (:ids)", "ids", ids);
     for (final RechnungsPositionDO pos : list) {
-      if (pos.getAuftragsPosition() == null || pos.getAuftragsPosition().getAuftrag() == null) {
-        log.error("Assigned order position expected: " + pos);
-        continue;
-      } else if (pos.isDeleted() == true || pos.getRechnung() == null || pos.getRechnung().isDeleted() == true || pos.getRechnung().getNummer() == null) {
-        // Invoice position or invoice is deleted.
-        continue;
+      addPosition(pos, mapByAuftragId, mapByAuftragsPositionId, newAuftragIdsByRechnungId, newAuftragsPositionIdsByRechnungId);
+    }
+    merge(invoicePositionMapByAuftragId, auftragIdsByRechnungId, mapByAuftragId, newAuftragIdsByRechnungId, ids);
+    merge(invoicePositionMapByAuftragsPositionId, auftragsPositionIdsByRechnungId, mapByAuftragsPositionId,
+        newAuftragsPositionIdsByRechnungId, ids);
+  }
+
+  /**
+   * Replaces all sets containing positions of the given invoices by new sets containing the reloaded positions.
+   * @param map The map of this cache to update.
+   * @param keysByRechnungId The keys of the map per invoice to update.
+   * @param newMap The reloaded positions.
+   * @param newKeysByRechnungId The keys of the reloaded positions per invoice.
+   * @param ids The ids of the reloaded invoices.
+   */
+  private static void merge(final Map<Integer, Set<RechnungsPositionVO>> map, final Map<Integer, Set<Integer>> keysByRechnungId,
+      final Map<Integer, Set<RechnungsPositionVO>> newMap, final Map<Integer, Set<Integer>> newKeysByRechnungId, final Set<Integer> ids)
+  {
+    final Set<Integer> keys = new HashSet<Integer>(newMap.keySet());
+    for (final Integer id : ids) {
+      final Set<Integer> oldKeys = keysByRechnungId.remove(id);
+      if (oldKeys != null) {
+        keys.addAll(oldKeys);
       }
-      final AuftragsPositionDO auftragsPosition = pos.getAuftragsPosition();
-      final AuftragDO auftrag = auftragsPosition.getAuftrag();
-      Set<RechnungsPositionVO> setByAuftragId = mapByAuftragId.get(auftrag.getId());
-      if (setByAuftragId == null) {
-        setByAuftragId = new TreeSet<RechnungsPositionVO>();
-        mapByAuftragId.put(auftrag.getId(), setByAuftragId);
+      final Set<Integer> newKeys = newKeysByRechnungId.get(id);
+      if (newKeys != null) {
+        keysByRechnungId.put(id, newKeys);
       }
-      Set<RechnungsPositionVO> setByAuftragsPositionId = mapByAuftragsPositionId.get(auftragsPosition.getId());
-      if (setByAuftragsPositionId == null) {
-        setByAuftragsPositionId = new TreeSet<RechnungsPositionVO>();
-        mapByAuftragsPositionId.put(auftragsPosition.getId(), setByAuftragsPositionId);
+    }
+    for (final Integer key : keys) {
+      final Set<RechnungsPositionVO> set = new TreeSet<RechnungsPositionVO>();
+      final Set<RechnungsPositionVO> oldSet = map.get(key);
+      if (oldSet != null) {
+        for (final RechnungsPositionVO vo : oldSet) {
+          if (ids.contains(vo.getRechnungId()) == false) {
+            set.add(vo);
+          }
+        }
       }
-      final RechnungsPositionVO vo = new RechnungsPositionVO(pos);
-      if (setByAuftragId.contains(vo) == false) {
-        setByAuftragId.add(vo);
+      final Set<RechnungsPositionVO> newSet = newMap.get(key);
+      if (newSet != null) {
+        set.addAll(newSet);
       }
-      if (setByAuftragsPositionId.contains(vo) == false) {
-        setByAuftragsPositionId.add(vo);
+      if (set.isEmpty() == true) {
+        map.remove(key);
+      } else {
+        map.put(key, set);
       }
     }
+  }
+
+  private static void addPosition(final RechnungsPositionDO pos, final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId,
+      final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId, final Map<Integer, Set<Integer>> auftragIdsByRechnungId,
+      final Map<Integer, Set<Integer>> auftragsPositionIdsByRechnungId)
+  {
+    if (pos.getAuftragsPosition() == null || pos.getAuftragsPosition().getAuftrag() == null) {
+      log.error("Assigned order position expected: " + pos);
+      return;
+    } else if (pos.isDeleted() == true
+        || pos.getRechnung() == null
+        || pos.getRechnung().isDeleted() == true
+        || pos.getRechnung().getNummer() == null) {
+      // Invoice position or invoice is deleted.
+      return;
+    }
+    final AuftragsPositionDO auftragsPosition = pos.getAuftragsPosition();
+    final AuftragDO auftrag = auftragsPosition.getAuftrag();
+    final RechnungsPositionVO vo = new RechnungsPositionVO(pos);
+    add(mapByAuftragId, auftrag.getId(), vo);
+    add(mapByAuftragsPositionId, auftragsPosition.getId(), vo);
+    add(auftragIdsByRechnungId, vo.getRechnungId(), auftrag.getId());
+    add(auftragsPositionIdsByRechnungId, vo.getRechnungId(), auftragsPosition.getId());
+  }
+
+  private static <T> void add(final Map<Integer, Set<T>> map, final Integer key, final T value)
+  {
+    Set<T> set = map.get(key);
+    if (set == null) {
+      set = new TreeSet<T>();
+      map.put(key, set);
+    }
+    if (set.contains(value) == false) {
+      set.add(value);
+    }
+  }
+
+  /**
+   * This method will be called by CacheHelper and is synchronized via getData();
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void refresh()
+  {
+    log.info("Initializing RechnungCache ...");
+    // Invoices modified from now on will be updated after this refresh:
+    getAndClearDirtyRechnungIds();
+    // This method must not be synchronized because it works with a new copy of maps.
+    final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId = new ConcurrentHashMap<Integer, Set<RechnungsPositionVO>>();
+    final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId = new ConcurrentHashMap<Integer, Set<RechnungsPositionVO>>();
+    final Map<Integer, Set<Integer>> mapAuftragIdsByRechnungId = new HashMap<Integer, Set<Integer>>();
+    final Map<Integer, Set<Integer>> mapAuftragsPositionIdsByRechnungId = new HashMap<Integer, Set<Integer>>();
+    final List<RechnungsPositionDO> list = hibernateTemplate.find(QUERY);
+    for (final RechnungsPositionDO pos : list) {
+      addPosition(pos, mapByAuftragId, mapByAuftragsPositionId, mapAuftragIdsByRechnungId, mapAuftragsPositionIdsByRechnungId);
+    }
     this.invoicePositionMapByAuftragId = mapByAuftragId;
     this.invoicePositionMapByAuftragsPositionId = mapByAuftragsPositionId;
+    this.auftragIdsByRechnungId = mapAuftragIdsByRechnungId;
+    this.auftragsPositionIdsByRechnungId = mapAuftragsPositionIdsByRechnungId;
     log.info("Initializing of RechnungCache done.");
   }
 
@@ -111,4 +297,26 @@ public class RechnungCache extends AbstractCache
   {
     this.hibernateTemplate = hibernateTemplate;
   }
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * Updates the invoices modified by other ProjectForge instances.
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    if (entityClass == RechnungDO.class) {
+      if (id != null) {
+        addDirtyRechnungId(id);
+      } else {
+        setExpired();
+      }
+    } else if (entityClass == AuftragDO.class) {
+      setAuftragDirty(id);
+    }
+  }
 }
@@ -193,10 +193,9 @@ public class RechnungDO extends AbstractRechnungDO<RechnungsPositionDO> implemen
    * (this.status == RechnungStatus.BEZAHLT && this.bezahlDatum != null && this.zahlBetrag != null)
    */
   @Override
-  @Transient
-  public boolean isBezahlt()
+  boolean isBezahlt(final BigDecimal netSum)
   {
-    if (this.getNetSum() == null || this.getNetSum().compareTo(BigDecimal.ZERO) == 0) {
+    if (netSum == null || netSum.compareTo(BigDecimal.ZERO) == 0) {
       return true;
     }
     return (this.status == RechnungStatus.BEZAHLT && this.bezahlDatum != null && this.zahlBetrag != null);
@@ -30,14 +30,12 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.Validate;
 import org.hibernate.FetchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -46,9 +44,11 @@ import org.projectforge.access.OperationType;
 import org.projectforge.common.DateHelper;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
-import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.HistoryChildObject;
 import org.projectforge.core.MessageParam;
 import org.projectforge.core.MessageParamType;
+import org.projectforge.core.NumberSequence;
+import org.projectforge.core.NumberSequenceDao;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
 import org.projectforge.database.SQLHelper;
@@ -66,6 +66,8 @@ public class RechnungDao extends BaseDao<RechnungDO>
 
   public final static int START_NUMBER = 1000;
 
+  static final NumberSequence NUMBER_SEQUENCE = new NumberSequence("fibu.rechnung", RechnungDO.class, "nummer", START_NUMBER);
+
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(RechnungDao.class);
 
   private static final Class< ? >[] ADDITIONAL_SEARCH_DOS = new Class[] { RechnungsPositionDO.class};
@@ -80,8 +82,12 @@ public class RechnungDao extends BaseDao<RechnungDO>
 
   private ProjektDao projektDao;
 
+  private NumberSequenceDao numberSequenceDao;
+
   private RechnungCache rechnungCache;
 
+  private PaymentStatisticsCache paymentStatisticsCache;
+
   public static BigDecimal getNettoSumme(final Collection<RechnungsPositionVO> col)
   {
     BigDecimal nettoSumme = BigDecimal.ZERO;
@@ -123,11 +129,21 @@ public class RechnungDao extends BaseDao<RechnungDO>
     this.projektDao = projektDao;
   }
 
+  public void setNumberSequenceDao(final NumberSequenceDao numberSequenceDao)
+  {
+    this.numberSequenceDao = numberSequenceDao;
+  }
+
   public void setRechnungCache(final RechnungCache rechnungCache)
   {
     this.rechnungCache = rechnungCache;
   }
 
+  public void setPaymentStatisticsCache(final PaymentStatisticsCache paymentStatisticsCache)
+  {
+    this.paymentStatisticsCache = paymentStatisticsCache;
+  }
+
   /**
    * @return the rechnungCache
    */
@@ -153,12 +169,33 @@ public class RechnungDao extends BaseDao<RechnungDO>
     return SQLHelper.getYears(list);
   }
 
+  /**
+   * The net and gross sums are summed up by the data base (grouped by invoice) instead of iterating over all positions.
+   * @param list
+   * @return The statistics of the given invoices.
+   * @see #buildStatistikInMemory(List)
+   */
   public RechnungsStatistik buildStatistik(final List<RechnungDO> list)
   {
     final RechnungsStatistik stats = new RechnungsStatistik();
     if (list == null) {
       return stats;
     }
+    if (StatistikQueryHelper.addRechnungen(stats, list, getHibernateTemplate(), "RechnungsPositionDO", "rechnung") == true) {
+      return stats;
+    }
+    return buildStatistikInMemory(list);
+  }
+
+  /**
+   * Calculates the statistics by iterating over all positions of the given invoices. Used as fallback if the sums can't be summed up by
+   * the data base.
+   * @param list
+   * @return The statistics of the given invoices.
+   */
+  RechnungsStatistik buildStatistikInMemory(final List<RechnungDO> list)
+  {
+    final RechnungsStatistik stats = new RechnungsStatistik();
     for (final RechnungDO rechnung : list) {
       stats.add(rechnung);
     }
@@ -222,9 +259,8 @@ public class RechnungDao extends BaseDao<RechnungDO>
         throw new UserException("validation.required.valueNotPresent", new MessageParam("fibu.rechnung.nummer", MessageParamType.I18N_KEY));
       }
       if (obj.getId() == null) {
-        // Neue Rechnung
-        final Integer next = getNextNumber(obj);
-        if (next.intValue() != obj.getNummer().intValue()) {
+        // Neue Rechnung: Die Nummer wird unter Sperre des Zählers in dieser Transaktion vergeben (lückenlos).
+        if (numberSequenceDao.reserveNumber(NUMBER_SEQUENCE, obj.getNummer()) == false) {
           throw new UserException("fibu.rechnung.error.rechnungsNummerIstNichtFortlaufend");
         }
       } else {
@@ -233,6 +269,9 @@ public class RechnungDao extends BaseDao<RechnungDO>
         if (list != null && list.size() > 0) {
           throw new UserException("fibu.rechnung.error.rechnungsNummerBereitsVergeben");
         }
+        if (obj.getNummer() >= numberSequenceDao.getNextNumber(NUMBER_SEQUENCE)) {
+          numberSequenceDao.numberUsed(NUMBER_SEQUENCE, obj.getNummer());
+        }
       }
     }
     if (obj.getZahlBetrag() != null) {
@@ -264,7 +303,10 @@ public class RechnungDao extends BaseDao<RechnungDO>
   @Override
   protected void afterSaveOrModify(final RechnungDO obj)
   {
-    rechnungCache.setExpired(); // Expire the cache because assignments to order position may be changed.
+    rechnungCache.setRechnungDirty(obj.getId()); // Reload the positions because assignments to order position may be changed.
+    if (paymentStatisticsCache != null) {
+      paymentStatisticsCache.setRechnungDirty(obj.getId());
+    }
   }
 
   /**
@@ -282,6 +324,30 @@ public class RechnungDao extends BaseDao<RechnungDO>
     return ADDITIONAL_SEARCH_FIELDS;
   }
 
+  /**
+   * Restricts the invoices by the given period (from and to date or year and month). The list type (paid, unpaid etc.) isn't part of the
+   * query filter.
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  protected QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    final RechnungFilter myFilter = filter instanceof RechnungFilter ? (RechnungFilter) filter : new RechnungFilter(filter);
+    final QueryFilter queryFilter = new QueryFilter(myFilter);
+    if (myFilter.getFromDate() != null || myFilter.getToDate() != null) {
+      if (myFilter.getFromDate() != null && myFilter.getToDate() != null) {
+        queryFilter.add(Restrictions.between("datum", myFilter.getFromDate(), myFilter.getToDate()));
+      } else if (myFilter.getFromDate() != null) {
+        queryFilter.add(Restrictions.ge("datum", myFilter.getFromDate()));
+      } else if (myFilter.getToDate() != null) {
+        queryFilter.add(Restrictions.le("datum", myFilter.getToDate()));
+      }
+    } else {
+      queryFilter.setYearAndMonth("datum", myFilter.getYear(), myFilter.getMonth());
+    }
+    return queryFilter;
+  }
+
   /**
    * Fetches the cost assignments.
    * @see org.projectforge.core.BaseDao#getById(java.io.Serializable)
@@ -309,18 +375,7 @@ public class RechnungDao extends BaseDao<RechnungDO>
     } else {
       myFilter = new RechnungFilter(filter);
     }
-    final QueryFilter queryFilter = new QueryFilter(myFilter);
-    if (myFilter.getFromDate() != null || myFilter.getToDate() != null) {
-      if (myFilter.getFromDate() != null && myFilter.getToDate() != null) {
-        queryFilter.add(Restrictions.between("datum", myFilter.getFromDate(), myFilter.getToDate()));
-      } else if (myFilter.getFromDate() != null) {
-        queryFilter.add(Restrictions.ge("datum", myFilter.getFromDate()));
-      } else if (myFilter.getToDate() != null) {
-        queryFilter.add(Restrictions.le("datum", myFilter.getToDate()));
-      }
-    } else {
-      queryFilter.setYearAndMonth("datum", myFilter.getYear(), myFilter.getMonth());
-    }
+    final QueryFilter queryFilter = createQueryFilter(myFilter);
     queryFilter.addOrder(Order.desc("datum"));
     queryFilter.addOrder(Order.desc("nummer"));
     if (myFilter.isShowKostZuweisungStatus() == true) {
@@ -360,12 +415,11 @@ public class RechnungDao extends BaseDao<RechnungDO>
   }
 
   /**
-   * Gets the highest Rechnungsnummer.
+   * Gets the next Rechnungsnummer of the number sequence (without reserving it, the number is reserved on save).
    * @param rechnung wird benötigt, damit geschaut werden kann, ob diese Rechnung ggf. schon existiert. Wenn sie schon eine Nummer hatte, so
    *          kann verhindert werden, dass sie eine nächst höhere Nummer bekommt. Eine solche Rechnung bekommt die alte Nummer wieder
    *          zugeordnet.
    */
-  @SuppressWarnings("unchecked")
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public Integer getNextNumber(final RechnungDO rechnung)
   {
@@ -376,63 +430,30 @@ public class RechnungDao extends BaseDao<RechnungDO>
         return orig.getNummer();
       }
     }
-    final List<Integer> list = getSession().createQuery("select max(t.nummer) from RechnungDO t").list();
-    Validate.notNull(list);
-    if (list.size() == 0 || list.get(0) == null) {
-      log.info("First entry of RechnungDO");
-      return START_NUMBER;
-    }
-    Integer number = list.get(0);
-    return ++number;
+    return numberSequenceDao.getNextNumber(NUMBER_SEQUENCE);
   }
 
   /**
-   * Gets history entries of super and adds all history entries of the RechnungsPositionDO childs.
-   * @see org.projectforge.core.BaseDao#getDisplayHistoryEntries(org.projectforge.core.ExtendedBaseDO)
+   * The history entries of the RechnungsPositionDO childs (and of their KostZuweisungDO childs) are displayed in the history of the invoice.
+   * @see org.projectforge.core.BaseDao#getHistoryChildObjects(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
-  public List<DisplayHistoryEntry> getDisplayHistoryEntries(final RechnungDO obj)
+  protected List<HistoryChildObject> getHistoryChildObjects(final RechnungDO obj)
   {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
-    if (hasLoggedInUserHistoryAccess(obj, false) == false) {
-      return list;
+    if (CollectionUtils.isEmpty(obj.getPositionen()) == true) {
+      return null;
     }
-    if (CollectionUtils.isNotEmpty(obj.getPositionen()) == true) {
-      for (final RechnungsPositionDO position : obj.getPositionen()) {
-        final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(position);
-        for (final DisplayHistoryEntry entry : entries) {
-          final String propertyName = entry.getPropertyName();
-          if (propertyName != null) {
-            entry.setPropertyName("#" + position.getNumber() + ":" + entry.getPropertyName()); // Prepend number of positon.
-          } else {
-            entry.setPropertyName("#" + position.getNumber());
-          }
-        }
-        list.addAll(entries);
-        if (CollectionUtils.isNotEmpty(position.getKostZuweisungen()) == true) {
-          for (final KostZuweisungDO zuweisung : position.getKostZuweisungen()) {
-            final List<DisplayHistoryEntry> kostEntries = internalGetDisplayHistoryEntries(zuweisung);
-            for (final DisplayHistoryEntry entry : kostEntries) {
-              final String propertyName = entry.getPropertyName();
-              if (propertyName != null) {
-                entry.setPropertyName("#" + position.getNumber() + ".kost#" + zuweisung.getIndex() + ":" + entry.getPropertyName()); // Prepend
-                // number of positon and index of zuweisung.
-              } else {
-                entry.setPropertyName("#" + position.getNumber() + ".kost#" + zuweisung.getIndex());
-              }
-            }
-            list.addAll(kostEntries);
-          }
+    final List<HistoryChildObject> childs = new ArrayList<HistoryChildObject>();
+    for (final RechnungsPositionDO position : obj.getPositionen()) {
+      childs.add(new HistoryChildObject("#" + position.getNumber(), position)); // Prepend number of positon.
+      if (CollectionUtils.isNotEmpty(position.getKostZuweisungen()) == true) {
+        for (final KostZuweisungDO zuweisung : position.getKostZuweisungen()) {
+          // Prepend number of positon and index of zuweisung:
+          childs.add(new HistoryChildObject("#" + position.getNumber() + ".kost#" + zuweisung.getIndex(), zuweisung));
         }
       }
     }
-    Collections.sort(list, new Comparator<DisplayHistoryEntry>() {
-      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
-      {
-        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
-      }
-    });
-    return list;
+    return childs;
   }
 
   @Override
@@ -0,0 +1,156 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectforge.core.DefaultBaseDO;
+import org.springframework.dao.DataAccessException;
+import org.springframework.orm.hibernate3.HibernateTemplate;
+
+/**
+ * Helper for the statistics of the order and invoice lists, which are summed up by grouped aggregate queries over the ids of the listed
+ * objects instead of iterating over all positions of the objects. The ids of the list are used (instead of the filter settings), so the
+ * statistics match the list exactly (including the access checks, the full text search and the filters done in Java).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+class StatistikQueryHelper
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(StatistikQueryHelper.class);
+
+  /**
+   * Maximum number of ids per query (the size of in-lists is limited by some data bases, e. g. Oracle).
+   */
+  static final int MAX_IDS_PER_QUERY = 1000;
+
+  /**
+   * Adds the given invoices to the statistics. The net and gross sums of the invoices are summed up by the data base (rounded per position
+   * as done by {@link AbstractRechnungsPositionDO#getNetSum()} and {@link AbstractRechnungsPositionDO#getVatAmount()}).
+   * @param stats
+   * @param list
+   * @param hibernateTemplate
+   * @param positionEntity The entity name of the positions, e. g. RechnungsPositionDO.
+   * @param rechnungProperty The property of the positions referring the invoice, e. g. rechnung.
+   * @return true if the invoices were added, false if the sums couldn't be summed up by the data base (nothing is added, the caller should
+   *         use the statistics calculated in Java as fallback).
+   */
+  static <T extends AbstractRechnungDO< ? >> boolean addRechnungen(final AbstractRechnungsStatistik<T> stats, final List<T> list,
+      final HibernateTemplate hibernateTemplate, final String positionEntity, final String rechnungProperty)
+  {
+    final List<Integer> ids = getIds(list);
+    if (ids == null) {
+      return false;
+    }
+    final String netSum = "round(coalesce(p.menge, 1) * p.einzelNetto, 2)";
+    final String query = "select p."
+        + rechnungProperty
+        + ".id, sum("
+        + netSum
+        + "), sum(round("
+        + netSum
+        + " * p.vat, 2)) from "
+        + positionEntity
+        + " p where p."
+        + rechnungProperty
+        + ".id in (:ids) group by p."
+        + rechnungProperty
+        + ".id";
+    final List<Object[]> rows = find(hibernateTemplate, query, ids);
+    if (rows == null) {
+      return false;
+    }
+    final Map<Integer, Object[]> rowMap = new HashMap<Integer, Object[]>();
+    for (final Object[] row : rows) {
+      rowMap.put((Integer) row[0], row);
+    }
+    for (final T rechnung : list) {
+      final Object[] row = rowMap.get(rechnung.getId());
+      final BigDecimal netto = row != null ? toBigDecimal(row[1]) : BigDecimal.ZERO;
+      final BigDecimal brutto = row != null ? netto.add(toBigDecimal(row[2])) : BigDecimal.ZERO;
+      stats.add(rechnung, netto, brutto);
+    }
+    return true;
+  }
+
+  /**
+   * @param list
+   * @return The ids of the given objects or null if any object isn't yet saved (has no id).
+   */
+  static List<Integer> getIds(final Collection< ? extends DefaultBaseDO> list)
+  {
+    final List<Integer> ids = new ArrayList<Integer>(list.size());
+    for (final DefaultBaseDO obj : list) {
+      if (obj.getId() == null) {
+        return null;
+      }
+      ids.add(obj.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Executes the given query for chunks of {@link #MAX_IDS_PER_QUERY} ids.
+   * @param hibernateTemplate
+   * @param query Query with the named parameter ids, e. g. "... where p.rechnung.id in (:ids) group by p.rechnung.id".
+   * @param ids
+   * @return The result rows of all chunks or null if the query failed (e. g. not supported by the data base dialect), the caller should
+   *         use the statistics calculated in Java as fallback.
+   */
+  @SuppressWarnings("unchecked")
+  static List<Object[]> find(final HibernateTemplate hibernateTemplate, final String query, final List<Integer> ids)
+  {
+    final List<Object[]> result = new ArrayList<Object[]>();
+    try {
+      for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+        final List<Integer> chunk = ids.subList(i, Math.min(i + MAX_IDS_PER_QUERY, ids.size()));
+        result.addAll(hibernateTemplate.findByNamedParam(query, "ids", chunk));
+      }
+    } catch (final DataAccessException ex) {
+      log.error("Can't calculate statistics by the data base, calculating in Java instead: " + ex.getMessage(), ex);
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * The sums of some data bases are floating point numbers (e. g. rounding functions of HSQLDB), so they're converted and rounded.
+   * @param value
+   * @return The given number rounded to 2 fraction digits or zero if the given value is null.
+   */
+  static BigDecimal toBigDecimal(final Object value)
+  {
+    if (value == null) {
+      return BigDecimal.ZERO;
+    }
+    final BigDecimal result = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    return result.setScale(2, RoundingMode.HALF_UP);
+  }
+}
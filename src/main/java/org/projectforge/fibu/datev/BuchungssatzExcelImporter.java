@@ -21,18 +21,19 @@
 //
 /////////////////////////////////////////////////////////////////////////////
 
+
 package org.projectforge.fibu.datev;
 
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.DatePrecision;
 import org.projectforge.common.ImportStorage;
@@ -40,17 +41,21 @@ import org.projectforge.common.ImportedElement;
 import org.projectforge.common.ImportedSheet;
 import org.projectforge.core.ActionLog;
 import org.projectforge.core.UserException;
-import org.projectforge.excel.ExcelImport;
+import org.projectforge.fibu.KontoCache;
 import org.projectforge.fibu.KontoDO;
-import org.projectforge.fibu.KontoDao;
 import org.projectforge.fibu.KostFormatter;
 import org.projectforge.fibu.kost.BuchungssatzDO;
 import org.projectforge.fibu.kost.Kost1DO;
-import org.projectforge.fibu.kost.Kost1Dao;
 import org.projectforge.fibu.kost.Kost2DO;
-import org.projectforge.fibu.kost.Kost2Dao;
+import org.projectforge.fibu.kost.KostCache;
 import org.projectforge.user.PFUserContext;
 
+/**
+ * Imports the Buchungssätze of a DATEV export (one MS Excel sheet per month). The workbook is read row by row via the event API of POI
+ * (see {@link HSSFRowEventReader}) and the accounts and cost units are resolved via {@link KontoCache} and {@link KostCache}, so there is
+ * no data base access per row. The rows of each sheet are stored in a staging table (see {@link BuchungssatzStagingDao}) when the sheet
+ * is read, so year-end imports with many thousands of rows are possible.
+ */
 public class BuchungssatzExcelImporter
 {
   private static final Logger log = Logger.getLogger(BuchungssatzExcelImporter.class);
@@ -64,106 +69,130 @@ public class BuchungssatzExcelImporter
    */
   public static final short MAX_COLUMNS = 20;
 
-  private final KontoDao kontoDao;
+  private static final Map<String, String> COLUMN_MAPPING = new HashMap<String, String>();
+
+  static {
+    COLUMN_MAPPING.put("SatzNr.", "satzNr");
+    COLUMN_MAPPING.put("Satz-Nr.", "satzNr");
+    COLUMN_MAPPING.put("Betrag", "betrag");
+    COLUMN_MAPPING.put("SH", "sh"); // Nicht eindeutig!
+    COLUMN_MAPPING.put("Konto", "konto");
+    COLUMN_MAPPING.put("Kostenstelle/-träger", "kost2");
+    COLUMN_MAPPING.put("Kost2", "kost2");
+    COLUMN_MAPPING.put("Menge", "menge");
+    COLUMN_MAPPING.put("SH2", "sh2");
+    COLUMN_MAPPING.put("Beleg", "beleg");
+    COLUMN_MAPPING.put("Datum", "datum");
+    COLUMN_MAPPING.put("Gegenkonto", "gegenkonto");
+    COLUMN_MAPPING.put("Text", "text");
+    COLUMN_MAPPING.put("Alt.-Kst.", "kost1");
+    COLUMN_MAPPING.put("Kost1", "kost1");
+    COLUMN_MAPPING.put("Beleg 2", "beleg2");
+    COLUMN_MAPPING.put("KR-BSNr.", "kr_bsnr");
+    COLUMN_MAPPING.put("ZI", "zi");
+    COLUMN_MAPPING.put("Kommentar", "comment");
+    COLUMN_MAPPING.put("Bemerkung", "comment");
+  }
 
-  private final Kost1Dao kost1Dao;
+  private final KontoCache kontoCache;
 
-  private final Kost2Dao kost2Dao;
+  private final KostCache kostCache;
 
   private final ImportStorage<BuchungssatzDO> storage;
 
   private final ActionLog actionLog;
 
-  public BuchungssatzExcelImporter(final ImportStorage<BuchungssatzDO> storage, final KontoDao kontoDao, final Kost1Dao kost1Dao,
-      final Kost2Dao kost2Dao, final ActionLog actionLog)
+  private final BuchungssatzStagingDao stagingDao;
+
+  private final String importId;
+
+  /**
+   * @param stagingDao The elements of each sheet are stored via the given dao after the sheet is read and aren't held in the storage.
+   * @param importId Id of the staging rows of this import.
+   */
+  public BuchungssatzExcelImporter(final ImportStorage<BuchungssatzDO> storage, final KontoCache kontoCache, final KostCache kostCache,
+      final ActionLog actionLog, final BuchungssatzStagingDao stagingDao, final String importId)
   {
     this.storage = storage;
-    this.kontoDao = kontoDao;
-    this.kost1Dao = kost1Dao;
-    this.kost2Dao = kost2Dao;
+    this.kontoCache = kontoCache;
+    this.kostCache = kostCache;
     this.actionLog = actionLog;
+    this.stagingDao = stagingDao;
+    this.importId = importId;
   }
 
   public void doImport(final InputStream is) throws Exception
   {
-    final ExcelImport<BuchungssatzImportRow> imp = new ExcelImport<BuchungssatzImportRow>(is);
-    for (short idx = 0; idx < imp.getWorkbook().getNumberOfSheets(); idx++) {
-      final ImportedSheet<BuchungssatzDO> sheet = importBuchungssaetze(imp, idx);
-      if (sheet != null) {
-        storage.addSheet(sheet);
-      }
-    }
+    new SheetReader().read(is);
   }
 
-  private ImportedSheet<BuchungssatzDO> importBuchungssaetze(final ExcelImport<BuchungssatzImportRow> imp, final int idx) throws Exception
+  private class SheetReader extends HSSFRowEventReader
   {
-    ImportedSheet<BuchungssatzDO> importedSheet = null;
-    imp.setActiveSheet(idx);
-    final String name = imp.getWorkbook().getSheetName(idx);
-    int m = -1;
-    try {
-      m = new Integer(name) - 1; // Achtung: month beginnt bei 01 - Januar, während Java mit 0 - Januar rechnet (also - 1).
-    } catch (final NumberFormatException ex) {
-      // ignore
-    }
-    if (m >= 0 && m <= 11) {
-      actionLog.logInfo("Importing sheet '" + name + "'.");
-      final HSSFSheet sheet = imp.getWorkbook().getSheetAt(idx);
-      importedSheet = importBuchungssaetze(imp, sheet, m);
-    } else {
-      log.info("Ignoring sheet '" + name + "' for importing Buchungssätze.");
-    }
-    return importedSheet;
-  }
+    private ImportedSheet<BuchungssatzDO> importedSheet;
 
-  private ImportedSheet<BuchungssatzDO> importBuchungssaetze(final ExcelImport<BuchungssatzImportRow> imp, final HSSFSheet sheet,
-      final int month) throws Exception
-      {
-    final ImportedSheet<BuchungssatzDO> importedSheet = new ImportedSheet<BuchungssatzDO>();
-    imp.setNameRowIndex(ROW_COLUMNNAMES);
-    imp.setStartingRowIndex(ROW_COLUMNNAMES + 1);
-    imp.setRowClass(BuchungssatzImportRow.class);
-
-    final Map<String, String> map = new HashMap<String, String>();
-    map.put("SatzNr.", "satzNr");
-    map.put("Satz-Nr.", "satzNr");
-    map.put("Betrag", "betrag");
-    map.put("SH", "sh"); // Nicht eindeutig!
-    map.put("Konto", "konto");
-    map.put("Kostenstelle/-träger", "kost2");
-    map.put("Kost2", "kost2");
-    map.put("Menge", "menge");
-    map.put("SH2", "sh2");
-    map.put("Beleg", "beleg");
-    map.put("Datum", "datum");
-    map.put("Gegenkonto", "gegenkonto");
-    map.put("Text", "text");
-    map.put("Alt.-Kst.", "kost1");
-    map.put("Kost1", "kost1");
-    map.put("Beleg 2", "beleg2");
-    map.put("KR-BSNr.", "kr_bsnr");
-    map.put("ZI", "zi");
-    map.put("Kommentar", "comment");
-    map.put("Bemerkung", "comment");
-    imp.setColumnMapping(map);
-
-    BuchungssatzImportRow[] rows = new BuchungssatzImportRow[0];
-    rename2ndSH(sheet);
-    rows = imp.convertToRows(BuchungssatzImportRow.class);
-    if (rows == null || rows.length == 0) {
-      return null;
+    private String sheetName;
+
+    private int month;
+
+    private int year;
+
+    private String[] columnNames;
+
+    private boolean rowsFound;
+
+    @Override
+    protected void startSheet(final int index, final String name)
+    {
+      importedSheet = null;
+      sheetName = name;
+      columnNames = null;
+      rowsFound = false;
+      year = 0;
+      month = -1;
+      try {
+        month = new Integer(name) - 1; // Achtung: month beginnt bei 01 - Januar, während Java mit 0 - Januar rechnet (also - 1).
+      } catch (final NumberFormatException ex) {
+        // ignore
+      }
+      if (month >= 0 && month <= 11) {
+        actionLog.logInfo("Importing sheet '" + name + "'.");
+        importedSheet = new ImportedSheet<BuchungssatzDO>();
+      } else {
+        log.info("Ignoring sheet '" + name + "' for importing Buchungssätze.");
+      }
     }
-    int year = 0;
-    for (int i = 0; i < rows.length; i++) {
+
+    @Override
+    protected void processRow(final int rowIndex, final Object[] values)
+    {
+      if (importedSheet == null || rowIndex < ROW_COLUMNNAMES) {
+        return;
+      }
+      if (rowIndex == ROW_COLUMNNAMES) {
+        columnNames = getColumnNames(values);
+        return;
+      }
+      if (columnNames == null) {
+        throw new UserException(PFUserContext.getLocalizedString("finance.datev.import.error.titleRowMissed"));
+      }
+      rowsFound = true;
+      final BuchungssatzImportRow row = new BuchungssatzImportRow();
+      row.setActionLog(actionLog);
+      for (int col = 0; col < values.length && col < columnNames.length; col++) {
+        final String property = COLUMN_MAPPING.get(columnNames[col]);
+        if (property != null && values[col] != null) {
+          setValue(row, property, values[col], rowIndex, columnNames[col]);
+        }
+      }
       ImportedElement<BuchungssatzDO> element;
       try {
-        element = convertBuchungssatz(rows[i]);
+        element = convertBuchungssatz(row);
       } catch (final RuntimeException ex) {
-        throw new RuntimeException("Im Blatt '" + sheet.getSheetName() + "', in Zeile " + (i + 2) + ": " + ex.getMessage(), ex);
+        throw new RuntimeException("Im Blatt '" + sheetName + "', in Zeile " + (rowIndex + 1) + ": " + ex.getMessage(), ex);
       }
       if (element == null) {
         // Empty row:
-        continue;
+        return;
       }
       final BuchungssatzDO satz = element.getValue();
       final DateHolder date = new DateHolder(satz.getDatum(), DatePrecision.DAY, Locale.GERMAN);
@@ -190,47 +219,148 @@ public class BuchungssatzExcelImporter
       importedSheet.addElement(element);
       log.debug(satz);
     }
-    importedSheet.setName(KostFormatter.formatBuchungsmonat(year, month));
-    importedSheet.setProperty("year", year);
-    importedSheet.setProperty("month", month);
-    return importedSheet;
+
+    @Override
+    protected void endSheet()
+    {
+      if (importedSheet == null || rowsFound == false) {
+        return;
       }
+      importedSheet.setName(KostFormatter.formatBuchungsmonat(year, month));
+      importedSheet.setProperty("year", year);
+      importedSheet.setProperty("month", month);
+      importedSheet.setProperty(DatevImportDao.STAGING_ID_PROPERTY, importId);
+      importedSheet.calculateStatistics();
+      stagingDao.store(importId, importedSheet);
+      importedSheet.setElements(null);
+      storage.addSheet(importedSheet);
+      importedSheet = null;
+    }
+  }
 
   /**
    * Dummerweise ist im DATEV-Export die Spalte SH zweimal vertreten. Da wir SH aber für Haben/Soll auswerten müssen, müssen die Spalten
    * unterschiedlich heißen. Die zweite Spalte wird hier in SH2 umbenannt, sofern vorhanden.
-   * @param sheet
+   * @param values The cells of the title row.
+   * @return The column names (until the first empty cell).
    */
-  private void rename2ndSH(final HSSFSheet sheet)
+  private String[] getColumnNames(final Object[] values)
+  {
+    final int size = Math.min(values.length, MAX_COLUMNS);
+    int numberOfColumns = 0;
+    while (numberOfColumns < size && values[numberOfColumns] != null) {
+      numberOfColumns++;
+    }
+    final String[] columnNames = new String[numberOfColumns];
+    short numberOfSH = 0;
+    for (int col = 0; col < numberOfColumns; col++) {
+      final String name = String.valueOf(values[col]);
+      log.debug("Processing column '" + name + "'");
+      columnNames[col] = name;
+      if ("SH".equals(name) == true) {
+        numberOfSH++;
+        if (numberOfSH == 2) {
+          log.debug("Renaming 2nd column 'SH' to 'SH2' (column no. " + col + ").");
+          columnNames[col] = "SH2";
+        }
+      }
+    }
+    return columnNames;
+  }
+
+  private void setValue(final BuchungssatzImportRow row, final String property, final Object value, final int rowIndex,
+      final String columnName)
   {
     try {
-      final HSSFRow row = sheet.getRow(ROW_COLUMNNAMES);
-      if (row == null) {
-        return;
+      if ("satzNr".equals(property) == true) {
+        row.setSatzNr(toInteger(value));
+      } else if ("betrag".equals(property) == true) {
+        row.setBetrag(toBigDecimal(value));
+      } else if ("sh".equals(property) == true) {
+        row.setSh(toString(value));
+      } else if ("konto".equals(property) == true) {
+        row.setKonto(toInteger(value));
+      } else if ("kost2".equals(property) == true) {
+        row.setKost2(toDouble(value));
+      } else if ("menge".equals(property) == true) {
+        row.setMenge(toString(value));
+      } else if ("sh2".equals(property) == true) {
+        row.setSh2(toString(value));
+      } else if ("beleg".equals(property) == true) {
+        row.setBeleg(toString(value));
+      } else if ("datum".equals(property) == true) {
+        row.setDatum(toDate(value));
+      } else if ("gegenkonto".equals(property) == true) {
+        row.setGegenkonto(toInteger(value));
+      } else if ("text".equals(property) == true) {
+        row.setText(toString(value));
+      } else if ("kost1".equals(property) == true) {
+        row.setKost1(toDouble(value));
+      } else if ("beleg2".equals(property) == true) {
+        row.setBeleg2(toBigDecimal(value));
+      } else if ("kr_bsnr".equals(property) == true) {
+        row.setKr_bsnr(toString(value));
+      } else if ("zi".equals(property) == true) {
+        row.setZi(toString(value));
+      } else if ("comment".equals(property) == true) {
+        row.setComment(toString(value));
       }
-      short numberOfSH = 0;
-      for (int col = 0; col < MAX_COLUMNS; col++) {
-        final HSSFCell cell = row.getCell(col);
-        if (cell == null) {
-          break;
-        }
-        final String name = cell.getStringCellValue();
-        log.debug("Processing column '" + name + "'");
-        if ("SH".equals(cell.getStringCellValue()) == true) {
-          numberOfSH++;
-          if (numberOfSH == 2) {
-            log.debug("Renaming 2nd column 'SH' to 'SH2' (column no. " + col + ").");
-            cell.setCellValue("SH2");
-          }
-        }
+    } catch (final RuntimeException ex) {
+      throw new UserException("common.import.excel.error", ex.getMessage(), rowIndex + 1, columnName);
+    }
+  }
+
+  private static String toString(final Object value)
+  {
+    if (value instanceof Double) {
+      final double d = (Double) value;
+      if (d == Math.rint(d) && Math.abs(d) < Long.MAX_VALUE) {
+        return String.valueOf((long) d);
       }
-    } catch (final Exception ex) {
-      log.error(ex.getMessage(), ex);
-      throw new UserException(PFUserContext.getLocalizedString("finance.datev.import.error.titleRowMissed"));
+      return BigDecimal.valueOf(d).toPlainString();
+    }
+    return String.valueOf(value);
+  }
+
+  private static Integer toInteger(final Object value)
+  {
+    if (value instanceof Double) {
+      return ((Double) value).intValue();
+    }
+    final String str = StringUtils.trimToNull(String.valueOf(value));
+    return str != null ? new Integer(str) : null;
+  }
+
+  private static Double toDouble(final Object value)
+  {
+    if (value instanceof Double) {
+      return (Double) value;
+    }
+    final String str = StringUtils.trimToNull(String.valueOf(value));
+    return str != null ? new Double(str) : null;
+  }
+
+  private static BigDecimal toBigDecimal(final Object value)
+  {
+    if (value instanceof Double) {
+      return BigDecimal.valueOf((Double) value);
+    }
+    final String str = StringUtils.trimToNull(String.valueOf(value));
+    return str != null ? new BigDecimal(str) : null;
+  }
+
+  private static Date toDate(final Object value)
+  {
+    if (value instanceof Double) {
+      return HSSFDateUtil.getJavaDate((Double) value);
+    }
+    if (StringUtils.isBlank(String.valueOf(value)) == true) {
+      return null;
     }
+    throw new IllegalArgumentException("Date expected: '" + value + "'");
   }
 
-  private ImportedElement<BuchungssatzDO> convertBuchungssatz(final BuchungssatzImportRow row) throws Exception
+  private ImportedElement<BuchungssatzDO> convertBuchungssatz(final BuchungssatzImportRow row)
   {
     if (row.isEmpty() == true) {
       return null;
@@ -247,27 +377,27 @@ public class BuchungssatzExcelImporter
     satz.setText(StringUtils.replace(row.text, "^", ""));
     satz.setMenge(row.menge);
     satz.setComment(row.comment);
-    KontoDO konto = kontoDao.getKonto(row.konto);
+    KontoDO konto = kontoCache.getKontoByNummer(row.konto);
     if (konto != null) {
       satz.setKonto(konto);
     } else {
       element.putErrorProperty("konto", row.konto);
     }
-    konto = kontoDao.getKonto(row.gegenkonto);
+    konto = kontoCache.getKontoByNummer(row.gegenkonto);
     if (konto != null) {
       satz.setGegenKonto(konto);
     } else {
       element.putErrorProperty("gegenkonto", row.gegenkonto);
     }
     int[] values = KostFormatter.splitKost(row.getKost1());
-    final Kost1DO kost1 = kost1Dao.getKost1(values[0], values[1], values[2], values[3]);
+    final Kost1DO kost1 = kostCache.getKost1(values[0], values[1], values[2], values[3]);
     if (kost1 != null) {
       satz.setKost1(kost1);
     } else {
       element.putErrorProperty("kost1", KostFormatter.formatKost(row.kost1));
     }
     values = KostFormatter.splitKost(row.getKost2());
-    final Kost2DO kost2 = kost2Dao.getKost2(values[0], values[1], values[2], values[3]);
+    final Kost2DO kost2 = kostCache.getKost2(values[0], values[1], values[2], values[3]);
     if (kost2 != null) {
       satz.setKost2(kost2);
     } else {
@@ -0,0 +1,368 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.datev;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.projectforge.fibu.kost.SHType;
+
+/**
+ * Parsed row of a DATEV import of Buchungssätze which isn't yet committed. The rows of an import are stored by
+ * {@link BuchungssatzStagingDao} instead of being held in the user's session. Accounts are referenced by their numbers and cost units by
+ * their ids, so the rows are resolved via the caches when loaded.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+@Entity
+@Table(name = "t_fibu_buchungssatz_staging")
+public class BuchungssatzStagingDO
+{
+  public static final int MAX_ERROR_PROPERTIES_LENGTH = 4000;
+
+  private Integer id;
+
+  private String importId;
+
+  private Integer userId;
+
+  private Date created;
+
+  private String sheetName;
+
+  private Integer elementIndex;
+
+  private boolean selected;
+
+  private Integer year;
+
+  private Integer month;
+
+  private Integer satznr;
+
+  private BigDecimal betrag;
+
+  private SHType sh;
+
+  private boolean ignore;
+
+  private Integer kontoNummer;
+
+  private Integer gegenKontoNummer;
+
+  private Integer kost1Id;
+
+  private Integer kost2Id;
+
+  private String menge;
+
+  private String beleg;
+
+  private Date datum;
+
+  private String text;
+
+  private String comment;
+
+  private String errorProperties;
+
+  @Id
+  @GeneratedValue
+  @Column(name = "pk")
+  public Integer getId()
+  {
+    return id;
+  }
+
+  public void setId(final Integer id)
+  {
+    this.id = id;
+  }
+
+  /**
+   * Identifies all rows of one uploaded file.
+   */
+  @Column(name = "import_id", length = 36, nullable = false)
+  public String getImportId()
+  {
+    return importId;
+  }
+
+  public void setImportId(final String importId)
+  {
+    this.importId = importId;
+  }
+
+  /**
+   * The user who uploaded the file.
+   */
+  @Column(name = "user_id", nullable = false)
+  public Integer getUserId()
+  {
+    return userId;
+  }
+
+  public void setUserId(final Integer userId)
+  {
+    this.userId = userId;
+  }
+
+  @Column(nullable = false)
+  public Date getCreated()
+  {
+    return created;
+  }
+
+  public void setCreated(final Date created)
+  {
+    this.created = created;
+  }
+
+  @Column(name = "sheet_name", length = 20, nullable = false)
+  public String getSheetName()
+  {
+    return sheetName;
+  }
+
+  public void setSheetName(final String sheetName)
+  {
+    this.sheetName = sheetName;
+  }
+
+  /**
+   * Index of the imported element (see {@link org.projectforge.common.ImportedElement#getIndex()}).
+   */
+  @Column(name = "element_index", nullable = false)
+  public Integer getElementIndex()
+  {
+    return elementIndex;
+  }
+
+  public void setElementIndex(final Integer elementIndex)
+  {
+    this.elementIndex = elementIndex;
+  }
+
+  @Column(nullable = false)
+  public boolean isSelected()
+  {
+    return selected;
+  }
+
+  public void setSelected(final boolean selected)
+  {
+    this.selected = selected;
+  }
+
+  @Column(nullable = false)
+  public Integer getYear()
+  {
+    return year;
+  }
+
+  public void setYear(final Integer year)
+  {
+    this.year = year;
+  }
+
+  @Column(nullable = false)
+  public Integer getMonth()
+  {
+    return month;
+  }
+
+  public void setMonth(final Integer month)
+  {
+    this.month = month;
+  }
+
+  @Column
+  public Integer getSatznr()
+  {
+    return satznr;
+  }
+
+  public void setSatznr(final Integer satznr)
+  {
+    this.satznr = satznr;
+  }
+
+  @Column(scale = 2, precision = 18)
+  public BigDecimal getBetrag()
+  {
+    return betrag;
+  }
+
+  public void setBetrag(final BigDecimal betrag)
+  {
+    this.betrag = betrag;
+  }
+
+  @Enumerated(EnumType.STRING)
+  @Column(length = 7)
+  public SHType getSh()
+  {
+    return sh;
+  }
+
+  public void setSh(final SHType sh)
+  {
+    this.sh = sh;
+  }
+
+  /**
+   * @see org.projectforge.fibu.kost.BuchungssatzDO#isIgnore()
+   */
+  @Column(name = "ignore_flag", nullable = false)
+  public boolean isIgnore()
+  {
+    return ignore;
+  }
+
+  public void setIgnore(final boolean ignore)
+  {
+    this.ignore = ignore;
+  }
+
+  @Column(name = "konto_nummer")
+  public Integer getKontoNummer()
+  {
+    return kontoNummer;
+  }
+
+  public void setKontoNummer(final Integer kontoNummer)
+  {
+    this.kontoNummer = kontoNummer;
+  }
+
+  @Column(name = "gegenkonto_nummer")
+  public Integer getGegenKontoNummer()
+  {
+    return gegenKontoNummer;
+  }
+
+  public void setGegenKontoNummer(final Integer gegenKontoNummer)
+  {
+    this.gegenKontoNummer = gegenKontoNummer;
+  }
+
+  @Column(name = "kost1_id")
+  public Integer getKost1Id()
+  {
+    return kost1Id;
+  }
+
+  public void setKost1Id(final Integer kost1Id)
+  {
+    this.kost1Id = kost1Id;
+  }
+
+  @Column(name = "kost2_id")
+  public Integer getKost2Id()
+  {
+    return kost2Id;
+  }
+
+  public void setKost2Id(final Integer kost2Id)
+  {
+    this.kost2Id = kost2Id;
+  }
+
+  @Column(length = 255)
+  public String getMenge()
+  {
+    return menge;
+  }
+
+  public void setMenge(final String menge)
+  {
+    this.menge = menge;
+  }
+
+  @Column(length = 255)
+  public String getBeleg()
+  {
+    return beleg;
+  }
+
+  public void setBeleg(final String beleg)
+  {
+    this.beleg = beleg;
+  }
+
+  @Column
+  public Date getDatum()
+  {
+    return datum;
+  }
+
+  public void setDatum(final Date datum)
+  {
+    this.datum = datum;
+  }
+
+  @Column(length = 255)
+  public String getText()
+  {
+    return text;
+  }
+
+  public void setText(final String text)
+  {
+    this.text = text;
+  }
+
+  @Column(length = 4000)
+  public String getComment()
+  {
+    return comment;
+  }
+
+  public void setComment(final String comment)
+  {
+    this.comment = comment;
+  }
+
+  /**
+   * Error properties of the imported element, one key=value pair per line.
+   */
+  @Column(name = "error_properties", length = MAX_ERROR_PROPERTIES_LENGTH)
+  public String getErrorProperties()
+  {
+    return errorProperties;
+  }
+
+  public void setErrorProperties(final String errorProperties)
+  {
+    this.errorProperties = errorProperties;
+  }
+}
@@ -0,0 +1,304 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.datev;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.projectforge.common.DateHelper;
+import org.projectforge.common.ImportedElement;
+import org.projectforge.common.ImportedSheet;
+import org.projectforge.core.RequiresNewTransactionTemplate;
+import org.projectforge.fibu.KontoCache;
+import org.projectforge.fibu.KontoDO;
+import org.projectforge.fibu.kost.BuchungssatzDO;
+import org.projectforge.fibu.kost.KostCache;
+import org.projectforge.user.PFUserContext;
+import org.springframework.orm.hibernate3.HibernateCallback;
+import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * Stores the parsed rows of DATEV imports of Buchungssätze in the table t_fibu_buchungssatz_staging. The {@link DatevImportDao} holds
+ * only the elements of the sheet which is currently reconciled, committed or displayed in memory, the other sheets of the import storage
+ * contain only their statistics. Rows of imports older than one day (e. g. of expired sessions) are deleted on the next import.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class BuchungssatzStagingDao extends HibernateDaoSupport
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(BuchungssatzStagingDao.class);
+
+  private static final long MAX_AGE_MILLIS = DateHelper.MILLIS_DAY;
+
+  /**
+   * Number of rows after which the session is flushed and cleared while storing.
+   */
+  private static final int FLUSH_BLOCK_SIZE = 50;
+
+  private KontoCache kontoCache;
+
+  private KostCache kostCache;
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
+  /**
+   * Inserts the elements of the given sheet in a new transaction.
+   * @param importId
+   * @param sheet
+   */
+  public void store(final String importId, final ImportedSheet<BuchungssatzDO> sheet)
+  {
+    if (sheet.getElements() == null) {
+      return;
+    }
+    final Integer userId = PFUserContext.getUserId();
+    final Date now = new Date();
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final Session session = getSession();
+        int counter = 0;
+        for (final ImportedElement<BuchungssatzDO> element : sheet.getElements()) {
+          final BuchungssatzStagingDO row = new BuchungssatzStagingDO();
+          row.setImportId(importId);
+          row.setUserId(userId);
+          row.setCreated(now);
+          row.setSheetName(sheet.getName());
+          row.setElementIndex(element.getIndex());
+          copyValues(element, row);
+          session.save(row);
+          if (++counter % FLUSH_BLOCK_SIZE == 0) {
+            session.flush();
+            session.clear();
+          }
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Writes the values of the given elements (selection, resolved cost units and errors after reconciling) back in a new transaction.
+   * @param importId
+   * @param sheet
+   */
+  public void update(final String importId, final ImportedSheet<BuchungssatzDO> sheet)
+  {
+    if (sheet.getElements() == null) {
+      return;
+    }
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final Map<Integer, BuchungssatzStagingDO> rows = new HashMap<Integer, BuchungssatzStagingDO>();
+        for (final BuchungssatzStagingDO row : getRows(getSession(), importId, sheet.getName())) {
+          rows.put(row.getElementIndex(), row);
+        }
+        for (final ImportedElement<BuchungssatzDO> element : sheet.getElements()) {
+          final BuchungssatzStagingDO row = rows.get(element.getIndex());
+          if (row == null) {
+            log.warn("Staging row #" + element.getIndex() + " of sheet '" + sheet.getName() + "' not found (import deleted?).");
+            continue;
+          }
+          copyValues(element, row);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @param importId
+   * @param sheetName
+   * @return The elements of the given sheet ordered by their index. The accounts and cost units are resolved via the caches.
+   */
+  @SuppressWarnings("unchecked")
+  public List<ImportedElement<BuchungssatzDO>> load(final String importId, final String sheetName)
+  {
+    final List<BuchungssatzStagingDO> rows = (List<BuchungssatzStagingDO>) getHibernateTemplate().execute(new HibernateCallback() {
+      public Object doInHibernate(final Session session) throws HibernateException, SQLException
+      {
+        return getRows(session, importId, sheetName);
+      }
+    });
+    final List<ImportedElement<BuchungssatzDO>> elements = new ArrayList<ImportedElement<BuchungssatzDO>>(rows.size());
+    for (final BuchungssatzStagingDO row : rows) {
+      elements.add(createElement(row));
+    }
+    return elements;
+  }
+
+  /**
+   * Deletes all rows of the given import in a new transaction.
+   * @param importId
+   */
+  public void delete(final String importId)
+  {
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final int count = getSession().createQuery("delete from BuchungssatzStagingDO r where r.importId = :importId")
+            .setString("importId", importId).executeUpdate();
+        log.info("Deleted " + count + " staging rows of import " + importId + ".");
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Deletes the rows of all imports older than one day in a new transaction.
+   */
+  public void deleteExpired()
+  {
+    final Date expiry = new Date(System.currentTimeMillis() - MAX_AGE_MILLIS);
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final int count = getSession().createQuery("delete from BuchungssatzStagingDO r where r.created < :expiry")
+            .setTimestamp("expiry", expiry).executeUpdate();
+        if (count > 0) {
+          log.info("Deleted " + count + " expired staging rows.");
+        }
+        return null;
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<BuchungssatzStagingDO> getRows(final Session session, final String importId, final String sheetName)
+  {
+    return session
+        .createQuery("from BuchungssatzStagingDO r where r.importId = :importId and r.sheetName = :sheetName order by r.elementIndex")
+        .setString("importId", importId).setString("sheetName", sheetName).list();
+  }
+
+  private void copyValues(final ImportedElement<BuchungssatzDO> element, final BuchungssatzStagingDO row)
+  {
+    final BuchungssatzDO satz = element.getValue();
+    row.setSelected(element.isSelected());
+    row.setYear(satz.getYear());
+    row.setMonth(satz.getMonth());
+    row.setSatznr(satz.getSatznr());
+    row.setBetrag(satz.getBetrag());
+    row.setSh(satz.getSh());
+    row.setIgnore(satz.isIgnore());
+    row.setKontoNummer(satz.getKonto() != null ? satz.getKonto().getNummer() : null);
+    row.setGegenKontoNummer(satz.getGegenKonto() != null ? satz.getGegenKonto().getNummer() : null);
+    row.setKost1Id(satz.getKost1Id());
+    row.setKost2Id(satz.getKost2Id());
+    row.setMenge(satz.getMenge());
+    row.setBeleg(satz.getBeleg());
+    row.setDatum(satz.getDatum());
+    row.setText(satz.getText());
+    row.setComment(satz.getComment());
+    row.setErrorProperties(formatErrorProperties(element.getErrorProperties()));
+  }
+
+  private ImportedElement<BuchungssatzDO> createElement(final BuchungssatzStagingDO row)
+  {
+    final ImportedElement<BuchungssatzDO> element = new ImportedElement<BuchungssatzDO>(row.getElementIndex(), BuchungssatzDO.class,
+        DatevImportDao.BUCHUNGSSATZ_DIFF_PROPERTIES);
+    final BuchungssatzDO satz = new BuchungssatzDO();
+    element.setValue(satz);
+    satz.setYear(row.getYear());
+    satz.setMonth(row.getMonth());
+    satz.setSatznr(row.getSatznr());
+    satz.setBetrag(row.getBetrag());
+    satz.setSh(row.getSh());
+    satz.setIgnore(row.isIgnore());
+    satz.setKonto(getKonto(row.getKontoNummer()));
+    satz.setGegenKonto(getKonto(row.getGegenKontoNummer()));
+    satz.setKost1(kostCache.getKost1(row.getKost1Id()));
+    satz.setKost2(kostCache.getKost2(row.getKost2Id()));
+    satz.setMenge(row.getMenge());
+    satz.setBeleg(row.getBeleg());
+    // The importer sets java.util.Date (not java.sql.Timestamp), needed for the diffs on reconciling:
+    satz.setDatum(row.getDatum() != null ? new Date(row.getDatum().getTime()) : null);
+    satz.setText(row.getText());
+    satz.setComment(row.getComment());
+    parseErrorProperties(element, row.getErrorProperties());
+    element.setSelected(row.isSelected());
+    return element;
+  }
+
+  private KontoDO getKonto(final Integer nummer)
+  {
+    if (nummer == null) {
+      return null;
+    }
+    return kontoCache.getKontoByNummer(nummer);
+  }
+
+  private static String formatErrorProperties(final Map<String, Object> errorProperties)
+  {
+    if (errorProperties == null || errorProperties.isEmpty() == true) {
+      return null;
+    }
+    final StringBuffer buf = new StringBuffer();
+    for (final Map.Entry<String, Object> entry : errorProperties.entrySet()) {
+      buf.append(entry.getKey()).append("=").append(StringUtils.replaceChars(String.valueOf(entry.getValue()), "\r\n", "  ")).append("\n");
+    }
+    return StringUtils.abbreviate(buf.toString(), BuchungssatzStagingDO.MAX_ERROR_PROPERTIES_LENGTH);
+  }
+
+  /**
+   * The values are restored as strings.
+   */
+  private static void parseErrorProperties(final ImportedElement<BuchungssatzDO> element, final String errorProperties)
+  {
+    if (errorProperties == null) {
+      return;
+    }
+    for (final String line : StringUtils.split(errorProperties, '\n')) {
+      final int pos = line.indexOf('=');
+      if (pos > 0) {
+        element.putErrorProperty(line.substring(0, pos), line.substring(pos + 1));
+      }
+    }
+  }
+
+  public void setKontoCache(final KontoCache kontoCache)
+  {
+    this.kontoCache = kontoCache;
+  }
+
+  public void setKostCache(final KostCache kostCache)
+  {
+    this.kostCache = kostCache;
+  }
+
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
+  {
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
+  }
+}
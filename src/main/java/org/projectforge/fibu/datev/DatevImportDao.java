@@ -26,6 +26,11 @@ package org.projectforge.fibu.datev;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import org.apache.commons.lang.Validate;
 import org.hibernate.LockMode;
@@ -36,23 +41,25 @@ import org.projectforge.common.ImportStorage;
 import org.projectforge.common.ImportedElement;
 import org.projectforge.common.ImportedSheet;
 import org.projectforge.core.ActionLog;
+import org.projectforge.core.RequiresNewTransactionTemplate;
 import org.projectforge.core.UserException;
-import org.projectforge.excel.ExcelImportException;
+import org.projectforge.fibu.KontoCache;
 import org.projectforge.fibu.KontoDO;
 import org.projectforge.fibu.KontoDao;
 import org.projectforge.fibu.KostFormatter;
 import org.projectforge.fibu.kost.BuchungssatzDO;
 import org.projectforge.fibu.kost.BuchungssatzDao;
 import org.projectforge.fibu.kost.Kost1DO;
-import org.projectforge.fibu.kost.Kost1Dao;
 import org.projectforge.fibu.kost.Kost2DO;
-import org.projectforge.fibu.kost.Kost2Dao;
+import org.projectforge.fibu.kost.KostCache;
+import org.projectforge.fibu.kost.MonthlyBalanceDao;
 import org.projectforge.user.UserRightId;
 import org.projectforge.user.UserRightValue;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
-import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
 
 @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
 public class DatevImportDao extends HibernateDaoSupport
@@ -63,6 +70,12 @@ public class DatevImportDao extends HibernateDaoSupport
    */
   private static final int BUCHUNGSSATZ_INSERT_BLOCK_SIZE = 50;
 
+  /**
+   * Number of Buchungssätze committed in one transaction. Large imports (e. g. year-end imports) are committed in several transactions, so
+   * neither the Hibernate session nor the transaction grows with the size of the import.
+   */
+  private static final int BUCHUNGSSATZ_COMMIT_BATCH_SIZE = 1000;
+
   /**
    * Size of bulk inserts. If this value is too large, exceptions are expected and as more small the value is so as more slowly is the
    * insert process.
@@ -76,6 +89,11 @@ public class DatevImportDao extends HibernateDaoSupport
 
   public static final UserRightId USER_RIGHT_ID = UserRightId.FIBU_DATEV_IMPORT;
 
+  /**
+   * Sheet property containing the id of the staging rows of an import of Buchungssätze (see {@link BuchungssatzStagingDao}).
+   */
+  public static final String STAGING_ID_PROPERTY = "stagingId";
+
   static final String[] KONTO_DIFF_PROPERTIES = { "nummer", "bezeichnung"};
 
   static final String[] BUCHUNGSSATZ_DIFF_PROPERTIES = { "satznr", "betrag", "sh", "konto", "kost2", "menge", "beleg", "datum",
@@ -87,12 +105,18 @@ public class DatevImportDao extends HibernateDaoSupport
 
   private KontoDao kontoDao;
 
-  private Kost1Dao kost1Dao;
+  private KontoCache kontoCache;
 
-  private Kost2Dao kost2Dao;
+  private KostCache kostCache;
 
   private BuchungssatzDao buchungssatzDao;
 
+  private BuchungssatzStagingDao buchungssatzStagingDao;
+
+  private MonthlyBalanceDao monthlyBalanceDao;
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
   /**
    * Has the user the right FIBU_DATEV_IMPORT (value true)?
    * @param accessChecker
@@ -142,7 +166,10 @@ public class DatevImportDao extends HibernateDaoSupport
 
   /**
    * Liest die Buchungsdaten aus dem InputStream (Exceltabelle) und schreibt die gelesenen Werte in ImportStorge. Der User muss der
-   * FINANCE_GROUP angehören, um diese Funktionalität ausführen zu können.
+   * FINANCE_GROUP angehören, um diese Funktionalität ausführen zu können. Konten und Kostenträger werden über {@link KontoCache} und
+   * {@link KostCache} aufgelöst. Die Buchungssätze werden blattweise in der Staging-Tabelle gespeichert (siehe
+   * {@link BuchungssatzStagingDao}), der ImportStorage enthält nur die Blätter mit ihren Statistiken. Die Buchungssätze eines Blattes
+   * werden nur für das Verproben, Übernehmen und die Anzeige geladen (siehe {@link #loadElements(ImportStorage, String)}).
    * @param is
    * @param filename
    * @return ImportStorage mit den gelesenen Daten.
@@ -155,11 +182,15 @@ public class DatevImportDao extends HibernateDaoSupport
     log.info("importBuchungsdaten called");
     final ImportStorage<BuchungssatzDO> storage = new ImportStorage<BuchungssatzDO>(Type.BUCHUNGSSAETZE);
     storage.setFilename(filename);
-    final BuchungssatzExcelImporter imp = new BuchungssatzExcelImporter(storage, kontoDao, kost1Dao, kost2Dao, actionLog);
+    buchungssatzStagingDao.deleteExpired();
+    final String importId = UUID.randomUUID().toString();
+    final BuchungssatzExcelImporter imp = new BuchungssatzExcelImporter(storage, kontoCache, kostCache, actionLog, buchungssatzStagingDao,
+        importId);
     try {
       imp.doImport(is);
-    } catch (final ExcelImportException ex) {
-      throw new UserException("common.import.excel.error", ex.getMessage(), ex.getRow(), ex.getColumnname());
+    } catch (final Exception ex) {
+      buchungssatzStagingDao.delete(importId);
+      throw ex;
     }
     return storage;
       }
@@ -181,13 +212,24 @@ public class DatevImportDao extends HibernateDaoSupport
     if (storage.getId() == Type.KONTENPLAN) {
       reconcileKontenplan((ImportedSheet<KontoDO>) sheet);
     } else {
-      reconcileBuchungsdaten((ImportedSheet<BuchungssatzDO>) sheet);
+      final ImportedSheet<BuchungssatzDO> buchungssatzSheet = (ImportedSheet<BuchungssatzDO>) sheet;
+      loadElements(buchungssatzSheet);
+      reconcileBuchungsdaten(buchungssatzSheet);
+      storeElements(buchungssatzSheet);
     }
     sheet.setNumberOfCommittedElements(-1);
   }
 
+  /**
+   * Der Kontenplan wird in einer Transaktion geschrieben, die Buchungsdaten in Transaktionen mit jeweils bis zu
+   * {@link #BUCHUNGSSATZ_COMMIT_BATCH_SIZE} Buchungssätzen. Schlägt eine dieser Transaktionen fehl, bleiben die zuvor geschriebenen
+   * Buchungssätze erhalten (siehe {@link ImportedSheet#getNumberOfCommittedElements()}) und das Blatt kann erneut verprobt und
+   * übernommen werden.
+   * @param storage
+   * @param sheetName
+   */
   @SuppressWarnings("unchecked")
-  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW, isolation = Isolation.REPEATABLE_READ)
+  @Transactional(readOnly = false, propagation = Propagation.NOT_SUPPORTED)
   public void commit(final ImportStorage< ? > storage, final String sheetName)
   {
     checkLoggeinUserRight(accessChecker);
@@ -199,14 +241,138 @@ public class DatevImportDao extends HibernateDaoSupport
     }
     int no = -1;
     if (storage.getId() == Type.KONTENPLAN) {
-      no = commitKontenplan((ImportedSheet<KontoDO>) sheet);
+      no = (Integer) requiresNewTxTemplate.executeRepeatableRead(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          return commitKontenplan((ImportedSheet<KontoDO>) sheet);
+        }
+      });
     } else {
-      no = commitBuchungsdaten((ImportedSheet<BuchungssatzDO>) sheet);
+      final ImportedSheet<BuchungssatzDO> buchungssatzSheet = (ImportedSheet<BuchungssatzDO>) sheet;
+      loadElements(buchungssatzSheet);
+      // The Buchungssätze are committed in batches: the monthly balances of every affected month are re-calculated only once at the end.
+      monthlyBalanceDao.startCollectingDirtyMonths();
+      try {
+        no = commitBuchungsdaten(buchungssatzSheet);
+      } finally {
+        releaseElements(buchungssatzSheet);
+        monthlyBalanceDao.recalculateCollectedMonths();
+      }
     }
     sheet.setNumberOfCommittedElements(no);
     sheet.setStatus(ImportStatus.IMPORTED);
   }
 
+  /**
+   * Loads the staged Buchungssätze of the given sheet, if not yet loaded. Does nothing for the Kontenplan, because it's held in the
+   * storage. Must be called before the elements of the sheet are accessed, e. g. for selecting.
+   * @param storage
+   * @param sheetName
+   * @see #storeElements(ImportStorage, String)
+   */
+  @SuppressWarnings("unchecked")
+  public void loadElements(final ImportStorage< ? > storage, final String sheetName)
+  {
+    checkLoggeinUserRight(accessChecker);
+    if (storage.getId() != Type.BUCHUNGSSAETZE) {
+      return;
+    }
+    final ImportedSheet< ? > sheet = storage.getNamedSheet(sheetName);
+    Validate.notNull(sheet);
+    loadElements((ImportedSheet<BuchungssatzDO>) sheet);
+  }
+
+  /**
+   * Writes the selection of the Buchungssätze of the given sheet to the staging table and releases the elements, if the sheet isn't open
+   * (displayed). Does nothing for the Kontenplan.
+   * @param storage
+   * @param sheetName
+   */
+  @SuppressWarnings("unchecked")
+  public void storeElements(final ImportStorage< ? > storage, final String sheetName)
+  {
+    checkLoggeinUserRight(accessChecker);
+    if (storage.getId() != Type.BUCHUNGSSAETZE) {
+      return;
+    }
+    final ImportedSheet< ? > sheet = storage.getNamedSheet(sheetName);
+    Validate.notNull(sheet);
+    storeElements((ImportedSheet<BuchungssatzDO>) sheet);
+  }
+
+  /**
+   * Loads the Buchungssätze of all open sheets and stores and releases the Buchungssätze of all closed sheets, so only the displayed
+   * sheets are held in memory.
+   * @param storage
+   */
+  @SuppressWarnings("unchecked")
+  public void synchronizeElements(final ImportStorage< ? > storage)
+  {
+    if (storage.getId() != Type.BUCHUNGSSAETZE || storage.getSheets() == null) {
+      return;
+    }
+    checkLoggeinUserRight(accessChecker);
+    for (final ImportedSheet< ? > sheet : storage.getSheets()) {
+      if (sheet.isOpen() == true) {
+        loadElements((ImportedSheet<BuchungssatzDO>) sheet);
+      } else if (sheet.getElements() != null) {
+        storeElements((ImportedSheet<BuchungssatzDO>) sheet);
+      }
+    }
+  }
+
+  /**
+   * Deletes the staged Buchungssätze of the given storage.
+   * @param storage
+   */
+  public void deleteStagedElements(final ImportStorage< ? > storage)
+  {
+    if (storage == null || storage.getId() != Type.BUCHUNGSSAETZE || storage.getSheets() == null) {
+      return;
+    }
+    final Set<String> importIds = new HashSet<String>();
+    for (final ImportedSheet< ? > sheet : storage.getSheets()) {
+      final String importId = (String) sheet.getProperty(STAGING_ID_PROPERTY);
+      if (importId != null && importIds.add(importId) == true) {
+        buchungssatzStagingDao.delete(importId);
+      }
+    }
+  }
+
+  /**
+   * If the sheet was already reconciled, the existing Buchungssätze are set as old values again (modifications are shown), but the status
+   * and the statistics of the sheet aren't changed.
+   */
+  private void loadElements(final ImportedSheet<BuchungssatzDO> sheet)
+  {
+    if (sheet.getElements() != null) {
+      return;
+    }
+    final List<ImportedElement<BuchungssatzDO>> elements = buchungssatzStagingDao.load((String) sheet.getProperty(STAGING_ID_PROPERTY),
+        sheet.getName());
+    if (sheet.isReconciled() == true) {
+      final Map<Integer, BuchungssatzDO> dbSaetze = getDbBuchungssaetze(sheet);
+      for (final ImportedElement<BuchungssatzDO> el : elements) {
+        el.setOldValue(dbSaetze.get(el.getValue().getSatznr()));
+        el.setReconciled(true);
+      }
+    }
+    sheet.setElements(elements);
+  }
+
+  private void storeElements(final ImportedSheet<BuchungssatzDO> sheet)
+  {
+    buchungssatzStagingDao.update((String) sheet.getProperty(STAGING_ID_PROPERTY), sheet);
+    releaseElements(sheet);
+  }
+
+  private void releaseElements(final ImportedSheet<BuchungssatzDO> sheet)
+  {
+    if (sheet.isOpen() == false) {
+      sheet.setElements(null);
+    }
+  }
+
   private void reconcileKontenplan(final ImportedSheet<KontoDO> sheet)
   {
     log.info("Reconcile Kontenplan called");
@@ -224,13 +390,14 @@ public class DatevImportDao extends HibernateDaoSupport
   private void reconcileBuchungsdaten(final ImportedSheet<BuchungssatzDO> sheet)
   {
     log.info("Reconcile Buchungsdaten called");
+    final Map<Integer, BuchungssatzDO> dbSaetze = getDbBuchungssaetze(sheet);
     for (final ImportedElement<BuchungssatzDO> el : sheet.getElements()) {
       final BuchungssatzDO satz = el.getValue();
       if (el.isFaulty() == true) {
         String kost = (String) el.getErrorProperty("kost1");
         if (kost != null) {
           final int[] vals = KostFormatter.splitKost(kost);
-          final Kost1DO kost1 = kost1Dao.getKost1(vals[0], vals[1], vals[2], vals[3]);
+          final Kost1DO kost1 = kostCache.getKost1(vals[0], vals[1], vals[2], vals[3]);
           if (kost1 != null) {
             satz.setKost1(kost1);
             el.removeErrorProperty("kost1");
@@ -239,14 +406,14 @@ public class DatevImportDao extends HibernateDaoSupport
         kost = (String) el.getErrorProperty("kost2");
         if (kost != null) {
           final int[] vals = KostFormatter.splitKost(kost);
-          final Kost2DO kost2 = kost2Dao.getKost2(vals[0], vals[1], vals[2], vals[3]);
+          final Kost2DO kost2 = kostCache.getKost2(vals[0], vals[1], vals[2], vals[3]);
           if (kost2 != null) {
             satz.setKost2(kost2);
             el.removeErrorProperty("kost2");
           }
         }
       }
-      final BuchungssatzDO dbSatz = buchungssatzDao.getBuchungssatz(satz.getYear(), satz.getMonth(), satz.getSatznr());
+      final BuchungssatzDO dbSatz = dbSaetze.get(satz.getSatznr());
       if (dbSatz != null) {
         el.setOldValue(dbSatz);
       }
@@ -283,13 +450,28 @@ public class DatevImportDao extends HibernateDaoSupport
     return getHibernateTemplate().get(clazz, id, LockMode.READ);
   }
 
+  /**
+   * All Buchungssätze of a sheet are of the same month (see {@link BuchungssatzExcelImporter}), so the existing ones are read with one
+   * query instead of one query per Buchungssatz.
+   */
+  private Map<Integer, BuchungssatzDO> getDbBuchungssaetze(final ImportedSheet<BuchungssatzDO> sheet)
+  {
+    final Integer year = (Integer) sheet.getProperty("year");
+    final Integer month = (Integer) sheet.getProperty("month");
+    Validate.notNull(year);
+    Validate.notNull(month);
+    return buchungssatzDao.getBuchungssaetze(year, month);
+  }
+
   private int commitBuchungsdaten(final ImportedSheet<BuchungssatzDO> sheet)
   {
     log.info("Commit Buchungsdaten called");
-    final Collection<BuchungssatzDO> col = new ArrayList<BuchungssatzDO>();
+    final Map<Integer, BuchungssatzDO> dbSaetze = getDbBuchungssaetze(sheet);
+    final List<BuchungssatzDO> batch = new ArrayList<BuchungssatzDO>();
+    int no = 0;
     for (final ImportedElement<BuchungssatzDO> el : sheet.getElements()) {
       final BuchungssatzDO satz = el.getValue();
-      final BuchungssatzDO dbSatz = buchungssatzDao.getBuchungssatz(satz.getYear(), satz.getMonth(), satz.getSatznr());
+      final BuchungssatzDO dbSatz = dbSaetze.get(satz.getSatznr());
       boolean addSatz = false;
       if (dbSatz != null) {
         satz.setId(dbSatz.getId());
@@ -300,17 +482,51 @@ public class DatevImportDao extends HibernateDaoSupport
         addSatz = true;
       }
       if (addSatz == true) {
-        final BuchungssatzDO newSatz = new BuchungssatzDO();
-        newSatz.copyValuesFrom(satz, "konto", "gegenKonto", "kost1", "kost2");
-        newSatz.setKonto((KontoDO) get(KontoDO.class, satz.getKontoId()));
-        newSatz.setGegenKonto((KontoDO) get(KontoDO.class, satz.getGegenKontoId()));
-        newSatz.setKost1((Kost1DO) get(Kost1DO.class, satz.getKost1Id()));
-        newSatz.setKost2((Kost2DO) get(Kost2DO.class, satz.getKost2Id()));
-        col.add(newSatz);
+        batch.add(satz);
+        if (batch.size() >= BUCHUNGSSATZ_COMMIT_BATCH_SIZE) {
+          no += commitBuchungssaetze(sheet, batch, no);
+          batch.clear();
+        }
       }
     }
-    buchungssatzDao.internalSaveOrUpdate(buchungssatzDao, col, BUCHUNGSSATZ_INSERT_BLOCK_SIZE);
-    return col.size();
+    no += commitBuchungssaetze(sheet, batch, no);
+    return no;
+  }
+
+  /**
+   * Commits the given Buchungssätze in a new transaction.
+   * @param committed Number of already committed Buchungssätze of the sheet (stored in the sheet if this transaction fails).
+   * @return Number of committed Buchungssätze.
+   */
+  private int commitBuchungssaetze(final ImportedSheet<BuchungssatzDO> sheet, final List<BuchungssatzDO> batch, final int committed)
+  {
+    if (batch.isEmpty() == true) {
+      return 0;
+    }
+    try {
+      requiresNewTxTemplate.executeRepeatableRead(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          final Collection<BuchungssatzDO> col = new ArrayList<BuchungssatzDO>(batch.size());
+          for (final BuchungssatzDO satz : batch) {
+            final BuchungssatzDO newSatz = new BuchungssatzDO();
+            newSatz.copyValuesFrom(satz, "konto", "gegenKonto", "kost1", "kost2");
+            newSatz.setKonto((KontoDO) get(KontoDO.class, satz.getKontoId()));
+            newSatz.setGegenKonto((KontoDO) get(KontoDO.class, satz.getGegenKontoId()));
+            newSatz.setKost1((Kost1DO) get(Kost1DO.class, satz.getKost1Id()));
+            newSatz.setKost2((Kost2DO) get(Kost2DO.class, satz.getKost2Id()));
+            col.add(newSatz);
+          }
+          buchungssatzDao.internalSaveOrUpdate(buchungssatzDao, col, BUCHUNGSSATZ_INSERT_BLOCK_SIZE);
+          return null;
+        }
+      });
+    } catch (final RuntimeException ex) {
+      log.error("Commit of Buchungssätze aborted after " + committed + " committed Buchungssätze: " + ex.getMessage(), ex);
+      sheet.setNumberOfCommittedElements(committed);
+      throw ex;
+    }
+    return batch.size();
   }
 
   public void setAccessChecker(final AccessChecker accessChecker)
@@ -323,18 +539,33 @@ public class DatevImportDao extends HibernateDaoSupport
     this.kontoDao = kontoDao;
   }
 
-  public void setKost1Dao(final Kost1Dao kost1Dao)
+  public void setKontoCache(final KontoCache kontoCache)
+  {
+    this.kontoCache = kontoCache;
+  }
+
+  public void setKostCache(final KostCache kostCache)
   {
-    this.kost1Dao = kost1Dao;
+    this.kostCache = kostCache;
   }
 
-  public void setKost2Dao(final Kost2Dao kost2Dao)
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
   {
-    this.kost2Dao = kost2Dao;
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
   }
 
   public void setBuchungssatzDao(final BuchungssatzDao buchungssatzDao)
   {
     this.buchungssatzDao = buchungssatzDao;
   }
+
+  public void setBuchungssatzStagingDao(final BuchungssatzStagingDao buchungssatzStagingDao)
+  {
+    this.buchungssatzStagingDao = buchungssatzStagingDao;
+  }
+
+  public void setMonthlyBalanceDao(final MonthlyBalanceDao monthlyBalanceDao)
+  {
+    this.monthlyBalanceDao = monthlyBalanceDao;
+  }
 }
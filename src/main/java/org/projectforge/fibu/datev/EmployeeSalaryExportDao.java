@@ -23,33 +23,25 @@
 
 package org.projectforge.fibu.datev;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.Validate;
-import org.apache.poi.hssf.util.HSSFColor;
 import org.projectforge.calendar.DayHolder;
 import org.projectforge.calendar.MonthHolder;
 import org.projectforge.common.CurrencyHelper;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.NumberHelper;
-import org.projectforge.excel.CellFormat;
-import org.projectforge.excel.ContentProvider;
-import org.projectforge.excel.ExportCell;
-import org.projectforge.excel.ExportRow;
-import org.projectforge.excel.ExportSheet;
-import org.projectforge.excel.ExportWorkbook;
-import org.projectforge.excel.PropertyMapping;
 import org.projectforge.export.MyXlsContentProvider;
+import org.projectforge.export.XlsxStreamWriter;
 import org.projectforge.fibu.EmployeeDO;
 import org.projectforge.fibu.EmployeeDao;
 import org.projectforge.fibu.EmployeeFilter;
@@ -68,7 +60,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
- * For excel export of employee salaries for import in Datev.
+ * For excel export of employee salaries for import in Datev. The rows are written directly to the output stream, only the small employee
+ * sheet (one row per employee) is buffered until the salary sheet is written.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
@@ -79,41 +72,9 @@ public class EmployeeSalaryExportDao extends HibernateDaoSupport
 
   public static final int GEGENKONTO = 3791;
 
-  private class MyContentProvider extends MyXlsContentProvider
-  {
-    public MyContentProvider(final ExportWorkbook workbook)
-    {
-      super(workbook);
-    }
-
-    @Override
-    public MyContentProvider updateRowStyle(final ExportRow row)
-    {
-      for (final ExportCell cell : row.getCells()) {
-        final CellFormat format = cell.ensureAndGetCellFormat();
-        format.setFillForegroundColor(HSSFColor.WHITE.index);
-        switch (row.getRowNum()) {
-          case 0:
-            format.setFont(FONT_NORMAL_BOLD);
-            // alignment = CellStyle.ALIGN_CENTER;
-            break;
-          default:
-            format.setFont(FONT_NORMAL);
-            if (row.getRowNum() % 2 == 0) {
-              format.setFillForegroundColor(HSSFColor.GREY_25_PERCENT.index);
-            }
-            break;
-        }
-      }
-      return this;
-    }
+  private static final String FORMAT_CURRENCY = "#,##0.00;[Red]-#,##0.00";
 
-    @Override
-    public ContentProvider newInstance()
-    {
-      return new MyContentProvider(this.workbook);
-    }
-  };
+  private static final String FORMAT_HOURS = "0.00;[Red]-0.00";
 
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(EmployeeSalaryExportDao.class);
 
@@ -125,33 +86,39 @@ public class EmployeeSalaryExportDao extends HibernateDaoSupport
 
   private enum ExcelColumn
   {
-    KOST1("fibu.kost1", MyXlsContentProvider.LENGTH_KOSTENTRAEGER), MITARBEITER("fibu.employee", MyXlsContentProvider.LENGTH_USER), STUNDEN(
-        "hours", MyXlsContentProvider.LENGTH_DURATION), KOST2("fibu.kost2", MyXlsContentProvider.LENGTH_KOSTENTRAEGER), BRUTTO_MIT_AG(
-            "fibu.employee.salary.bruttoMitAgAnteil", MyXlsContentProvider.LENGTH_CURRENCY), KORREKTUR("fibu.common.korrekturWert",
-                MyXlsContentProvider.LENGTH_CURRENCY), SUMME("sum", MyXlsContentProvider.LENGTH_CURRENCY), BEZEICHNUNG("description",
-                    MyXlsContentProvider.LENGTH_EXTRA_LONG), DATUM("date", MyXlsContentProvider.LENGTH_DATE), KONTO("fibu.buchungssatz.konto", 14), GEGENKONTO(
-                        "fibu.buchungssatz.gegenKonto", 14);
+    KOST1("fibu.kost1", MyXlsContentProvider.LENGTH_KOSTENTRAEGER, "#"), //
+    MITARBEITER("fibu.employee", MyXlsContentProvider.LENGTH_USER, null), //
+    STUNDEN("hours", MyXlsContentProvider.LENGTH_DURATION, "0.00"), //
+    KOST2("fibu.kost2", MyXlsContentProvider.LENGTH_KOSTENTRAEGER, "#"), //
+    BRUTTO_MIT_AG("fibu.employee.salary.bruttoMitAgAnteil", MyXlsContentProvider.LENGTH_CURRENCY, FORMAT_CURRENCY), //
+    KORREKTUR("fibu.common.korrekturWert", MyXlsContentProvider.LENGTH_CURRENCY, FORMAT_CURRENCY), //
+    SUMME("sum", MyXlsContentProvider.LENGTH_CURRENCY, FORMAT_CURRENCY), //
+    BEZEICHNUNG("description", MyXlsContentProvider.LENGTH_EXTRA_LONG, null), //
+    DATUM("date", MyXlsContentProvider.LENGTH_DATE, "dd.MM.yyyy"), //
+    KONTO("fibu.buchungssatz.konto", 14, "#"), //
+    GEGENKONTO("fibu.buchungssatz.gegenKonto", 14, "#");
 
     final String theTitle;
 
     final int width;
 
-    final static ExcelColumn START = KOST1;
+    final String format;
 
-    final static ExcelColumn END = GEGENKONTO;
-
-    ExcelColumn(final String theTitle, final int width)
+    ExcelColumn(final String theTitle, final int width, final String format)
     {
       this.theTitle = theTitle;
       this.width = (short) width;
+      this.format = format;
     }
   }
 
   /**
    * Exports the filtered list as table with almost all fields.
+   * @param out The excel file (xlsx) is written to this stream.
+   * @param list
    */
   @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
-  public byte[] export(final List<EmployeeSalaryDO> list)
+  public void export(final OutputStream out, final List<EmployeeSalaryDO> list) throws IOException
   {
     log.info("Exporting employee salary list.");
     Validate.notEmpty(list);
@@ -186,10 +153,7 @@ public class EmployeeSalaryExportDao extends HibernateDaoSupport
         }
       });
     }
-    final ExportWorkbook xls = new ExportWorkbook();
-    final ContentProvider contentProvider = new MyContentProvider(xls);
-    // create a default Date format and currency column
-    xls.setContentProvider(contentProvider);
+    final XlsxStreamWriter xlsx = new XlsxStreamWriter(out).setStripedRows(true);
 
     final EmployeeSalaryDO first = list.get(0);
     final int year = first.getYear();
@@ -200,71 +164,20 @@ public class EmployeeSalaryExportDao extends HibernateDaoSupport
     final BigDecimal numberOfWorkingDays = monthHolder.getNumberOfWorkingDays();
     buchungsdatum.setEndOfMonth();
 
-    final String sheetTitle = DateHelper.formatMonth(year, month);
-    final ExportSheet sheet = xls.addSheet(sheetTitle);
-    sheet.createFreezePane(0, 1);
-
-    final ExportSheet employeeSheet = xls.addSheet(PFUserContext.getLocalizedString("fibu.employee"));
-    employeeSheet.setColumnWidth(0, MyXlsContentProvider.LENGTH_USER * 256);
-    employeeSheet.setColumnWidth(1, 14 * 256);
-    employeeSheet.setColumnWidth(2, 12 * 256);
-    employeeSheet.setColumnWidth(3, 12 * 256);
-    employeeSheet.setColumnWidth(4, 12 * 256);
-    final ContentProvider provider = employeeSheet.getContentProvider();
-    provider.putFormat("STUNDEN", "0.00;[Red]-0.00");
-    final ExportRow employeeRow = employeeSheet.addRow();
-    employeeRow.addCell(0, PFUserContext.getLocalizedString("fibu.employee"));
-    employeeRow.addCell(1, PFUserContext.getLocalizedString("fibu.employee.wochenstunden"));
-    employeeRow.addCell(2, PFUserContext.getLocalizedString("fibu.employee.sollstunden"));
-    employeeRow.addCell(3, PFUserContext.getLocalizedString("fibu.employee.iststunden"));
-    employeeRow.addCell(4, PFUserContext.getLocalizedString("fibu.common.difference"));
-
-    // build all column names, title, widths from fixed and variable columns
-    final int numCols = ExcelColumn.values().length;
-
-    final String[] colNames = new String[numCols];
-    final String[] colTitles = new String[numCols];
-    final int[] colWidths = new int[numCols];
-
-    int idx = 0;
-    for (final ExcelColumn col : EnumSet.range(ExcelColumn.START, ExcelColumn.END)) {
-      colNames[idx] = col.name();
-      colTitles[idx] = PFUserContext.getLocalizedString(col.theTitle);
-      colWidths[idx] = col.width;
-      ++idx;
-    }
-
-    // column property names
-    sheet.setPropertyNames(colNames);
-
-    final ContentProvider sheetProvider = sheet.getContentProvider();
-    sheetProvider.putFormat("STUNDEN", "0.00");
-    sheetProvider.putFormat("BRUTTO_MIT_AG", "#,##0.00;[Red]-#,##0.00");
-    sheetProvider.putFormat("KORREKTUR", "#,##0.00;[Red]-#,##0.00");
-    sheetProvider.putFormat("SUMME", "#,##0.00;[Red]-#,##0.00");
-    sheetProvider.putFormat("KOST1", "#");
-    sheetProvider.putFormat("KOST2", "#");
-    sheetProvider.putFormat("KONTO", "#");
-    sheetProvider.putFormat("GEGENKONTO", "#");
-    sheetProvider.putFormat("DATUM", "dd.MM.yyyy");
-    // inform provider of column widths
-    for (int ci = 0; ci < colWidths.length; ++ci) {
-      sheetProvider.putColWidth(ci, colWidths[ci]);
-    }
-
-    final ExportRow headRow = sheet.addRow();
-    int i = 0;
-    for (final String title : colTitles) {
-      headRow.addCell(i++, title);
+    final XlsxStreamWriter.Column[] cols = new XlsxStreamWriter.Column[ExcelColumn.values().length];
+    for (final ExcelColumn col : ExcelColumn.values()) {
+      cols[col.ordinal()] = new XlsxStreamWriter.Column(PFUserContext.getLocalizedString(col.theTitle), col.width, col.format);
     }
+    xlsx.startSheet(DateHelper.formatMonth(year, month), cols);
 
+    // The employee sheet is written after the salary sheet:
+    final List<Object[]> employeeRows = new ArrayList<Object[]>();
     for (final EmployeeSalaryDO salary : list) {
-      final PropertyMapping mapping = new PropertyMapping();
+      final Object[] values = new Object[ExcelColumn.values().length];
       final PFUserDO user = userGroupCache.getUser(salary.getEmployee().getUserId());
       Validate.isTrue(year == salary.getYear());
       Validate.isTrue(month == salary.getMonth());
       final MonthlyEmployeeReport report = monthlyEmployeeReportDao.getReport(year, month, user);
-      mapping.add(ExcelColumn.MITARBEITER, user.getFullname());
       final Kost1DO kost1 = salary.getEmployee().getKost1();
       final BigDecimal bruttoMitAGAnteil = salary.getBruttoMitAgAnteil();
       final BigDecimal netDuration = new BigDecimal(report.getTotalNetDuration());
@@ -274,82 +187,74 @@ public class EmployeeSalaryExportDao extends HibernateDaoSupport
       for (final Kost2Row row : rows.values()) {
         final Kost2DO kost2 = row.getKost2();
         final MonthlyEmployeeReportEntry entry = report.getKost2Durations().get(kost2.getId());
-        mapping.add(ExcelColumn.KOST1, kost1.getNummer());
-        mapping.add(ExcelColumn.MITARBEITER, user.getFullname());
-        mapping.add(ExcelColumn.KOST2, kost2.getNummer());
+        values[ExcelColumn.KOST1.ordinal()] = kost1.getNummer();
+        values[ExcelColumn.MITARBEITER.ordinal()] = user.getFullname();
+        values[ExcelColumn.KOST2.ordinal()] = kost2.getNummer();
         final BigDecimal duration = new BigDecimal(entry.getMillis() / 1000); // Seconds
-        // duration = duration.divide(new BigDecimal(60 * 60 * 24), 8, RoundingMode.HALF_UP); // Fraction of day (24 hours)
-        // mapping.add(ExcelColumn.STUNDEN, duration);
-        mapping.add(ExcelColumn.STUNDEN, duration.divide(new BigDecimal(3600), 2, RoundingMode.HALF_UP));
-        mapping.add(ExcelColumn.BEZEICHNUNG, kost2.getToolTip());
+        values[ExcelColumn.STUNDEN.ordinal()] = duration.divide(new BigDecimal(3600), 2, RoundingMode.HALF_UP);
+        values[ExcelColumn.BEZEICHNUNG.ordinal()] = kost2.getToolTip();
         final BigDecimal betrag = CurrencyHelper.multiply(bruttoMitAGAnteil,
             new BigDecimal(entry.getMillis()).divide(netDuration, 8, RoundingMode.HALF_UP));
         sum = sum.add(betrag);
         if (--j == 0) {
           final BigDecimal korrektur = bruttoMitAGAnteil.subtract(sum);
-          mapping.add(ExcelColumn.BRUTTO_MIT_AG, betrag.add(korrektur));
-          mapping.add(ExcelColumn.KORREKTUR, korrektur);
+          values[ExcelColumn.BRUTTO_MIT_AG.ordinal()] = betrag.add(korrektur);
+          values[ExcelColumn.KORREKTUR.ordinal()] = korrektur;
           if (NumberHelper.isEqual(sum.add(korrektur), bruttoMitAGAnteil) == true) {
-            mapping.add(ExcelColumn.SUMME, bruttoMitAGAnteil);
+            values[ExcelColumn.SUMME.ordinal()] = bruttoMitAGAnteil;
           } else {
-            mapping.add(ExcelColumn.SUMME, "*** " + sum + " != " + bruttoMitAGAnteil);
+            values[ExcelColumn.SUMME.ordinal()] = "*** " + sum + " != " + bruttoMitAGAnteil;
           }
         } else {
-          mapping.add(ExcelColumn.BRUTTO_MIT_AG, betrag);
-          mapping.add(ExcelColumn.KORREKTUR, "");
-          mapping.add(ExcelColumn.SUMME, "");
+          values[ExcelColumn.BRUTTO_MIT_AG.ordinal()] = betrag;
+          values[ExcelColumn.KORREKTUR.ordinal()] = null;
+          values[ExcelColumn.SUMME.ordinal()] = null;
         }
-        mapping.add(ExcelColumn.DATUM, buchungsdatum.getCalendar()); // Last day of month
-        mapping.add(ExcelColumn.KONTO, KONTO); // constant.
-        mapping.add(ExcelColumn.GEGENKONTO, GEGENKONTO); // constant.
-        sheet.addRow(mapping.getMapping(), 0);
+        values[ExcelColumn.DATUM.ordinal()] = buchungsdatum.getCalendar(); // Last day of month
+        values[ExcelColumn.KONTO.ordinal()] = KONTO; // constant.
+        values[ExcelColumn.GEGENKONTO.ordinal()] = GEGENKONTO; // constant.
+        xlsx.addRow(values);
       }
-      addEmployeeRow(employeeSheet, salary.getEmployee(), numberOfWorkingDays, netDuration);
+      employeeRows.add(getEmployeeRow(salary.getEmployee(), numberOfWorkingDays, netDuration));
     }
     for (final EmployeeDO employee : missedEmployees) {
       final PFUserDO user = userGroupCache.getUser(employee.getUserId());
-      final PropertyMapping mapping = new PropertyMapping();
-      mapping.add(ExcelColumn.MITARBEITER, user.getFullname());
-      mapping.add(ExcelColumn.SUMME, "***");
-      mapping.add(ExcelColumn.BEZEICHNUNG, "*** FEHLT! ***");
-      sheet.addRow(mapping.getMapping(), 0);
+      final Object[] values = new Object[ExcelColumn.values().length];
+      values[ExcelColumn.MITARBEITER.ordinal()] = user.getFullname();
+      values[ExcelColumn.SUMME.ordinal()] = "***";
+      values[ExcelColumn.BEZEICHNUNG.ordinal()] = "*** FEHLT! ***";
+      xlsx.addRow(values);
       final MonthlyEmployeeReport report = monthlyEmployeeReportDao.getReport(year, month, user);
       final BigDecimal netDuration = new BigDecimal(report.getTotalNetDuration());
-      addEmployeeRow(employeeSheet, employee, numberOfWorkingDays, netDuration);
+      employeeRows.add(getEmployeeRow(employee, numberOfWorkingDays, netDuration));
     }
-    // sheet.setZoom(3, 4); // 75%
 
-    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    try {
-      xls.write(baos);
-    } catch (final IOException ex) {
-      log.fatal("Exception encountered " + ex, ex);
-      throw new RuntimeException(ex);
+    xlsx.startSheet(PFUserContext.getLocalizedString("fibu.employee"), //
+        new XlsxStreamWriter.Column(PFUserContext.getLocalizedString("fibu.employee"), MyXlsContentProvider.LENGTH_USER), //
+        new XlsxStreamWriter.Column(PFUserContext.getLocalizedString("fibu.employee.wochenstunden"), 14, FORMAT_HOURS), //
+        new XlsxStreamWriter.Column(PFUserContext.getLocalizedString("fibu.employee.sollstunden"), 12, FORMAT_HOURS), //
+        new XlsxStreamWriter.Column(PFUserContext.getLocalizedString("fibu.employee.iststunden"), 12, FORMAT_HOURS), //
+        new XlsxStreamWriter.Column(PFUserContext.getLocalizedString("fibu.common.difference"), 12, FORMAT_HOURS));
+    for (final Object[] row : employeeRows) {
+      xlsx.addRow(row);
     }
-    return baos.toByteArray();
+    xlsx.close();
   }
 
-  private void addEmployeeRow(final ExportSheet sheet, final EmployeeDO employee, final BigDecimal numberOfWorkingDays,
-      final BigDecimal totalDuration)
+  private Object[] getEmployeeRow(final EmployeeDO employee, final BigDecimal numberOfWorkingDays, final BigDecimal totalDuration)
   {
     final PFUserDO user = userGroupCache.getUser(employee.getUserId());
-    final ExportRow row = sheet.addRow();
-    row.addCell(0, user.getFullname());
-    // Wochenstunden
-    row.addCell(1, employee.getWochenstunden(), "STUNDEN");
     // Sollstunden: Wochenstunden * Arbeitstage / 5 Arbeitstage pro Woche
     Integer wochenstunden = employee.getWochenstunden();
     if (wochenstunden == null) {
       wochenstunden = 0;
     }
     final BigDecimal soll = new BigDecimal(wochenstunden).multiply(numberOfWorkingDays).divide(new BigDecimal(5), 2, RoundingMode.HALF_UP);
-    row.addCell(2, soll, "STUNDEN");
     // Iststunden
     final BigDecimal total = totalDuration.divide(new BigDecimal(3600000), 2, RoundingMode.HALF_UP);
-    row.addCell(3, total, "STUNDEN");
     // Differenz
     final BigDecimal differenz = total.subtract(soll);
-    row.addCell(4, differenz, "STUNDEN");
+    return new Object[] { user.getFullname(), employee.getWochenstunden(), soll, total, differenz};
   }
 
   public void setMonthlyEmployeeReportDao(final MonthlyEmployeeReportDao monthlyEmployeeReportDao)
@@ -0,0 +1,199 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.datev;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Reads the rows of all sheets of a MS Excel workbook (HSSF) via the event API of POI. In contrast to the user model no object tree of
+ * the whole workbook is built, only the shared string table and the cells of the current row are held in memory.<br/>
+ * The cell values of a row are given as String, Double (numbers and dates) or Boolean, empty cells as null.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+abstract class HSSFRowEventReader implements HSSFListener
+{
+  private final List<String> sheetNames = new ArrayList<String>();
+
+  private final List<Object> cells = new ArrayList<Object>();
+
+  private SSTRecord sstRecord;
+
+  /** Depth of nested BOF records (e. g. charts inside a work sheet). */
+  private int depth;
+
+  /** Index of the current sheet sub stream, the bound sheet records are given in the same order (including chart sheets etc.). */
+  private int sheetIndex = -1;
+
+  private boolean inSheet;
+
+  private int currentRow = -1;
+
+  /** The cached result of the last string formula is given by the following string record. */
+  private CellValueRecordInterface stringFormulaCell;
+
+  /**
+   * Is called for every work sheet before its rows (chart and macro sheets are skipped).
+   * @param index The index of the sheet in the workbook (0 for the first sheet, chart sheets are counted).
+   * @param name The name of the sheet.
+   */
+  protected abstract void startSheet(final int index, final String name);
+
+  /**
+   * Is called for every row containing at least one non-blank cell in ascending order.
+   * @param rowIndex The index of the row (0 for the first row).
+   * @param values The cell values, the index is the column index. Trailing empty cells are missing.
+   */
+  protected abstract void processRow(final int rowIndex, final Object[] values);
+
+  /**
+   * Is called after the last row of the current sheet.
+   */
+  protected abstract void endSheet();
+
+  public void read(final InputStream is) throws IOException
+  {
+    final POIFSFileSystem fs = new POIFSFileSystem(is);
+    final HSSFRequest request = new HSSFRequest();
+    request.addListenerForAllRecords(this);
+    new HSSFEventFactory().processWorkbookEvents(request, fs);
+  }
+
+  /**
+   * @see org.apache.poi.hssf.eventusermodel.HSSFListener#processRecord(org.apache.poi.hssf.record.Record)
+   */
+  public void processRecord(final Record record)
+  {
+    switch (record.getSid()) {
+      case BoundSheetRecord.sid:
+        sheetNames.add(((BoundSheetRecord) record).getSheetname());
+        break;
+      case BOFRecord.sid:
+        final int type = ((BOFRecord) record).getType();
+        if (++depth == 1 && type != BOFRecord.TYPE_WORKBOOK) {
+          // Every sheet sub stream (work, chart or macro sheet) has its bound sheet record:
+          ++sheetIndex;
+          if (type == BOFRecord.TYPE_WORKSHEET) {
+            inSheet = true;
+            currentRow = -1;
+            cells.clear();
+            startSheet(sheetIndex, sheetIndex < sheetNames.size() ? sheetNames.get(sheetIndex) : String.valueOf(sheetIndex + 1));
+          }
+        }
+        break;
+      case EOFRecord.sid:
+        if (--depth == 0 && inSheet == true) {
+          flushRow();
+          inSheet = false;
+          endSheet();
+        }
+        break;
+      case SSTRecord.sid:
+        sstRecord = (SSTRecord) record;
+        break;
+      case LabelSSTRecord.sid:
+        final LabelSSTRecord labelSST = (LabelSSTRecord) record;
+        setCell(labelSST, sstRecord != null ? sstRecord.getString(labelSST.getSSTIndex()).getString() : null);
+        break;
+      case LabelRecord.sid:
+        final LabelRecord label = (LabelRecord) record;
+        setCell(label, label.getValue());
+        break;
+      case NumberRecord.sid:
+        final NumberRecord number = (NumberRecord) record;
+        setCell(number, number.getValue());
+        break;
+      case BoolErrRecord.sid:
+        final BoolErrRecord boolErr = (BoolErrRecord) record;
+        if (boolErr.isBoolean() == true) {
+          setCell(boolErr, boolErr.getBooleanValue());
+        }
+        break;
+      case FormulaRecord.sid:
+        final FormulaRecord formula = (FormulaRecord) record;
+        if (formula.hasCachedResultString() == true) {
+          stringFormulaCell = formula;
+        } else if (formula.getCachedResultType() == HSSFCell.CELL_TYPE_NUMERIC) {
+          setCell(formula, formula.getValue());
+        } else if (formula.getCachedResultType() == HSSFCell.CELL_TYPE_BOOLEAN) {
+          setCell(formula, formula.getCachedBooleanValue());
+        }
+        break;
+      case StringRecord.sid:
+        if (stringFormulaCell != null) {
+          setCell(stringFormulaCell, ((StringRecord) record).getString());
+          stringFormulaCell = null;
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void setCell(final CellValueRecordInterface cell, final Object value)
+  {
+    if (inSheet == false || depth != 1) {
+      return;
+    }
+    if (cell.getRow() != currentRow) {
+      flushRow();
+      currentRow = cell.getRow();
+    }
+    final int column = cell.getColumn();
+    while (cells.size() <= column) {
+      cells.add(null);
+    }
+    cells.set(column, value);
+  }
+
+  private void flushRow()
+  {
+    if (currentRow >= 0 && cells.isEmpty() == false) {
+      processRow(currentRow, cells.toArray());
+    }
+    cells.clear();
+    currentRow = -1;
+  }
+}
@@ -0,0 +1,116 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.kost;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.projectforge.common.IntRanges;
+import org.projectforge.common.Range;
+
+/**
+ * Sorted interval table of the account number ranges of all business assessment rows. The account number ranges of the rows are split
+ * into disjoint intervals and each interval holds the index of the first row matching it (the same row as found by iterating over all rows
+ * and calling {@link BusinessAssessmentRow#doesMatch(int)}). The row of an account number is found by binary search.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+class AccountRangeIndex implements Serializable
+{
+  private static final long serialVersionUID = -2785040651599327394L;
+
+  /** Start of each interval, the interval ends before the start of the next one. */
+  private final int[] starts;
+
+  /** Index of the row of each interval or -1 if no row matches. */
+  private final int[] rowIndices;
+
+  /**
+   * @param rowConfigs The rows in the order of the business assessment.
+   */
+  AccountRangeIndex(final List<BusinessAssessmentRowConfig> rowConfigs)
+  {
+    final SortedSet<Long> boundaries = new TreeSet<Long>();
+    if (rowConfigs != null) {
+      for (final BusinessAssessmentRowConfig rowConfig : rowConfigs) {
+        final IntRanges ranges = rowConfig.getAccountNumberRanges();
+        if (ranges == null) {
+          continue;
+        }
+        for (final Range<Integer> range : ranges.getRanges()) {
+          boundaries.add((long) range.getMinValue());
+          boundaries.add((long) range.getMaxValue() + 1);
+        }
+        for (final Integer value : ranges.getValues()) {
+          boundaries.add((long) value);
+          boundaries.add((long) value + 1);
+        }
+      }
+    }
+    // Boundaries above Integer.MAX_VALUE are the (exclusive) end of the last interval:
+    final int size = boundaries.headSet((long) Integer.MAX_VALUE + 1).size();
+    starts = new int[size];
+    rowIndices = new int[size];
+    int i = 0;
+    for (final Long boundary : boundaries) {
+      if (i >= size) {
+        break;
+      }
+      starts[i] = boundary.intValue();
+      rowIndices[i] = getFirstMatchingRow(rowConfigs, starts[i]);
+      i++;
+    }
+  }
+
+  /**
+   * @param accountNumber
+   * @return The index of the first row matching the given account number or -1 if no row matches.
+   */
+  int getRowIndex(final int accountNumber)
+  {
+    int pos = Arrays.binarySearch(starts, accountNumber);
+    if (pos < 0) {
+      // Insertion point - 1 is the interval containing the account number:
+      pos = -pos - 2;
+      if (pos < 0) {
+        return -1;
+      }
+    }
+    return rowIndices[pos];
+  }
+
+  private static int getFirstMatchingRow(final List<BusinessAssessmentRowConfig> rowConfigs, final int accountNumber)
+  {
+    for (int i = 0; i < rowConfigs.size(); i++) {
+      final IntRanges ranges = rowConfigs.get(i).getAccountNumberRanges();
+      if (ranges != null && ranges.doesMatch(accountNumber) == true) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
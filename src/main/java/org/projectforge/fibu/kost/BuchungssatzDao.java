@@ -24,7 +24,9 @@
 package org.projectforge.fibu.kost;
 
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.criterion.Order;
@@ -42,6 +44,8 @@ public class BuchungssatzDao extends BaseDao<BuchungssatzDO>
   private static final String[] ADDITIONAL_SEARCH_FIELDS = new String[] { "kost1.nummer", "kost1.description", "kost2.nummer",
       "kost2.description", "kost2.comment", "kost2.projekt.name", "kost2.projekt.kunde.name", "konto.nummer", "gegenKonto.nummer"};
 
+  private MonthlyBalanceDao monthlyBalanceDao;
+
   @Override
   protected String[] getAdditionalSearchFields()
   {
@@ -88,6 +92,27 @@ public class BuchungssatzDao extends BaseDao<BuchungssatzDO>
     return list.get(0);
   }
 
+  /**
+   * Gets all Buchungssätze of the given month with one query, e. g. for reconciling a whole import sheet.
+   * @param year
+   * @param month
+   * @return The Buchungssätze (including the deleted ones) mapped by satznr.
+   * @see #getBuchungssatz(int, int, int)
+   */
+  @SuppressWarnings("unchecked")
+  public Map<Integer, BuchungssatzDO> getBuchungssaetze(final int year, final int month)
+  {
+    final List<BuchungssatzDO> list = getHibernateTemplate().find("from BuchungssatzDO satz where satz.year = ? and satz.month = ?",
+        new Object[] { year, month});
+    final Map<Integer, BuchungssatzDO> map = new HashMap<Integer, BuchungssatzDO>();
+    for (final BuchungssatzDO satz : list) {
+      if (satz.getSatznr() != null && map.containsKey(satz.getSatznr()) == false) {
+        map.put(satz.getSatznr(), satz);
+      }
+    }
+    return map;
+  }
+
   public boolean validateTimeperiod(BuchungssatzFilter myFilter)
   {
     int toMonth = myFilter.getToMonth();
@@ -184,6 +209,31 @@ public class BuchungssatzDao extends BaseDao<BuchungssatzDO>
     return accessChecker.isUserMemberOfGroup(user, throwException, ProjectForgeGroup.FINANCE_GROUP);
   }
 
+  /**
+   * The month of the data base object is marked as dirty (the month of the account record may be modified).
+   * @see org.projectforge.core.BaseDao#onChange(org.projectforge.core.ExtendedBaseDO, org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void onChange(final BuchungssatzDO obj, final BuchungssatzDO dbObj)
+  {
+    monthlyBalanceDao.markDirty(dbObj.getYear(), dbObj.getMonth());
+  }
+
+  /**
+   * Marks the month of the account record as dirty for re-calculating the monthly balances.
+   * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSaveOrModify(final BuchungssatzDO obj)
+  {
+    monthlyBalanceDao.markDirty(obj.getYear(), obj.getMonth());
+  }
+
+  public void setMonthlyBalanceDao(final MonthlyBalanceDao monthlyBalanceDao)
+  {
+    this.monthlyBalanceDao = monthlyBalanceDao;
+  }
+
   @Override
   public BuchungssatzDO newInstance()
   {
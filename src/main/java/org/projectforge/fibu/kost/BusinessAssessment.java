@@ -120,6 +120,10 @@ public class BusinessAssessment implements Serializable
     this.month = month;
   }
 
+  /**
+   * The row of each record is found via the interval table of the account ranges, see {@link BusinessAssessmentConfig#getRowIndex(int)}.
+   * @param records
+   */
   public void setAccountRecords(final List<BuchungssatzDO> records)
   {
     if (CollectionUtils.isEmpty(rows) == true) {
@@ -136,16 +140,10 @@ public class BusinessAssessment implements Serializable
         if (account == null || account.getNummer() == null) {
           continue;
         }
-        final int accountNumber = account.getNummer();
-        boolean found = false;
-        for (final BusinessAssessmentRow row : rows) {
-          if (row.doesMatch(accountNumber) == true) {
-            row.addAccountRecord(record);
-            found = true;
-            break;
-          }
-        }
-        if (found == false) {
+        final int rowIndex = config.getRowIndex(account.getNummer());
+        if (rowIndex >= 0) {
+          rows.get(rowIndex).addAccountRecord(record);
+        } else {
           log.warn("Ignoring Satz: " + record);
           record.setIgnore(true);
         }
@@ -154,6 +152,34 @@ public class BusinessAssessment implements Serializable
     }
   }
 
+  /**
+   * Adds the amounts of the given monthly aggregates instead of single account records (no account records are stored in the rows).
+   * @param balances
+   * @see MonthlyBalanceDao
+   */
+  public void setMonthlyBalances(final List<MonthlyBalanceDO> balances)
+  {
+    if (CollectionUtils.isEmpty(rows) == true) {
+      return;
+    }
+    if (CollectionUtils.isNotEmpty(balances) == true) {
+      for (final MonthlyBalanceDO balance : balances) {
+        counter += balance.getRecordCount();
+        final KontoDO account = balance.getKonto();
+        if (account == null || account.getNummer() == null) {
+          continue;
+        }
+        final int rowIndex = config.getRowIndex(account.getNummer());
+        if (rowIndex >= 0) {
+          rows.get(rowIndex).addAmount(balance.getAmount());
+        } else {
+          log.warn("Ignoring balance of account " + account.getNummer() + ".");
+        }
+      }
+      recalculate();
+    }
+  }
+
   public void recalculate()
   {
     if (rows == null) {
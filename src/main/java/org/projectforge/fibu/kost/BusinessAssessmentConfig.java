@@ -29,6 +29,7 @@ import java.util.List;
 import org.apache.commons.lang.builder.ReflectionToStringBuilder;
 import org.projectforge.xml.stream.XmlField;
 import org.projectforge.xml.stream.XmlObject;
+import org.projectforge.xml.stream.XmlOmitField;
 
 /**
  * Used in config.xml for the definition of the used business assessment schema. The business assessment is displayed in different
@@ -49,6 +50,9 @@ public class BusinessAssessmentConfig implements Serializable
 
   private String overallPerformance, merchandisePurchase, preliminaryResult;
 
+  @XmlOmitField
+  private transient AccountRangeIndex accountRangeIndex;
+
   public BusinessAssessmentConfig()
   {
   }
@@ -75,6 +79,27 @@ public class BusinessAssessmentConfig implements Serializable
     return null;
   }
 
+  /**
+   * The account number ranges of all rows are compiled on first usage into a sorted interval table, so the row is found by binary search
+   * instead of checking all rows.
+   * @param accountNumber
+   * @return The index of the first row (see {@link #getRows()}) whose account ranges match the given account number or -1 if no row
+   *         matches.
+   */
+  public int getRowIndex(final int accountNumber)
+  {
+    AccountRangeIndex index = this.accountRangeIndex;
+    if (index == null) {
+      synchronized (this) {
+        if (this.accountRangeIndex == null) {
+          this.accountRangeIndex = new AccountRangeIndex(rows);
+        }
+        index = this.accountRangeIndex;
+      }
+    }
+    return index.getRowIndex(accountNumber);
+  }
+
   /**
    * @return the heading to be displayed first.
    */
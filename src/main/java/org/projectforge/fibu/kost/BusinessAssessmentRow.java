@@ -108,6 +108,19 @@ public class BusinessAssessmentRow implements Serializable
     }
   }
 
+  /**
+   * Adds an aggregated amount (e. g. of a {@link MonthlyBalanceDO}), no account record is stored.
+   * @param value
+   */
+  void addAmount(final BigDecimal value)
+  {
+    accountRecordsExist = true;
+    if (amount == null) {
+      amount = BigDecimal.ZERO;
+    }
+    amount = amount.add(value);
+  }
+
   /**
    * @return the amount
    */
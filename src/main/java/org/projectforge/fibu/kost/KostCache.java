@@ -35,6 +35,10 @@ import org.apache.commons.lang.ObjectUtils;
 import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
 import org.projectforge.common.NumberHelper;
+import org.projectforge.core.CacheChangeListener;
+import org.projectforge.core.CacheChangeLog;
+import org.projectforge.core.DefaultBaseDO;
+import org.projectforge.fibu.KostFormatter;
 import org.projectforge.reporting.Kost2Art;
 import org.projectforge.reporting.impl.Kost2ArtImpl;
 import org.springframework.orm.hibernate3.HibernateTemplate;
@@ -44,7 +48,7 @@ import org.springframework.orm.hibernate3.HibernateTemplate;
  * The kost2 entries will be cached.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class KostCache extends AbstractCache
+public class KostCache extends AbstractCache implements CacheChangeListener
 {
   private static Logger log = Logger.getLogger(KostCache.class);
 
@@ -53,9 +57,15 @@ public class KostCache extends AbstractCache
   /** The key is the kost2-id. */
   private Map<Integer, Kost2DO> kost2Map;
 
-  /** The key is the kost2-id. */
+  /** The key is the kost1-id. */
   private Map<Integer, Kost1DO> kost1Map;
 
+  /** The key is the kost2 number (see {@link #getKostKey(int, int, int, int)}). */
+  private Map<Integer, Kost2DO> kost2MapByNummer;
+
+  /** The key is the kost1 number (see {@link #getKostKey(int, int, int, int)}). */
+  private Map<Integer, Kost1DO> kost1MapByNummer;
+
   private List<Kost2Art> allKost2Arts;
   
   private boolean kost2EntriesExists = false;
@@ -83,15 +93,12 @@ public class KostCache extends AbstractCache
 
   public Kost2DO getKost2(final int nummernkreis, final int bereich, final int teilbereich, final int kost2art)
   {
-    for (final Kost2DO kost : getKost2Map().values()) {
-      if (kost.getNummernkreis() == nummernkreis
-          && kost.getBereich() == bereich
-          && kost.getTeilbereich() == teilbereich
-          && kost.getKost2ArtId() == kost2art) {
-        return kost;
-      }
+    final Integer key = getKostKey(nummernkreis, bereich, teilbereich, kost2art);
+    if (key == null) {
+      return null;
     }
-    return null;
+    checkRefresh();
+    return kost2MapByNummer.get(key);
   }
 
   public List<Kost2DO> getActiveKost2(int nummernkreis, int bereich, int teilbereich)
@@ -119,6 +126,16 @@ public class KostCache extends AbstractCache
     return getKost1Map().get(kost1Id);
   }
 
+  public Kost1DO getKost1(final int nummernkreis, final int bereich, final int teilbereich, final int endziffer)
+  {
+    final Integer key = getKostKey(nummernkreis, bereich, teilbereich, endziffer);
+    if (key == null) {
+      return null;
+    }
+    checkRefresh();
+    return kost1MapByNummer.get(key);
+  }
+
   /**
    * Gibt die für das Projekt definierten, nicht gelöschten Kostenarten zurück.
    * @param projektId
@@ -195,7 +212,11 @@ public class KostCache extends AbstractCache
    */
   void updateKost2(final Kost2DO kost2)
   {
-    getKost2Map().put(kost2.getId(), kost2);
+    final Kost2DO old = getKost2Map().put(kost2.getId(), kost2);
+    if (old != null) {
+      removeByNummer(kost2MapByNummer, getKostKey(old), old);
+    }
+    putByNummer(kost2MapByNummer, getKostKey(kost2), kost2);
   }
 
   /**
@@ -204,7 +225,11 @@ public class KostCache extends AbstractCache
    */
   void updateKost1(final Kost1DO kost1)
   {
-    getKost1Map().put(kost1.getId(), kost1);
+    final Kost1DO old = getKost1Map().put(kost1.getId(), kost1);
+    if (old != null) {
+      removeByNummer(kost1MapByNummer, getKostKey(old), old);
+    }
+    putByNummer(kost1MapByNummer, getKostKey(kost1), kost1);
   }
 
   @SuppressWarnings("unchecked")
@@ -220,6 +245,54 @@ public class KostCache extends AbstractCache
     this.allKost2Arts = list;
   }
 
+  private static Integer getKostKey(final Kost1DO kost1)
+  {
+    return getKostKey(kost1.getNummernkreis(), kost1.getBereich(), kost1.getTeilbereich(), kost1.getEndziffer());
+  }
+
+  private static Integer getKostKey(final Kost2DO kost2)
+  {
+    final Integer kost2ArtId = kost2.getKost2ArtId();
+    if (kost2ArtId == null) {
+      return null;
+    }
+    return getKostKey(kost2.getNummernkreis(), kost2.getBereich(), kost2.getTeilbereich(), kost2ArtId);
+  }
+
+  /**
+   * @return The number in format ######## or null, if any value is out of range (such numbers can't be found).
+   * @see KostFormatter#getKostAsInt(int, int, int, int)
+   */
+  private static Integer getKostKey(final int nummernkreis, final int bereich, final int teilbereich, final int endziffer)
+  {
+    if (nummernkreis < 1 || nummernkreis > 9 || bereich < 0 || bereich > 999 || teilbereich < 0 || teilbereich > 99 || endziffer < 0
+        || endziffer > 99) {
+      return null;
+    }
+    return KostFormatter.getKostAsInt(nummernkreis, bereich, teilbereich, endziffer);
+  }
+
+  /**
+   * Deleted entries don't replace not deleted entries with the same number.
+   */
+  private static <T extends DefaultBaseDO> void putByNummer(final Map<Integer, T> map, final Integer key, final T kost)
+  {
+    if (key == null) {
+      return;
+    }
+    final T other = map.get(key);
+    if (other == null || other.isDeleted() == true || kost.isDeleted() == false) {
+      map.put(key, kost);
+    }
+  }
+
+  private static <T> void removeByNummer(final Map<Integer, T> map, final Integer key, final T kost)
+  {
+    if (key != null && map.get(key) == kost) {
+      map.remove(key);
+    }
+  }
+
   private Map<Integer, Kost2DO> getKost2Map()
   {
     checkRefresh();
@@ -241,12 +314,16 @@ public class KostCache extends AbstractCache
     log.info("Initializing KostCache ...");
     // This method must not be synchronized because it works with a new copy of maps.
     final Map<Integer, Kost1DO> map1 = new HashMap<Integer, Kost1DO>();
+    final Map<Integer, Kost1DO> map1ByNummer = new HashMap<Integer, Kost1DO>();
     final List<Kost1DO> list1 = hibernateTemplate.find("from Kost1DO t");
     for (Kost1DO kost1 : list1) {
       map1.put(kost1.getId(), kost1);
+      putByNummer(map1ByNummer, getKostKey(kost1), kost1);
     }
     this.kost1Map = map1;
+    this.kost1MapByNummer = map1ByNummer;
     final Map<Integer, Kost2DO> map2 = new HashMap<Integer, Kost2DO>();
+    final Map<Integer, Kost2DO> map2ByNummer = new HashMap<Integer, Kost2DO>();
     final List<Kost2DO> list2 = hibernateTemplate.find("from Kost2DO t");
     kost2EntriesExists = false;
     for (Kost2DO kost2 : list2) {
@@ -254,8 +331,10 @@ public class KostCache extends AbstractCache
         kost2EntriesExists = true;
       }
       map2.put(kost2.getId(), kost2);
+      putByNummer(map2ByNummer, getKostKey(kost2), kost2);
     }
     this.kost2Map = map2;
+    this.kost2MapByNummer = map2ByNummer;
     updateKost2Arts();
     log.info("Initializing of KostCache done.");
   }
@@ -264,4 +343,29 @@ public class KostCache extends AbstractCache
   {
     this.hibernateTemplate = hibernateTemplate;
   }
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * Updates the modified cost entries of other ProjectForge instances.
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    if (entityClass == Kost2ArtDO.class) {
+      updateKost2Arts();
+    } else if (entityClass == Kost1DO.class || entityClass == Kost2DO.class) {
+      final Object kost = id != null ? hibernateTemplate.get(entityClass, id) : null;
+      if (kost instanceof Kost1DO) {
+        updateKost1((Kost1DO) kost);
+      } else if (kost instanceof Kost2DO) {
+        updateKost2((Kost2DO) kost);
+      } else {
+        setExpired();
+      }
+    }
+  }
 }
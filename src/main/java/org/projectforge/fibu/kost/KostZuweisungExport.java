@@ -23,23 +23,20 @@
 
 package org.projectforge.fibu.kost;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.criterion.Order;
 import org.projectforge.common.CurrencyHelper;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.common.StringHelper;
-import org.projectforge.core.QueryFilter;
-import org.projectforge.excel.ContentProvider;
-import org.projectforge.excel.ExportColumn;
-import org.projectforge.excel.ExportSheet;
-import org.projectforge.excel.ExportWorkbook;
-import org.projectforge.excel.I18nExportColumn;
-import org.projectforge.excel.PropertyMapping;
+import org.projectforge.core.BaseDao;
+import org.projectforge.core.BaseSearchFilter;
+import org.projectforge.core.ScrollCallback;
 import org.projectforge.export.MyXlsContentProvider;
+import org.projectforge.export.XlsxStreamWriter;
 import org.projectforge.fibu.AbstractRechnungDO;
 import org.projectforge.fibu.AbstractRechnungsPositionDO;
 import org.projectforge.fibu.EingangsrechnungDO;
@@ -49,12 +46,15 @@ import org.projectforge.fibu.KontoDO;
 import org.projectforge.fibu.KontoDao;
 import org.projectforge.fibu.ProjektFormatter;
 import org.projectforge.fibu.RechnungDO;
+import org.projectforge.fibu.RechnungDao;
+import org.projectforge.fibu.RechnungFilter;
 import org.projectforge.fibu.RechnungsPositionDO;
 import org.projectforge.registry.Registry;
 import org.projectforge.user.PFUserContext;
 
 /**
- * For excel export.
+ * For excel export. The invoices and accounts are read by data base cursors and the rows are written directly to the output stream, so the
+ * memory usage doesn't depend on the number of invoices.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
@@ -62,59 +62,66 @@ public class KostZuweisungExport
 {
   public static final KostZuweisungExport instance = new KostZuweisungExport();
 
-  private class MyContentProvider extends MyXlsContentProvider
-  {
-    public MyContentProvider(final ExportWorkbook workbook)
-    {
-      super(workbook);
-    }
-
-    @Override
-    public ContentProvider newInstance()
-    {
-      return new MyContentProvider(this.workbook);
-    }
-  };
-
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(KostZuweisungExport.class);
 
+  private static final String FORMAT_CURRENCY = "#,##0.00;[Red]-#,##0.00";
+
   private enum InvoicesCol
   {
-    BRUTTO("fibu.common.brutto", MyXlsContentProvider.LENGTH_CURRENCY), //
-    KONTO("fibu.buchungssatz.konto", 14), //
-    REFERENZ("fibu.common.reference", MyXlsContentProvider.LENGTH_STD), //
-    DATE("date", MyXlsContentProvider.LENGTH_DATE), //
-    GEGENKONTO("fibu.buchungssatz.gegenKonto", 14), //
-    KOST1("fibu.kost1", MyXlsContentProvider.LENGTH_KOSTENTRAEGER), //
-    KOST2("fibu.kost2", MyXlsContentProvider.LENGTH_KOSTENTRAEGER), //
-    TEXT("description", MyXlsContentProvider.LENGTH_EXTRA_LONG), //
-    KORREKTUR("fibu.common.fehlBetrag", MyXlsContentProvider.LENGTH_CURRENCY);
+    BRUTTO("fibu.common.brutto", MyXlsContentProvider.LENGTH_CURRENCY, FORMAT_CURRENCY), //
+    KONTO("fibu.buchungssatz.konto", 14, null), //
+    REFERENZ("fibu.common.reference", MyXlsContentProvider.LENGTH_STD, null), //
+    DATE("date", MyXlsContentProvider.LENGTH_DATE, "dd.MM.yyyy"), //
+    GEGENKONTO("fibu.buchungssatz.gegenKonto", 14, null), //
+    KOST1("fibu.kost1", MyXlsContentProvider.LENGTH_KOSTENTRAEGER, "#"), //
+    KOST2("fibu.kost2", MyXlsContentProvider.LENGTH_KOSTENTRAEGER, "#"), //
+    TEXT("description", MyXlsContentProvider.LENGTH_EXTRA_LONG, null), //
+    KORREKTUR("fibu.common.fehlBetrag", MyXlsContentProvider.LENGTH_CURRENCY, FORMAT_CURRENCY);
 
     final String theTitle;
 
     final int width;
 
-    InvoicesCol(final String theTitle, final int width)
+    final String format;
+
+    InvoicesCol(final String theTitle, final int width, final String format)
     {
       this.theTitle = theTitle;
       this.width = (short) width;
+      this.format = format;
     }
   }
 
   /**
-   * Export all cost assignements of the given invoices as excel list.
-   * @param list
-   * @return
+   * Exports all cost assignements of the invoices of the given filter as excel list. The invoices are read one by one (positions without
+   * cost assignments are exported as single rows without cost units).
+   * @param out The excel file (xlsx) is written to this stream.
+   * @param dao The dao of the debitor or creditor invoices.
+   * @param filter The period of the invoices (year and month or from and to date).
    */
-  public byte[] exportRechnungen(final List< ? extends AbstractRechnungDO< ? extends AbstractRechnungsPositionDO>> list,
-      final String sheetTitle, final KontoCache kontoCache)
+  public void exportRechnungen(final OutputStream out, final BaseDao< ? extends AbstractRechnungDO< ? >> dao, final RechnungFilter filter,
+      final String sheetTitle, final KontoCache kontoCache) throws IOException
   {
-    final List<KostZuweisungDO> zuweisungen = new ArrayList<KostZuweisungDO>();
-    for (final AbstractRechnungDO< ? > rechnung : list) {
-      if (rechnung.getPositionen() != null) {
+    log.info("Exporting kost zuweisung list.");
+    final XlsxStreamWriter xlsx = new XlsxStreamWriter(out);
+    final XlsxStreamWriter.Column[] cols = new XlsxStreamWriter.Column[InvoicesCol.values().length];
+    int i = 0;
+    for (final InvoicesCol col : InvoicesCol.values()) {
+      cols[i++] = new XlsxStreamWriter.Column(PFUserContext.getLocalizedString(col.theTitle), col.width, col.format);
+    }
+    xlsx.startSheet(sheetTitle, cols);
+    final Order secondOrder = dao instanceof RechnungDao ? Order.desc("nummer") : Order.desc("kreditor");
+    dao.scroll(filter, new ScrollCallback<AbstractRechnungDO< ? >>() {
+      public void handle(final AbstractRechnungDO< ? > rechnung) throws IOException
+      {
+        if (rechnung.getPositionen() == null) {
+          return;
+        }
         for (final AbstractRechnungsPositionDO position : rechnung.getPositionen()) {
           if (CollectionUtils.isNotEmpty(position.getKostZuweisungen()) == true) {
-            zuweisungen.addAll(position.getKostZuweisungen());
+            for (final KostZuweisungDO zuweisung : position.getKostZuweisungen()) {
+              addRow(xlsx, zuweisung, kontoCache);
+            }
           } else {
             final KostZuweisungDO zuweisung = new KostZuweisungDO();
             if (position instanceof RechnungsPositionDO) {
@@ -122,161 +129,113 @@ public class KostZuweisungExport
             } else {
               zuweisung.setEingangsrechnungsPosition((EingangsrechnungsPositionDO) position);
             }
-            zuweisungen.add(zuweisung);
+            addRow(xlsx, zuweisung, kontoCache);
           }
         }
       }
-    }
-    return export(zuweisungen, sheetTitle, kontoCache);
+    }, Order.desc("datum"), secondOrder);
+    addAccounts(xlsx);
+    xlsx.close();
   }
 
-  /**
-   * Exports the filtered list as table.
-   */
-  public byte[] export(final List<KostZuweisungDO> list, final String sheetTitle, final KontoCache kontoCache)
+  private void addRow(final XlsxStreamWriter xlsx, final KostZuweisungDO zuweisung, final KontoCache kontoCache) throws IOException
   {
-    log.info("Exporting kost zuweisung list.");
-    final ExportWorkbook xls = new ExportWorkbook();
-    final ContentProvider contentProvider = new MyContentProvider(xls);
-    // create a default Date format and currency column
-    xls.setContentProvider(contentProvider);
-
-    final ExportSheet sheet = xls.addSheet(sheetTitle);
-    sheet.createFreezePane(0, 1);
-
-    final ExportColumn[] cols = new ExportColumn[InvoicesCol.values().length];
-    int i = 0;
-    for (final InvoicesCol col : InvoicesCol.values()) {
-      cols[i++] = new I18nExportColumn(col, col.theTitle, col.width);
+    final AbstractRechnungsPositionDO position;
+    final AbstractRechnungDO< ? > rechnung;
+    final String referenz;
+    final String text;
+    if (zuweisung.getRechnungsPosition() != null) {
+      position = zuweisung.getRechnungsPosition();
+      rechnung = ((RechnungsPositionDO) position).getRechnung();
+      final RechnungDO r = (RechnungDO) rechnung;
+      referenz = String.valueOf(r.getNummer());
+      text = ProjektFormatter.formatProjektKundeAsString(r.getProjekt(), r.getKunde(), r.getKundeText());
+    } else {
+      position = zuweisung.getEingangsrechnungsPosition();
+      rechnung = ((EingangsrechnungsPositionDO) position).getEingangsrechnung();
+      final EingangsrechnungDO r = (EingangsrechnungDO) rechnung;
+      referenz = r.getReferenz();
+      text = r.getKreditor();
     }
+    final BigDecimal grossSum = position.getBruttoSum();
 
-    // column property names
-    sheet.setColumns(cols);
-
-    final ContentProvider sheetProvider = sheet.getContentProvider();
-    sheetProvider.putFormat(InvoicesCol.BRUTTO, "#,##0.00;[Red]-#,##0.00");
-    sheetProvider.putFormat(InvoicesCol.KORREKTUR, "#,##0.00;[Red]-#,##0.00");
-    sheetProvider.putFormat(InvoicesCol.KOST1, "#");
-    sheetProvider.putFormat(InvoicesCol.KOST2, "#");
-    sheetProvider.putFormat(InvoicesCol.DATE, "dd.MM.yyyy");
-
-    final PropertyMapping mapping = new PropertyMapping();
-    for (final KostZuweisungDO zuweisung : list) {
-      final AbstractRechnungsPositionDO position;
-      final AbstractRechnungDO< ? > rechnung;
-      final String referenz;
-      final String text;
-      if (zuweisung.getRechnungsPosition() != null) {
-        position = zuweisung.getRechnungsPosition();
-        rechnung = ((RechnungsPositionDO) position).getRechnung();
-        final RechnungDO r = (RechnungDO) rechnung;
-        referenz = String.valueOf(r.getNummer());
-        text = ProjektFormatter.formatProjektKundeAsString(r.getProjekt(), r.getKunde(), r.getKundeText());
-      } else {
-        position = zuweisung.getEingangsrechnungsPosition();
-        rechnung = ((EingangsrechnungsPositionDO) position).getEingangsrechnung();
-        final EingangsrechnungDO r = (EingangsrechnungDO) rechnung;
-        referenz = r.getReferenz();
-        text = r.getKreditor();
+    BigDecimal korrektur = null;
+    if (grossSum.compareTo(position.getKostZuweisungGrossSum()) != 0) {
+      korrektur = CurrencyHelper.getGrossAmount(position.getKostZuweisungNetFehlbetrag(), position.getVat());
+      if (NumberHelper.isZeroOrNull(korrektur) == true) {
+        korrektur = null;
       }
-      final BigDecimal grossSum = position.getBruttoSum();
-
-      BigDecimal korrektur = null;
-      if (grossSum.compareTo(position.getKostZuweisungGrossSum()) != 0) {
-        korrektur = CurrencyHelper.getGrossAmount(position.getKostZuweisungNetFehlbetrag(), position.getVat());
-        if (NumberHelper.isZeroOrNull(korrektur) == true) {
-          korrektur = null;
-        }
+    }
+    Integer kontoNummer = null;
+    if (rechnung instanceof RechnungDO) {
+      final KontoDO konto = kontoCache.getKonto(((RechnungDO) rechnung));
+      if (konto != null) {
+        kontoNummer = konto.getNummer();
       }
-      mapping.add(InvoicesCol.BRUTTO, zuweisung.getBrutto());
-      Integer kontoNummer = null;
-      if (rechnung instanceof RechnungDO) {
-        final KontoDO konto = kontoCache.getKonto(((RechnungDO) rechnung));
+    } else if (rechnung instanceof EingangsrechnungDO) {
+      final Integer kontoId = ((EingangsrechnungDO) rechnung).getKontoId();
+      if (kontoId != null) {
+        final KontoDO konto = kontoCache.getKonto(kontoId);
         if (konto != null) {
           kontoNummer = konto.getNummer();
         }
-      } else if (rechnung instanceof EingangsrechnungDO) {
-        final Integer kontoId = ((EingangsrechnungDO) rechnung).getKontoId();
-        if (kontoId != null) {
-          final KontoDO konto = kontoCache.getKonto(kontoId);
-          if (konto != null) {
-            kontoNummer = konto.getNummer();
-          }
-        }
       }
-      mapping.add(InvoicesCol.KONTO, kontoNummer != null ? kontoNummer : "");
-      mapping.add(InvoicesCol.REFERENZ, StringHelper.removeNonDigitsAndNonASCIILetters(referenz));
-      mapping.add(InvoicesCol.DATE, rechnung.getDatum());
-      mapping.add(InvoicesCol.GEGENKONTO, "");
-      mapping.add(InvoicesCol.KOST1, zuweisung.getKost1() != null ? zuweisung.getKost1().getNummer() : "");
-      mapping.add(InvoicesCol.KOST2, zuweisung.getKost2() != null ? zuweisung.getKost2().getNummer() : "");
-      mapping.add(InvoicesCol.TEXT, text);
-      mapping.add(InvoicesCol.KORREKTUR, korrektur);
-      sheet.addRow(mapping.getMapping(), 0);
     }
-    addAccounts(xls, contentProvider);
-    return xls.getAsByteArray();
+    xlsx.addRow(zuweisung.getBrutto(), // BRUTTO
+        kontoNummer, // KONTO
+        StringHelper.removeNonDigitsAndNonASCIILetters(referenz), // REFERENZ
+        rechnung.getDatum(), // DATE
+        null, // GEGENKONTO
+        zuweisung.getKost1() != null ? zuweisung.getKost1().getNummer() : null, // KOST1
+        zuweisung.getKost2() != null ? zuweisung.getKost2().getNummer() : null, // KOST2
+        text, // TEXT
+        korrektur); // KORREKTUR
   }
 
   private enum AccountsCol
   {
-    NUMBER("fibu.konto.nummer", 16), //
-    NAME("fibu.konto.bezeichnung", MyXlsContentProvider.LENGTH_STD), //
-    STATUS("status", 14), //
-    DATE_OF_LAST_MODIFICATION("lastUpdate", MyXlsContentProvider.LENGTH_TIMESTAMP), //
-    DATE_OF_CREATION("created", MyXlsContentProvider.LENGTH_TIMESTAMP), //
-    DESCRIPTION("comment", MyXlsContentProvider.LENGTH_EXTRA_LONG);
+    NUMBER("fibu.konto.nummer", 16, "#"), //
+    NAME("fibu.konto.bezeichnung", MyXlsContentProvider.LENGTH_STD, null), //
+    STATUS("status", 14, null), //
+    DATE_OF_LAST_MODIFICATION("lastUpdate", MyXlsContentProvider.LENGTH_TIMESTAMP, "dd.MM.yyyy HH:mm"), //
+    DATE_OF_CREATION("created", MyXlsContentProvider.LENGTH_TIMESTAMP, "dd.MM.yyyy HH:mm"), //
+    DESCRIPTION("comment", MyXlsContentProvider.LENGTH_EXTRA_LONG, null);
 
     final String theTitle;
 
     final int width;
 
-    AccountsCol(final String theTitle, final int width)
+    final String format;
+
+    AccountsCol(final String theTitle, final int width, final String format)
     {
       this.theTitle = theTitle;
       this.width = (short) width;
+      this.format = format;
     }
   }
 
-  private void addAccounts(final ExportWorkbook xls, final ContentProvider contentProvider)
+  private void addAccounts(final XlsxStreamWriter xlsx) throws IOException
   {
-    final ExportSheet sheet = xls.addSheet(PFUserContext.getLocalizedString("fibu.konto.konten"));
-    sheet.createFreezePane(0, 1);
-
-    final ExportColumn[] cols = new ExportColumn[AccountsCol.values().length];
+    final XlsxStreamWriter.Column[] cols = new XlsxStreamWriter.Column[AccountsCol.values().length];
     int i = 0;
     for (final AccountsCol col : AccountsCol.values()) {
-      cols[i++] = new I18nExportColumn(col, col.theTitle, col.width);
+      cols[i++] = new XlsxStreamWriter.Column(PFUserContext.getLocalizedString(col.theTitle), col.width, col.format);
     }
-
-    // column property names
-    sheet.setColumns(cols);
-
-    final ContentProvider sheetProvider = sheet.getContentProvider();
-    sheetProvider.putFormat(AccountsCol.DATE_OF_LAST_MODIFICATION, "dd.MM.yyyy HH:mm");
-    sheetProvider.putFormat(AccountsCol.DATE_OF_CREATION, "dd.MM.yyyy HH:mm");
-    sheetProvider.putFormat(AccountsCol.NUMBER, "#");
+    xlsx.startSheet(PFUserContext.getLocalizedString("fibu.konto.konten"), cols);
 
     final KontoDao kontoDao = Registry.instance().getDao(KontoDao.class);
-    final QueryFilter filter = new QueryFilter();
-    filter.addOrder(Order.desc("lastUpdate"));
-    final List<KontoDO> list = kontoDao.getList(filter);
-
-    final PropertyMapping mapping = new PropertyMapping();
-    for (final KontoDO konto : list) {
-      mapping.add(AccountsCol.NUMBER, konto.getNummer());
-      mapping.add(AccountsCol.NAME, konto.getBezeichnung());
-      mapping.add(AccountsCol.DATE_OF_LAST_MODIFICATION, konto.getLastUpdate());
-      mapping.add(AccountsCol.DATE_OF_CREATION, konto.getCreated());
-      String status = "";
-      if (konto.isDeleted() == true) {
-        status = PFUserContext.getLocalizedString("deleted");
-      } else if (konto.getStatus() != null) {
-        status = PFUserContext.getLocalizedString(konto.getStatus().getI18nKey());
+    kontoDao.scroll(new BaseSearchFilter(), new ScrollCallback<KontoDO>() {
+      public void handle(final KontoDO konto) throws IOException
+      {
+        String status = "";
+        if (konto.isDeleted() == true) {
+          status = PFUserContext.getLocalizedString("deleted");
+        } else if (konto.getStatus() != null) {
+          status = PFUserContext.getLocalizedString(konto.getStatus().getI18nKey());
+        }
+        xlsx.addRow(konto.getNummer(), konto.getBezeichnung(), status, konto.getLastUpdate(), konto.getCreated(), konto.getDescription());
       }
-      mapping.add(AccountsCol.STATUS, status);
-      mapping.add(AccountsCol.DESCRIPTION, konto.getDescription());
-      sheet.addRow(mapping.getMapping(), 0);
-    }
+    }, Order.desc("lastUpdate"));
   }
 }
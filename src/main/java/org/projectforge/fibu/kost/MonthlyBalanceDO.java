@@ -0,0 +1,204 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.kost;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.projectforge.fibu.KontoDO;
+
+/**
+ * Aggregated amount of all account records (Buchungssätze) of one month per account, Kost1 and Kost2. The aggregates are maintained by
+ * {@link MonthlyBalanceDao} on every modification of account records and are used for summary reports and business assessments over
+ * several months or years without reading the single account records.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+@Entity
+@Table(name = "t_fibu_monthly_balance", uniqueConstraints = { @UniqueConstraint(columnNames = { "year", "month", "konto_id", "kost1_id",
+"kost2_id"})})
+public class MonthlyBalanceDO
+{
+  private Integer id;
+
+  private Integer year;
+
+  private Integer month;
+
+  private KontoDO konto;
+
+  private Kost1DO kost1;
+
+  private Kost2DO kost2;
+
+  private BigDecimal amount;
+
+  private Integer recordCount;
+
+  @Id
+  @GeneratedValue
+  @Column(name = "pk")
+  public Integer getId()
+  {
+    return id;
+  }
+
+  public void setId(final Integer id)
+  {
+    this.id = id;
+  }
+
+  @Column(nullable = false)
+  public Integer getYear()
+  {
+    return year;
+  }
+
+  /**
+   * @param year
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setYear(final Integer year)
+  {
+    this.year = year;
+    return this;
+  }
+
+  /**
+   * 0-based month like {@link BuchungssatzDO#getMonth()}.
+   */
+  @Column(nullable = false)
+  public Integer getMonth()
+  {
+    return month;
+  }
+
+  /**
+   * @param month
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setMonth(final Integer month)
+  {
+    this.month = month;
+    return this;
+  }
+
+  @ManyToOne(fetch = FetchType.EAGER)
+  @JoinColumn(name = "konto_id", nullable = false)
+  public KontoDO getKonto()
+  {
+    return konto;
+  }
+
+  /**
+   * @param konto
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setKonto(final KontoDO konto)
+  {
+    this.konto = konto;
+    return this;
+  }
+
+  @ManyToOne(fetch = FetchType.EAGER)
+  @JoinColumn(name = "kost1_id", nullable = false)
+  public Kost1DO getKost1()
+  {
+    return kost1;
+  }
+
+  /**
+   * @param kost1
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setKost1(final Kost1DO kost1)
+  {
+    this.kost1 = kost1;
+    return this;
+  }
+
+  @ManyToOne(fetch = FetchType.EAGER)
+  @JoinColumn(name = "kost2_id", nullable = false)
+  public Kost2DO getKost2()
+  {
+    return kost2;
+  }
+
+  /**
+   * @param kost2
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setKost2(final Kost2DO kost2)
+  {
+    this.kost2 = kost2;
+    return this;
+  }
+
+  /**
+   * Sum of the amounts of the account records.
+   */
+  @Column(nullable = false, scale = 2, precision = 18)
+  public BigDecimal getAmount()
+  {
+    return amount;
+  }
+
+  /**
+   * @param amount
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setAmount(final BigDecimal amount)
+  {
+    this.amount = amount;
+    return this;
+  }
+
+  /**
+   * Number of the aggregated account records.
+   */
+  @Column(name = "record_count", nullable = false)
+  public Integer getRecordCount()
+  {
+    return recordCount;
+  }
+
+  /**
+   * @param recordCount
+   * @return this for chaining.
+   */
+  public MonthlyBalanceDO setRecordCount(final Integer recordCount)
+  {
+    this.recordCount = recordCount;
+    return this;
+  }
+}
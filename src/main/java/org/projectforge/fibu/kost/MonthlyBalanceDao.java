@@ -0,0 +1,340 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.kost;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.projectforge.core.RequiresNewTransactionTemplate;
+import org.projectforge.core.TransactionResource;
+import org.projectforge.fibu.KontoDO;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * Maintains the monthly aggregates of the account records (table t_fibu_monthly_balance). Every modification of an account record marks
+ * its month as dirty and the aggregates of all dirty months are re-calculated once after the transaction is committed (e. g. once per
+ * block of a DATEV import instead of once per record). If the aggregate table is empty but account records exist (e. g. after the update
+ * to 5.3), the aggregates of all months are built on first usage.<br/>
+ * The existing aggregates of a month are updated instead of being deleted and re-inserted and the re-calculation locks them first, so
+ * concurrent re-calculations of the same month are serialized. Only if two re-calculations insert the same new aggregate, one of them
+ * fails due to the unique constraint and is repeated. Months whose re-calculation failed are re-calculated together with the next dirty
+ * months. The nightly job re-calculates all months.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class MonthlyBalanceDao extends HibernateDaoSupport
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(MonthlyBalanceDao.class);
+
+  private volatile boolean initialized;
+
+  private RequiresNewTransactionTemplate requiresNewTxTemplate;
+
+  /**
+   * The months modified by the current transaction, re-calculated after commit.
+   */
+  private final TransactionResource<SortedSet<Integer>> dirtyMonths = new TransactionResource<SortedSet<Integer>>() {
+    @Override
+    protected SortedSet<Integer> create()
+    {
+      return new TreeSet<Integer>();
+    }
+
+    @Override
+    protected void afterCommit(final SortedSet<Integer> months)
+    {
+      recalculateOrCollect(months);
+    }
+  };
+
+  /**
+   * Months modified by the committed transactions of the current thread, if collected (see {@link #startCollectingDirtyMonths()}).
+   */
+  private final ThreadLocal<SortedSet<Integer>> collectedMonths = new ThreadLocal<SortedSet<Integer>>();
+
+  /**
+   * Months whose re-calculation failed. They're re-calculated together with the next dirty months.
+   */
+  private final SortedSet<Integer> failedMonths = new TreeSet<Integer>();
+
+  /**
+   * Marks the given month as modified. If a transaction is active, the aggregates of the month are re-calculated after commit, otherwise
+   * immediately.
+   * @param year
+   * @param month 0-based.
+   */
+  public void markDirty(final Integer year, final Integer month)
+  {
+    if (year == null || month == null) {
+      return;
+    }
+    final Integer key = year * 100 + month;
+    final SortedSet<Integer> months = dirtyMonths.get();
+    if (months == null) {
+      // No transaction active:
+      recalculateOrCollect(Collections.singleton(key));
+      return;
+    }
+    months.add(key);
+  }
+
+  /**
+   * The months modified by the following transactions of the current thread aren't re-calculated after each commit but collected until
+   * {@link #recalculateCollectedMonths()} is called, e. g. by an import committing its account records in several transactions.
+   */
+  public void startCollectingDirtyMonths()
+  {
+    if (collectedMonths.get() == null) {
+      collectedMonths.set(new TreeSet<Integer>());
+    }
+  }
+
+  /**
+   * Re-calculates every month collected since {@link #startCollectingDirtyMonths()} once and stops collecting. Must be called in a finally
+   * block, so the months of the already committed transactions are also re-calculated if a later transaction fails.
+   */
+  public void recalculateCollectedMonths()
+  {
+    final SortedSet<Integer> months = collectedMonths.get();
+    collectedMonths.remove();
+    if (months != null && months.isEmpty() == false) {
+      recalculate(months);
+    }
+  }
+
+  private void recalculateOrCollect(final Collection<Integer> months)
+  {
+    final SortedSet<Integer> collected = collectedMonths.get();
+    if (collected != null) {
+      collected.addAll(months);
+    } else {
+      recalculate(months);
+    }
+  }
+
+  /**
+   * @param fromYear
+   * @param fromMonth 0-based.
+   * @param toYear
+   * @param toMonth 0-based (inclusive).
+   * @return The aggregates of the given period ordered by year, month and account.
+   */
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<MonthlyBalanceDO> getBalances(final int fromYear, final int fromMonth, final int toYear, final int toMonth)
+  {
+    initializeIfRequired();
+    return getSession()
+        .createQuery(
+            "from MonthlyBalanceDO b where (b.year > ? or (b.year = ? and b.month >= ?)) and (b.year < ? or (b.year = ? and b.month <= ?))"
+                + " order by b.year, b.month, b.konto.nummer").setInteger(0, fromYear).setInteger(1, fromYear).setInteger(2, fromMonth)
+                .setInteger(3, toYear).setInteger(4, toYear).setInteger(5, toMonth).list();
+  }
+
+  /**
+   * Re-calculates the aggregates of all months, every month in its own transaction (so the aggregates of a month are locked only shortly).
+   * Is called by the nightly job.
+   */
+  @SuppressWarnings("unchecked")
+  public void rebuild()
+  {
+    final SortedSet<Integer> months = (SortedSet<Integer>) requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        return getMonths(getSession());
+      }
+    });
+    for (final Integer month : months) {
+      recalculate(Collections.singleton(month));
+    }
+    initialized = true;
+    log.info("Monthly balances of " + months.size() + " months re-calculated.");
+  }
+
+  private void rebuild(final Session session)
+  {
+    final SortedSet<Integer> months = getMonths(session);
+    for (final Integer month : months) {
+      recalculate(session, month / 100, month % 100);
+    }
+    initialized = true;
+    log.info("Monthly balances of " + months.size() + " months calculated.");
+  }
+
+  private SortedSet<Integer> getMonths(final Session session)
+  {
+    final SortedSet<Integer> months = new TreeSet<Integer>();
+    addMonths(months, session.createQuery("select distinct s.year, s.month from BuchungssatzDO s").list());
+    // Months without any account record (anymore):
+    addMonths(months, session.createQuery("select distinct b.year, b.month from MonthlyBalanceDO b").list());
+    return months;
+  }
+
+  private static void addMonths(final Collection<Integer> months, final List< ? > yearsAndMonths)
+  {
+    for (final Object obj : yearsAndMonths) {
+      final Object[] yearAndMonth = (Object[]) obj;
+      months.add((Integer) yearAndMonth[0] * 100 + (Integer) yearAndMonth[1]);
+    }
+  }
+
+  /**
+   * Builds the aggregates in an own (writable) transaction if the table is empty but account records exist.
+   */
+  private void initializeIfRequired()
+  {
+    if (initialized == true) {
+      return;
+    }
+    synchronized (this) {
+      if (initialized == true) {
+        return;
+      }
+      requiresNewTxTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          final Session session = getSession();
+          final Number balances = (Number) session.createQuery("select count(*) from MonthlyBalanceDO").uniqueResult();
+          if (balances == null || balances.intValue() == 0) {
+            final Number records = (Number) session.createQuery("select count(*) from BuchungssatzDO").uniqueResult();
+            if (records != null && records.intValue() > 0) {
+              rebuild(session);
+            }
+          }
+          return null;
+        }
+      });
+      initialized = true;
+    }
+  }
+
+  /**
+   * Re-calculates the given months (and the months of failed re-calculations) in a new transaction. The re-calculation is repeated once if
+   * a concurrent re-calculation inserted an aggregate with the same key in the mean time (the aggregate is updated then). Errors are only
+   * logged, because the account records are already committed: the months are marked as failed and re-calculated with the next dirty
+   * months (and by {@link #rebuild()}).
+   * @param dirtyMonths year * 100 + month.
+   */
+  private void recalculate(final Collection<Integer> dirtyMonths)
+  {
+    final SortedSet<Integer> months = new TreeSet<Integer>(dirtyMonths);
+    synchronized (failedMonths) {
+      months.addAll(failedMonths);
+      failedMonths.clear();
+    }
+    try {
+      try {
+        recalculateInNewTransaction(months);
+      } catch (final DataIntegrityViolationException ex) {
+        log.info("Concurrent re-calculation of the monthly balances " + months + ", repeating: " + ex.getMessage());
+        recalculateInNewTransaction(months);
+      } catch (final ConstraintViolationException ex) {
+        log.info("Concurrent re-calculation of the monthly balances " + months + ", repeating: " + ex.getMessage());
+        recalculateInNewTransaction(months);
+      }
+    } catch (final RuntimeException ex) {
+      log.error("Can't re-calculate the monthly balances " + months + " (will be retried): " + ex.getMessage(), ex);
+      synchronized (failedMonths) {
+        failedMonths.addAll(months);
+      }
+    }
+  }
+
+  private void recalculateInNewTransaction(final Collection<Integer> months)
+  {
+    requiresNewTxTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final Session session = getSession();
+        for (final Integer month : months) {
+          recalculate(session, month / 100, month % 100);
+        }
+        return null;
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private void recalculate(final Session session, final int year, final int month)
+  {
+    session.flush();
+    // Locks the existing aggregates of the month, so a concurrent re-calculation of the same month waits for the commit of this one:
+    session.createQuery("from MonthlyBalanceDO b where b.year = ? and b.month = ?").setInteger(0, year).setInteger(1, month)
+        .setLockMode("b", LockMode.UPGRADE).list();
+    // Read again after getting the lock, the aggregates inserted by a concurrent re-calculation in the mean time are visible now:
+    final List<MonthlyBalanceDO> existing = session.createQuery("from MonthlyBalanceDO b where b.year = ? and b.month = ?")
+        .setInteger(0, year).setInteger(1, month).list();
+    final Map<String, MonthlyBalanceDO> balances = new HashMap<String, MonthlyBalanceDO>();
+    for (final MonthlyBalanceDO balance : existing) {
+      balances.put(getKey(balance.getKonto().getId(), balance.getKost1().getId(), balance.getKost2().getId()), balance);
+    }
+    final List<Object[]> sums = session
+        .createQuery(
+            "select s.konto.id, s.kost1.id, s.kost2.id, sum(s.betrag), count(s.id) from BuchungssatzDO s"
+                + " where s.year = ? and s.month = ? and s.deleted = false group by s.konto.id, s.kost1.id, s.kost2.id")
+        .setInteger(0, year).setInteger(1, month).list();
+    for (final Object[] sum : sums) {
+      MonthlyBalanceDO balance = balances.remove(getKey((Integer) sum[0], (Integer) sum[1], (Integer) sum[2]));
+      if (balance == null) {
+        balance = new MonthlyBalanceDO().setYear(year).setMonth(month).setKonto((KontoDO) session.load(KontoDO.class, (Integer) sum[0]))
+            .setKost1((Kost1DO) session.load(Kost1DO.class, (Integer) sum[1]))
+            .setKost2((Kost2DO) session.load(Kost2DO.class, (Integer) sum[2]));
+        session.save(balance);
+      }
+      balance.setAmount((BigDecimal) sum[3]).setRecordCount(((Number) sum[4]).intValue());
+    }
+    // Accounts and cost units without any account record of this month (anymore):
+    for (final MonthlyBalanceDO balance : balances.values()) {
+      session.delete(balance);
+    }
+    session.flush();
+    if (log.isDebugEnabled() == true) {
+      log.debug("Monthly balances of " + year + "-" + (month + 1) + " re-calculated: " + sums.size() + " entries.");
+    }
+  }
+
+  private static String getKey(final Integer kontoId, final Integer kost1Id, final Integer kost2Id)
+  {
+    return kontoId + "|" + kost1Id + "|" + kost2Id;
+  }
+
+  public void setRequiresNewTxTemplate(final RequiresNewTransactionTemplate requiresNewTxTemplate)
+  {
+    this.requiresNewTxTemplate = requiresNewTxTemplate;
+  }
+}
@@ -31,17 +31,19 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
 import org.apache.commons.lang.ObjectUtils;
 import org.projectforge.fibu.KostFormatter;
 import org.projectforge.fibu.kost.AccountingConfig;
 import org.projectforge.fibu.kost.BuchungssatzDO;
 import org.projectforge.fibu.kost.BusinessAssessment;
 import org.projectforge.fibu.kost.BusinessAssessmentTable;
+import org.projectforge.fibu.kost.MonthlyBalanceDO;
 import org.projectforge.user.PFUserContext;
 
 /**
- * Ein Report enthält unterliegende Buchungssätze, die gemäß Zeitraum und zugehörigem ReportObjective selektiert werden.
+ * Ein Report enthält unterliegende Buchungssätze, die gemäß Zeitraum und zugehörigem ReportObjective selektiert werden. Für die
+ * Übersicht (BWA des Reports und seiner Childs) genügen die monatlichen Salden (siehe {@link #selectBalances(List)}), die Buchungssätze
+ * werden erst für Drill-downs geladen.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -53,6 +55,8 @@ public class Report implements Serializable
 
   private transient Set<BuchungssatzDO> buchungssatzSet;
 
+  private transient List<MonthlyBalanceDO> balances;
+
   private transient ReportObjective reportObjective;
 
   private transient List<Report> childReports;
@@ -161,13 +165,22 @@ public class Report implements Serializable
     return reportObjective;
   }
 
+  /**
+   * If only the monthly balances are selected, the business assessment is calculated from the balances and the rows contain no account
+   * records.
+   * @see #isAccountRecordsLoaded()
+   */
   public BusinessAssessment getBusinessAssessment()
   {
     if (this.businessAssessment == null) {
       this.businessAssessment = new BusinessAssessment(AccountingConfig.getInstance().getBusinessAssessmentConfig());
       this.businessAssessment.setReference(this);
-      this.businessAssessment.setStoreAccountRecordsInRows(true);
-      this.businessAssessment.setAccountRecords(this.buchungssaetze);
+      if (isAccountRecordsLoaded() == false && this.balances != null) {
+        this.businessAssessment.setMonthlyBalances(this.balances);
+      } else {
+        this.businessAssessment.setStoreAccountRecordsInRows(true);
+        this.businessAssessment.setAccountRecords(this.buchungssaetze);
+      }
     }
     return this.businessAssessment;
   }
@@ -197,9 +210,19 @@ public class Report implements Serializable
 
   /**
    * Wurde eine Selektion bereits durchgeführt?
-   * @return true, wenn Buchungssätzeliste vorhanden ist (kann aber auf Grund der Selektion auch leer sein).
+   * @return true, wenn Buchungssätzeliste oder die Liste der monatlichen Salden vorhanden ist (kann aber auf Grund der Selektion auch leer
+   *         sein).
    */
   public boolean isLoad()
+  {
+    return this.buchungssaetze != null || this.balances != null;
+  }
+
+  /**
+   * @return true, wenn die Buchungssätze selektiert wurden (und nicht nur die monatlichen Salden), z. B. für Drill-downs.
+   * @see #select(List)
+   */
+  public boolean isAccountRecordsLoaded()
   {
     return this.buchungssaetze != null;
   }
@@ -262,62 +285,113 @@ public class Report implements Serializable
 
   /**
    * Creates and get the childs if the ReportObjective has childs. Iteriert über alle ChildReportObjectives und legt jeweils einen Report an
-   * und selektiert gemäß Filter des ReportObjectives die Buchungssätze. Wenn Childs nicht implizit erzeugt werden sollen, so sollte die
-   * Funktion hasChilds zur Abfrage genutzt werden.
+   * und selektiert gemäß Filter des ReportObjectives die Buchungssätze bzw. die monatlichen Salden dieses Reports. Wenn Childs nicht
+   * implizit erzeugt werden sollen, so sollte die Funktion hasChilds zur Abfrage genutzt werden.<br/>
+   * Alle Childs werden in einem einzigen Durchlauf über die Buchungssätze selektiert (Kost1 und Kost2 werden nur einmal pro Buchungssatz
+   * formatiert).
    * @see #select(List)
+   * @see #selectBalances(List)
    */
   public List<Report> getChilds()
   {
     if (childReports == null && hasChilds() == true) {
+      final List<ReportObjective> childObjectives = reportObjective.getChildReportObjectives();
       childReports = new ArrayList<Report>();
-      for (final ReportObjective child : reportObjective.getChildReportObjectives()) {
-        final Report report = new Report(child, this);
-        report.select(this.buchungssaetze);
-        childReports.add(report);
+      if (isAccountRecordsLoaded() == false && this.balances != null) {
+        final List<MonthlyBalanceDO> otherBalances = new ArrayList<MonthlyBalanceDO>();
+        final List<MonthlyBalanceDO> duplicateBalances = new ArrayList<MonthlyBalanceDO>();
+        final List<List<MonthlyBalanceDO>> childLists = selectChilds(this.balances, childObjectives, otherBalances, duplicateBalances);
+        for (int i = 0; i < childObjectives.size(); i++) {
+          final Report report = new Report(childObjectives.get(i), this);
+          report.setBalanceSelection(childLists.get(i));
+          childReports.add(report);
+        }
+        if (otherBalances.isEmpty() == false) {
+          createChild("fibu.reporting.other").balances = otherBalances;
+        }
+        if (duplicateBalances.isEmpty() == false) {
+          createChild("fibu.reporting.duplicates").balances = duplicateBalances;
+        }
+      } else {
+        final List<BuchungssatzDO> otherRecords = new ArrayList<BuchungssatzDO>();
+        final List<BuchungssatzDO> duplicateRecords = new ArrayList<BuchungssatzDO>();
+        final List<List<BuchungssatzDO>> childLists = selectChilds(this.buchungssaetze, childObjectives, otherRecords, duplicateRecords);
+        this.other = otherRecords.isEmpty() == false ? otherRecords : null;
+        this.duplicates = duplicateRecords.isEmpty() == false ? duplicateRecords : null;
+        for (int i = 0; i < childObjectives.size(); i++) {
+          final Report report = new Report(childObjectives.get(i), this);
+          report.setSelection(childLists.get(i));
+          childReports.add(report);
+        }
+        if (this.other != null) {
+          createChild("fibu.reporting.other").setBuchungssaetze(this.other);
+        }
+        if (this.duplicates != null) {
+          createChild("fibu.reporting.duplicates").setBuchungssaetze(this.duplicates);
+        }
       }
-      if (this.buchungssaetze != null && (reportObjective.isSuppressOther() == false || reportObjective.isSuppressDuplicates() == false)) {
-        for (final BuchungssatzDO satz : this.buchungssaetze) {
-          int n = 0;
-          for (final Report child : getChilds()) {
-            if (child.contains(satz) == true) {
-              n++;
-            }
-          }
-          if (reportObjective.isSuppressOther() == false && n == 0) {
-            // Kommt bei keinem Childreport vor:
-            if (other == null) {
-              other = new ArrayList<BuchungssatzDO>();
-            }
-            other.add(satz);
-          } else if (reportObjective.isSuppressDuplicates() == false && n > 1) {
-            // Kommt bei mehreren Childs vor:
-            if (duplicates == null) {
-              duplicates = new ArrayList<BuchungssatzDO>();
-            }
-            duplicates.add(satz);
+    }
+    return childReports;
+  }
+
+  /**
+   * Selects the entries (account records or monthly balances) of the child objectives in one pass.
+   * @param entries
+   * @param childObjectives
+   * @param other Gets the entries which match none of the child objectives (if not suppressed).
+   * @param duplicates Gets the entries which match more than one child objective (if not suppressed).
+   * @return The selected entries per child objective.
+   */
+  private <T> List<List<T>> selectChilds(final List<T> entries, final List<ReportObjective> childObjectives, final List<T> other,
+      final List<T> duplicates)
+  {
+    final List<List<T>> childLists = new ArrayList<List<T>>(childObjectives.size());
+    for (int i = 0; i < childObjectives.size(); i++) {
+      childLists.add(new ArrayList<T>());
+    }
+    if (entries != null) {
+      for (final T entry : entries) {
+        final String kost1;
+        final String kost2;
+        if (entry instanceof MonthlyBalanceDO) {
+          kost1 = KostFormatter.format(((MonthlyBalanceDO) entry).getKost1());
+          kost2 = KostFormatter.format(((MonthlyBalanceDO) entry).getKost2());
+        } else {
+          kost1 = KostFormatter.format(((BuchungssatzDO) entry).getKost1());
+          kost2 = KostFormatter.format(((BuchungssatzDO) entry).getKost2());
+        }
+        int n = 0;
+        for (int i = 0; i < childObjectives.size(); i++) {
+          if (childObjectives.get(i).matches(kost1, kost2) == true) {
+            childLists.get(i).add(entry);
+            n++;
           }
         }
-      }
-      if (reportObjective.isSuppressOther() == false && this.other != null) {
-        final ReportObjective objective = new ReportObjective();
-        final String other = PFUserContext.getLocalizedString("fibu.reporting.other");
-        objective.setId(this.getId() + " - " + other);
-        objective.setTitle(this.getTitle() + " - " + other);
-        final Report report = new Report(objective, this);
-        report.setBuchungssaetze(this.other);
-        childReports.add(report);
-      }
-      if (reportObjective.isSuppressDuplicates() == false && this.duplicates != null) {
-        final ReportObjective objective = new ReportObjective();
-        final String duplicates = PFUserContext.getLocalizedString("fibu.reporting.duplicates");
-        objective.setId(this.getId() + " - " + duplicates);
-        objective.setTitle(this.getTitle() + " - " + duplicates);
-        final Report report = new Report(objective, this);
-        report.setBuchungssaetze(this.duplicates);
-        childReports.add(report);
+        if (reportObjective.isSuppressOther() == false && n == 0) {
+          // Kommt bei keinem Childreport vor:
+          other.add(entry);
+        } else if (reportObjective.isSuppressDuplicates() == false && n > 1) {
+          // Kommt bei mehreren Childs vor:
+          duplicates.add(entry);
+        }
       }
     }
-    return childReports;
+    return childLists;
+  }
+
+  /**
+   * Creates and adds the child report for the other or duplicate entries.
+   * @param i18nKey
+   */
+  private Report createChild(final String i18nKey)
+  {
+    final ReportObjective objective = new ReportObjective();
+    final String title = PFUserContext.getLocalizedString(i18nKey);
+    objective.setId(this.getId() + " - " + title);
+    objective.setTitle(this.getTitle() + " - " + title);
+    final Report report = new Report(objective, this);
+    childReports.add(report);
+    return report;
   }
 
   public List<BuchungssatzDO> getBuchungssaetze()
@@ -325,6 +399,15 @@ public class Report implements Serializable
     return buchungssaetze;
   }
 
+  /**
+   * @return The selected monthly balances or null, if the account records are selected.
+   * @see #selectBalances(List)
+   */
+  public List<MonthlyBalanceDO> getBalances()
+  {
+    return balances;
+  }
+
   /**
    * Bitte entweder diese Methode ODER select(...) benutzen.
    * @param buchungssaetze
@@ -364,37 +447,52 @@ public class Report implements Serializable
    */
   public void select(final List<BuchungssatzDO> list)
   {
-    final Predicate regExpPredicate = new Predicate() {
-      public boolean evaluate(final Object obj)
-      {
-        final BuchungssatzDO satz = (BuchungssatzDO) obj;
-        final String kost1 = KostFormatter.format(satz.getKost1());
-        final String kost2 = KostFormatter.format(satz.getKost2());
-
-        // 1st of all the Blacklists
-        if (match(reportObjective.getKost1ExcludeRegExpList(), kost1, false) == true) {
-          return false;
+    final List<BuchungssatzDO> selection = new ArrayList<BuchungssatzDO>();
+    if (list != null) {
+      for (final BuchungssatzDO satz : list) {
+        if (reportObjective.matches(KostFormatter.format(satz.getKost1()), KostFormatter.format(satz.getKost2())) == true) {
+          selection.add(satz);
         }
-        if (match(reportObjective.getKost2ExcludeRegExpList(), kost2, false) == true) {
-          return false;
+      }
+    }
+    setSelection(selection);
+  }
+
+  /**
+   * Selects the monthly balances of this report (e. g. for the business assessments of the report and its childs without reading the
+   * account records). Any previous selection of account records is discarded.
+   * @param list The balances of the report's period before selection.
+   * @see org.projectforge.fibu.kost.MonthlyBalanceDao
+   */
+  public void selectBalances(final List<MonthlyBalanceDO> list)
+  {
+    final List<MonthlyBalanceDO> selection = new ArrayList<MonthlyBalanceDO>();
+    if (list != null) {
+      for (final MonthlyBalanceDO balance : list) {
+        if (reportObjective.matches(KostFormatter.format(balance.getKost1()), KostFormatter.format(balance.getKost2())) == true) {
+          selection.add(balance);
         }
-        // 2nd the whitelists
-        final boolean kost1Match = match(reportObjective.getKost1IncludeRegExpList(), kost1, true);
-        final boolean kost2Match = match(reportObjective.getKost2IncludeRegExpList(), kost2, true);
-        return kost1Match == true && kost2Match == true;
       }
-    };
-    this.buchungssaetze = new ArrayList<BuchungssatzDO>();
-    this.buchungssatzSet = new HashSet<BuchungssatzDO>();
+    }
+    setBalanceSelection(selection);
+  }
+
+  private void setBalanceSelection(final List<MonthlyBalanceDO> selection)
+  {
+    setSelection(null);
+    this.balances = selection;
+  }
+
+  private void setSelection(final List<BuchungssatzDO> selection)
+  {
+    this.buchungssaetze = selection;
+    this.buchungssatzSet = selection != null ? new HashSet<BuchungssatzDO>(selection) : null;
+    this.balances = null;
     this.businessAssessment = null;
     this.businessAssessmentTable = null;
     this.childReports = null;
     this.duplicates = null;
     this.other = null;
-    CollectionUtils.select(list, regExpPredicate, this.buchungssaetze);
-    for (final BuchungssatzDO satz : this.buchungssaetze) {
-      this.buchungssatzSet.add(satz);
-    }
   }
 
   public boolean contains(final BuchungssatzDO satz)
@@ -422,18 +520,46 @@ public class Report implements Serializable
    */
   public static boolean match(final List<String> regExpList, final String kost, final boolean emptyListMatches)
   {
-    if (CollectionUtils.isNotEmpty(regExpList) == true) {
-      for (final String str : regExpList) {
-        final String regExp = modifyRegExp(str);
-        if (kost.matches(regExp) == true) {
-          return true;
-        }
-      }
-      return false;
-    } else {
+    return match(compile(regExpList), kost, emptyListMatches);
+  }
+
+  /**
+   * @param patterns The compiled regular expressions.
+   * @param kost
+   * @param emptyListMatches
+   * @see #match(List, String, boolean)
+   * @see #compile(List)
+   */
+  static boolean match(final Pattern[] patterns, final String kost, final boolean emptyListMatches)
+  {
+    if (patterns == null) {
       // List is empty:
       return emptyListMatches;
     }
+    for (final Pattern pattern : patterns) {
+      if (pattern.matcher(kost).matches() == true) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compiles the regular expressions after modification.
+   * @param regExpList
+   * @return The compiled patterns or null, if the given list is empty.
+   * @see #modifyRegExp(String)
+   */
+  static Pattern[] compile(final List<String> regExpList)
+  {
+    if (CollectionUtils.isEmpty(regExpList) == true) {
+      return null;
+    }
+    final Pattern[] patterns = new Pattern[regExpList.size()];
+    for (int i = 0; i < patterns.length; i++) {
+      patterns[i] = Pattern.compile(modifyRegExp(regExpList.get(i)));
+    }
+    return patterns;
   }
 
   /**
@@ -27,9 +27,12 @@ import java.io.InputStream;
 import java.util.List;
 
 import org.projectforge.access.AccessChecker;
+import org.projectforge.database.ReadFromReplica;
 import org.projectforge.fibu.kost.BuchungssatzDO;
 import org.projectforge.fibu.kost.BuchungssatzDao;
 import org.projectforge.fibu.kost.BuchungssatzFilter;
+import org.projectforge.fibu.kost.MonthlyBalanceDO;
+import org.projectforge.fibu.kost.MonthlyBalanceDao;
 import org.projectforge.user.ProjectForgeGroup;
 import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
 import org.springframework.transaction.annotation.Propagation;
@@ -43,6 +46,7 @@ import com.thoughtworks.xstream.annotations.Annotations;
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+@ReadFromReplica
 public class ReportDao extends HibernateDaoSupport
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(ReportDao.class);
@@ -53,6 +57,8 @@ public class ReportDao extends HibernateDaoSupport
 
   private BuchungssatzDao buchungssatzDao;
 
+  private MonthlyBalanceDao monthlyBalanceDao;
+
   public ReportDao()
   {
     xstream = new XStream();
@@ -104,6 +110,39 @@ public class ReportDao extends HibernateDaoSupport
     report.select(list);
   }
 
+  /**
+   * Zeitraum muss gegeben sein. Liest die monatlichen Salden des Zeitraums (ohne die Buchungssätze) und selektiert anhand des
+   * ReportObjectives die zu verwendenden Salden. Die BWAs des Reports und seiner Childs werden aus den Salden berechnet, die Buchungssätze
+   * werden erst für Drill-downs geladen (siehe {@link #loadAccountRecords(ReportStorage)}).
+   * @param report
+   * @see MonthlyBalanceDao#getBalances(int, int, int, int)
+   * @see Report#selectBalances(List)
+   */
+  public void loadBalances(final Report report)
+  {
+    accessChecker.checkIsLoggedInUserMemberOfGroup(ProjectForgeGroup.FINANCE_GROUP, ProjectForgeGroup.CONTROLLING_GROUP);
+    final List<MonthlyBalanceDO> list = monthlyBalanceDao.getBalances(report.getFromYear(), report.getFromMonth(), report.getToYear(),
+        report.getToMonth());
+    report.selectBalances(list);
+  }
+
+  /**
+   * Loads the account records of the storage's root report (drill-down) if only the balances are loaded. The childs of the root report are
+   * re-created, therefore the current report is looked up again by its id.
+   * @param storage
+   * @see #loadReport(Report)
+   */
+  public void loadAccountRecords(final ReportStorage storage)
+  {
+    final Report root = storage.getRoot();
+    if (root == null || root.isLoad() == false || root.isAccountRecordsLoaded() == true) {
+      return;
+    }
+    final String currentReportId = storage.getCurrentReport() != null ? storage.getCurrentReport().getId() : null;
+    loadReport(root);
+    storage.setCurrentReport(currentReportId);
+  }
+
   public ReportObjective deserializeFromXML(String xml)
   {
     try {
@@ -141,4 +180,9 @@ public class ReportDao extends HibernateDaoSupport
   {
     this.buchungssatzDao = buchungssatzDao;
   }
+
+  public void setMonthlyBalanceDao(final MonthlyBalanceDao monthlyBalanceDao)
+  {
+    this.monthlyBalanceDao = monthlyBalanceDao;
+  }
 }
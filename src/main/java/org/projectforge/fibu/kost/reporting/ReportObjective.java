@@ -25,6 +25,7 @@ package org.projectforge.fibu.kost.reporting;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.commons.collections.CollectionUtils;
 
@@ -73,6 +74,28 @@ public class ReportObjective
   
   private transient ReportObjective parent;
 
+  /**
+   * The compiled patterns or null if not yet compiled (or if the regular expressions were modified). Published by a single volatile
+   * reference, so other threads see either null or all patterns.
+   */
+  private transient volatile Patterns patterns;
+
+  /**
+   * Immutable holder of the compiled regular expressions (the patterns themselves are null for empty lists).
+   */
+  private static class Patterns
+  {
+    private final Pattern[] kost1IncludePatterns, kost1ExcludePatterns, kost2IncludePatterns, kost2ExcludePatterns;
+
+    private Patterns(final ReportObjective objective)
+    {
+      kost1IncludePatterns = Report.compile(objective.kost1IncludeRegExpList);
+      kost1ExcludePatterns = Report.compile(objective.kost1ExcludeRegExpList);
+      kost2IncludePatterns = Report.compile(objective.kost2IncludeRegExpList);
+      kost2ExcludePatterns = Report.compile(objective.kost2ExcludeRegExpList);
+    }
+  }
+
   public ReportObjective()
   {
   }
@@ -238,12 +261,37 @@ public class ReportObjective
     return parent;
   }
 
+  /**
+   * Checks the given cost assignments against the exclude and include lists. The regular expressions are compiled only once (on first
+   * usage) and not for every account record.
+   * @param kost1 The formatted Kost1.
+   * @param kost2 The formatted Kost2.
+   * @return true, if no blacklist and all whitelists match.
+   * @see Report#match(List, String, boolean)
+   */
+  public boolean matches(final String kost1, final String kost2)
+  {
+    Patterns p = patterns;
+    if (p == null) {
+      // Compiled by concurrent threads at the worst more than once.
+      p = new Patterns(this);
+      patterns = p;
+    }
+    // 1st of all the Blacklists
+    if (Report.match(p.kost1ExcludePatterns, kost1, false) == true || Report.match(p.kost2ExcludePatterns, kost2, false) == true) {
+      return false;
+    }
+    // 2nd the whitelists
+    return Report.match(p.kost1IncludePatterns, kost1, true) == true && Report.match(p.kost2IncludePatterns, kost2, true) == true;
+  }
+
   private List<String> addRegExp(List<String> regExpList, String regExp)
   {
     if (regExpList == null) {
       regExpList = new ArrayList<String>();
     }
     regExpList.add(regExp);
+    patterns = null; // Force re-compilation.
     return regExpList;
   }
 }
@@ -34,6 +34,7 @@ import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.IDao;
 import org.projectforge.core.QueryFilter;
+import org.projectforge.database.ReadFromReplica;
 import org.projectforge.fibu.KundeDO;
 import org.projectforge.fibu.ProjektDO;
 import org.projectforge.task.TaskTree;
@@ -72,6 +73,7 @@ public class HRDao extends HibernateDaoSupport implements IDao<HRViewData>
    * getProjectNames)
    */
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  @ReadFromReplica
   public HRViewData getResources(final HRFilter filter)
   {
     final HRViewData data = new HRViewData(filter);
@@ -171,6 +173,7 @@ public class HRDao extends HibernateDaoSupport implements IDao<HRViewData>
    * @return Result list (may be empty but never null).
    */
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  @ReadFromReplica
   public List<PFUserDO> getUnplannedResources(final HRViewData data)
   {
     final List<PFUserDO> users = new ArrayList<PFUserDO>();
@@ -24,9 +24,8 @@
 package org.projectforge.humanresources;
 
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 
@@ -41,7 +40,7 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
-import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.HistoryChildObject;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.fibu.ProjektDO;
 import org.projectforge.fibu.ProjektDao;
@@ -256,45 +255,24 @@ public class HRPlanningDao extends BaseDao<HRPlanningDO>
   }
 
   /**
-   * Gets history entries of super and adds all history entries of the HRPlanningEntryDO childs.
-   * @see org.projectforge.core.BaseDao#getDisplayHistoryEntries(org.projectforge.core.ExtendedBaseDO)
+   * The history entries of the HRPlanningEntryDO childs are displayed in the history of the planning.
+   * @see org.projectforge.core.BaseDao#getHistoryChildObjects(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
-  public List<DisplayHistoryEntry> getDisplayHistoryEntries(final HRPlanningDO obj)
+  protected List<HistoryChildObject> getHistoryChildObjects(final HRPlanningDO obj)
   {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
-    if (accessChecker.hasLoggedInUserHistoryAccess(userRightId, obj, false) == false) {
-      return list;
+    if (accessChecker.hasLoggedInUserHistoryAccess(userRightId, obj, false) == false || CollectionUtils.isEmpty(obj.getEntries()) == true) {
+      return null;
     }
-    if (CollectionUtils.isNotEmpty(obj.getEntries()) == true) {
-      for (final HRPlanningEntryDO position : obj.getEntries()) {
-        final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(position);
-        for (final DisplayHistoryEntry entry : entries) {
-          final String propertyName = entry.getPropertyName();
-          if (propertyName != null) {
-            if (position.getProjekt() != null) {
-              entry.setPropertyName(position.getProjektName() + ":" + entry.getPropertyName()); // Prepend name of project
-            } else {
-              entry.setPropertyName(position.getStatus() + ":" + entry.getPropertyName()); // Prepend status
-            }
-          } else {
-            if (position.getProjekt() != null) {
-              entry.setPropertyName(position.getProjektName());
-            } else {
-              entry.setPropertyName(String.valueOf(position.getStatus()));
-            }
-          }
-        }
-        list.addAll(entries);
+    final List<HistoryChildObject> childs = new ArrayList<HistoryChildObject>();
+    for (final HRPlanningEntryDO position : obj.getEntries()) {
+      if (position.getProjekt() != null) {
+        childs.add(new HistoryChildObject(position.getProjektName(), position)); // Prepend name of project
+      } else {
+        childs.add(new HistoryChildObject(String.valueOf(position.getStatus()), position)); // Prepend status
       }
     }
-    Collections.sort(list, new Comparator<DisplayHistoryEntry>() {
-      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
-      {
-        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
-      }
-    });
-    return list;
+    return childs;
   }
 
   @Override
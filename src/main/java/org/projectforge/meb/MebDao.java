@@ -36,6 +36,7 @@ import javax.sql.DataSource;
 import org.apache.commons.lang.Validate;
 import org.projectforge.common.StringHelper;
 import org.projectforge.core.BaseDao;
+import org.projectforge.core.MenuCounterService;
 import org.projectforge.user.PFUserContext;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
@@ -59,11 +60,16 @@ public class MebDao extends BaseDao<MebEntryDO>
 
   public static final String DATE_FORMAT = "yyyyMMddHHmmss";
 
+  /**
+   * Id of the menu counter of recent MEB entries (see {@link MenuCounterService}).
+   */
+  public static final String MENU_COUNTER_ID = "MEB";
+
   private DataSource dataSource;
 
   private UserDao userDao;
 
-  private MebCache mebCache = new MebCache(this);
+  private MenuCounterService menuCounterService;
 
   /**
    * Removes all non digit and letter characters (also white-spaces) first. Afterward a MD5 checksum is calculated.
@@ -129,7 +135,7 @@ public class MebDao extends BaseDao<MebEntryDO>
   /**
    * Get the number of recent MEB entries for the logged in user. If the user is member of the admin group then the number of unassigned
    * entries (owner not set) will be added. <br/>
-   * The result is cached (therefore you can call this method very often).
+   * The result isn't cached, the menu displays the value computed in background by the {@link MenuCounterService}.
    * @param userId If null then the current logged in user is assumed.
    * @return Number of recent (and unassigned) MEB entries.
    */
@@ -138,21 +144,10 @@ public class MebDao extends BaseDao<MebEntryDO>
     if (userId == null) {
       userId = PFUserContext.getUserId();
     }
-    return mebCache.getRecentMEBEntries(userId);
-  }
-
-  /**
-   * Called by MebCache to get the number of recent entries for the given users. For administrative users the number of unassigned entries
-   * (without owner) is added.
-   * @param userId
-   * @return Number of recent (and unassigned) MEB entries.
-   */
-  int internalGetRecentMEBEntries(final Integer userId)
-  {
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
     try {
       int counter = jdbc.queryForInt("SELECT COUNT(*) FROM t_meb_entry where owner_fk=" + userId + " and status='RECENT'");
-      if (accessChecker.isLoggedInUserMemberOfAdminGroup() == true) {
+      if (userGroupCache.isUserMemberOfAdminGroup(userId) == true) {
         counter += jdbc.queryForInt("SELECT COUNT(*) FROM t_meb_entry where owner_fk is null");
       }
       return counter;
@@ -238,7 +233,9 @@ public class MebDao extends BaseDao<MebEntryDO>
   @Override
   protected void afterSaveOrModify(MebEntryDO obj)
   {
-    mebCache.setExpired();
+    if (menuCounterService != null) {
+      menuCounterService.setExpired(MENU_COUNTER_ID);
+    }
   }
 
   @Override
@@ -252,6 +249,26 @@ public class MebDao extends BaseDao<MebEntryDO>
     this.dataSource = dataSource;
   }
 
+  /**
+   * Registers the counter of recent MEB entries.
+   * @param menuCounterService
+   */
+  public void setMenuCounterService(final MenuCounterService menuCounterService)
+  {
+    this.menuCounterService = menuCounterService;
+    menuCounterService.register(MENU_COUNTER_ID, new MenuCounterService.Counter() {
+      public boolean isUserSpecific()
+      {
+        return true;
+      }
+
+      public int count(final Integer userId)
+      {
+        return getRecentMEBEntries(userId);
+      }
+    }, MebEntryDO.class);
+  }
+
   public void setUserDao(UserDao userDao)
   {
     this.userDao = userDao;
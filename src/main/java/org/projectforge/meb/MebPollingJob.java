@@ -23,6 +23,7 @@
 
 package org.projectforge.meb;
 
+import org.projectforge.common.DateHelper;
 import org.projectforge.core.AbstractCronJob;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -44,11 +45,12 @@ public class MebPollingJob extends AbstractCronJob
     if (mebJobExecutor == null) {
       wire(context);
     }
-    try {
-      mebJobExecutor.execute(false);
-    } catch (final Throwable ex) {
-      log.error("While executing hibernate search re-index job: " + ex.getMessage(), ex);
-    }
+    runOnOneNode(context, "mebPollingJob", 30 * DateHelper.MILLIS_MINUTE, new Runnable() {
+      public void run()
+      {
+        mebJobExecutor.execute(false);
+      }
+    });
     // log.info("MEB polling job finished.");
   }
 
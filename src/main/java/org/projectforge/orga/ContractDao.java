@@ -56,6 +56,7 @@ public class ContractDao extends BaseDao<ContractDO>
   {
     super(ContractDO.class);
     userRightId = USER_RIGHT_ID;
+    enableAutocompletionIndex("title", "coContractorA", "contractPersonA", "signerA", "coContractorB", "contractPersonB", "signerB");
   }
 
   @Override
@@ -44,6 +44,7 @@ public class PostausgangDao extends BaseDao<PostausgangDO>
   {
     super(PostausgangDO.class);
     userRightId = USER_RIGHT_ID;
+    enableAutocompletionIndex("empfaenger", "person", "inhalt");
   }
 
   /**
@@ -43,6 +43,7 @@ public class PosteingangDao extends BaseDao<PosteingangDO>
   {
     super(PosteingangDO.class);
     userRightId = USER_RIGHT_ID;
+    enableAutocompletionIndex("absender", "person", "inhalt");
   }
 
   /**
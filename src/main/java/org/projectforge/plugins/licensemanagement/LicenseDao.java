@@ -57,6 +57,7 @@ public class LicenseDao extends BaseDao<LicenseDO>
   {
     super(LicenseDO.class);
     userRightId = USER_RIGHT_ID;
+    enableAutocompletionIndex("organization", "product");
   }
 
   /**
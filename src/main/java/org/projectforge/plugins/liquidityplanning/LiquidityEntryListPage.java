@@ -25,7 +25,6 @@ package org.projectforge.plugins.liquidityplanning;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
@@ -47,6 +46,7 @@ import org.projectforge.export.DOListExcelExporter;
 import org.projectforge.fibu.EingangsrechnungDO;
 import org.projectforge.fibu.EingangsrechnungDao;
 import org.projectforge.fibu.InvoicesExcelExport;
+import org.projectforge.fibu.PaymentStatisticsCache;
 import org.projectforge.fibu.PaymentStatus;
 import org.projectforge.fibu.RechnungDO;
 import org.projectforge.fibu.RechnungDao;
@@ -84,6 +84,9 @@ IListPageColumnsCreator<LiquidityEntryDO>
   @SpringBean(name = "eingangsrechnungDao")
   private EingangsrechnungDao eingangsrechnungDao;
 
+  @SpringBean(name = "paymentStatisticsCache")
+  private PaymentStatisticsCache paymentStatisticsCache;
+
   private LiquidityEntriesStatistics statistics;
 
   private LiquidityForecast forecast;
@@ -241,10 +244,8 @@ IListPageColumnsCreator<LiquidityEntryDO>
   {
     if (forecast == null) {
       forecast = new LiquidityForecast();
-      // Consider only invoices of the last year:
-      final java.sql.Date fromDate = new DayHolder().add(Calendar.DAY_OF_YEAR, -365).getSQLDate();
-      final List<RechnungDO> paidInvoices = rechnungDao.getList(new RechnungFilter().setShowBezahlt().setFromDate(fromDate));
-      forecast.calculateExpectedTimeOfPayments(paidInvoices);
+      // Payment statistics of the invoices of the last year:
+      forecast.setPaymentStatistics(paymentStatisticsCache.getDebitorStatistics(), paymentStatisticsCache.getCreditorStatistics());
       invoices = rechnungDao.getList(new RechnungFilter().setShowUnbezahlt());
       forecast.setInvoices(invoices);
       creditorInvoices = eingangsrechnungDao.getList(new RechnungFilter().setListType(RechnungFilter.FILTER_UNBEZAHLT));
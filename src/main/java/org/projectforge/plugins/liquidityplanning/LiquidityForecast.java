@@ -40,11 +40,12 @@ import org.projectforge.fibu.KontoCache;
 import org.projectforge.fibu.KontoDO;
 import org.projectforge.fibu.KundeDO;
 import org.projectforge.fibu.KundeFormatter;
+import org.projectforge.fibu.PaymentStatistics;
+import org.projectforge.fibu.PaymentStatisticsCache;
 import org.projectforge.fibu.ProjektDO;
 import org.projectforge.fibu.ProjektFormatter;
 import org.projectforge.fibu.RechnungDO;
 import org.projectforge.registry.Registry;
-import org.projectforge.statistics.IntAggregatedValues;
 
 /**
  * @author Kai Reinhard (k.reinhard@micromata.de)
@@ -63,7 +64,12 @@ public class LiquidityForecast implements Serializable
   /**
    * Used for calculating the expected date of payment for future invoices.
    */
-  private final Map<String, IntAggregatedValues> aggregatedValuesMap = new HashMap<String, IntAggregatedValues>();
+  private final Map<String, PaymentStatistics> debitorStatistics = new HashMap<String, PaymentStatistics>();
+
+  /**
+   * Used for calculating the expected date of payment for future creditor invoices.
+   */
+  private final Map<String, PaymentStatistics> creditorStatistics = new HashMap<String, PaymentStatistics>();
 
   private Collection<LiquidityEntry> creditorInvoices;
 
@@ -138,47 +144,23 @@ public class LiquidityForecast implements Serializable
   }
 
   /**
-   * For calculating the expected date of payment of future invoices. <br/>
-   * Should be called before {@link #setInvoices(Collection)}!
-   * @param list
+   * For calculating the expected date of payment of future invoices. The statistics of the paid invoices of the last year are maintained
+   * by the {@link PaymentStatisticsCache}.<br/>
+   * Should be called before {@link #setInvoices(Collection)} and {@link #setCreditorInvoices(Collection)}!
+   * @param debitorStatistics
+   * @param creditorStatistics
+   * @return this for chaining.
    */
-  public LiquidityForecast calculateExpectedTimeOfPayments(final Collection<RechnungDO> list)
+  public LiquidityForecast setPaymentStatistics(final Map<String, PaymentStatistics> debitorStatistics,
+      final Map<String, PaymentStatistics> creditorStatistics)
   {
-    if (list == null) {
-      return this;
+    this.debitorStatistics.clear();
+    if (debitorStatistics != null) {
+      this.debitorStatistics.putAll(debitorStatistics);
     }
-    final KontoCache accountCache = Registry.instance().getKontoCache();
-    for (final RechnungDO invoice : list) {
-      final DayHolder date = new DayHolder(invoice.getDatum());
-      final DayHolder dateOfPayment = new DayHolder(invoice.getBezahlDatum());
-      if (date == null || dateOfPayment == null) {
-        continue;
-      }
-      final int timeForPayment = date.daysBetween(dateOfPayment);
-      final int amount = invoice.getGrossSum().intValue();
-      // Store values for different groups:
-      final Integer projectId = invoice.getProjektId();
-      if (projectId != null) {
-        ensureAndAddPaymentValue("project#" + projectId, timeForPayment, amount);
-      }
-      final Integer customerId = invoice.getKundeId();
-      if (customerId != null) {
-        ensureAndAddPaymentValue("customer#" + customerId, timeForPayment, amount);
-      }
-      final KontoDO account = accountCache.getKonto(invoice);
-      final Integer accountId = account != null ? account.getId() : null;
-      if (accountId != null) {
-        ensureAndAddPaymentValue("account#" + accountId, timeForPayment, amount);
-      }
-      String customerText = invoice.getKundeText();
-      if (customerText != null) {
-        customerText = customerText.toLowerCase();
-        ensureAndAddPaymentValue("customer:" + customerText, timeForPayment, amount);
-        if (customerText.length() > 5) {
-          customerText = customerText.substring(0, 5);
-        }
-        ensureAndAddPaymentValue("shortCustomer:" + customerText, timeForPayment, amount);
-      }
+    this.creditorStatistics.clear();
+    if (creditorStatistics != null) {
+      this.creditorStatistics.putAll(creditorStatistics);
     }
     return this;
   }
@@ -191,41 +173,64 @@ public class LiquidityForecast implements Serializable
     }
     final ProjektDO project = invoice.getProjekt();
     if (project != null
-        && setExpectedDateOfPayment(entry, dateOfInvoice, "project#" + project.getId(),
+        && setExpectedDateOfPayment(debitorStatistics, entry, dateOfInvoice, PaymentStatisticsCache.KEY_PROJECT + project.getId(),
             ProjektFormatter.formatProjektKundeAsString(project, null, null)) == true) {
       return;
     }
     final KundeDO customer = invoice.getKunde();
     if (customer != null
-        && setExpectedDateOfPayment(entry, dateOfInvoice, "customer#" + customer.getId(),
+        && setExpectedDateOfPayment(debitorStatistics, entry, dateOfInvoice, PaymentStatisticsCache.KEY_CUSTOMER + customer.getId(),
             KundeFormatter.formatKundeAsString(customer, null)) == true) {
       return;
     }
     final KontoCache accountCache = Registry.instance().getKontoCache();
     final KontoDO account = accountCache.getKonto(invoice);
     if (account != null
-        && setExpectedDateOfPayment(entry, dateOfInvoice, "account#" + account.getId(),
+        && setExpectedDateOfPayment(debitorStatistics, entry, dateOfInvoice, PaymentStatisticsCache.KEY_ACCOUNT + account.getId(),
             "" + account.getNummer() + " - " + account.getBezeichnung()) == true) {
       return;
     }
-    String customerText = invoice.getKundeText();
-    if (customerText != null) {
-      customerText = customerText.toLowerCase();
-      if (setExpectedDateOfPayment(entry, dateOfInvoice, "customer:" + customerText, customerText) == true) {
-        return;
-      }
-      if (customerText.length() > 5) {
-        customerText = customerText.substring(0, 5);
-      }
-      if (setExpectedDateOfPayment(entry, dateOfInvoice, "shortCustomer:" + customerText, customerText) == true) {
-        return;
-      }
+    setExpectedDateOfPayment(debitorStatistics, entry, dateOfInvoice, PaymentStatisticsCache.KEY_CUSTOMER_TEXT,
+        PaymentStatisticsCache.KEY_SHORT_CUSTOMER_TEXT, invoice.getKundeText());
+  }
+
+  private void setExpectedTimeOfPayment(final LiquidityEntry entry, final EingangsrechnungDO invoice)
+  {
+    Date dateOfInvoice = invoice.getDatum();
+    if (dateOfInvoice == null) {
+      dateOfInvoice = new DayHolder().getSQLDate();
     }
+    final KontoDO account = Registry.instance().getKontoCache().getKonto(invoice.getKontoId());
+    if (account != null
+        && setExpectedDateOfPayment(creditorStatistics, entry, dateOfInvoice, PaymentStatisticsCache.KEY_ACCOUNT + account.getId(),
+            "" + account.getNummer() + " - " + account.getBezeichnung()) == true) {
+      return;
+    }
+    setExpectedDateOfPayment(creditorStatistics, entry, dateOfInvoice, PaymentStatisticsCache.KEY_CREDITOR_TEXT,
+        PaymentStatisticsCache.KEY_SHORT_CREDITOR_TEXT, invoice.getKreditor());
   }
 
-  private boolean setExpectedDateOfPayment(final LiquidityEntry entry, final Date dateOfInvoice, final String mapKey, final String area)
+  /**
+   * Tries the statistics of the given text first and then of the short text.
+   */
+  private boolean setExpectedDateOfPayment(final Map<String, PaymentStatistics> statistics, final LiquidityEntry entry,
+      final Date dateOfInvoice, final String prefix, final String shortPrefix, final String text)
   {
-    final IntAggregatedValues values = aggregatedValuesMap.get(mapKey);
+    if (text == null) {
+      return false;
+    }
+    final String lowerCase = text.toLowerCase();
+    if (setExpectedDateOfPayment(statistics, entry, dateOfInvoice, prefix + lowerCase, lowerCase) == true) {
+      return true;
+    }
+    final String shortText = PaymentStatisticsCache.getShortText(lowerCase);
+    return setExpectedDateOfPayment(statistics, entry, dateOfInvoice, shortPrefix + shortText, shortText);
+  }
+
+  private boolean setExpectedDateOfPayment(final Map<String, PaymentStatistics> statistics, final LiquidityEntry entry,
+      final Date dateOfInvoice, final String mapKey, final String area)
+  {
+    final PaymentStatistics values = statistics.get(mapKey);
     if (values != null && values.getNumberOfValues() >= 1) {
       entry.setExpectedDateOfPayment(getDate(dateOfInvoice, values.getWeightedAverage()));
       entry.setComment(mapKey + ": " + area + ": " + values.getWeightedAverage() + " days (" + values.getNumberOfValues() + " paid invoices)");
@@ -242,18 +247,8 @@ public class LiquidityForecast implements Serializable
     return day.getSQLDate();
   }
 
-  private void ensureAndAddPaymentValue(final String mapId, final int timeForPayment, final int amount)
-  {
-    IntAggregatedValues values = aggregatedValuesMap.get(mapId);
-    if (values == null) {
-      values = new IntAggregatedValues();
-      aggregatedValuesMap.put(mapId, values);
-    }
-    values.add(timeForPayment, amount);
-  }
-
   /**
-   * Should be called after {@link #calculateExpectedTimeOfPayments(Collection)}-
+   * Should be called after {@link #setPaymentStatistics(Map, Map)}.
    * @param list
    * @return
    */
@@ -297,6 +292,7 @@ public class LiquidityForecast implements Serializable
       entry.setPaid(invoice.isBezahlt());
       entry.setSubject(invoice.getKreditor() + ": " + invoice.getBetreff());
       entry.setType(LiquidityEntryType.CREDITOR);
+      setExpectedTimeOfPayment(entry, invoice);
       this.creditorInvoices.add(entry);
     }
     return this;
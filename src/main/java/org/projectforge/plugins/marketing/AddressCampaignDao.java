@@ -46,4 +46,14 @@ public class AddressCampaignDao extends BaseDao<AddressCampaignDO>
   {
     return new AddressCampaignDO();
   }
+
+  /**
+   * Address campaigns are sorted and paged by the data base (no object dependent select access).
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported()
+   */
+  @Override
+  protected boolean isDatabasePagingSupported()
+  {
+    return true;
+  }
 }
@@ -34,10 +34,9 @@ import org.projectforge.address.AddressDao;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.QueryFilter;
-import org.projectforge.core.UserException;
 import org.projectforge.user.UserRightId;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.util.CollectionUtils;
 
 /**
@@ -100,42 +99,57 @@ public class AddressCampaignValueDao extends BaseDao<AddressCampaignValueDO>
     addressCampaignValue.setAddress(address);
   }
 
-  @Transactional(readOnly = false, propagation = Propagation.REQUIRES_NEW)
+  /**
+   * Sets the value and comment of the given campaign for all given addresses. The addresses are processed in chunks of
+   * {@link #MASS_UPDATE_CHUNK_SIZE} entries, every chunk in its own transaction, so there is no limit of the number of addresses.
+   */
   public void massUpdate(final List<AddressDO> list, final AddressCampaignDO addressCampaign, final String value, final String comment)
   {
     if (list == null || list.size() == 0) {
       // No entries to update.
       return;
     }
-    if (list.size() > MAX_MASS_UPDATE) {
-      throw new UserException(MAX_MASS_UPDATE_EXCEEDED_EXCEPTION_I18N, new Object[] { MAX_MASS_UPDATE});
+    for (int fromIndex = 0; fromIndex < list.size(); fromIndex += MASS_UPDATE_CHUNK_SIZE) {
+      final List<AddressDO> chunk = list.subList(fromIndex, Math.min(fromIndex + MASS_UPDATE_CHUNK_SIZE, list.size()));
+      // Every chunk in its own transaction:
+      txTemplate.execute(new TransactionCallback() {
+        public Object doInTransaction(final TransactionStatus status)
+        {
+          for (final AddressDO address : chunk) {
+            massUpdate(address, addressCampaign, value, comment);
+          }
+          return null;
+        }
+      });
     }
-    for (final AddressDO address : list) {
-      AddressCampaignValueDO addressCampaignValue = get(address.getId(), addressCampaign.getId());
-      if (addressCampaignValue == null) {
-        addressCampaignValue = new AddressCampaignValueDO();
-        setAddress(addressCampaignValue, address.getId());
-        addressCampaignValue.setAddressCampaign(addressCampaign);
-      }
-      if (value != null) {
-        addressCampaignValue.setValue(value);
-      }
-      if (StringUtils.isEmpty(comment) == false) {
-        addressCampaignValue.setComment(comment);
+  }
+
+  private void massUpdate(final AddressDO address, final AddressCampaignDO addressCampaign, final String value, final String comment)
+  {
+    AddressCampaignValueDO addressCampaignValue = get(address.getId(), addressCampaign.getId());
+    if (addressCampaignValue == null) {
+      addressCampaignValue = new AddressCampaignValueDO();
+      setAddress(addressCampaignValue, address.getId());
+      addressCampaignValue.setAddressCampaign(addressCampaign);
+    }
+    if (value != null) {
+      addressCampaignValue.setValue(value);
+    }
+    if (StringUtils.isEmpty(comment) == false) {
+      addressCampaignValue.setComment(comment);
+    }
+    if (addressCampaignValue.getId() != null) {
+      try {
+        addressCampaignValue.setDeleted(false);
+        update(addressCampaignValue);
+      } catch (final Exception ex) {
+        log.info("Exception occured while updating entry inside mass update: " + addressCampaignValue);
       }
-      if (addressCampaignValue.getId() != null) {
-        try {
-          addressCampaignValue.setDeleted(false);
-          update(addressCampaignValue);
-        } catch (final Exception ex) {
-          log.info("Exception occured while updating entry inside mass update: " + addressCampaignValue);
-        }
-      } else {
-        try {
-          save(addressCampaignValue);
-        } catch (final Exception ex) {
-          log.info("Exception occured while inserting entry inside mass update: " + addressCampaignValue);
-        }
+    } else {
+      try {
+        save(addressCampaignValue);
+      } catch (final Exception ex) {
+        log.info("Exception occured while inserting entry inside mass update: " + addressCampaignValue);
       }
     }
   }
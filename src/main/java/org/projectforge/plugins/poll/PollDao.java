@@ -44,6 +44,7 @@ public class PollDao extends BaseDao<PollDO>
   {
     super(PollDO.class);
     userRightId = USER_RIGHT_ID;
+    enableAutocompletionIndex("location");
   }
 
   @Override
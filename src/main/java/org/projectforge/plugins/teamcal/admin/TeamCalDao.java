@@ -33,6 +33,7 @@ import org.projectforge.common.StringHelper;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.DisplayHistoryPage;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.plugins.teamcal.admin.TeamCalFilter.OwnerType;
 import org.projectforge.plugins.teamcal.externalsubscription.TeamEventExternalSubscriptionCache;
@@ -244,7 +245,25 @@ public class TeamCalDao extends BaseDao<TeamCalDO>
   @Override
   public List<DisplayHistoryEntry> getDisplayHistoryEntries(final TeamCalDO obj)
   {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
+    return convertGroupAndUserIds(super.getDisplayHistoryEntries(obj));
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#getDisplayHistoryPage(org.projectforge.core.ExtendedBaseDO, DisplayHistoryPage, int)
+   */
+  @Override
+  public DisplayHistoryPage getDisplayHistoryPage(final TeamCalDO obj, final DisplayHistoryPage previousPage, final int maxHistoryEntries)
+  {
+    final DisplayHistoryPage page = super.getDisplayHistoryPage(obj, previousPage, maxHistoryEntries);
+    convertGroupAndUserIds(page.getEntries());
+    return page;
+  }
+
+  /**
+   * Replaces the group and user ids of the history entries by the names of the groups and users.
+   */
+  private List<DisplayHistoryEntry> convertGroupAndUserIds(final List<DisplayHistoryEntry> list)
+  {
     if (CollectionUtils.isEmpty(list) == true) {
       return list;
     }
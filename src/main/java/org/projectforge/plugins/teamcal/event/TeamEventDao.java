@@ -26,8 +26,6 @@ package org.projectforge.plugins.teamcal.event;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -47,7 +45,7 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
-import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.HistoryChildObject;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.plugins.teamcal.TeamCalConfig;
 import org.projectforge.plugins.teamcal.admin.TeamCalCache;
@@ -432,37 +430,20 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
   }
 
   /**
-   * Gets history entries of super and adds all history entries of the TeamEventAttendeeDO childs.
-   * @see org.projectforge.core.BaseDao#getDisplayHistoryEntries(org.projectforge.core.ExtendedBaseDO)
+   * The history entries of the TeamEventAttendeeDO childs are displayed in the history of the event.
+   * @see org.projectforge.core.BaseDao#getHistoryChildObjects(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
-  public List<DisplayHistoryEntry> getDisplayHistoryEntries(final TeamEventDO obj)
+  protected List<HistoryChildObject> getHistoryChildObjects(final TeamEventDO obj)
   {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
-    if (hasLoggedInUserHistoryAccess(obj, false) == false) {
-      return list;
+    if (CollectionUtils.isEmpty(obj.getAttendees()) == true) {
+      return null;
     }
-    if (CollectionUtils.isNotEmpty(obj.getAttendees()) == true) {
-      for (final TeamEventAttendeeDO attendee : obj.getAttendees()) {
-        final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(attendee);
-        for (final DisplayHistoryEntry entry : entries) {
-          final String propertyName = entry.getPropertyName();
-          if (propertyName != null) {
-            entry.setPropertyName(attendee.toString() + ":" + entry.getPropertyName()); // Prepend user name or url to identify.
-          } else {
-            entry.setPropertyName(attendee.toString());
-          }
-        }
-        list.addAll(entries);
-      }
+    final List<HistoryChildObject> childs = new ArrayList<HistoryChildObject>();
+    for (final TeamEventAttendeeDO attendee : obj.getAttendees()) {
+      childs.add(new HistoryChildObject(attendee.toString(), attendee)); // Prepend user name or url to identify.
     }
-    Collections.sort(list, new Comparator<DisplayHistoryEntry>() {
-      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
-      {
-        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
-      }
-    });
-    return list;
+    return childs;
   }
 
   @Override
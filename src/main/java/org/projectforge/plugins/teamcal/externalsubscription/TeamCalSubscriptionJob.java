@@ -41,7 +41,13 @@ public class TeamCalSubscriptionJob extends AbstractCronJob
   public void execute(final JobExecutionContext context) throws JobExecutionException
   {
     if (teamCalDao != null) {
-      TeamEventExternalSubscriptionCache.instance().updateCache(teamCalDao);
+      // The cache is held in memory by every node:
+      runOnEachNode(context, "teamCalAboJob", new Runnable() {
+        public void run()
+        {
+          TeamEventExternalSubscriptionCache.instance().updateCache(teamCalDao);
+        }
+      });
     } else {
       log.error("TeamCalSubscriptionJob has no TeamCalDao set -> unable to update cache.");
     }
@@ -40,6 +40,7 @@ import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.MenuCounterService;
 import org.projectforge.core.ModificationStatus;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.mail.Mail;
@@ -65,6 +66,11 @@ public class ToDoDao extends BaseDao<ToDoDO>
 {
   public static final UserRightId USER_RIGHT_ID = new UserRightId("PLUGIN_TODO", "plugin10", "plugins.todo.todo");;
 
+  /**
+   * Id of the menu counter of open to-do entries (see {@link MenuCounterService}).
+   */
+  public static final String MENU_COUNTER_ID = "TODO";
+
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(ToDoDao.class);
 
   private static final String[] ADDITIONAL_SEARCH_FIELDS = new String[] { "reporter.username", "reporter.firstname", "reporter.lastname",
@@ -82,7 +88,7 @@ public class ToDoDao extends BaseDao<ToDoDO>
 
   private TaskTree taskTree;
 
-  private final ToDoCache toDoCache = new ToDoCache(this);
+  private MenuCounterService menuCounterService;
 
   public ToDoDao()
   {
@@ -252,7 +258,9 @@ public class ToDoDao extends BaseDao<ToDoDO>
   @Override
   protected void afterSaveOrModify(final ToDoDO obj)
   {
-    toDoCache.setExpired(); // Force reload of the menu item counters for open to-do entrie.
+    if (menuCounterService != null) {
+      menuCounterService.setExpired(MENU_COUNTER_ID); // Force reload of the menu item counters for open to-do entries.
+    }
   }
 
   public void setAssignee(final ToDoDO todo, final Integer userId)
@@ -286,7 +294,7 @@ public class ToDoDao extends BaseDao<ToDoDO>
 
   /**
    * Get the number of open to-do entries for the given user. Entries are open (in this context) when they're not deleted or closed. <br/>
-   * The result is cached (therefore you can call this method very often).
+   * The result isn't cached, the menu displays the value computed in background by the {@link MenuCounterService}.
    * @param userId If null then the current logged in user is assumed.
    * @return Number of open to-do entries.
    */
@@ -295,16 +303,6 @@ public class ToDoDao extends BaseDao<ToDoDO>
     if (userId == null) {
       userId = PFUserContext.getUserId();
     }
-    return toDoCache.getOpenToDoEntries(userId);
-  }
-
-  /**
-   * Called by ToDoCache to get the number of open entries for the given users.
-   * @param userId
-   * @return Number of open to-do entries.
-   */
-  int internalGetOpenEntries(final Integer userId)
-  {
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
     try {
       return jdbc.queryForInt("SELECT COUNT(*) FROM "
@@ -334,6 +332,26 @@ public class ToDoDao extends BaseDao<ToDoDO>
     this.groupDao = groupDao;
   }
 
+  /**
+   * Registers the counter of open to-do entries.
+   * @param menuCounterService
+   */
+  public void setMenuCounterService(final MenuCounterService menuCounterService)
+  {
+    this.menuCounterService = menuCounterService;
+    menuCounterService.register(MENU_COUNTER_ID, new MenuCounterService.Counter() {
+      public boolean isUserSpecific()
+      {
+        return true;
+      }
+
+      public int count(final Integer userId)
+      {
+        return getOpenToDoEntries(userId);
+      }
+    }, ToDoDO.class);
+  }
+
   public void setUserDao(final UserDao userDao)
   {
     this.userDao = userDao;
@@ -25,6 +25,7 @@ package org.projectforge.plugins.todo;
 
 import org.apache.wicket.Page;
 import org.projectforge.web.MenuBuilderContext;
+import org.projectforge.web.MenuCounterModel;
 import org.projectforge.web.MenuEntry;
 import org.projectforge.web.MenuItemDef;
 
@@ -43,6 +44,6 @@ public class ToDoMenuItemDef extends MenuItemDef
   @Override
   protected void afterMenuEntryCreation(final MenuEntry createdMenuEntry, final MenuBuilderContext context)
   {
-    createdMenuEntry.setNewCounterModel(new MenuCounterOpenToDos());
+    createdMenuEntry.setNewCounterModel(new MenuCounterModel(ToDoDao.MENU_COUNTER_ID));
   }
 }
@@ -0,0 +1,419 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.renderer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
+
+/**
+ * Renders a list of PDF documents in the background and writes them as zip archive or as one merged PDF to the download directory. The
+ * documents are rendered in parallel by the threads of the {@link PdfBatchRenderer}, the job provides the progress.<br/>
+ * The documents of a merged PDF are written to temporary files next to the result file (the documents are rendered in any order, but
+ * merged in the order of the entries) and the merge streams them page by page into the result file, so the documents aren't held in
+ * memory.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see PdfBatchRenderer#start(String, String, String, List, OutputFormat)
+ */
+public class PdfBatchJob
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(PdfBatchJob.class);
+
+  public enum OutputFormat
+  {
+    /** One zip archive containing all PDF documents. */
+    ZIP,
+    /** One PDF document containing the pages of all documents (in the order of the given entries). */
+    MERGED_PDF;
+  }
+
+  /**
+   * One document of the batch. The data is got by the rendering thread (inside a read-only transaction and with the context user of the
+   * job), so the entries should be lightweight (e. g. only ids) and not hold the data itself.
+   */
+  public interface Entry
+  {
+    /**
+     * @return The file name of the document inside the zip archive.
+     */
+    public String getFilename();
+
+    /**
+     * @return The data for {@link PdfRenderer#render(String, String, Map)}.
+     */
+    public Map<String, Object> getData();
+  }
+
+  private final String id;
+
+  private final String styleSheet;
+
+  private final String xmlData;
+
+  private final List< ? extends Entry> entries;
+
+  private final OutputFormat outputFormat;
+
+  private final PFUserDO user;
+
+  private final File file;
+
+  private final String filename;
+
+  private final Date started = new Date();
+
+  private final Set<String> zipEntryNames = new HashSet<String>();
+
+  private ZipOutputStream zipOut;
+
+  /**
+   * The temporary files of the rendered documents of a merged PDF (null for failed or not yet rendered documents).
+   */
+  private File[] parts;
+
+  private volatile int processed, failed;
+
+  private volatile boolean finished;
+
+  private volatile Date finishedAt;
+
+  private volatile String errorMessage;
+
+  PdfBatchJob(final String id, final String styleSheet, final String xmlData, final List< ? extends Entry> entries,
+      final OutputFormat outputFormat, final PFUserDO user, final File file, final String filename)
+  {
+    this.id = id;
+    this.styleSheet = styleSheet;
+    this.xmlData = xmlData;
+    this.entries = entries;
+    this.outputFormat = outputFormat;
+    this.user = user;
+    this.file = file;
+    this.filename = filename;
+  }
+
+  /**
+   * Opens the output (zip archive) before any document is rendered.
+   * @throws IOException
+   */
+  synchronized void open() throws IOException
+  {
+    if (outputFormat == OutputFormat.ZIP) {
+      zipOut = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    } else {
+      parts = new File[entries.size()];
+    }
+    if (entries.isEmpty() == true) {
+      finish();
+    }
+  }
+
+  /**
+   * Renders the document with the given index. Called by the rendering threads of the {@link PdfBatchRenderer}.
+   * @param index
+   * @param renderer
+   */
+  void render(final int index, final PdfRenderer renderer)
+  {
+    final Entry entry = entries.get(index);
+    byte[] pdf = null;
+    PFUserContext.setUser(user);
+    try {
+      pdf = renderer.render(styleSheet, xmlData, entry.getData());
+    } catch (final Exception ex) {
+      log.error("Exception while rendering '" + entry.getFilename() + "' of batch job " + id + ": " + ex.getMessage(), ex);
+    } finally {
+      PFUserContext.setUser(null);
+    }
+    if (pdf != null && outputFormat == OutputFormat.MERGED_PDF) {
+      try {
+        writePart(index, pdf);
+      } catch (final IOException ex) {
+        log.error("Exception while writing '" + getPartFile(index).getAbsolutePath() + "': " + ex.getMessage(), ex);
+        pdf = null;
+      }
+    }
+    entryProcessed(index, entry.getFilename(), pdf);
+  }
+
+  private void writePart(final int index, final byte[] pdf) throws IOException
+  {
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(getPartFile(index)));
+    try {
+      out.write(pdf);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  private File getPartFile(final int index)
+  {
+    return new File(file.getParentFile(), file.getName() + "." + index + ".part");
+  }
+
+  private synchronized void entryProcessed(final int index, final String filename, final byte[] pdf)
+  {
+    if (finished == true) {
+      // Output was already closed (e. g. due to an i/o error).
+      return;
+    }
+    ++processed;
+    if (pdf == null) {
+      ++failed;
+    } else if (outputFormat == OutputFormat.ZIP) {
+      try {
+        zipOut.putNextEntry(new ZipEntry(getUniqueZipEntryName(index, filename)));
+        zipOut.write(pdf);
+        zipOut.closeEntry();
+      } catch (final IOException ex) {
+        log.error("Exception while writing '" + file.getAbsolutePath() + "': " + ex.getMessage(), ex);
+        errorMessage = ex.getMessage();
+        finish();
+        return;
+      }
+    } else {
+      parts[index] = getPartFile(index);
+    }
+    if (processed == entries.size()) {
+      finish();
+    }
+  }
+
+  private String getUniqueZipEntryName(final int index, final String filename)
+  {
+    String name = filename;
+    if (zipEntryNames.add(name) == false) {
+      name = (index + 1) + "_" + filename;
+      zipEntryNames.add(name);
+    }
+    return name;
+  }
+
+  private void finish()
+  {
+    try {
+      if (outputFormat == OutputFormat.ZIP) {
+        if (zipEntryNames.isEmpty() == true) {
+          // No documents rendered (zip archives without entries can't be written).
+          IOUtils.closeQuietly(zipOut);
+          file.delete();
+        } else {
+          zipOut.close();
+        }
+      } else {
+        writeMergedPdf();
+      }
+    } catch (final Exception ex) {
+      log.error("Exception while writing '" + file.getAbsolutePath() + "': " + ex.getMessage(), ex);
+      errorMessage = ex.getMessage();
+    } finally {
+      if (parts != null) {
+        for (final File part : parts) {
+          if (part != null && part.delete() == false) {
+            log.warn("Can't delete temporary file: " + part.getAbsolutePath());
+          }
+        }
+      }
+      zipOut = null;
+      parts = null;
+      finishedAt = new Date();
+      finished = true;
+      log.info("PDF batch job finished: " + this);
+    }
+  }
+
+  private void writeMergedPdf() throws IOException, DocumentException
+  {
+    if (processed == failed) {
+      // No pages to merge (iText can't write documents without pages).
+      return;
+    }
+    final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      final Document document = new Document();
+      final PdfCopy copy = new PdfCopy(document, out);
+      document.open();
+      for (final File part : parts) {
+        if (part == null) {
+          continue;
+        }
+        // Partial read: the pages are read from the file on demand and released after copying.
+        final PdfReader reader = new PdfReader(new RandomAccessFileOrArray(part.getAbsolutePath()), null);
+        try {
+          for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            copy.addPage(copy.getImportedPage(reader, page));
+          }
+          copy.freeReader(reader);
+        } finally {
+          reader.close();
+        }
+      }
+      document.close();
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public OutputFormat getOutputFormat()
+  {
+    return outputFormat;
+  }
+
+  /**
+   * @return The user who started the job.
+   */
+  public PFUserDO getUser()
+  {
+    return user;
+  }
+
+  /**
+   * @return The number of documents to render.
+   */
+  public int getTotal()
+  {
+    return entries.size();
+  }
+
+  /**
+   * @return The number of already processed documents (successfully rendered or failed).
+   */
+  public int getProcessed()
+  {
+    return processed;
+  }
+
+  /**
+   * @return The number of documents which couldn't be rendered due to errors.
+   */
+  public int getFailed()
+  {
+    return failed;
+  }
+
+  /**
+   * @return The progress in percent (0-100).
+   */
+  public int getProgress()
+  {
+    if (entries.isEmpty() == true) {
+      return 100;
+    }
+    return 100 * processed / entries.size();
+  }
+
+  public boolean isFinished()
+  {
+    return finished;
+  }
+
+  /**
+   * @return The message of the i/o error if the output couldn't be written, otherwise null.
+   */
+  public String getErrorMessage()
+  {
+    return errorMessage;
+  }
+
+  /**
+   * @return The written zip archive or PDF document if the job is finished and the file exists, otherwise null.
+   */
+  public File getFile()
+  {
+    if (finished == false || errorMessage != null || file.exists() == false) {
+      return null;
+    }
+    return file;
+  }
+
+  /**
+   * @return The path of the result file independent of the state of the job (e. g. for deleting the file of a failed job).
+   */
+  File getStoredFile()
+  {
+    return file;
+  }
+
+  /**
+   * @return The file name for downloading the result (without the id of the job).
+   */
+  public String getFilename()
+  {
+    return filename;
+  }
+
+  public Date getStarted()
+  {
+    return started;
+  }
+
+  /**
+   * @return The time the job was finished or null if the job is still running.
+   */
+  public Date getFinishedAt()
+  {
+    return finishedAt;
+  }
+
+  @Override
+  public String toString()
+  {
+    return id
+        + ": file="
+        + file.getName()
+        + ", processed="
+        + processed
+        + "/"
+        + entries.size()
+        + ", failed="
+        + failed
+        + ", finished="
+        + finished;
+  }
+}
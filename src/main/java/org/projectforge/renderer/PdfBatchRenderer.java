@@ -0,0 +1,241 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.renderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.projectforge.common.DateHelper;
+import org.projectforge.core.ConfigXml;
+import org.projectforge.core.UserException;
+import org.projectforge.renderer.PdfBatchJob.Entry;
+import org.projectforge.renderer.PdfBatchJob.OutputFormat;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs {@link PdfBatchJob}s on a small pool of daemon threads, so request threads aren't blocked by rendering many documents. The
+ * documents are rendered by the shared {@link PdfRenderer} (its FopFactory, compiled templates and rendering permits are shared with the
+ * interactive renderings). The results are written to the download directory of the working directory and are deleted after
+ * {@link #MAX_AGE_MILLIS}.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class PdfBatchRenderer
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(PdfBatchRenderer.class);
+
+  /**
+   * Sub directory of the working directory for the results of the jobs.
+   */
+  public static final String DOWNLOAD_DIR = "downloads";
+
+  /**
+   * Finished jobs and their files are removed after one day.
+   */
+  public static final long MAX_AGE_MILLIS = DateHelper.MILLIS_DAY;
+
+  private PdfRenderer pdfRenderer;
+
+  private ConfigXml configXml;
+
+  private TransactionTemplate txTemplate;
+
+  private final Map<String, PdfBatchJob> jobs = new ConcurrentHashMap<String, PdfBatchJob>();
+
+  private int maxThreads = 2;
+
+  private ExecutorService executor;
+
+  private boolean shutdown;
+
+  /**
+   * Starts the rendering of the given entries in background.
+   * @param name Prefix of the result file.
+   * @param styleSheet
+   * @param xmlData
+   * @param entries
+   * @param outputFormat
+   * @return The job for getting the progress and the result file.
+   */
+  public PdfBatchJob start(final String name, final String styleSheet, final String xmlData, final List< ? extends Entry> entries,
+      final OutputFormat outputFormat)
+  {
+    removeExpiredJobs();
+    final String id = UUID.randomUUID().toString();
+    final String suffix = outputFormat == OutputFormat.ZIP ? ".zip" : ".pdf";
+    final File file = new File(getDownloadDirectory(), name + "_" + id + suffix);
+    final PdfBatchJob job = new PdfBatchJob(id, styleSheet, xmlData, entries, outputFormat, PFUserContext.getUser(), file, name + suffix);
+    try {
+      job.open();
+    } catch (final IOException ex) {
+      log.error("Can't create file '" + file.getAbsolutePath() + "': " + ex.getMessage(), ex);
+      throw new UserException("error", ex.getMessage());
+    }
+    jobs.put(id, job);
+    final ExecutorService executorService = getExecutor();
+    final TransactionTemplate readOnlyTxTemplate = getReadOnlyTxTemplate();
+    for (int i = 0; i < entries.size(); i++) {
+      final int index = i;
+      executorService.execute(new Runnable() {
+        public void run()
+        {
+          // The session is kept open for lazy loading of the data while rendering.
+          readOnlyTxTemplate.execute(new TransactionCallback() {
+            public Object doInTransaction(final TransactionStatus status)
+            {
+              job.render(index, pdfRenderer);
+              return null;
+            }
+          });
+        }
+      });
+    }
+    log.info("PDF batch job with " + entries.size() + " documents started in background: " + job);
+    return job;
+  }
+
+  /**
+   * @param id
+   * @return The job with the given id if started by the context user, otherwise null.
+   */
+  public PdfBatchJob getJob(final String id)
+  {
+    final PdfBatchJob job = jobs.get(id);
+    if (job == null || ObjectUtils.equals(PFUserContext.getUserId(), getUserId(job.getUser())) == false) {
+      return null;
+    }
+    return job;
+  }
+
+  private Integer getUserId(final PFUserDO user)
+  {
+    return user != null ? user.getId() : null;
+  }
+
+  /**
+   * Deletes the finished jobs older than {@link #MAX_AGE_MILLIS} and their files.
+   */
+  void removeExpiredJobs()
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<PdfBatchJob> it = jobs.values().iterator();
+    while (it.hasNext() == true) {
+      final PdfBatchJob job = it.next();
+      if (job.isFinished() == true && job.getFinishedAt().getTime() + MAX_AGE_MILLIS < now) {
+        // The stored path is used, because getFile() returns null for failed jobs (the file may have been partly written).
+        final File file = job.getStoredFile();
+        if (file.exists() == true && file.delete() == false) {
+          log.warn("Can't delete file of expired PDF batch job: " + file.getAbsolutePath());
+        }
+        it.remove();
+      }
+    }
+  }
+
+  private File getDownloadDirectory()
+  {
+    final File dir = new File(configXml.getWorkingDirectory(), DOWNLOAD_DIR);
+    if (dir.exists() == false && dir.mkdirs() == false) {
+      log.error("Can't create download directory: " + dir.getAbsolutePath());
+    }
+    return dir;
+  }
+
+  private TransactionTemplate getReadOnlyTxTemplate()
+  {
+    final TransactionTemplate template = new TransactionTemplate(txTemplate.getTransactionManager());
+    template.setReadOnly(true);
+    return template;
+  }
+
+  private synchronized ExecutorService getExecutor()
+  {
+    if (shutdown == true) {
+      throw new IllegalStateException("PdfBatchRenderer is already shut down.");
+    }
+    if (executor == null) {
+      final AtomicInteger threadCounter = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(maxThreads, new ThreadFactory() {
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "PdfBatchRenderer-" + threadCounter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Stops the rendering threads. Documents not yet rendered are discarded.
+   */
+  public synchronized void shutdown()
+  {
+    shutdown = true;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * The number of threads rendering the documents of all jobs (default is 2). The number of parallel renderings is additionally limited by
+   * {@link PdfRenderer#setMaxConcurrentRenderings(int)}.
+   * @param maxThreads
+   */
+  public synchronized void setMaxThreads(final int maxThreads)
+  {
+    this.maxThreads = maxThreads;
+  }
+
+  public void setPdfRenderer(final PdfRenderer pdfRenderer)
+  {
+    this.pdfRenderer = pdfRenderer;
+  }
+
+  public void setConfigXml(final ConfigXml configXml)
+  {
+    this.configXml = configXml;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+}
@@ -23,16 +23,22 @@
 
 package org.projectforge.renderer;
 
+import groovy.text.Template;
+
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -61,6 +67,10 @@ import org.projectforge.user.PFUserDO;
  * This class provides the functionality for rendering pdf files. The underlaying technology is XSL-FO. The dynamic data will be given in
  * xml format and the transformation will be done via xslt-scripts. For a better ease of use a meta language similiar to html will be used
  * instead of plain xsl-fo. The html file with jelly script elements will be rendered via xslt-scripts into xsl-fo and afterwards to pdf.
+ * <br/>
+ * The FopFactory is configured only once and the compiled xsl style sheets and Groovy templates are cached. Style sheets and templates of
+ * the application's resource dir are recompiled after modification (included Groovy files aren't checked). The number of concurrent
+ * renderings is limited by {@link #setMaxConcurrentRenderings(int)}, further calls wait until a running rendering is finished.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
@@ -76,6 +86,23 @@ public class PdfRenderer
 
   private String fontResourcePath;
 
+  private FopFactory fopFactory;
+
+  /**
+   * TransformerFactory isn't thread safe, so the compilation of the style sheets is synchronized on this factory.
+   */
+  private final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+
+  /** The key is the file name of the style sheet. */
+  private final Map<String, CachedResource<Templates>> stylesheetCache = new ConcurrentHashMap<String, CachedResource<Templates>>();
+
+  /** The key is the file name of the Groovy template. */
+  private final Map<String, CachedResource<Template>> groovyTemplateCache = new ConcurrentHashMap<String, CachedResource<Template>>();
+
+  private int maxConcurrentRenderings = Runtime.getRuntime().availableProcessors();
+
+  private Semaphore renderingPermits;
+
   // private FontMap fontMap;
 
   /**
@@ -103,6 +130,46 @@ public class PdfRenderer
     this.configXml = configXml;
   }
 
+  /**
+   * @param maxConcurrentRenderings Maximum number of renderings running at the same time (default is the number of processors).
+   */
+  public synchronized void setMaxConcurrentRenderings(final int maxConcurrentRenderings)
+  {
+    this.maxConcurrentRenderings = maxConcurrentRenderings;
+    this.renderingPermits = null;
+  }
+
+  private synchronized Semaphore getRenderingPermits()
+  {
+    if (renderingPermits == null) {
+      renderingPermits = new Semaphore(Math.max(1, maxConcurrentRenderings), true);
+    }
+    return renderingPermits;
+  }
+
+  /**
+   * The FopFactory is thread safe and configured only once.
+   */
+  private synchronized FopFactory getFopFactory()
+  {
+    if (fopFactory == null) {
+      // configure fopFactory as desired
+      final FopFactory factory = FopFactory.newInstance();
+      // Configuration cfg = fopFactory.getUserConfig();
+      try {
+        factory.getFontManager().setFontBaseURL(getFontResourcePath());
+      } catch (final MalformedURLException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+      /*
+       * try { fopFactory.setUserConfig(baseDir + "/fop.config"); } catch (SAXException ex) { log.error(ex.getMessage(), ex); throw new
+       * RuntimeException(ex); } catch (IOException ex) { log.error(ex.getMessage(), ex); throw new RuntimeException(ex); }
+       */
+      fopFactory = factory;
+    }
+    return fopFactory;
+  }
+
   /*
    * private synchronized void initialize() { if (fontMap != null) { return; } fontMap = new FontMap(); final File fontDir = new
    * File(fontBaseDir); if (fontDir.isDirectory() == false) { log.warn("Given Font-Directory '" + fontBaseDir + "' does not exist. Can't
@@ -132,45 +199,18 @@ public class PdfRenderer
     // fopRenderer.processFo(styleSheet, xmlData, data, new PdfFopOutput(baos));
     // return baos.toByteArray();
 
-    // configure fopFactory as desired
-    final FopFactory fopFactory = FopFactory.newInstance();
-    // Configuration cfg = fopFactory.getUserConfig();
-
+    final Semaphore permits = getRenderingPermits();
+    permits.acquireUninterruptibly();
     try {
-      fopFactory.getFontManager().setFontBaseURL(getFontResourcePath());
-    } catch (final MalformedURLException ex) {
-      log.error(ex.getMessage(), ex);
-    }
-    /*
-     * try { fopFactory.setUserConfig(baseDir + "/fop.config"); } catch (SAXException ex) { log.error(ex.getMessage(), ex); throw new
-     * RuntimeException(ex); } catch (IOException ex) { log.error(ex.getMessage(), ex); throw new RuntimeException(ex); }
-     */
-    final FOUserAgent foUserAgent = fopFactory.newFOUserAgent();
-    try {
-      foUserAgent.getFactory().getFontManager().setFontBaseURL(getFontResourcePath());
-    } catch (final MalformedURLException ex) {
-      log.error(ex.getMessage(), ex);
-    }
-    // configure foUserAgent as desired
+      final FopFactory factory = getFopFactory();
+      final FOUserAgent foUserAgent = factory.newFOUserAgent();
+      // configure foUserAgent as desired
 
-    InputStream xsltInputStream = null;
-    try {
       // Construct fop with desired output format
-      final Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, foUserAgent, baos);
+      final Fop fop = factory.newFop(MimeConstants.MIME_PDF, foUserAgent, baos);
 
       // Setup XSLT
-      final TransformerFactory factory = TransformerFactory.newInstance();
-      Object[] result = configXml.getInputStream(stylesheet);
-      xsltInputStream = (InputStream) result[0];
-      final StreamSource xltStreamSource = new StreamSource(xsltInputStream);
-      final String url = (String) result[1];
-      if (url == null) {
-        log.error("Url of xsl resource is null.");
-        throw new InternalErrorException();
-      }
-      xltStreamSource.setSystemId(url);
-
-      final Transformer transformer = factory.newTransformer(xltStreamSource);
+      final Transformer transformer = getTemplates(stylesheet).newTransformer();
 
       // Set the value of a <param> in the stylesheet
       for (final Map.Entry<String, Object> entry : data.entrySet()) {
@@ -178,10 +218,8 @@ public class PdfRenderer
       }
 
       // First run jelly through xmlData:
-      result = configXml.getContent(groovyXml);
       final GroovyEngine groovyEngine = new GroovyEngine(data, PFUserContext.getLocale(), PFUserContext.getTimeZone());
-      final String groovyXmlInput = groovyEngine.preprocessGroovyXml((String) result[0]);
-      final String xmlData = groovyEngine.executeTemplate(groovyXmlInput);
+      final String xmlData = groovyEngine.executeTemplate(getGroovyTemplate(groovyEngine, groovyXml));
 
       // Setup input for XSLT transformation
       final StringReader xmlDataReader = new StringReader(xmlData);
@@ -202,14 +240,118 @@ public class PdfRenderer
       log.error(ex.getMessage(), ex);
       throw new RuntimeException(ex);
     } finally {
+      permits.release();
       try {
         baos.close();
       } catch (final IOException ex) {
         log.error(ex.getMessage(), ex);
         throw new RuntimeException(ex);
       }
-      IOUtils.closeQuietly(xsltInputStream);
     }
     return baos.toByteArray();
   }
+
+  /**
+   * @param stylesheet
+   * @return The compiled style sheet (cached, recompiled after modification of the file).
+   * @throws TransformerConfigurationException
+   */
+  Templates getTemplates(final String stylesheet) throws TransformerConfigurationException
+  {
+    CachedResource<Templates> cached = stylesheetCache.get(stylesheet);
+    if (cached != null && cached.isModified() == false) {
+      return cached.value;
+    }
+    synchronized (transformerFactory) {
+      cached = stylesheetCache.get(stylesheet);
+      if (cached != null && cached.isModified() == false) {
+        return cached.value;
+      }
+      final Object[] result = configXml.getInputStream(stylesheet);
+      final InputStream xsltInputStream = (InputStream) result[0];
+      try {
+        final String url = (String) result[1];
+        if (url == null) {
+          log.error("Url of xsl resource is null.");
+          throw new InternalErrorException();
+        }
+        final File file = getFile(url);
+        final long lastModified = file != null ? file.lastModified() : 0;
+        final StreamSource xltStreamSource = new StreamSource(xsltInputStream);
+        xltStreamSource.setSystemId(url);
+        log.info("Compiling style sheet: " + url);
+        final Templates templates = transformerFactory.newTemplates(xltStreamSource);
+        stylesheetCache.put(stylesheet, new CachedResource<Templates>(templates, file, lastModified));
+        return templates;
+      } finally {
+        IOUtils.closeQuietly(xsltInputStream);
+      }
+    }
+  }
+
+  /**
+   * @param groovyEngine Used for compiling the template.
+   * @param groovyXml
+   * @return The compiled Groovy template (cached, recompiled after modification of the file).
+   */
+  Template getGroovyTemplate(final GroovyEngine groovyEngine, final String groovyXml)
+  {
+    CachedResource<Template> cached = groovyTemplateCache.get(groovyXml);
+    if (cached != null && cached.isModified() == false) {
+      return cached.value;
+    }
+    synchronized (groovyTemplateCache) {
+      cached = groovyTemplateCache.get(groovyXml);
+      if (cached != null && cached.isModified() == false) {
+        return cached.value;
+      }
+      final Object[] result = configXml.getContent(groovyXml);
+      final File file = getFile((String) result[1]);
+      final long lastModified = file != null ? file.lastModified() : 0;
+      final String groovyXmlInput = groovyEngine.preprocessGroovyXml((String) result[0]);
+      final Template template = groovyEngine.compileTemplate(groovyXmlInput);
+      if (template != null) {
+        groovyTemplateCache.put(groovyXml, new CachedResource<Template>(template, file, lastModified));
+      }
+      return template;
+    }
+  }
+
+  /**
+   * @param url
+   * @return The file if the given url is a file url (resource of the application's resource dir), otherwise null (class path resource).
+   */
+  private static File getFile(final String url)
+  {
+    if (url == null || url.startsWith("file:") == false) {
+      return null;
+    }
+    try {
+      return new File(new URI(url));
+    } catch (final Exception ex) {
+      log.warn("Can't get file of url '" + url + "', modifications aren't detected: " + ex.getMessage());
+      return null;
+    }
+  }
+
+  private static class CachedResource<T>
+  {
+    private final T value;
+
+    private final File file;
+
+    private final long lastModified;
+
+    private CachedResource(final T value, final File file, final long lastModified)
+    {
+      this.value = value;
+      this.file = file;
+      this.lastModified = lastModified;
+    }
+
+    private boolean isModified()
+    {
+      return file != null && file.lastModified() != lastModified;
+    }
+  }
 }
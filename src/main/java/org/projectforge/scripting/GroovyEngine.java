@@ -23,6 +23,8 @@
 
 package org.projectforge.scripting;
 
+import groovy.text.Template;
+
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Locale;
@@ -126,8 +128,34 @@ public class GroovyEngine
    */
   public String executeTemplate(final String template)
   {
+    return executeTemplate(compileTemplate(template));
+  }
+
+  /**
+   * Resolves the includes and compiles the given template. The result may be cached and executed many times (also by other instances of
+   * GroovyEngine) via {@link #executeTemplate(Template)}. Please note: Modifications of the included files aren't detected by the callers
+   * caching the result.
+   * @param template
+   * @return The compiled template or null if the template is null or the compilation fails.
+   * @see GroovyExecutor#compileTemplate(String)
+   */
+  public Template compileTemplate(final String template)
+  {
+    if (template == null) {
+      return null;
+    }
     final String content = replaceIncludes(template).replaceAll("#HURZ#", "\\$");
-    return groovyExecutor.executeTemplate(content, variables);
+    return groovyExecutor.compileTemplate(content);
+  }
+
+  /**
+   * Executes the compiled template with the variables of this engine.
+   * @param template
+   * @see GroovyExecutor#executeTemplate(Template, Map)
+   */
+  public String executeTemplate(final Template template)
+  {
+    return groovyExecutor.executeTemplate(template, variables);
   }
 
   private String replaceIncludes(final String template)
@@ -80,14 +80,52 @@ public class GroovyExecutor
   }
 
   public String executeTemplate(final TemplateEngine templateEngine, final String template, final Map<String, Object> variables)
+  {
+    return executeTemplate(compileTemplate(templateEngine, template), variables);
+  }
+
+  /**
+   * Compiles the given template. The result is thread safe and may be executed many times via {@link #executeTemplate(Template, Map)}.
+   * @param template
+   * @return The compiled template or null if the given template is null or the compilation fails.
+   */
+  public Template compileTemplate(final String template)
+  {
+    return compileTemplate(new SimpleTemplateEngine(), template);
+  }
+
+  public Template compileTemplate(final TemplateEngine templateEngine, final String template)
   {
     securityChecks(template);
     if (template == null) {
       return null;
     }
     try {
-      final Template templateObject = templateEngine.createTemplate(template);
-      final Writable writable = templateObject.make(variables);
+      return templateEngine.createTemplate(template);
+    } catch (final CompilationFailedException ex) {
+      log.error(ex.getMessage() + " while compiling template: " + template, ex);
+    } catch (final FileNotFoundException ex) {
+      log.error(ex.getMessage() + " while compiling template: " + template, ex);
+    } catch (final ClassNotFoundException ex) {
+      log.error(ex.getMessage() + " while compiling template: " + template, ex);
+    } catch (final IOException ex) {
+      log.error(ex.getMessage() + " while compiling template: " + template, ex);
+    }
+    return null;
+  }
+
+  /**
+   * @param template The compiled template (see {@link #compileTemplate(String)}).
+   * @param variables
+   * @return The output of the template or null if the given template is null or the execution fails.
+   */
+  public String executeTemplate(final Template template, final Map<String, Object> variables)
+  {
+    if (template == null) {
+      return null;
+    }
+    try {
+      final Writable writable = template.make(variables);
       final StringWriter writer = new StringWriter();
       writable.writeTo(writer);
       writer.flush();
@@ -95,14 +133,8 @@ public class GroovyExecutor
         log.debug(writer.toString());
       }
       return writer.toString();
-    } catch (final CompilationFailedException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
-    } catch (final FileNotFoundException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
-    } catch (final ClassNotFoundException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
     } catch (final IOException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
+      log.error(ex.getMessage() + " while executing template.", ex);
     }
     return null;
   }
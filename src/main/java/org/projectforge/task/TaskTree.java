@@ -53,8 +53,11 @@ import org.projectforge.access.OperationType;
 import org.projectforge.common.AbstractCache;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.NumberHelper;
+import org.projectforge.core.CacheChangeListener;
+import org.projectforge.core.CacheChangeLog;
 import org.projectforge.core.InternalErrorException;
 import org.projectforge.debug.StackTraceHolder;
+import org.projectforge.fibu.AuftragDO;
 import org.projectforge.fibu.AuftragDao;
 import org.projectforge.fibu.AuftragsPositionVO;
 import org.projectforge.fibu.ProjektDO;
@@ -70,7 +73,7 @@ import org.projectforge.timesheet.TimesheetDao;
  * tree and to the database.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class TaskTree extends AbstractCache implements Serializable
+public class TaskTree extends AbstractCache implements CacheChangeListener, Serializable
 {
   private static final long serialVersionUID = 3748005966442878168L;
 
@@ -478,6 +481,47 @@ public class TaskTree extends AbstractCache implements Serializable
     auftragDao.registerTaskTree(this);
   }
 
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * Applies the modifications of other ProjectForge instances: Tasks and group task accesses are updated, the total durations of tasks with
+   * modified time sheets are reset and the order position references are marked as dirty. Any other change concerning the task tree
+   * (projects) expires the whole tree.
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    if (entityClass == TaskDO.class && id != null) {
+      final TaskDO task = taskDao.internalGetById(id);
+      if (task != null) {
+        addOrUpdateTaskNode(task);
+      } else {
+        setExpired();
+      }
+    } else if (entityClass == GroupTaskAccessDO.class && id != null) {
+      final GroupTaskAccessDO access = accessDao.internalGetById(id);
+      if (access == null) {
+        setExpired();
+      } else if (access.isDeleted() == true) {
+        removeGroupTaskAccess(access);
+      } else {
+        setGroupTaskAccess(access);
+      }
+    } else if (entityClass == TimesheetDO.class && id != null) {
+      final TimesheetDO timesheet = taskDao.getHibernateTemplate().get(TimesheetDO.class, id);
+      if (timesheet != null && timesheet.getTaskId() != null) {
+        resetTotalDuration(timesheet.getTaskId());
+      }
+    } else if (entityClass == AuftragDO.class) {
+      refreshOrderPositionReferences();
+    } else if (entityClass == TaskDO.class || entityClass == GroupTaskAccessDO.class || entityClass == ProjektDO.class) {
+      setExpired();
+    }
+  }
+
   /**
    * Has the current logged in user select access to the given task?
    * @param node
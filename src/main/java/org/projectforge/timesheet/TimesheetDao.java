@@ -23,6 +23,7 @@
 
 package org.projectforge.timesheet;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -187,6 +188,17 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   public QueryFilter buildQueryFilter(final TimesheetFilter filter)
+  {
+    final QueryFilter queryFilter = buildQueryFilterWithoutOrder(filter);
+    if (filter.getOrderType() == OrderDirection.DESC) {
+      queryFilter.addOrder(Order.desc("startTime"));
+    } else {
+      queryFilter.addOrder(Order.asc("startTime"));
+    }
+    return queryFilter;
+  }
+
+  private QueryFilter buildQueryFilterWithoutOrder(final TimesheetFilter filter)
   {
     final QueryFilter queryFilter = new QueryFilter(filter);
     if (filter.getUserId() != null) {
@@ -214,11 +226,6 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
         queryFilter.add(Restrictions.eq("task.id", filter.getTaskId()));
       }
     }
-    if (filter.getOrderType() == OrderDirection.DESC) {
-      queryFilter.addOrder(Order.desc("startTime"));
-    } else {
-      queryFilter.addOrder(Order.asc("startTime"));
-    }
     if (log.isDebugEnabled() == true) {
       log.debug(ToStringBuilder.reflectionToString(filter));
     }
@@ -251,6 +258,96 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   @Override
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<TimesheetDO> getList(final BaseSearchFilter filter) throws AccessException
+  {
+    final TimesheetFilter myFilter = getTimesheetFilter(filter);
+    final QueryFilter queryFilter = buildQueryFilter(myFilter);
+    List<TimesheetDO> result = getList(queryFilter);
+    if (result == null) {
+      return null;
+    }
+    markTimeOverlaps(result);
+    if (myFilter.isMarked() == true) {
+      // Show only time sheets with time period violation (overlap):
+      final List<TimesheetDO> list = result;
+      result = new ArrayList<TimesheetDO>();
+      for (final TimesheetDO entry : list) {
+        if (entry.isMarked() == true) {
+          result.add(entry);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  protected QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    return buildQueryFilterWithoutOrder(getTimesheetFilter(filter));
+  }
+
+  /**
+   * Time sheets are sorted and paged by the data base, except the list of time sheets with time period overlaps.
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported()
+   */
+  @Override
+  protected boolean isDatabasePagingSupported()
+  {
+    return true;
+  }
+
+  /**
+   * Sorting by description or location isn't supported, because these values are hidden for time sheets of users without access (the keys
+   * of the last entry of a page wouldn't be valid).
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported(org.projectforge.core.BaseSearchFilter, java.lang.String,
+   *      java.lang.String)
+   */
+  @Override
+  public boolean isDatabasePagingSupported(final BaseSearchFilter filter, final String sortProperty, final String secondSortProperty)
+  {
+    if (super.isDatabasePagingSupported(filter, sortProperty, secondSortProperty) == false) {
+      return false;
+    }
+    if (getTimesheetFilter(filter).isMarked() == true) {
+      return false;
+    }
+    for (final String property : new String[] { sortProperty, secondSortProperty }) {
+      if ("description".equals(property) == true || "location".equals(property) == true) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The select access depends on the task and the user of the time sheet.
+   * @see org.projectforge.core.BaseDao#isSelectAccessCheckedPerObject()
+   */
+  @Override
+  protected boolean isSelectAccessCheckedPerObject()
+  {
+    return true;
+  }
+
+  /**
+   * Marks the time sheets of the page with time period overlaps.
+   * @see org.projectforge.core.BaseDao#getPage(BaseSearchFilter, String, boolean, String, boolean, Object, Object, Serializable, int, int)
+   */
+  @Override
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<TimesheetDO> getPage(final BaseSearchFilter filter, final String sortProperty, final boolean ascending,
+      final String secondSortProperty, final boolean secondAscending, final Object lastSortValue, final Object lastSecondSortValue,
+      final Serializable lastId, final int firstResult, final int maxResults)
+  {
+    final List<TimesheetDO> list = super.getPage(filter, sortProperty, ascending, secondSortProperty, secondAscending, lastSortValue,
+        lastSecondSortValue, lastId, firstResult, maxResults);
+    markTimeOverlaps(list);
+    return list;
+  }
+
+  private TimesheetFilter getTimesheetFilter(final BaseSearchFilter filter)
   {
     final TimesheetFilter myFilter;
     if (filter instanceof TimesheetFilter) {
@@ -263,13 +360,12 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
       date.setEndOfDay();
       myFilter.setStopTime(date.getDate());
     }
-    final QueryFilter queryFilter = buildQueryFilter(myFilter);
-    List<TimesheetDO> result = getList(queryFilter);
-    if (result == null) {
-      return null;
-    }
-    // Check time period overlaps:
-    for (final TimesheetDO entry : result) {
+    return myFilter;
+  }
+
+  private void markTimeOverlaps(final List<TimesheetDO> list)
+  {
+    for (final TimesheetDO entry : list) {
       Validate.notNull(entry.getUserId());
       if (entry.isMarked() == true) {
         continue; // Is already marked.
@@ -280,17 +376,6 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
         entry.setMarked(true);
       }
     }
-    if (myFilter.isMarked() == true) {
-      // Show only time sheets with time period violation (overlap):
-      final List<TimesheetDO> list = result;
-      result = new ArrayList<TimesheetDO>();
-      for (final TimesheetDO entry : list) {
-        if (entry.isMarked() == true) {
-          result.add(entry);
-        }
-      }
-    }
-    return result;
   }
 
   public List<TimesheetDO> getTimeperiodOverlapList(final TimesheetListFilter actionFilter)
@@ -814,6 +899,19 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     return res;
   }
 
+  /**
+   * If only the location is modified, all time sheets are updated by one statement per chunk (no kost2 logic needed).
+   * @see org.projectforge.core.BaseDao#getMassUpdateBulkProperties(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected String[] getMassUpdateBulkProperties(final TimesheetDO master)
+  {
+    if (master.getTaskId() == null && master.getKost2Id() == null && StringUtils.isNotBlank(master.getLocation()) == true) {
+      return new String[] { "location"};
+    }
+    return null;
+  }
+
   @Override
   protected Object prepareMassUpdateStore(final List<TimesheetDO> list, final TimesheetDO master)
   {
@@ -281,6 +281,9 @@ public class GroupDao extends BaseDao<GroupDO>
     }
     getSession().flush();
     createHistoryEntry(user, unassignedGroups, assignedGroups);
+    if (cacheChangeLog != null) {
+      cacheChangeLog.logChange(GroupDO.class, null, null);
+    }
     userGroupCache.setExpired();
       }
 
@@ -24,9 +24,8 @@
 package org.projectforge.user;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
@@ -44,7 +43,7 @@ import org.projectforge.common.Crypt;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
-import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.HistoryChildObject;
 import org.projectforge.core.ModificationStatus;
 import org.projectforge.core.QueryFilter;
 import org.springframework.transaction.annotation.Isolation;
@@ -588,37 +587,20 @@ public class UserDao extends BaseDao<PFUserDO>
   }
 
   /**
-   * Gets history entries of super and adds all history entries of the AuftragsPositionDO childs.
-   * @see org.projectforge.core.BaseDao#getDisplayHistoryEntries(org.projectforge.core.ExtendedBaseDO)
+   * The history entries of the UserRightDO childs are displayed in the history of the user.
+   * @see org.projectforge.core.BaseDao#getHistoryChildObjects(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
-  public List<DisplayHistoryEntry> getDisplayHistoryEntries(final PFUserDO obj)
-  {
-    final List<DisplayHistoryEntry> list = super.getDisplayHistoryEntries(obj);
-    if (hasLoggedInUserHistoryAccess(obj, false) == false) {
-      return list;
-    }
-    if (CollectionUtils.isNotEmpty(obj.getRights()) == true) {
-      for (final UserRightDO right : obj.getRights()) {
-        final List<DisplayHistoryEntry> entries = internalGetDisplayHistoryEntries(right);
-        for (final DisplayHistoryEntry entry : entries) {
-          final String propertyName = entry.getPropertyName();
-          if (propertyName != null) {
-            entry.setPropertyName(right.getRightId() + ":" + entry.getPropertyName()); // Prepend number of positon.
-          } else {
-            entry.setPropertyName(String.valueOf(right.getRightId()));
-          }
-        }
-        list.addAll(entries);
-      }
+  protected List<HistoryChildObject> getHistoryChildObjects(final PFUserDO obj)
+  {
+    if (CollectionUtils.isEmpty(obj.getRights()) == true) {
+      return null;
     }
-    Collections.sort(list, new Comparator<DisplayHistoryEntry>() {
-      public int compare(final DisplayHistoryEntry o1, final DisplayHistoryEntry o2)
-      {
-        return (o2.getTimestamp().compareTo(o1.getTimestamp()));
-      }
-    });
-    return list;
+    final List<HistoryChildObject> childs = new ArrayList<HistoryChildObject>();
+    for (final UserRightDO right : obj.getRights()) {
+      childs.add(new HistoryChildObject(String.valueOf(right.getRightId()), right));
+    }
+    return childs;
   }
 
   @Override
@@ -36,6 +36,8 @@ import org.apache.commons.lang.Validate;
 import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
 import org.projectforge.common.StringHelper;
+import org.projectforge.core.CacheChangeListener;
+import org.projectforge.core.CacheChangeLog;
 import org.projectforge.fibu.EmployeeDO;
 import org.projectforge.fibu.ProjektDO;
 import org.projectforge.web.UserFilter;
@@ -45,7 +47,7 @@ import org.springframework.orm.hibernate3.HibernateTemplate;
  * The group user relations will be cached with this class.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class UserGroupCache extends AbstractCache
+public class UserGroupCache extends AbstractCache implements CacheChangeListener
 {
   private static Logger log = Logger.getLogger(UserGroupCache.class);
 
@@ -84,6 +86,23 @@ public class UserGroupCache extends AbstractCache
     this.hibernateTemplate = hibernateTemplate;
   }
 
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    cacheChangeLog.register(this);
+  }
+
+  /**
+   * Expires the cache if users, groups, user rights or employees were modified by other ProjectForge instances.
+   * @see org.projectforge.core.CacheChangeListener#onRemoteChange(java.lang.Class, java.lang.Integer)
+   */
+  public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+  {
+    if (entityClass == PFUserDO.class || entityClass == GroupDO.class || entityClass == UserRightDO.class
+        || entityClass == EmployeeDO.class) {
+      setExpired();
+    }
+  }
+
   public GroupDO getGroup(final Integer groupId)
   {
     checkRefresh();
@@ -0,0 +1,68 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web;
+
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.projectforge.core.MenuCounterService;
+import org.projectforge.user.PFUserContext;
+
+/**
+ * Represents a counter displayed as white number in red bubble beside a menu entry. The value is computed in background by the
+ * {@link MenuCounterService}, therefore the rendering of the menu doesn't wait for any data base query.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class MenuCounterModel extends Model<Integer>
+{
+  private static final long serialVersionUID = 2462087196532946163L;
+
+  @SpringBean(name = "menuCounterService")
+  private MenuCounterService menuCounterService;
+
+  private final String counterId;
+
+  /**
+   * @param counterId The id of the counter registered at {@link MenuCounterService}.
+   */
+  public MenuCounterModel(final String counterId)
+  {
+    this.counterId = counterId;
+  }
+
+  public void setMenuCounterService(final MenuCounterService menuCounterService)
+  {
+    this.menuCounterService = menuCounterService;
+  }
+
+  @Override
+  public Integer getObject()
+  {
+    if (menuCounterService == null) {
+      Injector.get().inject(this);
+    }
+    return menuCounterService.getCounter(counterId, PFUserContext.getUserId());
+  }
+}
@@ -48,6 +48,7 @@ import org.projectforge.fibu.RechnungDao;
 import org.projectforge.fibu.datev.DatevImportDao;
 import org.projectforge.fibu.kost.Kost2Dao;
 import org.projectforge.humanresources.HRPlanningDao;
+import org.projectforge.meb.MebDao;
 import org.projectforge.orga.ContractDao;
 import org.projectforge.orga.PostausgangDao;
 import org.projectforge.orga.PosteingangDao;
@@ -259,7 +260,7 @@ public class MenuItemRegistry
       @Override
       protected void afterMenuEntryCreation(final MenuEntry createdMenuEntry, final MenuBuilderContext context)
       {
-        createdMenuEntry.setNewCounterModel(new MenuNewCounterMeb());
+        createdMenuEntry.setNewCounterModel(new MenuCounterModel(MebDao.MENU_COUNTER_ID));
       }
     };
     reg.register(meb);
@@ -305,7 +306,7 @@ public class MenuItemRegistry
       protected void afterMenuEntryCreation(final MenuEntry createdMenuEntry, final MenuBuilderContext context)
       {
         if (context.getAccessChecker().isLoggedInUserMemberOfGroup(fibuGroups) == true) {
-          createdMenuEntry.setNewCounterModel(new MenuNewCounterOrder());
+          createdMenuEntry.setNewCounterModel(new MenuCounterModel(AuftragDao.MENU_COUNTER_ID));
           createdMenuEntry.setNewCounterTooltip("menu.fibu.orderbook.htmlSuffixTooltip");
         } else {
           // Setting project management as parent because fibu isn't visible for this user:
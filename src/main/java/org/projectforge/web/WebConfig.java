@@ -26,6 +26,7 @@ package org.projectforge.web;
 import org.apache.commons.lang.builder.ReflectionToStringBuilder;
 import org.apache.wicket.markup.html.WebPage;
 import org.projectforge.web.calendar.CalendarPage;
+import org.projectforge.web.core.TextDiffService;
 import org.projectforge.web.wicket.WicketApplication;
 import org.projectforge.xml.stream.XmlField;
 import org.projectforge.xml.stream.XmlObject;
@@ -36,7 +37,7 @@ import org.projectforge.xml.stream.XmlObject;
  * <pre>
  * &lt;config&gt;
  *   ...
- *   &lt;web defaultPage="org.projectforge.web.calendar.CalendarPage" /&gt;
+ *   &lt;web defaultPage="org.projectforge.web.calendar.CalendarPage" diffTimeoutMillis="500" diffMaxTextLength="10000" /&gt;
  *   ...
  * &lt;/config&gt;
  * </pre>
@@ -53,6 +54,12 @@ public class WebConfig
   @XmlField(asAttribute = true)
   private Class< ? extends WebPage> defaultPage;
 
+  @XmlField(asAttribute = true)
+  private Integer diffTimeoutMillis;
+
+  @XmlField(asAttribute = true)
+  private Integer diffMaxTextLength;
+
   /**
    * The default page is the standard page shown after login or after finishing any action without an defined page to go next. The default
    * page is at default {@link CalendarPage}.
@@ -76,6 +83,44 @@ public class WebConfig
     return this;
   }
 
+  /**
+   * Time budget of the character-wise diff of texts (e. g. in the history of changes). If exceeded, the diff is less fine-grained.
+   * @return the diffTimeoutMillis or null for the default value ({@link TextDiffService#DEFAULT_TIMEOUT_MILLIS}).
+   */
+  public Integer getDiffTimeoutMillis()
+  {
+    return diffTimeoutMillis;
+  }
+
+  /**
+   * @param diffTimeoutMillis the diffTimeoutMillis to set
+   * @return this for chaining.
+   */
+  public WebConfig setDiffTimeoutMillis(final Integer diffTimeoutMillis)
+  {
+    this.diffTimeoutMillis = diffTimeoutMillis;
+    return this;
+  }
+
+  /**
+   * Texts (old and new value together) longer than this length are diffed line-wise only instead of character-wise.
+   * @return the diffMaxTextLength or null for the default value ({@link TextDiffService#DEFAULT_MAX_TEXT_LENGTH}).
+   */
+  public Integer getDiffMaxTextLength()
+  {
+    return diffMaxTextLength;
+  }
+
+  /**
+   * @param diffMaxTextLength the diffMaxTextLength to set
+   * @return this for chaining.
+   */
+  public WebConfig setDiffMaxTextLength(final Integer diffMaxTextLength)
+  {
+    this.diffMaxTextLength = diffMaxTextLength;
+    return this;
+  }
+
   /**
    * @see ReflectionToStringBuilder
    */
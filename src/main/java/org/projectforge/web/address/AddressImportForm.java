@@ -164,9 +164,7 @@ public class AddressImportForm extends AbstractEditForm<AddressDO, AddressImport
             newAddresses.add(newAddress);
           }
 
-          for (final AddressDO address : newAddresses) {
-            getBaseDao().save(address);
-          }
+          getBaseDao().saveAll(newAddresses);
 
           // /// CHECK FOR EXISTING ENTRIES
           // TODO shift to dao
@@ -45,6 +45,8 @@ import org.projectforge.common.DateHelper;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.Configuration;
 import org.projectforge.core.ConfigurationParam;
+import org.projectforge.core.CronJobDO;
+import org.projectforge.core.CronJobDao;
 import org.projectforge.core.HibernateSearchReindexer;
 import org.projectforge.core.ReindexSettings;
 import org.projectforge.core.SystemDao;
@@ -86,6 +88,9 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
   @SpringBean(name = "systemDao")
   private SystemDao systemDao;
 
+  @SpringBean(name = "cronJobDao")
+  private CronJobDao cronJobDao;
+
   @SpringBean(name = "myDatabaseUpdater")
   private MyDatabaseUpdater myDatabaseUpdater;
 
@@ -272,6 +277,17 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
         checkSystemIntegrityLink, getString("system.admin.button.checkSystemIntegrity"))
     .setTooltip(getString("system.admin.button.checkSystemIntegrity.tooltip"));
     miscChecksMenu.addSubMenuEntry(checkSystemIntegrityLinkMenuItem);
+    // Runs of cron jobs
+    final Link<Void> cronJobsLink = new Link<Void>(ContentMenuEntryPanel.LINK_ID) {
+      @Override
+      public void onClick()
+      {
+        cronJobs();
+      }
+    };
+    final ContentMenuEntryPanel cronJobsLinkMenuItem = new ContentMenuEntryPanel(miscChecksMenu.newSubMenuChildId(), cronJobsLink,
+        getString("system.admin.button.cronJobs")).setTooltip(getString("system.admin.button.cronJobs.tooltip"));
+    miscChecksMenu.addSubMenuEntry(cronJobsLinkMenuItem);
   }
 
   @SuppressWarnings("serial")
@@ -379,6 +395,37 @@ public class AdminPage extends AbstractStandardFormPage implements ISelectCaller
     DownloadUtils.setDownloadTarget(result.getBytes(), filename);
   }
 
+  protected void cronJobs()
+  {
+    log.info("Administration: runs of cron jobs.");
+    checkAccess();
+    final StringBuffer buf = new StringBuffer();
+    buf.append("Cron jobs (this node: ").append(cronJobDao.getNodeName()).append(")\n\n");
+    for (final CronJobDO job : cronJobDao.getJobs()) {
+      buf.append(job.getName()).append(": ").append(job.getLastStatus());
+      buf.append(", node=").append(job.getLastNode());
+      buf.append(", start=").append(formatTimestamp(job.getLastStart()));
+      buf.append(", end=").append(formatTimestamp(job.getLastEnd()));
+      if (job.getLastDuration() != null) {
+        buf.append(", duration=").append(job.getLastDuration()).append("ms");
+      }
+      if (job.getLockedBy() != null) {
+        buf.append(", locked by ").append(job.getLockedBy()).append(" until ").append(formatTimestamp(job.getLockedUntil()));
+      }
+      if (job.getLastMessage() != null) {
+        buf.append("\n  ").append(job.getLastMessage());
+      }
+      buf.append("\n");
+    }
+    final String filename = "projectforge_cronjobs" + DateHelper.getDateAsFilenameSuffix(new Date()) + ".txt";
+    DownloadUtils.setDownloadTarget(buf.toString().getBytes(), filename);
+  }
+
+  private String formatTimestamp(final Date date)
+  {
+    return date != null ? DateHelper.formatIsoTimestamp(date) : "-";
+  }
+
   protected void refreshCaches()
   {
     log.info("Administration: refresh of caches.");
@@ -0,0 +1,191 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import name.fraser.neil.plaintext.DiffMatchPatch;
+import name.fraser.neil.plaintext.DiffMatchPatch.Diff;
+
+import org.projectforge.common.LRUMap;
+import org.projectforge.web.WebConfig;
+
+/**
+ * Calculates the differences between two texts (e. g. for displaying the history of changes) within a time and size budget: Texts longer
+ * than {@link #getMaxTextLength()} are diffed line by line only and the character-wise diff stops after {@link #getTimeoutMillis()}. The
+ * diffs are cached by a key given by the caller (e. g. id of the history entry and property name), so repeated views cost nothing.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see WebConfig#getDiffTimeoutMillis()
+ * @see WebConfig#getDiffMaxTextLength()
+ */
+public class TextDiffService
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TextDiffService.class);
+
+  public static final int DEFAULT_TIMEOUT_MILLIS = 500;
+
+  public static final int DEFAULT_MAX_TEXT_LENGTH = 10000;
+
+  private static final int CACHE_SIZE = 1000;
+
+  private static final TextDiffService instance = new TextDiffService();
+
+  private final LRUMap<String, CacheEntry> cache = new LRUMap<String, CacheEntry>(CACHE_SIZE);
+
+  private int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+  private int maxTextLength = DEFAULT_MAX_TEXT_LENGTH;
+
+  public static TextDiffService getInstance()
+  {
+    return instance;
+  }
+
+  /**
+   * Sets the budgets of the given web config (if given), otherwise the default values are used.
+   * @param webConfig
+   */
+  public void configure(final WebConfig webConfig)
+  {
+    if (webConfig != null && webConfig.getDiffTimeoutMillis() != null) {
+      this.timeoutMillis = webConfig.getDiffTimeoutMillis();
+    } else {
+      this.timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    }
+    if (webConfig != null && webConfig.getDiffMaxTextLength() != null) {
+      this.maxTextLength = webConfig.getDiffMaxTextLength();
+    } else {
+      this.maxTextLength = DEFAULT_MAX_TEXT_LENGTH;
+    }
+    log.info("Text diffs: timeout=" + timeoutMillis + "ms, maxTextLength=" + maxTextLength + " (for character-wise diffs).");
+  }
+
+  /**
+   * @param cacheKey If null, the result isn't cached.
+   * @param oldText
+   * @param newText
+   * @return The differences (please don't modify the returned list, it may be shared).
+   */
+  public List<Diff> getDiffs(final String cacheKey, final String oldText, final String newText)
+  {
+    final int textsHash = 31 * oldText.hashCode() + newText.hashCode();
+    if (cacheKey != null) {
+      final CacheEntry entry;
+      synchronized (cache) {
+        entry = cache.get(cacheKey);
+      }
+      if (entry != null && entry.textsHash == textsHash) {
+        return entry.diffs;
+      }
+    }
+    final List<Diff> diffs;
+    if (oldText.length() + newText.length() > maxTextLength) {
+      diffs = getLineDiffs(oldText, newText);
+    } else {
+      final DiffMatchPatch diffMatchPatch = new DiffMatchPatch();
+      diffMatchPatch.Diff_Timeout = timeoutMillis / 1000f;
+      final LinkedList<Diff> list = diffMatchPatch.diff_main(oldText, newText);
+      diffMatchPatch.diff_cleanupSemantic(list);
+      diffs = list;
+    }
+    if (cacheKey != null) {
+      synchronized (cache) {
+        cache.put(cacheKey, new CacheEntry(textsHash, diffs));
+      }
+    }
+    return diffs;
+  }
+
+  public int getTimeoutMillis()
+  {
+    return timeoutMillis;
+  }
+
+  public int getMaxTextLength()
+  {
+    return maxTextLength;
+  }
+
+  /**
+   * Every line is mapped to one character, so the diff algorithm has to compare only lines instead of characters.
+   */
+  List<Diff> getLineDiffs(final String oldText, final String newText)
+  {
+    final List<String> lines = new ArrayList<String>();
+    final Map<String, Integer> lineIndexes = new HashMap<String, Integer>();
+    final String chars1 = linesToChars(oldText, lines, lineIndexes);
+    final String chars2 = linesToChars(newText, lines, lineIndexes);
+    final DiffMatchPatch diffMatchPatch = new DiffMatchPatch();
+    diffMatchPatch.Diff_Timeout = timeoutMillis / 1000f;
+    final LinkedList<Diff> diffs = diffMatchPatch.diff_main(chars1, chars2, false);
+    for (final Diff diff : diffs) {
+      final StringBuilder text = new StringBuilder();
+      for (int i = 0; i < diff.text.length(); i++) {
+        text.append(lines.get(diff.text.charAt(i)));
+      }
+      diff.text = text.toString();
+    }
+    return diffs;
+  }
+
+  private String linesToChars(final String text, final List<String> lines, final Map<String, Integer> lineIndexes)
+  {
+    final StringBuilder chars = new StringBuilder();
+    int lineStart = 0;
+    while (lineStart < text.length()) {
+      int lineEnd = text.indexOf('\n', lineStart);
+      if (lineEnd == -1) {
+        lineEnd = text.length() - 1;
+      }
+      final String line = text.substring(lineStart, lineEnd + 1);
+      Integer index = lineIndexes.get(line);
+      if (index == null) {
+        index = lines.size();
+        lines.add(line);
+        lineIndexes.put(line, index);
+      }
+      chars.append((char) index.intValue());
+      lineStart = lineEnd + 1;
+    }
+    return chars.toString();
+  }
+
+  private static class CacheEntry
+  {
+    final int textsHash;
+
+    final List<Diff> diffs;
+
+    CacheEntry(final int textsHash, final List<Diff> diffs)
+    {
+      this.textsHash = textsHash;
+      this.diffs = diffs;
+    }
+  }
+}
@@ -46,6 +46,7 @@ import org.projectforge.fibu.kost.BusinessAssessmentRow;
 import org.projectforge.fibu.kost.Kost1DO;
 import org.projectforge.fibu.kost.Kost2DO;
 import org.projectforge.fibu.kost.reporting.Report;
+import org.projectforge.fibu.kost.reporting.ReportDao;
 import org.projectforge.fibu.kost.reporting.ReportStorage;
 import org.projectforge.web.wicket.AbstractListPage;
 import org.projectforge.web.wicket.CellItemListener;
@@ -72,6 +73,9 @@ IListPageColumnsCreator<BuchungssatzDO>
   @SpringBean(name = "buchungssatzDao")
   private BuchungssatzDao buchungssatzDao;
 
+  @SpringBean(name = "reportDao")
+  private ReportDao reportDao;
+
   protected BusinessAssessment businessAssessment;
 
   protected String reportId;
@@ -243,6 +247,7 @@ IListPageColumnsCreator<BuchungssatzDO>
     if (StringUtils.isNotEmpty(reportId) == true) {
       final ReportStorage reportStorage = (ReportStorage) getUserPrefEntry(ReportObjectivesPage.KEY_REPORT_STORAGE);
       if (reportStorage != null) {
+        reportDao.loadAccountRecords(reportStorage); // The report objectives page reads only the monthly balances.
         report = reportStorage.findById(this.reportId);
         if (report != null) {
           if (this.businessAssessmentRowId != null) {
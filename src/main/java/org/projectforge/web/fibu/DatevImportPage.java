@@ -31,6 +31,7 @@ import org.apache.commons.lang.Validate;
 import org.apache.wicket.markup.html.form.upload.FileUpload;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.projectforge.common.ImportStorage;
 import org.projectforge.common.ImportedElement;
 import org.projectforge.common.ImportedSheet;
 import org.projectforge.fibu.datev.DatevImportDao;
@@ -116,32 +117,76 @@ public class DatevImportPage extends AbstractImportPage<DatevImportForm>
   protected void selectAll(final String sheetName)
   {
     checkAccess();
+    datevImportDao.loadElements(getStorage(), sheetName);
     super.selectAll(sheetName);
+    datevImportDao.storeElements(getStorage(), sheetName);
   }
 
   @Override
   protected void select(final String sheetName, final int number)
   {
     checkAccess();
+    datevImportDao.loadElements(getStorage(), sheetName);
     super.select(sheetName, number);
+    datevImportDao.storeElements(getStorage(), sheetName);
   }
 
   @Override
   protected void deselectAll(final String sheetName)
   {
     checkAccess();
+    datevImportDao.loadElements(getStorage(), sheetName);
     super.deselectAll(sheetName);
+    datevImportDao.storeElements(getStorage(), sheetName);
+  }
+
+  @Override
+  protected void showErrorSummary(final String sheetName)
+  {
+    datevImportDao.loadElements(getStorage(), sheetName);
+    super.showErrorSummary(sheetName);
+    datevImportDao.storeElements(getStorage(), sheetName);
+  }
+
+  /**
+   * The staged Buchungssätze of the replaced storage are deleted.
+   * @see org.projectforge.web.core.importstorage.AbstractImportPage#setStorage(org.projectforge.common.ImportStorage)
+   */
+  @Override
+  protected void setStorage(final ImportStorage< ? > storage)
+  {
+    datevImportDao.deleteStagedElements(getStorage());
+    super.setStorage(storage);
+  }
+
+  @Override
+  protected void clear()
+  {
+    datevImportDao.deleteStagedElements(getStorage());
+    super.clear();
+  }
+
+  /**
+   * Only the Buchungssätze of the open sheets are held in memory, see {@link DatevImportDao#synchronizeElements(ImportStorage)}.
+   */
+  protected void synchronizeElements()
+  {
+    if (getStorage() != null) {
+      datevImportDao.synchronizeElements(getStorage());
+    }
   }
 
   protected void showBusinessAssessment(final String sheetName)
   {
     final ImportedSheet< ? > sheet = getStorage().getNamedSheet(sheetName);
     Validate.notNull(sheet);
+    datevImportDao.loadElements(getStorage(), sheetName);
     final List<BuchungssatzDO> list = new ArrayList<BuchungssatzDO>();
     for (final ImportedElement< ? > element : sheet.getElements()) {
       final BuchungssatzDO satz = (BuchungssatzDO) element.getValue();
       list.add(satz);
     }
+    datevImportDao.storeElements(getStorage(), sheetName);
     final BusinessAssessment businessAssessment = new BusinessAssessment(AccountingConfig.getInstance().getBusinessAssessmentConfig(),
         (Integer) sheet.getProperty("year"), (Integer) sheet.getProperty("month"));
     form.setBusinessAssessment(businessAssessment);
@@ -65,6 +65,7 @@ public class DatevImportStoragePanel extends AbstractImportStoragePanel<DatevImp
   @Override
   public void refresh()
   {
+    parentPage.synchronizeElements();
     super.refresh();
     if (businessAssessmentLabel != null) {
       remove(businessAssessmentLabel);
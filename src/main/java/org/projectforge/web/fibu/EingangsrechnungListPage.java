@@ -23,6 +23,8 @@
 
 package org.projectforge.web.fibu;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
@@ -49,6 +51,7 @@ import org.projectforge.excel.ExportColumn;
 import org.projectforge.excel.I18nExportColumn;
 import org.projectforge.excel.PropertyMapping;
 import org.projectforge.export.DOListExcelExporter;
+import org.projectforge.export.XlsxStreamWriter;
 import org.projectforge.fibu.EingangsrechnungDO;
 import org.projectforge.fibu.EingangsrechnungDao;
 import org.projectforge.fibu.EingangsrechnungsStatistik;
@@ -65,6 +68,7 @@ import org.projectforge.web.wicket.IListPageColumnsCreator;
 import org.projectforge.web.wicket.ListPage;
 import org.projectforge.web.wicket.ListSelectActionPanel;
 import org.projectforge.web.wicket.RowCssClass;
+import org.projectforge.web.wicket.StreamingResourceStream;
 import org.projectforge.web.wicket.components.ContentMenuEntryPanel;
 
 @ListPage(editPage = EingangsrechnungEditPage.class)
@@ -248,8 +252,7 @@ IListPageColumnsCreator<EingangsrechnungDO>
     final RechnungFilter src = form.getSearchFilter();
     filter.setYear(src.getYear());
     filter.setMonth(src.getMonth());
-    final List<EingangsrechnungDO> rechnungen = eingangsrechnungDao.getList(filter);
-    if (rechnungen == null || rechnungen.size() == 0) {
+    if (eingangsrechnungDao.getCount(filter) == 0) {
       // Nothing to export.
       form.addError("validation.error.nothingToExport");
       return;
@@ -260,13 +263,17 @@ IListPageColumnsCreator<EingangsrechnungDO>
         + getString("menu.fibu.kost")
         + "_"
         + DateHelper.getDateAsFilenameSuffix(new Date())
-        + ".xls";
-    final byte[] xls = KostZuweisungExport.instance.exportRechnungen(rechnungen, getString("fibu.common.creditor"), kontoCache);
-    if (xls == null || xls.length == 0) {
-      log.error("Oups, xls has zero size. Filename: " + filename);
-      return;
-    }
-    DownloadUtils.setDownloadTarget(xls, filename);
+        + XlsxStreamWriter.FILENAME_EXTENSION;
+    final String sheetTitle = getString("fibu.common.creditor");
+    @SuppressWarnings("serial")
+    final StreamingResourceStream resourceStream = new StreamingResourceStream(filename, XlsxStreamWriter.CONTENT_TYPE) {
+      @Override
+      protected void writeContent(final OutputStream out) throws IOException
+      {
+        KostZuweisungExport.instance.exportRechnungen(out, eingangsrechnungDao, filter, sheetTitle, kontoCache);
+      }
+    };
+    DownloadUtils.setDownloadTarget(resourceStream, filename);
   }
 
   @Override
@@ -23,6 +23,8 @@
 
 package org.projectforge.web.fibu;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Date;
@@ -43,6 +45,7 @@ import org.projectforge.excel.ContentProvider;
 import org.projectforge.excel.ExportColumn;
 import org.projectforge.excel.PropertyMapping;
 import org.projectforge.export.DOListExcelExporter;
+import org.projectforge.export.XlsxStreamWriter;
 import org.projectforge.fibu.EmployeeSalaryDO;
 import org.projectforge.fibu.EmployeeSalaryDao;
 import org.projectforge.fibu.datev.EmployeeSalaryExportDao;
@@ -53,6 +56,7 @@ import org.projectforge.web.wicket.CurrencyPropertyColumn;
 import org.projectforge.web.wicket.DownloadUtils;
 import org.projectforge.web.wicket.ListPage;
 import org.projectforge.web.wicket.ListSelectActionPanel;
+import org.projectforge.web.wicket.StreamingResourceStream;
 import org.projectforge.web.wicket.components.ContentMenuEntryPanel;
 
 @ListPage(editPage = EmployeeSalaryEditPage.class)
@@ -142,9 +146,16 @@ public class EmployeeSalaryListPage extends AbstractListPage<EmployeeSalaryListF
         + DateHelper.formatMonth(form.getSearchFilter().getYear(), form.getSearchFilter().getMonth())
         + "_"
         + DateHelper.getDateAsFilenameSuffix(new Date())
-        + ".xls";
-    final byte[] xls = employeeSalaryExportDao.export(list);
-    DownloadUtils.setDownloadTarget(xls, filename);
+        + XlsxStreamWriter.FILENAME_EXTENSION;
+    @SuppressWarnings("serial")
+    final StreamingResourceStream resourceStream = new StreamingResourceStream(filename, XlsxStreamWriter.CONTENT_TYPE) {
+      @Override
+      protected void writeContent(final OutputStream out) throws IOException
+      {
+        employeeSalaryExportDao.export(out, list);
+      }
+    };
+    DownloadUtils.setDownloadTarget(resourceStream, filename);
   }
 
   @Override
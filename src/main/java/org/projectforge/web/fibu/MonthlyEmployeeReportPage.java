@@ -24,7 +24,7 @@
 package org.projectforge.web.fibu;
 
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.collections.MapUtils;
@@ -42,6 +42,7 @@ import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.Configuration;
+import org.projectforge.fibu.EmployeeDao;
 import org.projectforge.fibu.KostFormatter;
 import org.projectforge.fibu.KundeDO;
 import org.projectforge.fibu.MonthlyEmployeeReport;
@@ -54,17 +55,20 @@ import org.projectforge.fibu.kost.Kost1DO;
 import org.projectforge.fibu.kost.Kost1Dao;
 import org.projectforge.fibu.kost.Kost2ArtDO;
 import org.projectforge.fibu.kost.Kost2DO;
+import org.projectforge.renderer.PdfBatchJob;
+import org.projectforge.renderer.PdfBatchJob.OutputFormat;
 import org.projectforge.renderer.PdfRenderer;
 import org.projectforge.task.TaskDO;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
 import org.projectforge.user.UserGroupCache;
-import org.projectforge.web.calendar.DateTimeFormatter;
+import org.projectforge.user.UserRights;
 import org.projectforge.web.common.OutputType;
 import org.projectforge.web.task.TaskFormatter;
 import org.projectforge.web.timesheet.TimesheetListPage;
 import org.projectforge.web.wicket.AbstractStandardFormPage;
 import org.projectforge.web.wicket.DownloadUtils;
+import org.projectforge.web.wicket.PdfBatchJobPage;
 import org.projectforge.web.wicket.WicketUtils;
 import org.projectforge.web.wicket.bootstrap.GridBuilder;
 import org.projectforge.web.wicket.bootstrap.GridSize;
@@ -99,8 +103,8 @@ public class MonthlyEmployeeReportPage extends AbstractStandardFormPage implemen
   @SpringBean(name = "kost1Dao")
   private Kost1Dao kost1Dao;
 
-  @SpringBean(name = "dateTimeFormatter")
-  private DateTimeFormatter dateTimeFormatter;
+  @SpringBean(name = "employeeDao")
+  private EmployeeDao employeeDao;
 
   @SpringBean(name = "taskFormatter")
   private TaskFormatter taskFormatter;
@@ -138,6 +142,21 @@ public class MonthlyEmployeeReportPage extends AbstractStandardFormPage implemen
       }, getString("exportAsPdf"));
       addContentMenuEntry(exportAsPdf);
     }
+    if (UserRights.getAccessChecker().hasLoggedInUserAccessToTimesheetsOfOtherUsers() == true
+        && employeeDao.hasLoggedInUserSelectAccess(false) == true) {
+      for (final OutputFormat outputFormat : OutputFormat.values()) {
+        final String i18nKey = outputFormat == OutputFormat.ZIP ? "fibu.monthlyEmployeeReport.exportAllAsZip"
+            : "fibu.monthlyEmployeeReport.exportAllAsPdf";
+        final ContentMenuEntryPanel exportAll = new ContentMenuEntryPanel(getNewContentMenuChildId(), new SubmitLink("link", form) {
+          @Override
+          public void onSubmit()
+          {
+            exportAllAsPdf(outputFormat);
+          };
+        }, getString(i18nKey));
+        addContentMenuEntry(exportAll);
+      }
+    }
     gridBuilder = form.newGridBuilder(body, "fields");
     final GridSize gridSize = costConfigured == true ? GridSize.COL33 : GridSize.COL50;
     gridBuilder.newSplitPanel(gridSize);
@@ -408,47 +427,31 @@ public class MonthlyEmployeeReportPage extends AbstractStandardFormPage implemen
   protected void exportAsPdf()
   {
     log.info("Monthly employee report for " + form.filter.getUser().getFullname() + ": " + form.filter.getFormattedMonth());
-    final StringBuffer buf = new StringBuffer();
-    buf.append(getString("menu.monthlyEmployeeReport.fileprefix")).append("_");
     final PFUserDO employee = userDao.getById(form.filter.getUserId());
-    buf.append(employee.getLastname()).append("_").append(form.filter.getYear()).append("-").append(form.filter.getFormattedMonth())
-    .append(".pdf");
-    final String filename = buf.toString();
-
-    // get the sheets of the given format
-    final String styleSheet = "fo-styles/monthlyEmployeeReport-template-fo.xsl";
-    final String xmlData = "fo-styles/monthlyEmployeeReport2pdf.xml";
-
-    report = monthlyEmployeeReportDao.getReport(form.filter.getYear(), form.filter.getMonth(), employee);
-    final Map<String, Object> data = new HashMap<String, Object>();
-    data.put("systemDate", dateTimeFormatter.getFormattedDateTime(new Date()));
-    data.put("title", getString("menu.monthlyEmployeeReport"));
-    data.put("employeeLabel", getString("timesheet.user"));
-    data.put("employee", employee.getFullname());
-    data.put("monthLabel", getString("calendar.month"));
-    data.put("year", form.filter.getYear());
-    data.put("month", form.filter.getFormattedMonth());
-    data.put("workingDaysLabel", getString("fibu.common.workingDays"));
-    data.put("workingDays", report.getNumberOfWorkingDays());
-    data.put("kost1Label", getString("fibu.kost1"));
-    final Kost1DO kost1 = kost1Dao.internalGetById(report.getKost1Id());
-    data.put("kost1", kost1 != null ? kost1.getFormattedNumber() : "--");
-    data.put("kost2Label", getString("fibu.kost2"));
-    data.put("kundeLabel", getString("fibu.kunde"));
-    data.put("projektLabel", getString("fibu.projekt"));
-    data.put("kost2ArtLabel", getString("fibu.kost2.art"));
-    data.put("sumLabel", getString("sum"));
-    data.put("netSumLabel", getString("sum"));
-    data.put("totalSumLabel", getString("fibu.monthlyEmployeeReport.totalSum"));
-    data.put("report", report);
-    data.put("signatureEmployeeLabel", getString("timesheet.signatureEmployee") + ": " + employee.getFullname());
-    data.put("signatureProjectLeaderLabel", getString("timesheet.signatureProjectLeader"));
-    data.put("unbookedWorkingDaysLabel", getString("fibu.monthlyEmployeeReport.withoutTimesheets"));
+    final String filename = monthlyEmployeeReportDao.getPdfFilename(form.filter.getYear(), form.filter.getMonth(), employee);
+    final Map<String, Object> data = monthlyEmployeeReportDao.getPdfData(form.filter.getYear(), form.filter.getMonth(), employee);
+    report = (MonthlyEmployeeReport) data.get("report");
     // render the PDF with fop
-    final byte[] ba = pdfRenderer.render(styleSheet, xmlData, data);
+    final byte[] ba = pdfRenderer.render(MonthlyEmployeeReportDao.PDF_STYLE_SHEET, MonthlyEmployeeReportDao.PDF_XML_DATA, data);
     DownloadUtils.setDownloadTarget(ba, filename);
   }
 
+  /**
+   * Renders the reports of all employees of the selected month in background and redirects to the progress page of the job.
+   * @param outputFormat
+   */
+  protected void exportAllAsPdf(final OutputFormat outputFormat)
+  {
+    final int year = form.filter.getYear();
+    final int month = form.filter.getMonth();
+    final List<PFUserDO> employees = monthlyEmployeeReportDao.getEmployeeUsers(year, month);
+    log.info("Monthly employee reports of " + employees.size() + " employees for " + form.filter.getFormattedMonth() + ": " + outputFormat);
+    final PdfBatchJob job = monthlyEmployeeReportDao.startPdfBatch(year, month, employees, outputFormat);
+    final PdfBatchJobPage page = new PdfBatchJobPage(PdfBatchJobPage.createPageParameters(job.getId()));
+    page.setReturnToPage(this);
+    setResponsePage(page);
+  }
+
   @Override
   protected String getTitle()
   {
@@ -23,6 +23,8 @@
 
 package org.projectforge.web.fibu;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.util.ArrayList;
@@ -51,6 +53,7 @@ import org.projectforge.excel.ExportColumn;
 import org.projectforge.excel.I18nExportColumn;
 import org.projectforge.excel.PropertyMapping;
 import org.projectforge.export.DOListExcelExporter;
+import org.projectforge.export.XlsxStreamWriter;
 import org.projectforge.fibu.AuftragsPositionVO;
 import org.projectforge.fibu.KontoCache;
 import org.projectforge.fibu.KontoDO;
@@ -71,6 +74,7 @@ import org.projectforge.web.wicket.IListPageColumnsCreator;
 import org.projectforge.web.wicket.ListPage;
 import org.projectforge.web.wicket.ListSelectActionPanel;
 import org.projectforge.web.wicket.RowCssClass;
+import org.projectforge.web.wicket.StreamingResourceStream;
 import org.projectforge.web.wicket.components.ContentMenuEntryPanel;
 
 @ListPage(editPage = RechnungEditPage.class)
@@ -308,8 +312,7 @@ IListPageColumnsCreator<RechnungDO>
     final RechnungFilter src = form.getSearchFilter();
     filter.setYear(src.getYear());
     filter.setMonth(src.getMonth());
-    final List<RechnungDO> rechnungen = rechnungDao.getList(filter);
-    if (rechnungen == null || rechnungen.size() == 0) {
+    if (rechnungDao.getCount(filter) == 0) {
       // Nothing to export.
       form.addError("validation.error.nothingToExport");
       return;
@@ -320,13 +323,17 @@ IListPageColumnsCreator<RechnungDO>
         + getString("menu.fibu.kost")
         + "_"
         + DateHelper.getDateAsFilenameSuffix(new Date())
-        + ".xls";
-    final byte[] xls = KostZuweisungExport.instance.exportRechnungen(rechnungen, getString("fibu.common.debitor"), kontoCache);
-    if (xls == null || xls.length == 0) {
-      log.error("Oups, xls has zero size. Filename: " + filename);
-      return;
-    }
-    DownloadUtils.setDownloadTarget(xls, filename);
+        + XlsxStreamWriter.FILENAME_EXTENSION;
+    final String sheetTitle = getString("fibu.common.debitor");
+    @SuppressWarnings("serial")
+    final StreamingResourceStream resourceStream = new StreamingResourceStream(filename, XlsxStreamWriter.CONTENT_TYPE) {
+      @Override
+      protected void writeContent(final OutputStream out) throws IOException
+      {
+        KostZuweisungExport.instance.exportRechnungen(out, rechnungDao, filter, sheetTitle, kontoCache);
+      }
+    };
+    DownloadUtils.setDownloadTarget(resourceStream, filename);
   }
 
   @Override
@@ -97,7 +97,7 @@ public class ReportObjectivesPage extends AbstractStandardFormPage
       day.setEndOfMonth();
     }
     report.setTo(day.getYear(), day.getMonth());
-    reportDao.loadReport(report);
+    reportDao.loadBalances(report); // The account records are loaded on drill-down only.
     storage.setCurrentReport(currentReportId); // Select previous current report.
   }
 
@@ -490,6 +490,17 @@ IListPageColumnsCreator<TimesheetDO>
     return super.buildList();
   }
 
+  /**
+   * No data base paging without any restriction (as {@link #buildList()}, no time sheets are shown).
+   * @see org.projectforge.web.wicket.AbstractListPage#isDatabasePagingSupported()
+   */
+  @Override
+  protected boolean isDatabasePagingSupported()
+  {
+    final TimesheetFilter filter = form.getSearchFilter();
+    return filter.getStartTime() != null || filter.getStopTime() != null || filter.getTaskId() != null;
+  }
+
   void exportPDF()
   {
     refresh();
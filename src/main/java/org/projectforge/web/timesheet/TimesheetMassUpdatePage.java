@@ -38,6 +38,8 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.projectforge.common.MyBeanComparator;
+import org.projectforge.core.BaseDao;
+import org.projectforge.core.MassUpdateJob;
 import org.projectforge.task.TaskTree;
 import org.projectforge.timesheet.TimesheetDO;
 import org.projectforge.timesheet.TimesheetDao;
@@ -46,6 +48,7 @@ import org.projectforge.web.fibu.ISelectCallerPage;
 import org.projectforge.web.user.UserFormatter;
 import org.projectforge.web.wicket.AbstractMassEditPage;
 import org.projectforge.web.wicket.AbstractSecuredPage;
+import org.projectforge.web.wicket.MassUpdateJobPage;
 
 public class TimesheetMassUpdatePage extends AbstractMassEditPage implements ISelectCallerPage
 {
@@ -163,7 +166,16 @@ public class TimesheetMassUpdatePage extends AbstractMassEditPage implements ISe
     if (form.updateTask == false) {
       form.data.setTask(null);
     }
-    timesheetDao.massUpdate(timesheets, form.data);
-    super.updateAll();
+    if (timesheets.size() > BaseDao.MAX_MASS_UPDATE) {
+      final MassUpdateJob<TimesheetDO> job = timesheetDao.startMassUpdate(timesheets, form.data);
+      super.updateAll();
+      // Shows the progress of the background job:
+      final MassUpdateJobPage page = new MassUpdateJobPage(MassUpdateJobPage.createPageParameters(job.getId()));
+      page.setReturnToPage(callerPage);
+      setResponsePage(page);
+    } else {
+      timesheetDao.massUpdate(timesheets, form.data);
+      super.updateAll();
+    }
   }
 }
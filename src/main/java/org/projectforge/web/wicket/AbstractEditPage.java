@@ -27,8 +27,12 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.ajax.AjaxEventBehavior;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.extensions.markup.html.repeater.data.grid.ICellPopulator;
 import org.apache.wicket.extensions.markup.html.repeater.data.table.DataTable;
 import org.apache.wicket.extensions.markup.html.repeater.data.table.HeadersToolbar;
@@ -49,6 +53,7 @@ import org.projectforge.common.DateFormats;
 import org.projectforge.core.AbstractBaseDO;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.DisplayHistoryEntry;
+import org.projectforge.core.DisplayHistoryPage;
 import org.projectforge.core.ExtendedBaseDO;
 import org.projectforge.core.ModificationStatus;
 import org.projectforge.user.UserGroupCache;
@@ -68,10 +73,22 @@ AbstractSecuredPage implements IEditPage<O, D>
 
   public static final String PARAMETER_KEY_DATA_PRESET = "__data";
 
+  /**
+   * The difference of old and new values of history entries is calculated on demand (on click) if the texts are longer.
+   */
+  private static final int DIFF_ON_DEMAND_MIN_LENGTH = 200;
+
   protected F form;
 
   protected List<DisplayHistoryEntry> historyEntries;
 
+  /**
+   * The last loaded page of the history (keyset of the next page) or null if the history isn't yet loaded.
+   */
+  private DisplayHistoryPage lastHistoryPage;
+
+  private WebMarkupContainer historyContainer;
+
   protected boolean showHistory = getBaseDao().isHistorizable();
 
   protected boolean showModificationTimes = true;
@@ -162,13 +179,19 @@ AbstractSecuredPage implements IEditPage<O, D>
           final IModel<DisplayHistoryEntry> rowModel)
       {
         final DisplayHistoryEntry historyEntry = rowModel.getObject();
-        item.add(new DiffTextPanel(componentId, Model.of(historyEntry.getNewValue()), Model.of(historyEntry.getOldValue())));
+        final int length = StringUtils.length(historyEntry.getNewValue()) + StringUtils.length(historyEntry.getOldValue());
+        final DiffTextPanel diffTextPanel = new DiffTextPanel(componentId, Model.of(historyEntry.getNewValue()), Model.of(historyEntry
+            .getOldValue())).setDiffOnDemand(length > DIFF_ON_DEMAND_MIN_LENGTH);
+        if (historyEntry.getHistoryEntryId() != null) {
+          diffTextPanel.setCacheKey(historyEntry.getHistoryEntryId() + ":" + historyEntry.getPropertyName());
+        }
+        item.add(diffTextPanel);
         cellItemListener.populateItem(item, componentId, rowModel);
       }
     });
     final IDataProvider<DisplayHistoryEntry> dataProvider = new ListDataProvider<DisplayHistoryEntry>(getHistory());
     final DataTable<DisplayHistoryEntry, String> dataTable = new DataTable<DisplayHistoryEntry, String>("historyTable", columns,
-        dataProvider, 100) {
+        dataProvider, Integer.MAX_VALUE) {
       @Override
       protected Item<DisplayHistoryEntry> newRowItem(final String id, final int index, final IModel<DisplayHistoryEntry> model)
       {
@@ -183,7 +206,39 @@ AbstractSecuredPage implements IEditPage<O, D>
     };
     final HeadersToolbar<String> headersToolbar = new HeadersToolbar<String>(dataTable, null);
     dataTable.addTopToolbar(headersToolbar);
-    body.add(dataTable);
+    historyContainer = new WebMarkupContainer("historyContainer");
+    historyContainer.setOutputMarkupId(true);
+    body.add(historyContainer);
+    historyContainer.add(dataTable);
+    historyContainer.add(new AjaxLink<Void>("moreHistoryEntries") {
+      @Override
+      public void onClick(final AjaxRequestTarget target)
+      {
+        loadNextHistoryPage();
+        target.add(historyContainer);
+      }
+
+      @Override
+      public boolean isVisible()
+      {
+        return showHistory == true && lastHistoryPage != null && lastHistoryPage.isMoreEntries() == true;
+      }
+    });
+    final WebMarkupContainer historyTabLink = new WebMarkupContainer("historyTabLink");
+    body.add(historyTabLink);
+    if (showHistory == true) {
+      // The first page of the history is loaded not until the user opens the history tab.
+      historyTabLink.add(new AjaxEventBehavior("onClick") {
+        @Override
+        protected void onEvent(final AjaxRequestTarget target)
+        {
+          if (lastHistoryPage == null) {
+            loadNextHistoryPage();
+            target.add(historyContainer);
+          }
+        }
+      });
+    }
     final Label timeOfCreationLabel = new Label("timeOfCreation", dateTimeFormatter.getFormattedDateTime(data.getCreated()));
     timeOfCreationLabel.setRenderBodyOnly(true);
     body.add(timeOfCreationLabel);
@@ -195,14 +250,28 @@ AbstractSecuredPage implements IEditPage<O, D>
     this.editPageSupport = new EditPageSupport<O, D>(this, getBaseDao());
   }
 
+  /**
+   * @return The history entries loaded so far.
+   * @see #loadNextHistoryPage()
+   */
   protected List<DisplayHistoryEntry> getHistory()
   {
     if (historyEntries == null) {
-      historyEntries = getBaseDao().getDisplayHistoryEntries(getData());
+      historyEntries = new ArrayList<DisplayHistoryEntry>();
     }
     return historyEntries;
   }
 
+  /**
+   * Loads the next page of history entries (max. {@link BaseDao#HISTORY_PAGE_SIZE} entries) and appends them to the history.
+   * @see BaseDao#getDisplayHistoryPage(org.projectforge.core.ExtendedBaseDO, DisplayHistoryPage, int)
+   */
+  protected void loadNextHistoryPage()
+  {
+    lastHistoryPage = getBaseDao().getDisplayHistoryPage(getData(), lastHistoryPage, BaseDao.HISTORY_PAGE_SIZE);
+    getHistory().addAll(lastHistoryPage.getEntries());
+  }
+
   /**
    * Override this method if some initial data or fields have to be set. onPreEdit will be called on both, on adding new data objects and on
    * updating existing data objects. The decision on adding or updating depends on getData().getId() != null.
@@ -526,6 +526,16 @@ extends AbstractSecuredPage implements ISelectCallerPage
     return this.resultList = new ArrayList<O>();
   }
 
+  /**
+   * If true (default) the sorting and paging of the list is done by the data base, if also supported by the dao and the current search
+   * filter. Overwrite this method and return false if {@link #buildList()} is overwritten.
+   * @see org.projectforge.core.BaseDao#isDatabasePagingSupported(org.projectforge.core.BaseSearchFilter, String, String)
+   */
+  protected boolean isDatabasePagingSupported()
+  {
+    return true;
+  }
+
   @SuppressWarnings("unchecked")
   protected List<O> buildList()
   {
@@ -539,7 +549,12 @@ extends AbstractSecuredPage implements ISelectCallerPage
   protected void onBeforeRender()
   {
     if (this.refreshResultList == true) {
-      getList();
+      if (listPageSortableDataProvider != null && listPageSortableDataProvider.initDatabasePaging() == true) {
+        // The list is sorted and paged by the data base, no need to load the complete list:
+        this.refreshResultList = false;
+      } else {
+        getList();
+      }
     }
     super.onBeforeRender();
   }
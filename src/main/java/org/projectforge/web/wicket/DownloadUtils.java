@@ -89,6 +89,20 @@ public class DownloadUtils
     log.info("Starting download for file. filename:" + filename + ", content-type:" + byteArrayResourceStream.getContentType());
   }
 
+  /**
+   * The content is written by the given resource stream directly to the response after the current request was processed. Use this for
+   * big files instead of building the whole content as byte array first.
+   * @param resourceStream
+   * @param filename
+   */
+  public static void setDownloadTarget(final StreamingResourceStream resourceStream, final String filename)
+  {
+    final ResourceStreamRequestHandler handler = new ResourceStreamRequestHandler(resourceStream);
+    handler.setFileName(filename).setContentDisposition(ContentDisposition.ATTACHMENT);
+    RequestCycle.get().scheduleRequestHandlerAfterCurrent(handler);
+    log.info("Starting streamed download for file. filename:" + filename + ", content-type:" + resourceStream.getContentType());
+  }
+
   /**
    * Determines content type dependent on the file name suffix. Yet supported: application/pdf (*.pdf), application/vnd.ms-excel (*.xls),
    * image/jpeg (*.jpg, *.jpeg), image/svg+xml (*.svg), image/png (*.xml), application/xml (*.xml) and text (*.txt, *.csv).
@@ -0,0 +1,113 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.wicket;
+
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.AjaxSelfUpdatingTimerBehavior;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.apache.wicket.util.time.Duration;
+import org.projectforge.core.MassUpdateExecutor;
+import org.projectforge.core.MassUpdateJob;
+
+/**
+ * Shows the progress of a {@link MassUpdateJob} (refreshed every two seconds).
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class MassUpdateJobPage extends AbstractSecuredPage
+{
+  private static final long serialVersionUID = -2719581232457469342L;
+
+  public static final String PARAM_JOB_ID = "id";
+
+  @SpringBean(name = "massUpdateExecutor")
+  private MassUpdateExecutor massUpdateExecutor;
+
+  private final String jobId;
+
+  /**
+   * @param jobId
+   * @return The page parameters for showing the given job.
+   */
+  public static PageParameters createPageParameters(final String jobId)
+  {
+    final PageParameters parameters = new PageParameters();
+    parameters.add(PARAM_JOB_ID, jobId);
+    return parameters;
+  }
+
+  @SuppressWarnings("serial")
+  public MassUpdateJobPage(final PageParameters parameters)
+  {
+    super(parameters);
+    jobId = WicketUtils.getAsString(parameters, PARAM_JOB_ID);
+    final WebMarkupContainer container = new WebMarkupContainer("container");
+    body.add(container.setOutputMarkupId(true));
+    container.add(new AjaxSelfUpdatingTimerBehavior(Duration.seconds(2)) {
+      @Override
+      protected void onPostProcessTarget(final AjaxRequestTarget target)
+      {
+        final MassUpdateJob< ? > job = getJob();
+        if (job == null || job.isFinished() == true) {
+          stop(target);
+        }
+      }
+    });
+    container.add(new Label("progress", new Model<String>() {
+      @Override
+      public String getObject()
+      {
+        final MassUpdateJob< ? > job = getJob();
+        if (job == null) {
+          return getString("massUpdate.job.notFound");
+        }
+        return getLocalizedMessage("massUpdate.job.progress", job.getProcessed(), job.getTotal(), job.getProgress(), job.getUpdated(),
+            job.getFailed());
+      }
+    }));
+    container.add(new Label("finished", getString("massUpdate.job.finished")) {
+      @Override
+      public boolean isVisible()
+      {
+        final MassUpdateJob< ? > job = getJob();
+        return job != null && job.isFinished() == true;
+      }
+    });
+  }
+
+  private MassUpdateJob< ? > getJob()
+  {
+    return jobId != null ? massUpdateExecutor.getJob(jobId) : null;
+  }
+
+  @Override
+  protected String getTitle()
+  {
+    return getString("massUpdate.job.title");
+  }
+}
@@ -38,12 +38,16 @@ import org.apache.wicket.extensions.markup.html.repeater.util.SortParam;
 import org.apache.wicket.extensions.markup.html.repeater.util.SortableDataProvider;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
+import org.projectforge.common.BeanHelper;
 import org.projectforge.common.MyBeanComparator;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.IdObject;
 
 /**
- * Stores list of result sets (id's) for pagination and provides iterator of data-base objects on demand.
+ * Stores list of result sets (id's) for pagination and provides iterator of data-base objects on demand. If supported by the list page and
+ * its dao, the sorting and paging is done by the data base (only the count and the keys of the last rendered entry are stored, see
+ * {@link BaseDao#isDatabasePagingSupported(org.projectforge.core.BaseSearchFilter, String, String)}). Otherwise the complete list is
+ * loaded and sorted in memory (e. g. for full text searches or computed sort properties).
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -69,6 +73,20 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
 
   private final AbstractListPage< ? , ? , T> listPage;
 
+  private boolean databasePaging;
+
+  /**
+   * Cached count of the entries (data base paging only).
+   */
+  private Long size;
+
+  /**
+   * Keys of the last entry of the last rendered page for the keyset pagination of the next page (data base paging only).
+   */
+  private Serializable lastId, lastSortValue, lastSecondSortValue;
+
+  private long lastPageEnd = -1;
+
   public MyListPageSortableDataProvider(final SortParam<String> sortParam, final SortParam<String> secondSortParam,
       final AbstractListPage< ? , ? , T> listPage)
   {
@@ -83,6 +101,7 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
 
   public MyListPageSortableDataProvider<T> setCompleteList(final List<T> completeList)
   {
+    this.databasePaging = false;
     this.completeList = completeList;
     this.idList = new LinkedList<Serializable>();
     if (this.completeList != null) {
@@ -107,10 +126,15 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
     final SortParam<String> sp = getSort();
     if (ObjectUtils.equals(sortParam, sp) == false) {
       // The sort parameters were changed, force reload from data-base:
-      reloadList();
+      if (initDatabasePaging() == false) {
+        reloadList();
+      }
     }
     this.first = first;
     this.count = count;
+    if (databasePaging == true) {
+      return getDatabasePage(first, count);
+    }
     if (idList == null) {
       return null;
     }
@@ -168,12 +192,84 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
   @Override
   public long size()
   {
+    if (databasePaging == true) {
+      if (size == null) {
+        size = getDatabasePagingDao().getCount(listPage.form.getSearchFilter());
+      }
+      return size;
+    }
     if (idList == null) {
       reloadList();
     }
     return this.idList != null ? this.idList.size() : 0;
   }
 
+  /**
+   * Switches to the data base paging if supported for the current sort parameters and search filter. Resets the cached count. As for the
+   * in-memory sorting the previous sort parameter is used as second sort parameter.
+   * @return true if the data base paging is used, false if the complete list has to be loaded.
+   */
+  public boolean initDatabasePaging()
+  {
+    final SortParam<String> sp = getSort();
+    SortParam<String> secondSp = this.secondSortParam;
+    if (this.sortParam != null && sp != null && StringUtils.equals(this.sortParam.getProperty(), sp.getProperty()) == false) {
+      secondSp = this.sortParam;
+    }
+    this.databasePaging = listPage.isDatabasePagingSupported() == true
+        && listPage.getBaseDao() instanceof BaseDao
+        && ((BaseDao< ? >) listPage.getBaseDao()).isDatabasePagingSupported(listPage.form.getSearchFilter(), getSortProperty(sp),
+            getSortProperty(secondSp)) == true;
+    if (databasePaging == true) {
+      this.completeList = null;
+      this.idList = null;
+      this.size = null;
+      this.lastId = this.lastSortValue = this.lastSecondSortValue = null;
+      this.lastPageEnd = -1;
+      this.secondSortParam = secondSp;
+      this.sortParam = sp;
+    }
+    return databasePaging;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Iterator<T> getDatabasePage(final long first, final long count)
+  {
+    final SortParam<String> sp = getSort();
+    final String sortProperty = getSortProperty(sp);
+    final boolean ascending = sp != null ? sp.isAscending() : true;
+    final String secondSortProperty = getSortProperty(secondSortParam);
+    final boolean secondAscending = secondSortParam != null ? secondSortParam.isAscending() : true;
+    final boolean nextPage = first == lastPageEnd;
+    final List<T> list = (List<T>) getDatabasePagingDao().getPage(listPage.form.getSearchFilter(), sortProperty, ascending,
+        secondSortProperty, secondAscending, nextPage == true ? lastSortValue : null, nextPage == true ? lastSecondSortValue : null,
+        nextPage == true ? lastId : null, (int) first, (int) count);
+    if (list.isEmpty() == false) {
+      final T lastEntry = list.get(list.size() - 1);
+      this.lastId = lastEntry.getId();
+      this.lastSortValue = sortProperty != null ? (Serializable) BeanHelper.getProperty(lastEntry, sortProperty) : null;
+      this.lastSecondSortValue = secondSortProperty != null ? (Serializable) BeanHelper.getProperty(lastEntry, secondSortProperty) : null;
+      this.lastPageEnd = first + count;
+    } else {
+      this.lastId = this.lastSortValue = this.lastSecondSortValue = null;
+      this.lastPageEnd = -1;
+    }
+    return list.iterator();
+  }
+
+  private BaseDao< ? > getDatabasePagingDao()
+  {
+    return (BaseDao< ? >) listPage.getBaseDao();
+  }
+
+  private String getSortProperty(final SortParam<String> sp)
+  {
+    if (sp == null || "NOSORT".equals(sp.getProperty()) == true) {
+      return null;
+    }
+    return sp.getProperty();
+  }
+
   private void reloadList()
   {
     final List<T> list = listPage.getList();
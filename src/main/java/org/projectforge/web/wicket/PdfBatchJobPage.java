@@ -0,0 +1,177 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.wicket;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.AjaxSelfUpdatingTimerBehavior;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.apache.wicket.util.time.Duration;
+import org.projectforge.renderer.PdfBatchJob;
+import org.projectforge.renderer.PdfBatchJob.OutputFormat;
+import org.projectforge.renderer.PdfBatchRenderer;
+
+/**
+ * Shows the progress of a {@link PdfBatchJob} (refreshed every two seconds) and offers the download of the result when the job is finished.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ */
+public class PdfBatchJobPage extends AbstractSecuredPage
+{
+  private static final long serialVersionUID = 3519047418370361527L;
+
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(PdfBatchJobPage.class);
+
+  public static final String PARAM_JOB_ID = "id";
+
+  @SpringBean(name = "pdfBatchRenderer")
+  private PdfBatchRenderer pdfBatchRenderer;
+
+  private final String jobId;
+
+  /**
+   * @param jobId
+   * @return The page parameters for showing the given job.
+   */
+  public static PageParameters createPageParameters(final String jobId)
+  {
+    final PageParameters parameters = new PageParameters();
+    parameters.add(PARAM_JOB_ID, jobId);
+    return parameters;
+  }
+
+  @SuppressWarnings("serial")
+  public PdfBatchJobPage(final PageParameters parameters)
+  {
+    super(parameters);
+    jobId = WicketUtils.getAsString(parameters, PARAM_JOB_ID);
+    final WebMarkupContainer container = new WebMarkupContainer("container");
+    body.add(container.setOutputMarkupId(true));
+    container.add(new AjaxSelfUpdatingTimerBehavior(Duration.seconds(2)) {
+      @Override
+      protected void onPostProcessTarget(final AjaxRequestTarget target)
+      {
+        final PdfBatchJob job = getJob();
+        if (job == null || job.isFinished() == true) {
+          stop(target);
+        }
+      }
+    });
+    container.add(new Label("progress", new Model<String>() {
+      @Override
+      public String getObject()
+      {
+        final PdfBatchJob job = getJob();
+        if (job == null) {
+          return getString("pdfBatch.notFound");
+        }
+        return getLocalizedMessage("pdfBatch.progress", job.getProcessed(), job.getTotal(), job.getProgress(), job.getFailed());
+      }
+    }));
+    container.add(new Label("error", new Model<String>() {
+      @Override
+      public String getObject()
+      {
+        final PdfBatchJob job = getJob();
+        return job != null ? getLocalizedMessage("pdfBatch.error", job.getErrorMessage()) : "";
+      }
+    }) {
+      @Override
+      public boolean isVisible()
+      {
+        final PdfBatchJob job = getJob();
+        return job != null && job.getErrorMessage() != null;
+      }
+    });
+    final Link<Void> downloadLink = new Link<Void>("download") {
+      @Override
+      public void onClick()
+      {
+        download();
+      }
+
+      @Override
+      public boolean isVisible()
+      {
+        final PdfBatchJob job = getJob();
+        return job != null && job.getFile() != null;
+      }
+    };
+    container.add(downloadLink);
+    downloadLink.add(new Label("label", new Model<String>() {
+      @Override
+      public String getObject()
+      {
+        final PdfBatchJob job = getJob();
+        return getString("download") + (job != null ? ": " + job.getFilename() : "");
+      }
+    }));
+  }
+
+  private PdfBatchJob getJob()
+  {
+    return jobId != null ? pdfBatchRenderer.getJob(jobId) : null;
+  }
+
+  @SuppressWarnings("serial")
+  private void download()
+  {
+    final PdfBatchJob job = getJob();
+    final File file = job != null ? job.getFile() : null;
+    if (file == null) {
+      return;
+    }
+    log.info("Download of PDF batch job: " + job);
+    final String contentType = job.getOutputFormat() == OutputFormat.ZIP ? "application/zip" : "application/pdf";
+    DownloadUtils.setDownloadTarget(new StreamingResourceStream(job.getFilename(), contentType) {
+      @Override
+      protected void writeContent(final OutputStream out) throws IOException
+      {
+        final InputStream in = new FileInputStream(file);
+        try {
+          IOUtils.copy(in, out);
+        } finally {
+          IOUtils.closeQuietly(in);
+        }
+      }
+    }, job.getFilename());
+  }
+
+  @Override
+  protected String getTitle()
+  {
+    return getString("pdfBatch.title");
+  }
+}
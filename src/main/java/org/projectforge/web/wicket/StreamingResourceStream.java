@@ -0,0 +1,90 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.wicket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.wicket.request.Response;
+import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
+
+/**
+ * Needed for download files written directly to the response (e. g. big exports) instead of being built as byte array first. The content
+ * is written after the current request was processed, the Hibernate session and the logged-in user are still available.
+ * @author Kai Reinhard (k.reinhard@micromata.de)
+ * @see DownloadUtils#setDownloadTarget(StreamingResourceStream, String)
+ */
+public abstract class StreamingResourceStream extends AbstractResourceStreamWriter
+{
+  private static final long serialVersionUID = -4514726312370297424L;
+
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(StreamingResourceStream.class);
+
+  private final String contentType;
+
+  /**
+   * @param filename Only needed for determine the mime type.
+   */
+  public StreamingResourceStream(final String filename)
+  {
+    this(filename, DownloadUtils.getContentType(filename));
+  }
+
+  /**
+   * @param filename
+   * @param contentType Mime type.
+   */
+  public StreamingResourceStream(final String filename, final String contentType)
+  {
+    this.contentType = contentType;
+  }
+
+  /**
+   * Writes the content of the file to download.
+   * @param out Don't close this stream.
+   * @throws IOException
+   */
+  protected abstract void writeContent(OutputStream out) throws IOException;
+
+  @Override
+  public void write(final Response output)
+  {
+    final OutputStream out = output.getOutputStream();
+    try {
+      writeContent(out);
+      out.flush();
+    } catch (final IOException ex) {
+      // The download is already started, so no error page can be shown.
+      log.error("Exception encountered while writing download: " + ex, ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @Override
+  public String getContentType()
+  {
+    return contentType;
+  }
+}
@@ -59,10 +59,12 @@ import org.projectforge.common.BeanHelper;
 import org.projectforge.common.ExceptionHelper;
 import org.projectforge.continuousdb.DatabaseSupport;
 import org.projectforge.continuousdb.UpdateEntry;
+import org.projectforge.core.CacheChangeLog;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.Configuration;
 import org.projectforge.core.ConfigurationDao;
 import org.projectforge.core.CronSetup;
+import org.projectforge.core.MenuCounterService;
 import org.projectforge.core.ProjectForgeApp;
 import org.projectforge.core.SystemInfoCache;
 import org.projectforge.database.DatabaseCoreInitial;
@@ -83,6 +85,7 @@ import org.projectforge.user.UserXmlPreferencesCache;
 import org.projectforge.web.UserFilter;
 import org.projectforge.web.WebConfiguration;
 import org.projectforge.web.calendar.CalendarPage;
+import org.projectforge.web.core.TextDiffService;
 import org.projectforge.web.registry.WebRegistry;
 import org.projectforge.web.wicket.converter.MyDateConverter;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
@@ -134,6 +137,12 @@ public class WicketApplication extends WebApplication implements WicketApplicati
   @SpringBean(name = "cronSetup")
   private CronSetup cronSetup;
 
+  @SpringBean(name = "cacheChangeLog")
+  private CacheChangeLog cacheChangeLog;
+
+  @SpringBean(name = "menuCounterService")
+  private MenuCounterService menuCounterService;
+
   @SpringBean(name = "daoRegistry")
   private DaoRegistry daoRegistry;
 
@@ -233,6 +242,16 @@ public class WicketApplication extends WebApplication implements WicketApplicati
     this.cronSetup = cronSetup;
   }
 
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    this.cacheChangeLog = cacheChangeLog;
+  }
+
+  public void setMenuCounterService(final MenuCounterService menuCounterService)
+  {
+    this.menuCounterService = menuCounterService;
+  }
+
   public void setDaoRegistry(final DaoRegistry daoRegistry)
   {
     this.daoRegistry = daoRegistry;
@@ -310,6 +329,7 @@ public class WicketApplication extends WebApplication implements WicketApplicati
   {
     ProjectForgeApp.init();
     super.init();
+    TextDiffService.getInstance().configure(configXml.getWebConfig());
     // Own error page for deployment mode and UserException and AccessException.
     getRequestCycleListeners().add(new AbstractRequestCycleListener() {
       /**
@@ -509,6 +529,12 @@ public class WicketApplication extends WebApplication implements WicketApplicati
       log.info("system cronJobs are initialized.");
       pluginsRegistry.registerCronJobs(cronSetup);
       log.info("plugin cronJobs are initialized.");
+      if (cacheChangeLog.isClusterMode() == true) {
+        cacheChangeLog.start();
+        log.info("cache change log of cluster nodes is polled.");
+      }
+      menuCounterService.start();
+      log.info("menu counters are computed in background.");
     } else {
       log.warn("Start-up of ProjectForge isn't completed normally, therefore REST services and cronJobs of plugins aren't available.");
     }
@@ -538,6 +564,8 @@ public class WicketApplication extends WebApplication implements WicketApplicati
     log.info("Syncing all user preferences to database.");
     userXmlPreferencesCache.forceReload();
     cronSetup.shutdown();
+    cacheChangeLog.shutdown();
+    menuCounterService.shutdown();
     try {
       PFUserContext.setUser(MyDatabaseUpdateDao.__internalGetSystemAdminPseudoUser());
       myDatabaseUpdater.getDatabaseUpdateDao().shutdownDatabase();
@@ -23,9 +23,8 @@
 
 package org.projectforge.web.wicket.flowlayout;
 
-import java.util.LinkedList;
+import java.util.List;
 
-import name.fraser.neil.plaintext.DiffMatchPatch;
 import name.fraser.neil.plaintext.DiffMatchPatch.Diff;
 
 import org.apache.wicket.AttributeModifier;
@@ -39,6 +38,7 @@ import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 import org.projectforge.web.HtmlHelper;
+import org.projectforge.web.core.TextDiffService;
 import org.projectforge.web.dialog.ModalDialog;
 import org.projectforge.web.wicket.AbstractSecuredPage;
 import org.projectforge.web.wicket.WicketUtils;
@@ -62,6 +62,12 @@ public class DiffTextPanel extends Panel
 
   private boolean showModalDialog = true;
 
+  private boolean diffOnDemand;
+
+  private boolean expanded;
+
+  private String cacheKey;
+
   private IModel<String> newText, oldText;
 
   @SuppressWarnings("serial")
@@ -74,18 +80,13 @@ public class DiffTextPanel extends Panel
       @Override
       public String getObject()
       {
+        if (diffOnDemand == true && expanded == false) {
+          return HtmlHelper.escapeHtml(getValue(newText), true);
+        }
         if (prettyHtml == null) {
-          final DiffMatchPatch diffMatchPatch = new DiffMatchPatch();
-          String newValue = newText.getObject();
-          if (newValue == null || "null".equals(newValue) == true) {
-            newValue = getString("label.null");
-          }
-          String oldValue = oldText.getObject();
-          if (oldValue == null || "null".equals(oldValue) == true) {
-            oldValue = getString("label.null");
-          }
-          final LinkedList<Diff> diffs = diffMatchPatch.diff_main(oldValue, newValue);
-          diffMatchPatch.diff_cleanupSemantic(diffs);
+          final String newValue = getValue(newText);
+          final String oldValue = getValue(oldText);
+          final List<Diff> diffs = TextDiffService.getInstance().getDiffs(cacheKey, oldValue, newValue);
           prettyHtml = getPrettyHtml(diffs);
         }
         return prettyHtml;
@@ -106,6 +107,30 @@ public class DiffTextPanel extends Panel
     return this;
   }
 
+  /**
+   * If set to true, the new text is shown and the difference is calculated not until the user clicks on this panel. Use-full for long texts
+   * in long lists (e. g. the history of changes).
+   * @param diffOnDemand the diffOnDemand to set (default is false).
+   * @return this for chaining.
+   */
+  public DiffTextPanel setDiffOnDemand(final boolean diffOnDemand)
+  {
+    this.diffOnDemand = diffOnDemand;
+    return this;
+  }
+
+  /**
+   * If given, the calculated difference is cached under this key (e. g. id of the history entry and the property name).
+   * @param cacheKey the cacheKey to set (default is null, meaning not cached).
+   * @return this for chaining.
+   * @see TextDiffService#getDiffs(String, String, String)
+   */
+  public DiffTextPanel setCacheKey(final String cacheKey)
+  {
+    this.cacheKey = cacheKey;
+    return this;
+  }
+
   /**
    * If the models of old and/or new text were changed you may call this method to force a new running of the diff algorithm.
    * @return this for chaining.
@@ -188,10 +213,24 @@ public class DiffTextPanel extends Panel
       modalDialog.setBigWindow();
       modalDialog.setLazyBinding();
       parentPage.add(modalDialog);
+    }
+    if (modalDialog != null || diffOnDemand == true) {
+      if (diffOnDemand == true) {
+        label.setOutputMarkupId(true);
+      }
       final AjaxEventBehavior behavior = new AjaxEventBehavior("onClick") {
         @Override
         protected void onEvent(final AjaxRequestTarget target)
         {
+          if (diffOnDemand == true && expanded == false) {
+            // First click shows the difference:
+            expanded = true;
+            target.add(label);
+            return;
+          }
+          if (modalDialog == null) {
+            return;
+          }
           if (modalDialog.isBound() == false) {
             // First call, have to initialize it.
             modalDialog.init();
@@ -206,7 +245,16 @@ public class DiffTextPanel extends Panel
     }
   }
 
-  protected String getPrettyHtml(final LinkedList<Diff> diffs)
+  private String getValue(final IModel<String> text)
+  {
+    final String value = text.getObject();
+    if (value == null || "null".equals(value) == true) {
+      return getString("label.null");
+    }
+    return value;
+  }
+
+  protected String getPrettyHtml(final List<Diff> diffs)
   {
     final StringBuilder html = new StringBuilder();
     for (final Diff aDiff : diffs) {
@@ -24,10 +24,13 @@
 package org.projectforge.address;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -39,6 +42,7 @@ import org.projectforge.access.AccessException;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
 import org.projectforge.core.BaseSearchFilter;
+import org.projectforge.core.DisplayHistoryPage;
 import org.projectforge.core.QueryFilter;
 import org.projectforge.core.SimpleHistoryEntry;
 import org.projectforge.task.TaskDO;
@@ -89,6 +93,27 @@ public class AddressTest extends TestBase
     log.debug(a3);
   }
 
+  @Test
+  public void testSaveAll()
+  {
+    logon(ADMIN);
+    final List<AddressDO> list = new ArrayList<AddressDO>();
+    for (int i = 0; i < 3; i++) {
+      final AddressDO address = new AddressDO();
+      address.setName("saveAll " + i);
+      address.setTask(getTask("1.1"));
+      list.add(address);
+    }
+    final List<Serializable> ids = addressDao.saveAll(list);
+    assertEquals(3, ids.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(list.get(i).getId(), ids.get(i));
+      final AddressDO address = addressDao.getById(list.get(i).getId());
+      assertEquals("saveAll " + i, address.getName());
+      assertEquals(1, addressDao.getHistoryEntries(address).length);
+    }
+  }
+
   @Test
   public void testDeleteAndUndelete()
   {
@@ -198,6 +223,45 @@ public class AddressTest extends TestBase
     assertEquals(date, a1.getLastUpdate()); // Fails: Fix AbstractBaseDO.copyDeclaredFields: ObjectUtils.equals(Boolean, boolean) etc.
   }
 
+  /**
+   * The history pages are delimited by history entries, not by display entries (one per modified property).
+   */
+  @Test
+  public void historyPages()
+  {
+    logon(TestBase.ADMIN);
+    final AddressDO address = new AddressDO();
+    address.setName("History paging");
+    address.setTask(getTask("1.1"));
+    addressDao.save(address);
+    address.setName("History paging 2");
+    addressDao.update(address);
+    address.setName("History paging 3");
+    address.setTask(getTask("1.2"));
+    addressDao.update(address);
+    // 3 history entries: update of name and task (2 display entries), update of name and insert (without diff).
+    DisplayHistoryPage page = addressDao.getDisplayHistoryPage(address, null, 2);
+    assertEquals(3, page.getEntries().size());
+    assertTrue(page.isMoreEntries());
+    assertEquals(HistoryEntryType.UPDATE, page.getEntries().get(2).getEntryType());
+    assertEquals("name", page.getEntries().get(2).getPropertyName());
+    page = addressDao.getDisplayHistoryPage(address, page, 2);
+    assertEquals(1, page.getEntries().size());
+    assertFalse(page.isMoreEntries());
+    assertEquals(HistoryEntryType.INSERT, page.getEntries().get(0).getEntryType());
+    assertNull("Insert has no diff.", page.getEntries().get(0).getPropertyName());
+    page = addressDao.getDisplayHistoryPage(address, page, 2);
+    assertEquals(0, page.getEntries().size());
+    assertFalse(page.isMoreEntries());
+    // Page size equals the number of history entries:
+    page = addressDao.getDisplayHistoryPage(address, null, 3);
+    assertEquals(4, page.getEntries().size());
+    assertFalse(page.isMoreEntries());
+    page = addressDao.getDisplayHistoryPage(address, null, 1);
+    assertEquals("Both display entries of the first history entry expected.", 2, page.getEntries().size());
+    assertTrue(page.isMoreEntries());
+  }
+
   @Test
   public void checkStandardAccess()
   {
@@ -312,6 +376,57 @@ public class AddressTest extends TestBase
     }
   }
 
+  @Test
+  public void databasePaging()
+  {
+    final List<AddressDO> addresses = new ArrayList<AddressDO>();
+    for (int i = 0; i < 7; i++) {
+      final AddressDO address = new AddressDO();
+      address.setName("paging" + (i % 3));
+      address.setFirstName("first" + (6 - i));
+      address.setContactStatus(ContactStatus.PERSONA_INGRATA);
+      address.setAddressStatus(AddressStatus.LEAVED);
+      // Every second address without select access of the test user:
+      address.setTask(getTask(i % 2 == 0 ? "ta_1_siud" : "ta_4_xxxx"));
+      addressDao.internalSave(address);
+      addresses.add(address);
+    }
+    logon(TestBase.TEST_USER);
+    final AddressFilter filter = new AddressFilter();
+    filter.setUptodate(false).setActive(false).setLeaved(true);
+    filter.setPersonaIngrata(true);
+    assertTrue(addressDao.isDatabasePagingSupported(filter, "name", "firstName"));
+    assertEquals(false, addressDao.isDatabasePagingSupported(filter, "task.title", null));
+    // Entries without select access aren't counted:
+    assertEquals(4, addressDao.getCount(filter));
+
+    // Sorted by name and secondly by first name (descending), the pages are filled up with entries with select access:
+    List<AddressDO> page = addressDao.getPage(filter, "name", true, "firstName", false, null, null, null, 0, 3);
+    assertIds(page, addresses.get(0), addresses.get(6), addresses.get(4));
+    page = addressDao.getPage(filter, "name", true, "firstName", false, null, null, null, 3, 3);
+    assertIds(page, addresses.get(2));
+    page = addressDao.getPage(filter, "name", true, "firstName", false, null, null, null, 4, 3);
+    assertEquals(0, page.size());
+
+    // Keyset pagination (sorted by id), the keys of the last entry of the previous page are given:
+    page = addressDao.getPage(filter, null, true, null, true, null, null, null, 0, 2);
+    assertIds(page, addresses.get(0), addresses.get(2));
+    page = addressDao.getPage(filter, null, true, null, true, null, null, addresses.get(2).getId(), 2, 2);
+    assertIds(page, addresses.get(4), addresses.get(6));
+    page = addressDao.getPage(filter, null, true, null, true, null, null, addresses.get(6).getId(), 4, 2);
+    assertEquals(0, page.size());
+    page = addressDao.getPage(filter, null, false, null, true, null, null, addresses.get(4).getId(), 2, 2);
+    assertIds(page, addresses.get(2), addresses.get(0));
+  }
+
+  private void assertIds(final List<AddressDO> page, final AddressDO... expected)
+  {
+    assertEquals(expected.length, page.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i].getId(), page.get(i).getId());
+    }
+  }
+
   @Test
   public void testInstantMessagingField() throws Exception
   {
@@ -0,0 +1,53 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LRUMapTest
+{
+  @Test
+  public void test()
+  {
+    final LRUMap<String, Integer> map = new LRUMap<String, Integer>(3);
+    map.put("a", 1);
+    map.put("b", 2);
+    map.put("c", 3);
+    assertEquals(3, map.size());
+    map.get("a"); // a is now the most recently used entry.
+    map.put("d", 4);
+    assertEquals(3, map.size());
+    assertFalse("b should be evicted.", map.containsKey("b"));
+    assertTrue(map.containsKey("a"));
+    assertTrue(map.containsKey("c"));
+    assertTrue(map.containsKey("d"));
+    map.put("e", 5);
+    assertFalse("c should be evicted.", map.containsKey("c"));
+  }
+}
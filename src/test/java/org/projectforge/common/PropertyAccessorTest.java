@@ -0,0 +1,192 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.projectforge.fibu.KontoDO;
+
+public class PropertyAccessorTest
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(PropertyAccessorTest.class);
+
+  private static final int NUMBER_OF_ENTITIES = 100000;
+
+  @Test
+  public void testAccessors()
+  {
+    final Bean bean = new Bean().setName("Kai").setActive(true);
+    assertEquals("Kai", PropertyAccessor.getProperty(bean, "name"));
+    assertEquals(Boolean.TRUE, PropertyAccessor.getProperty(bean, "active"));
+    PropertyAccessor.getAccessor(Bean.class, "name").set(bean, "Horst");
+    assertEquals("Horst", bean.getName());
+    assertNull(PropertyAccessor.getAccessor(Bean.class, "unknown"));
+    assertNull(PropertyAccessor.getNestedProperty(bean, "parent.name"));
+    bean.setParent(new Bean().setName("Parent"));
+    assertEquals("Parent", PropertyAccessor.getNestedProperty(bean, "parent.name"));
+    try {
+      PropertyAccessor.getProperty(bean, "unknown");
+      fail("IllegalArgumentException expected.");
+    } catch (final IllegalArgumentException ex) {
+      // OK
+    }
+  }
+
+  @Test
+  public void compareUnknownProperty()
+  {
+    final List<Bean> list = new ArrayList<Bean>();
+    list.add(new Bean().setName("B"));
+    list.add(new Bean().setName("A"));
+    Collections.sort(list, new MyBeanComparator<Bean>("unknown", true, "name", true));
+    assertEquals("Unknown property should be ignored.", "A", list.get(0).getName());
+    assertEquals("B", list.get(1).getName());
+  }
+
+  /**
+   * Compares the sorting via BeanHelper (reflection lookup for every comparison) with the sorting via cached accessors and the copying of
+   * entities with the field lookup for every copy (former copyValues path) with the cached fields. The results are logged only.<br/>
+   * The benchmark runs only if the system property "projectforge.benchmark" is set to true (-Dprojectforge.benchmark=true).
+   */
+  @Test
+  public void benchmark()
+  {
+    Assume.assumeTrue(Boolean.getBoolean("projectforge.benchmark"));
+    final List<KontoDO> list = new ArrayList<KontoDO>();
+    for (int i = 0; i < NUMBER_OF_ENTITIES; i++) {
+      final KontoDO konto = new KontoDO();
+      konto.setId(i);
+      konto.setNummer((i * 7919) % NUMBER_OF_ENTITIES);
+      konto.setBezeichnung("Konto " + (i * 31) % 1000);
+      list.add(konto);
+    }
+    List<KontoDO> copy = new ArrayList<KontoDO>(list);
+    long start = System.currentTimeMillis();
+    Collections.sort(copy, new Comparator<KontoDO>() {
+      public int compare(final KontoDO o1, final KontoDO o2)
+      {
+        final Integer value1 = (Integer) BeanHelper.getNestedProperty(o1, "nummer");
+        final Integer value2 = (Integer) BeanHelper.getNestedProperty(o2, "nummer");
+        return value1.compareTo(value2);
+      }
+    });
+    log.info("Sorting of " + NUMBER_OF_ENTITIES + " entities via BeanHelper: " + (System.currentTimeMillis() - start) + "ms.");
+    copy = new ArrayList<KontoDO>(list);
+    start = System.currentTimeMillis();
+    Collections.sort(copy, new MyBeanComparator<KontoDO>("nummer"));
+    log.info("Sorting of " + NUMBER_OF_ENTITIES + " entities via MyBeanComparator: " + (System.currentTimeMillis() - start) + "ms.");
+    for (int i = 0; i < copy.size(); i++) {
+      assertEquals(i, copy.get(i).getNummer().intValue());
+    }
+    start = System.currentTimeMillis();
+    for (final KontoDO konto : list) {
+      copyValuesUncached(konto, new KontoDO());
+    }
+    log.info("Copying of " + NUMBER_OF_ENTITIES + " entities with field lookups: " + (System.currentTimeMillis() - start) + "ms.");
+    start = System.currentTimeMillis();
+    for (final KontoDO konto : list) {
+      new KontoDO().copyValuesFrom(konto);
+    }
+    log.info("Copying of " + NUMBER_OF_ENTITIES + " entities with cached fields: " + (System.currentTimeMillis() - start) + "ms.");
+  }
+
+  /**
+   * Baseline of the benchmark: the former copyValues path which got the declared fields of every class of the hierarchy and made them
+   * accessible for every copied entity.
+   */
+  private static void copyValuesUncached(final Object src, final Object dest)
+  {
+    Class< ? > clazz = src.getClass();
+    while (clazz != null && clazz != Object.class) {
+      final Field[] fields = clazz.getDeclaredFields();
+      AccessibleObject.setAccessible(fields, true);
+      for (final Field field : fields) {
+        if (Modifier.isStatic(field.getModifiers()) == true || Modifier.isTransient(field.getModifiers()) == true) {
+          continue;
+        }
+        try {
+          field.set(dest, field.get(src));
+        } catch (final IllegalAccessException ex) {
+          throw new RuntimeException(ex);
+        }
+      }
+      clazz = clazz.getSuperclass();
+    }
+  }
+
+  public static class Bean
+  {
+    private String name;
+
+    private boolean active;
+
+    private Bean parent;
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public Bean setName(final String name)
+    {
+      this.name = name;
+      return this;
+    }
+
+    public boolean isActive()
+    {
+      return active;
+    }
+
+    public Bean setActive(final boolean active)
+    {
+      this.active = active;
+      return this;
+    }
+
+    public Bean getParent()
+    {
+      return parent;
+    }
+
+    public Bean setParent(final Bean parent)
+    {
+      this.parent = parent;
+      return this;
+    }
+  }
+}
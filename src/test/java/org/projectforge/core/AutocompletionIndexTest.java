@@ -0,0 +1,77 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AutocompletionIndexTest
+{
+  @Test
+  public void matches()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex("organization");
+    final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+    frequencies.put("Micromata GmbH", 5);
+    frequencies.put("Acme Ltd.", 1);
+    frequencies.put("Micro Systems", 2);
+    index.load("organization", frequencies);
+    List<String> list = index.getMatches("organization", "micro");
+    assertEquals(2, list.size());
+    assertEquals("Most frequent first.", "Micromata GmbH", list.get(0));
+    assertEquals("Micro Systems", list.get(1));
+    list = index.getMatches("organization", "GMB");
+    assertEquals(1, list.size());
+    assertEquals("Micromata GmbH", list.get(0));
+    assertTrue(index.getMatches("organization", "xyz").isEmpty());
+    assertTrue(index.getMatches("organization", " ").isEmpty());
+  }
+
+  @Test
+  public void modifications()
+  {
+    final AutocompletionIndex index = new AutocompletionIndex("organization");
+    index.add("organization", "Acme Ltd.");
+    index.add("organization", "Acme Inc.");
+    index.add("organization", "Acme Inc.");
+    List<String> list = index.getMatches("organization", "acme");
+    assertEquals("Acme Inc.", list.get(0));
+    assertEquals("Acme Ltd.", list.get(1));
+    index.replace("organization", "Acme Inc.", "Acme Corp.");
+    index.replace("organization", "Acme Inc.", "Acme Corp.");
+    list = index.getMatches("organization", "acme");
+    assertEquals(2, list.size());
+    assertEquals("Acme Corp.", list.get(0));
+    index.remove("organization", "Acme Ltd.");
+    list = index.getMatches("organization", "ltd");
+    assertTrue(list.isEmpty());
+  }
+}
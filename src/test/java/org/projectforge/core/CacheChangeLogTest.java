@@ -0,0 +1,148 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectforge.task.TaskDO;
+import org.projectforge.test.TestBase;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class CacheChangeLogTest extends TestBase
+{
+  private CacheChangeLog cacheChangeLog;
+
+  private TransactionTemplate txTemplate;
+
+  public void setCacheChangeLog(final CacheChangeLog cacheChangeLog)
+  {
+    this.cacheChangeLog = cacheChangeLog;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  @Before
+  public void enableClusterMode()
+  {
+    cacheChangeLog.setClusterMode(true);
+  }
+
+  @After
+  public void resetClusterMode()
+  {
+    cacheChangeLog.setClusterMode(null);
+  }
+
+  @Test
+  public void applyRemoteChanges()
+  {
+    final List<Integer> changedIds = new ArrayList<Integer>();
+    cacheChangeLog.register(new CacheChangeListener() {
+      public void onRemoteChange(final Class< ? > entityClass, final Integer id)
+      {
+        if (entityClass == TaskDO.class) {
+          changedIds.add(id);
+        }
+      }
+    });
+    cacheChangeLog.poll(); // Skip changes of previous tests.
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        cacheChangeLog.logChange(TaskDO.class, 4711, null); // Own changes are ignored.
+        logRemoteChange(4712);
+        logRemoteChange(4712);
+        logRemoteChange(4713);
+        return null;
+      }
+    });
+    assertEquals(2, cacheChangeLog.poll());
+    assertEquals(2, changedIds.size());
+    assertEquals(4712, changedIds.get(0).intValue());
+    assertEquals(4713, changedIds.get(1).intValue());
+    assertEquals("Changes are already applied.", 0, cacheChangeLog.poll());
+  }
+
+  @Test
+  public void logChangeAfterCommit()
+  {
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        cacheChangeLog.logChange(TaskDO.class, 4721, null);
+        assertEquals("Not written before commit.", 0, countEntries(4721));
+        return null;
+      }
+    });
+    assertEquals("Written after commit.", 1, countEntries(4721));
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        cacheChangeLog.logChange(TaskDO.class, 4722, null);
+        status.setRollbackOnly();
+        return null;
+      }
+    });
+    assertEquals("Not written on rollback.", 0, countEntries(4722));
+  }
+
+  @Test
+  public void noChangeLogWithoutClusterMode()
+  {
+    cacheChangeLog.setClusterMode(false);
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        cacheChangeLog.logChange(TaskDO.class, 4731, null);
+        return null;
+      }
+    });
+    assertEquals("Not written on a single node.", 0, countEntries(4731));
+  }
+
+  private int countEntries(final Integer id)
+  {
+    return cacheChangeLog.getHibernateTemplate()
+        .find("from CacheChangeLogDO where entityClass=? and entityId=?", new Object[] { TaskDO.class.getName(), id}).size();
+  }
+
+  private void logRemoteChange(final Integer id)
+  {
+    cacheChangeLog.getHibernateTemplate().save(
+        new CacheChangeLogDO().setCreated(new Date()).setNodeId("other-node").setEntityClass(TaskDO.class.getName()).setEntityId(id));
+  }
+}
@@ -0,0 +1,87 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+import org.projectforge.test.TestBase;
+
+public class CronJobDaoTest extends TestBase
+{
+  private CronJobDao cronJobDao;
+
+  public void setCronJobDao(final CronJobDao cronJobDao)
+  {
+    this.cronJobDao = cronJobDao;
+  }
+
+  @Test
+  public void lock()
+  {
+    final Date fireTime = new Date(System.currentTimeMillis() - 1000);
+    assertTrue(cronJobDao.tryLock("test.lock", fireTime, 60000));
+    assertFalse("Job is already running.", cronJobDao.tryLock("test.lock", fireTime, 60000));
+    assertEquals(CronJobStatus.RUNNING, getJob("test.lock").getLastStatus());
+    cronJobDao.unlock("test.lock", null);
+    CronJobDO job = getJob("test.lock");
+    assertEquals(CronJobStatus.OK, job.getLastStatus());
+    assertNull(job.getLockedBy());
+    assertEquals(cronJobDao.getNodeName(), job.getLastNode());
+    assertFalse("Job was already run for this fire time.", cronJobDao.tryLock("test.lock", fireTime, 60000));
+    final Date nextFireTime = new Date(fireTime.getTime() + 500);
+    assertTrue(cronJobDao.tryLock("test.lock", nextFireTime, 0));
+    // Lease expired (e. g. node died):
+    assertTrue(cronJobDao.tryLock("test.lock", new Date(nextFireTime.getTime() + 500), 60000));
+    cronJobDao.unlock("test.lock", new IllegalStateException("test"));
+    job = getJob("test.lock");
+    assertEquals(CronJobStatus.FAILED, job.getLastStatus());
+    assertEquals("java.lang.IllegalStateException: test", job.getLastMessage());
+  }
+
+  @Test
+  public void localRun()
+  {
+    cronJobDao.storeLocalRun("test.local", new Date(), null);
+    final CronJobDO job = getJob("test.local@" + cronJobDao.getNodeName());
+    assertEquals(CronJobStatus.OK, job.getLastStatus());
+    assertNull(job.getLockedBy());
+  }
+
+  private CronJobDO getJob(final String name)
+  {
+    for (final CronJobDO job : cronJobDao.getJobs()) {
+      if (job.getName().equals(name) == true) {
+        return job;
+      }
+    }
+    return null;
+  }
+}
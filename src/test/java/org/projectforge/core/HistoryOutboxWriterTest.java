@@ -0,0 +1,178 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.junit.Test;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.GroupDO;
+import org.projectforge.user.PFUserDO;
+import org.springframework.orm.hibernate3.HibernateCallback;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.micromata.hibernate.history.HistoryEntry;
+
+public class HistoryOutboxWriterTest extends TestBase
+{
+  private HistoryOutboxWriter historyOutboxWriter;
+
+  private TransactionTemplate txTemplate;
+
+  public void setHistoryOutboxWriter(final HistoryOutboxWriter historyOutboxWriter)
+  {
+    this.historyOutboxWriter = historyOutboxWriter;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  @Test
+  public void writeAfterCommit()
+  {
+    final PFUserDO admin = logon(TEST_ADMIN_USER);
+    final Integer userId = getUserId(TEST_USER);
+    final int numberOfHistoryEntries = userDao.getHistoryEntries(userDao.internalGetById(userId)).length;
+    final Date[] modified = new Date[1];
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final PFUserDO user = userDao.internalGetById(userId);
+        final List<GroupDO> groups = new ArrayList<GroupDO>();
+        groups.add(getGroup(TEST_GROUP));
+        final boolean added = historyOutboxWriter.add(user, userId, admin.getId().toString(), "assignedGroups", Collection.class,
+            new ArrayList<GroupDO>(), groups);
+        assertEquals("Empty collections are supported by the outbox.", true, added);
+        modified[0] = new Date();
+        try {
+          // The history entry should get the time stamp of the modification and not of the commit:
+          Thread.sleep(1100);
+        } catch (final InterruptedException ex) {
+          throw new RuntimeException(ex);
+        }
+        return null;
+      }
+    });
+    // The outbox entry is written asynchronously by the writer thread (waits for a running writer):
+    historyOutboxWriter.writePendingEntries();
+    final HistoryEntry[] historyEntries = userDao.getHistoryEntries(userDao.internalGetById(userId));
+    assertEquals(numberOfHistoryEntries + 1, historyEntries.length);
+    final HistoryEntry entry = historyEntries[0];
+    assertEquals(1, entry.getDelta().size());
+    assertEquals("assignedGroups", entry.getDelta().get(0).getPropertyName());
+    assertFalse("Time stamp of the modification expected.", entry.getTimestamp().after(modified[0]));
+  }
+
+  @Test
+  public void readInsideTransaction()
+  {
+    final PFUserDO admin = logon(TEST_ADMIN_USER);
+    final Integer userId = getUserId(TEST_USER2);
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final PFUserDO user = userDao.internalGetById(userId);
+        final int numberOfHistoryEntries = userDao.getHistoryEntries(user).length;
+        final List<GroupDO> groups = new ArrayList<GroupDO>();
+        groups.add(getGroup(TEST_GROUP));
+        historyOutboxWriter.add(user, userId, admin.getId().toString(), "assignedGroups", Collection.class, null, groups);
+        assertEquals("History of the transaction is written before reading.", numberOfHistoryEntries + 1,
+            userDao.getHistoryEntries(user).length);
+        return null;
+      }
+    });
+    assertEquals("Outbox entry is already written.", 0, historyOutboxWriter.writePendingEntries());
+  }
+
+  @Test
+  public void interceptedUpdate()
+  {
+    logon(TEST_ADMIN_USER);
+    final Integer userId = getUserId(TEST_USER);
+    final int numberOfHistoryEntries = userDao.getHistoryEntries(userDao.internalGetById(userId)).length;
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final PFUserDO user = (PFUserDO) hibernate.get(PFUserDO.class, userId);
+        user.setDescription("Modified by interceptedUpdate");
+        hibernate.flush();
+        assertEquals("Change record stored in the outbox inside the transaction.", 1, getNumberOfOutboxEntries(userId));
+        return null;
+      }
+    });
+    historyOutboxWriter.writePendingEntries();
+    final HistoryEntry[] historyEntries = userDao.getHistoryEntries(userDao.internalGetById(userId));
+    assertEquals(numberOfHistoryEntries + 1, historyEntries.length);
+    assertEquals("description", historyEntries[0].getDelta().get(0).getPropertyName());
+    assertEquals("Outbox entry is written.", 0, getNumberOfOutboxEntries(userId));
+  }
+
+  @Test
+  public void interceptedUpdateRolledBack()
+  {
+    logon(TEST_ADMIN_USER);
+    final Integer userId = getUserId(TEST_USER2);
+    final int numberOfHistoryEntries = userDao.getHistoryEntries(userDao.internalGetById(userId)).length;
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final PFUserDO user = (PFUserDO) hibernate.get(PFUserDO.class, userId);
+        user.setDescription("Rolled back");
+        hibernate.flush();
+        status.setRollbackOnly();
+        return null;
+      }
+    });
+    assertEquals("Change record is rolled back.", 0, getNumberOfOutboxEntries(userId));
+    assertEquals(numberOfHistoryEntries, userDao.getHistoryEntries(userDao.internalGetById(userId)).length);
+  }
+
+  private int getNumberOfOutboxEntries(final Integer entityId)
+  {
+    return (Integer) hibernate.execute(new HibernateCallback() {
+      public Object doInHibernate(final Session session) throws HibernateException, SQLException
+      {
+        // Uncached: the query cache of the template may return an outdated result.
+        final Number count = (Number) session
+            .createQuery("select count(o) from HistoryOutboxDO o where o.entityClass = :entityClass and o.entityId = :entityId")
+            .setString("entityClass", PFUserDO.class.getName()).setInteger("entityId", entityId).setCacheable(false).uniqueResult();
+        return count.intValue();
+      }
+    });
+  }
+}
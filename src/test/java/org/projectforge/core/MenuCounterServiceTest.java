@@ -0,0 +1,87 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.projectforge.task.TaskDO;
+
+public class MenuCounterServiceTest
+{
+  private int globalValue;
+
+  @Test
+  public void computeCounters()
+  {
+    final MenuCounterService service = new MenuCounterService();
+    service.register("GLOBAL", new MenuCounterService.Counter() {
+      public boolean isUserSpecific()
+      {
+        return false;
+      }
+
+      public int count(final Integer userId)
+      {
+        return globalValue;
+      }
+    }, TaskDO.class);
+    service.register("USER", new MenuCounterService.Counter() {
+      public boolean isUserSpecific()
+      {
+        return true;
+      }
+
+      public int count(final Integer userId)
+      {
+        return 10 * userId;
+      }
+    });
+    globalValue = 5;
+    assertNull("Not yet computed.", service.getCounter("GLOBAL", null));
+    assertNull("Unknown counter.", service.getCounter("UNKNOWN", 1));
+    assertNull("User specific counter without user.", service.getCounter("USER", null));
+    assertNull(service.getCounter("USER", 1));
+    assertNull(service.getCounter("USER", 2));
+    assertEquals(3, service.computePendingCounters());
+    assertEquals(5, service.getCounter("GLOBAL", 42).intValue());
+    assertEquals(10, service.getCounter("USER", 1).intValue());
+    assertEquals(20, service.getCounter("USER", 2).intValue());
+    assertEquals(0, service.computePendingCounters());
+
+    globalValue = 6;
+    service.setExpired("GLOBAL");
+    assertEquals("Old value is displayed until the new one is computed.", 5, service.getCounter("GLOBAL", null).intValue());
+    assertEquals(1, service.computePendingCounters());
+    assertEquals(6, service.getCounter("GLOBAL", null).intValue());
+
+    globalValue = 7;
+    service.onRemoteChange(TaskDO.class, 1);
+    service.onRemoteChange(BarDO.class, 1); // Not registered.
+    assertEquals(1, service.computePendingCounters());
+    assertEquals(7, service.getCounter("GLOBAL", null).intValue());
+  }
+}
@@ -0,0 +1,118 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.projectforge.orga.ContractDO;
+import org.projectforge.test.TestBase;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class NumberSequenceDaoTest extends TestBase
+{
+  private static final NumberSequence GAPLESS = new NumberSequence("test.gapless", ContractDO.class, "number", 1);
+
+  private static final NumberSequence BLOCKS = new NumberSequence("test.blocks", ContractDO.class, "number", 1).setBlockSize(3);
+
+  private static final NumberSequence FREE_NUMBERS = new NumberSequence("test.freeNumbers", ContractDO.class, "number", 1).setBlockSize(3);
+
+  private NumberSequenceDao numberSequenceDao;
+
+  private TransactionTemplate txTemplate;
+
+  public void setNumberSequenceDao(final NumberSequenceDao numberSequenceDao)
+  {
+    this.numberSequenceDao = numberSequenceDao;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  @Test
+  public void gapless()
+  {
+    final int first = numberSequenceDao.getNextNumber(GAPLESS);
+    assertFalse("Number isn't the next one.", numberSequenceDao.reserveNumber(GAPLESS, first + 1));
+    assertTrue(numberSequenceDao.reserveNumber(GAPLESS, first));
+    assertEquals(first + 1, numberSequenceDao.getNextNumber(GAPLESS).intValue());
+    assertFalse("Number is already reserved.", numberSequenceDao.reserveNumber(GAPLESS, first));
+    reserveAndRollback(GAPLESS, first + 1);
+    assertEquals("Counter should be rolled back.", first + 1, numberSequenceDao.getNextNumber(GAPLESS).intValue());
+    numberSequenceDao.numberUsed(GAPLESS, first + 10);
+    assertEquals(first + 11, numberSequenceDao.getNextNumber(GAPLESS).intValue());
+  }
+
+  @Test
+  public void blocks()
+  {
+    final int first = numberSequenceDao.getNextNumber(BLOCKS);
+    assertTrue(numberSequenceDao.reserveNumber(BLOCKS, first));
+    assertTrue(numberSequenceDao.reserveNumber(BLOCKS, first + 1));
+    reserveAndRollback(BLOCKS, first + 2);
+    assertEquals("Number of rolled back transaction should be re-used.", first + 2, numberSequenceDao.getNextNumber(BLOCKS).intValue());
+    assertTrue(numberSequenceDao.reserveNumber(BLOCKS, first + 2));
+    // Block is exhausted, next block will be reserved:
+    assertTrue(numberSequenceDao.reserveNumber(BLOCKS, first + 3));
+    assertEquals(first + 4, numberSequenceDao.getNextNumber(BLOCKS).intValue());
+    numberSequenceDao.releaseBlocks();
+    assertEquals("Unused numbers of the block should be released.", first + 4, numberSequenceDao.getNextNumber(BLOCKS).intValue());
+  }
+
+  @Test
+  public void freeNumbers()
+  {
+    final int first = numberSequenceDao.getNextNumber(FREE_NUMBERS);
+    assertTrue(numberSequenceDao.reserveNumber(FREE_NUMBERS, first));
+    // Numbers reserved by another instance:
+    numberSequenceDao.numberUsed(FREE_NUMBERS, first + 10);
+    reserveAndRollback(FREE_NUMBERS, first + 1);
+    numberSequenceDao.releaseBlocks();
+    assertEquals("Number of rolled back transaction should be stored.", first + 1, numberSequenceDao.getNextNumber(FREE_NUMBERS)
+        .intValue());
+    assertTrue(numberSequenceDao.reserveNumber(FREE_NUMBERS, first + 1));
+    assertEquals("Unused number of the block should be stored.", first + 2, numberSequenceDao.getNextNumber(FREE_NUMBERS).intValue());
+    assertTrue(numberSequenceDao.reserveNumber(FREE_NUMBERS, first + 2));
+    assertEquals(first + 11, numberSequenceDao.getNextNumber(FREE_NUMBERS).intValue());
+  }
+
+  private void reserveAndRollback(final NumberSequence sequence, final int number)
+  {
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        assertTrue(numberSequenceDao.reserveNumber(sequence, number));
+        status.setRollbackOnly();
+        return null;
+      }
+    });
+  }
+}
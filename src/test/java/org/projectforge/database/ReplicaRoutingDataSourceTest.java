@@ -0,0 +1,99 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class ReplicaRoutingDataSourceTest
+{
+  private static final String LAG_QUERY = "select count(*) from INFORMATION_SCHEMA.SYSTEM_USERS";
+
+  @After
+  public void cleanUp()
+  {
+    ReplicaRoutingDataSource.setReplicaRequested(false);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+  }
+
+  @Test
+  public void routing()
+  {
+    final ReplicaRoutingDataSource dataSource = createDataSource(null, 10);
+    assertEquals(ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    assertEquals("DAO not marked with @ReadFromReplica.", ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    ReplicaRoutingDataSource.setReplicaRequested(true);
+    assertEquals(ReplicaRoutingDataSource.REPLICA, dataSource.determineCurrentLookupKey());
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    assertEquals("Writing transaction.", ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+
+    final ReplicaRoutingDataSource withoutReplica = new ReplicaRoutingDataSource();
+    withoutReplica.setPrimaryDataSource(createHsqlDataSource("primary"));
+    withoutReplica.afterPropertiesSet();
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    assertEquals("No replica configured.", ReplicaRoutingDataSource.PRIMARY, withoutReplica.determineCurrentLookupKey());
+  }
+
+  @Test
+  public void lagGuard()
+  {
+    // The lag query returns the number of users (1 at least):
+    assertTrue(createDataSource(LAG_QUERY, 10).isReplicaUpToDate());
+    final ReplicaRoutingDataSource dataSource = createDataSource(LAG_QUERY, 0);
+    assertFalse(dataSource.isReplicaUpToDate());
+    ReplicaRoutingDataSource.setReplicaRequested(true);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+    assertEquals("Replica lags behind.", ReplicaRoutingDataSource.PRIMARY, dataSource.determineCurrentLookupKey());
+    assertFalse("Replica not reachable.", createDataSource("select unknown from unknown", 10).isReplicaUpToDate());
+  }
+
+  private ReplicaRoutingDataSource createDataSource(final String lagQuery, final int maxLagSeconds)
+  {
+    final ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource();
+    dataSource.setPrimaryDataSource(createHsqlDataSource("primary"));
+    dataSource.setReplicaDataSource(createHsqlDataSource("replica"));
+    dataSource.setLagQuery(lagQuery);
+    dataSource.setMaxLagSeconds(maxLagSeconds);
+    dataSource.afterPropertiesSet();
+    return dataSource;
+  }
+
+  private DriverManagerDataSource createHsqlDataSource(final String name)
+  {
+    final DriverManagerDataSource dataSource = new DriverManagerDataSource();
+    dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+    dataSource.setUrl("jdbc:hsqldb:mem:ReplicaRoutingDataSourceTest-" + name);
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    return dataSource;
+  }
+}
@@ -0,0 +1,138 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.common.DateHelper;
+import org.projectforge.core.ConfigXmlTest;
+import org.projectforge.test.TestConfiguration;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+
+public class XlsxStreamWriterTest
+{
+  @BeforeClass
+  public static void setUp()
+  {
+    // Needed if this tests runs before the ConfigurationTest.
+    ConfigXmlTest.createTestConfiguration();
+    TestConfiguration.initAsTestConfiguration();
+  }
+
+  @Test
+  public void getColumnName()
+  {
+    assertEquals("A", XlsxStreamWriter.getColumnName(0));
+    assertEquals("Z", XlsxStreamWriter.getColumnName(25));
+    assertEquals("AA", XlsxStreamWriter.getColumnName(26));
+    assertEquals("AZ", XlsxStreamWriter.getColumnName(51));
+    assertEquals("BA", XlsxStreamWriter.getColumnName(52));
+    assertEquals("ZZ", XlsxStreamWriter.getColumnName(701));
+    assertEquals("AAA", XlsxStreamWriter.getColumnName(702));
+  }
+
+  @Test
+  public void escapeXml()
+  {
+    assertEquals("a &amp; &lt;b&gt; &quot;c&quot;\tx", XlsxStreamWriter.escapeXml("a & <b> \"c\"\tx\u0001"));
+  }
+
+  @Test
+  public void writeWorkbook() throws IOException
+  {
+    final PFUserDO user = new PFUserDO();
+    user.setTimeZone(DateHelper.UTC);
+    try {
+      PFUserContext.setUser(user);
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      final XlsxStreamWriter xlsx = new XlsxStreamWriter(baos);
+      xlsx.startSheet("Invoices [2013]", new XlsxStreamWriter.Column("Amount", 12, "#,##0.00"), new XlsxStreamWriter.Column("Date", 10,
+          "dd.MM.yyyy"), new XlsxStreamWriter.Column("Text", 20));
+      final Calendar cal = Calendar.getInstance(DateHelper.UTC);
+      cal.clear();
+      cal.set(2013, Calendar.JANUARY, 2, 12, 0);
+      xlsx.addRow(new BigDecimal("1234.50"), cal, "<M\u00fcller & Co>");
+      xlsx.addRow(null, new Date(cal.getTimeInMillis()), "");
+      assertEquals(3, xlsx.getRowCounter());
+      xlsx.setStripedRows(true).startSheet("invoices [2013]", new XlsxStreamWriter.Column("Number", 10));
+      xlsx.addRow(1);
+      xlsx.addRow(2);
+      xlsx.close();
+
+      final Map<String, String> entries = readEntries(baos.toByteArray());
+      assertEquals(7, entries.size());
+      assertTrue(entries.containsKey("[Content_Types].xml"));
+      assertTrue(entries.containsKey("_rels/.rels"));
+      assertTrue(entries.containsKey("xl/_rels/workbook.xml.rels"));
+      final String workbook = entries.get("xl/workbook.xml");
+      assertTrue(workbook.contains("<sheet name=\"Invoices _2013_\" sheetId=\"1\" r:id=\"rId1\"/>"));
+      assertTrue(workbook.contains("<sheet name=\"invoices _2013_ (2)\" sheetId=\"2\" r:id=\"rId2\"/>"));
+      assertTrue(entries.get("xl/styles.xml").contains("formatCode=\"#,##0.00\""));
+
+      String sheet = entries.get("xl/worksheets/sheet1.xml");
+      assertTrue(sheet.contains("<pane ySplit=\"1\""));
+      assertTrue(sheet.contains("<c r=\"A1\" t=\"inlineStr\" s=\"1\"><is><t xml:space=\"preserve\">Amount</t></is></c>"));
+      assertTrue(sheet.contains("<v>1234.50</v>"));
+      assertTrue(sheet.contains("<c r=\"B2\" s=\"3\"><v>41276.5</v></c>"));
+      assertTrue(sheet.contains("&lt;M\u00fcller &amp; Co&gt;"));
+      assertTrue(sheet.contains("<row r=\"3\"><c r=\"B3\" s=\"3\"><v>41276.5</v></c></row>"));
+
+      sheet = entries.get("xl/worksheets/sheet2.xml");
+      assertTrue(sheet.contains("<row r=\"2\"><c r=\"A2\"><v>1</v></c></row>"));
+      assertFalse(sheet.contains("<row r=\"3\"><c r=\"A3\"><v>2</v></c></row>")); // Grey row.
+    } finally {
+      PFUserContext.setUser(null);
+    }
+  }
+
+  private Map<String, String> readEntries(final byte[] content) throws IOException
+  {
+    final Map<String, String> entries = new HashMap<String, String>();
+    final ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(content));
+    ZipEntry entry;
+    while ((entry = zip.getNextEntry()) != null) {
+      entries.put(entry.getName(), IOUtils.toString(zip, "UTF-8"));
+    }
+    zip.close();
+    return entries;
+  }
+}
@@ -24,10 +24,14 @@
 package org.projectforge.fibu;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Random;
 
 import org.junit.Test;
@@ -338,6 +342,10 @@ public class AuftragDaoTest extends TestBase
     auftrag1.setAuftragsStatus(AuftragsStatus.ABGESCHLOSSEN);
     auftragDao.update(auftrag1);
     auftrag1 = auftragDao.getById(id1);
+    assertFalse(auftrag1.isCompletelyInvoiced());
+    assertTrue(auftrag1.isClosedNotInvoiced());
+    final int closedNotInvoiced = auftragDao.getAbgeschlossenNichtFakturiertAnzahl();
+    assertTrue(closedNotInvoiced > 0);
 
     logon(TEST_PROJECT_MANAGER_USER);
     position = auftrag1.getPositionen().get(0);
@@ -356,6 +364,62 @@ public class AuftragDaoTest extends TestBase
     position.setStatus(AuftragsPositionsStatus.ABGESCHLOSSEN);
     position.setVollstaendigFakturiert(true);
     auftragDao.update(auftrag1);
+    auftrag1 = auftragDao.getById(id1);
+    assertTrue(auftrag1.isCompletelyInvoiced());
+    assertFalse(auftrag1.isClosedNotInvoiced());
+    assertEquals(closedNotInvoiced - 1, auftragDao.getAbgeschlossenNichtFakturiertAnzahl());
+  }
+
+  @Test
+  public void buildStatistik()
+  {
+    logon(TEST_FINANCE_USER);
+    saveAuftrag(AuftragsStatus.BEAUFTRAGT, createPosition("1000.00", AuftragsPositionsStatus.BEAUFTRAGT),
+        createPosition("500.00", AuftragsPositionsStatus.NICHT_BEAUFTRAGT), createPosition("200.00", null));
+    saveAuftrag(AuftragsStatus.ABGESCHLOSSEN, createPosition("300.00", AuftragsPositionsStatus.ABGESCHLOSSEN),
+        createPosition("100.00", AuftragsPositionsStatus.BEAUFTRAGTE_OPTION));
+    saveAuftrag(AuftragsStatus.GELEGT, createPosition("250.00", AuftragsPositionsStatus.OPTIONAL), createPosition(null, null));
+
+    final List<AuftragDO> list = auftragDao.getList(new AuftragFilter());
+    final AuftragsStatistik expected = auftragDao.buildStatistikInMemory(list);
+    final AuftragsStatistik stats = auftragDao.buildStatistik(list);
+    assertTrue(stats.getCounter() >= 3);
+    assertEquals(expected.getCounter(), stats.getCounter());
+    assertEquals(expected.getCounterAkquise(), stats.getCounterAkquise());
+    assertEquals(expected.getCounterBeauftragt(), stats.getCounterBeauftragt());
+    assertEquals(expected.getCounterZuFakturieren(), stats.getCounterZuFakturieren());
+    assertEquals(expected.getCounterFakturiert(), stats.getCounterFakturiert());
+    assertAmount(expected.getNettoSum(), stats.getNettoSum());
+    assertAmount(expected.getAkquiseSum(), stats.getAkquiseSum());
+    assertAmount(expected.getBeauftragtSum(), stats.getBeauftragtSum());
+    assertAmount(expected.getZuFakturierenSum(), stats.getZuFakturierenSum());
+    assertAmount(expected.getFakturiertSum(), stats.getFakturiertSum());
+  }
+
+  private void saveAuftrag(final AuftragsStatus status, final AuftragsPositionDO... positions)
+  {
+    final AuftragDO auftrag = new AuftragDO();
+    auftrag.setNummer(auftragDao.getNextNumber(auftrag));
+    auftrag.setAuftragsStatus(status);
+    for (final AuftragsPositionDO position : positions) {
+      auftrag.addPosition(position);
+    }
+    auftragDao.save(auftrag);
+    dbNumber++; // Needed for getNextNumber test;
+  }
+
+  private AuftragsPositionDO createPosition(final String nettoSumme, final AuftragsPositionsStatus status)
+  {
+    final AuftragsPositionDO position = new AuftragsPositionDO();
+    position.setTitel("test");
+    position.setNettoSumme(nettoSumme != null ? new BigDecimal(nettoSumme) : null);
+    position.setStatus(status);
+    return position;
+  }
+
+  private void assertAmount(final BigDecimal expected, final BigDecimal actual)
+  {
+    assertEquals("Expected " + expected + " but was " + actual, 0, expected.compareTo(actual));
   }
 
   @Test
@@ -0,0 +1,96 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.junit.Test;
+import org.projectforge.renderer.PdfBatchJob;
+import org.projectforge.renderer.PdfBatchJob.OutputFormat;
+import org.projectforge.renderer.PdfRenderer;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.PFUserDO;
+
+import com.lowagie.text.pdf.PdfReader;
+
+public class MonthlyEmployeeReportDaoTest extends TestBase
+{
+  private static final long TIMEOUT_MILLIS = 60 * 1000;
+
+  private MonthlyEmployeeReportDao monthlyEmployeeReportDao;
+
+  private PdfRenderer pdfRenderer;
+
+  public void setMonthlyEmployeeReportDao(final MonthlyEmployeeReportDao monthlyEmployeeReportDao)
+  {
+    this.monthlyEmployeeReportDao = monthlyEmployeeReportDao;
+  }
+
+  public void setPdfRenderer(final PdfRenderer pdfRenderer)
+  {
+    this.pdfRenderer = pdfRenderer;
+  }
+
+  @Test
+  public void renderPdf() throws Exception
+  {
+    final PFUserDO user = logon(TEST_USER);
+    final Map<String, Object> data = monthlyEmployeeReportDao.getPdfData(2013, 5, user);
+    final byte[] pdf = pdfRenderer.render(MonthlyEmployeeReportDao.PDF_STYLE_SHEET, MonthlyEmployeeReportDao.PDF_XML_DATA, data);
+    assertEquals("%PDF", new String(pdf, 0, 4, "US-ASCII"));
+    assertTrue(new PdfReader(pdf).getNumberOfPages() > 0);
+  }
+
+  @Test
+  public void renderPdfBatch() throws Exception
+  {
+    final PFUserDO user = logon(TEST_USER);
+    final List<PFUserDO> employees = new ArrayList<PFUserDO>();
+    employees.add(user);
+    final PdfBatchJob job = monthlyEmployeeReportDao.startPdfBatch(2013, 5, employees, OutputFormat.ZIP);
+    final long start = System.currentTimeMillis();
+    while (job.isFinished() == false) {
+      assertTrue("Job not finished in time: " + job, System.currentTimeMillis() - start < TIMEOUT_MILLIS);
+      Thread.sleep(100);
+    }
+    assertNull(job.getErrorMessage());
+    assertEquals(0, job.getFailed());
+    assertNotNull(job.getFile());
+    final ZipFile zipFile = new ZipFile(job.getFile());
+    try {
+      assertNotNull(zipFile.getEntry(monthlyEmployeeReportDao.getPdfFilename(2013, 5, user)));
+    } finally {
+      zipFile.close();
+    }
+  }
+}
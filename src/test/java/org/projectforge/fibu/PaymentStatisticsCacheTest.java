@@ -0,0 +1,111 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Calendar;
+
+import org.junit.Test;
+import org.projectforge.calendar.DayHolder;
+import org.projectforge.test.TestBase;
+
+public class PaymentStatisticsCacheTest extends TestBase
+{
+  private static final String KEY = PaymentStatisticsCache.KEY_CUSTOMER_TEXT + "payment statistics test";
+
+  private RechnungDao rechnungDao;
+
+  private PaymentStatisticsCache paymentStatisticsCache;
+
+  @Test
+  public void updateStatistics()
+  {
+    logon(getUser(TEST_FINANCE_USER));
+    assertNull(paymentStatisticsCache.getDebitorStatistics().get(KEY));
+    final DayHolder day = new DayHolder();
+    day.add(Calendar.DAY_OF_YEAR, -30);
+    final Date datum = day.getSQLDate();
+    RechnungDO rechnung = new RechnungDO();
+    final RechnungsPositionDO position = new RechnungsPositionDO();
+    position.setMenge(BigDecimal.ONE).setEinzelNetto(new BigDecimal("100")).setText("test");
+    rechnung.addPosition(position);
+    rechnung.setNummer(rechnungDao.getNextNumber(rechnung)).setDatum(datum);
+    rechnung.setKundeText("Payment statistics test");
+    rechnung.setBezahlDatum(getDate(datum, 10));
+    final Integer id = (Integer) rechnungDao.save(rechnung);
+    assertStatistics(10);
+
+    // Modify the date of payment:
+    rechnung = rechnungDao.getById(id);
+    rechnung.setBezahlDatum(getDate(datum, 20));
+    rechnungDao.update(rechnung);
+    assertStatistics(20);
+
+    // Not paid:
+    rechnung = rechnungDao.getById(id);
+    rechnung.setBezahlDatum(null);
+    rechnungDao.update(rechnung);
+    assertNull(paymentStatisticsCache.getDebitorStatistics().get(KEY));
+
+    // Paid again:
+    rechnung = rechnungDao.getById(id);
+    rechnung.setBezahlDatum(getDate(datum, 15));
+    rechnungDao.update(rechnung);
+    assertStatistics(15);
+
+    // Deleted:
+    rechnung = rechnungDao.getById(id);
+    rechnungDao.markAsDeleted(rechnung);
+    assertNull(paymentStatisticsCache.getDebitorStatistics().get(KEY));
+  }
+
+  private void assertStatistics(final int expectedTimeForPayment)
+  {
+    final PaymentStatistics statistics = paymentStatisticsCache.getDebitorStatistics().get(KEY);
+    assertEquals(1, statistics.getNumberOfValues());
+    assertEquals(expectedTimeForPayment, statistics.getAverage());
+  }
+
+  private Date getDate(final Date date, final int days)
+  {
+    final DayHolder day = new DayHolder(date);
+    day.add(Calendar.DAY_OF_YEAR, days);
+    return day.getSQLDate();
+  }
+
+  public void setRechnungDao(final RechnungDao rechnungDao)
+  {
+    this.rechnungDao = rechnungDao;
+  }
+
+  public void setPaymentStatisticsCache(final PaymentStatisticsCache paymentStatisticsCache)
+  {
+    this.paymentStatisticsCache = paymentStatisticsCache;
+  }
+}
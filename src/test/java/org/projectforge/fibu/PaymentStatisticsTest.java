@@ -0,0 +1,53 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class PaymentStatisticsTest
+{
+  @Test
+  public void addAndRemove()
+  {
+    PaymentStatistics stats = PaymentStatistics.EMPTY;
+    assertEquals(0, stats.getNumberOfValues());
+    assertEquals(0, stats.getWeightedAverage());
+    stats = stats.add(10, 1000).add(40, 3000);
+    assertEquals(2, stats.getNumberOfValues());
+    assertEquals(25, stats.getAverage());
+    assertEquals(32, stats.getWeightedAverage()); // (10 * 1000 + 40 * 3000) / 4000
+    stats = stats.add(100, 0);
+    assertEquals(50, stats.getAverage());
+    assertEquals(32, stats.getWeightedAverage());
+    stats = stats.remove(40, 3000);
+    assertEquals(2, stats.getNumberOfValues());
+    assertEquals(10, stats.getWeightedAverage());
+    assertSame(PaymentStatistics.EMPTY, stats.remove(10, 1000).remove(100, 0));
+    assertEquals("Average if all amounts are zero.", 5, PaymentStatistics.EMPTY.add(0, 0).add(10, 0).getWeightedAverage());
+  }
+}
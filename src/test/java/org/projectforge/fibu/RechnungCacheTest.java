@@ -24,6 +24,7 @@
 package org.projectforge.fibu;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigDecimal;
@@ -100,6 +101,15 @@ public class RechnungCacheTest extends TestBase
     set = rechnungCache.getRechnungsPositionVOSetByAuftragId(auftrag.getId());
     assertEquals("2 invoice positions expected.", 2, set.size());
     assertTrue(new BigDecimal("300").compareTo(RechnungDao.getNettoSumme(set)) == 0);
+    assertNull(rechnungCache.getRechnungsPositionVOSetByAuftragsPositionId(null));
+
+    rechnungDao.markAsDeleted(rechnungDao.getById(rechnung1.getId()));
+    assertNull("Positions of deleted invoices expected to be removed.",
+        rechnungCache.getRechnungsPositionVOSetByAuftragId(auftrag.getId()));
+    rechnungDao.undelete(rechnungDao.getById(rechnung1.getId()));
+    set = rechnungCache.getRechnungsPositionVOSetByAuftragsPositionId(auftrag.getPosition((short) 1).getId());
+    assertEquals("1 invoice position expected.", 1, set.size());
+    assertEquals("1.1", set.iterator().next().getText());
   }
 
   public void setAuftragDao(final AuftragDao auftragDao)
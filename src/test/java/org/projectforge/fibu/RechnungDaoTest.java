@@ -24,14 +24,25 @@
 package org.projectforge.fibu;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.hibernate.criterion.Order;
 import org.junit.Test;
 import org.projectforge.access.AccessException;
+import org.projectforge.common.DateHelper;
+import org.projectforge.core.ScrollCallback;
 import org.projectforge.core.UserException;
 import org.projectforge.test.TestBase;
 
@@ -121,6 +132,96 @@ public class RechnungDaoTest extends TestBase
     checkNoAccess(id, rechnung, "Admin ");
   }
 
+  @Test
+  public void buildStatistik()
+  {
+    logon(TEST_FINANCE_USER);
+    final long today = System.currentTimeMillis();
+    RechnungDO rechnung = createRechnung(new Date(today - 30 * DateHelper.MILLIS_DAY));
+    rechnung.setFaelligkeit(new Date(today - 10 * DateHelper.MILLIS_DAY)); // Overdue.
+    rechnung.addPosition(createPosition(2, "100.50", "0.19", "test"));
+    rechnung.addPosition(createPosition(1, "50.00", "0", "test"));
+    final RechnungsPositionDO position = createPosition(1, "33.33", "0.07", "test");
+    position.setMenge(new BigDecimal("1.5")); // Net sum and vat amount are rounded per position.
+    rechnung.addPosition(position);
+    rechnungDao.save(rechnung);
+    dbNumber++;
+    rechnung = createRechnung(new Date(today - 20 * DateHelper.MILLIS_DAY));
+    rechnung.setFaelligkeit(new Date(today));
+    rechnung.addPosition(createPosition(3, "12.34", "0.19", "test"));
+    rechnung.setStatus(RechnungStatus.BEZAHLT);
+    rechnung.setBezahlDatum(new Date(today - 5 * DateHelper.MILLIS_DAY));
+    rechnung.setZahlBetrag(new BigDecimal("40.00")); // Skonto.
+    rechnungDao.save(rechnung);
+    dbNumber++;
+
+    final List<RechnungDO> list = rechnungDao.getList(new RechnungFilter());
+    final RechnungsStatistik expected = rechnungDao.buildStatistikInMemory(list);
+    final RechnungsStatistik stats = rechnungDao.buildStatistik(list);
+    assertTrue(stats.getCounter() >= 2);
+    assertEquals(expected.getCounter(), stats.getCounter());
+    assertEquals(expected.getCounterBezahlt(), stats.getCounterBezahlt());
+    assertAmount(expected.getNetto(), stats.getNetto());
+    assertAmount(expected.getBrutto(), stats.getBrutto());
+    assertAmount(expected.getGezahlt(), stats.getGezahlt());
+    assertAmount(expected.getOffen(), stats.getOffen());
+    assertAmount(expected.getUeberfaellig(), stats.getUeberfaellig());
+    assertAmount(expected.getSkonto(), stats.getSkonto());
+    assertEquals(expected.getZahlungszielAverage(), stats.getZahlungszielAverage());
+    assertEquals(expected.getTatsaechlichesZahlungzielAverage(), stats.getTatsaechlichesZahlungzielAverage());
+  }
+
+  @Test
+  public void scroll() throws IOException
+  {
+    logon(TEST_FINANCE_USER);
+    final Date today = new Date(System.currentTimeMillis());
+    final Integer[] createdIds = new Integer[2];
+    for (int i = 0; i < createdIds.length; i++) {
+      final RechnungDO rechnung = createRechnung(today);
+      rechnung.addPosition(createPosition(1, "10.00", "0.19", "test"));
+      rechnung.addPosition(createPosition(2, "20.00", "0.19", "test"));
+      rechnung.addPosition(createPosition(3, "30.00", "0.19", "test"));
+      createdIds[i] = (Integer) rechnungDao.save(rechnung);
+      dbNumber++;
+    }
+    final List<RechnungDO> list = rechnungDao.getList(new RechnungFilter());
+    final List<Integer> ids = new ArrayList<Integer>();
+    final Map<Integer, Integer> numberOfPositions = new HashMap<Integer, Integer>();
+    final int counter = rechnungDao.scroll(new RechnungFilter(), new ScrollCallback<RechnungDO>() {
+      public void handle(final RechnungDO obj)
+      {
+        ids.add(obj.getId());
+        numberOfPositions.put(obj.getId(), obj.getPositionen() != null ? obj.getPositionen().size() : 0);
+      }
+    }, Order.desc("datum"), Order.desc("nummer"));
+    assertEquals(ids.size(), counter);
+    assertEquals("Every invoice only once (positions mustn't multiply the rows).", counter, new HashSet<Integer>(ids).size());
+    final Set<Integer> listIds = new HashSet<Integer>();
+    for (final RechnungDO rechnung : list) {
+      listIds.add(rechnung.getId());
+    }
+    assertEquals(listIds, new HashSet<Integer>(ids));
+    for (final Integer id : createdIds) {
+      assertTrue(ids.contains(id));
+      assertEquals("All positions loaded.", 3, numberOfPositions.get(id).intValue());
+    }
+    assertTrue("Ordered by number (descending).", ids.indexOf(createdIds[1]) < ids.indexOf(createdIds[0]));
+  }
+
+  private RechnungDO createRechnung(final Date datum)
+  {
+    final RechnungDO rechnung = new RechnungDO();
+    rechnung.setNummer(rechnungDao.getNextNumber(rechnung));
+    rechnung.setDatum(datum);
+    return rechnung;
+  }
+
+  private void assertAmount(final BigDecimal expected, final BigDecimal actual)
+  {
+    assertEquals("Expected " + expected + " but was " + actual, 0, expected.compareTo(actual));
+  }
+
   private void checkNoAccess(Serializable id, RechnungDO rechnung, String who)
   {
     try {
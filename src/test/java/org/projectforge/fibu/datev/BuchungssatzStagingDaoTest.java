@@ -0,0 +1,110 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.datev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.projectforge.common.ImportedElement;
+import org.projectforge.common.ImportedSheet;
+import org.projectforge.fibu.kost.BuchungssatzDO;
+import org.projectforge.fibu.kost.SHType;
+import org.projectforge.test.TestBase;
+
+public class BuchungssatzStagingDaoTest extends TestBase
+{
+  private BuchungssatzStagingDao buchungssatzStagingDao;
+
+  public void setBuchungssatzStagingDao(final BuchungssatzStagingDao buchungssatzStagingDao)
+  {
+    this.buchungssatzStagingDao = buchungssatzStagingDao;
+  }
+
+  @Test
+  public void storeAndLoad()
+  {
+    logon(TEST_FINANCE_USER);
+    final String importId = UUID.randomUUID().toString();
+    final ImportedSheet<BuchungssatzDO> sheet = new ImportedSheet<BuchungssatzDO>();
+    sheet.setName("2013-03");
+    sheet.addElement(createElement(0, 1, "100.50"));
+    final ImportedElement<BuchungssatzDO> faulty = createElement(1, 2, "-20.00");
+    faulty.putErrorProperty("konto", 4711);
+    sheet.addElement(faulty);
+    buchungssatzStagingDao.store(importId, sheet);
+
+    List<ImportedElement<BuchungssatzDO>> elements = buchungssatzStagingDao.load(importId, "2013-03");
+    assertEquals(2, elements.size());
+    ImportedElement<BuchungssatzDO> element = elements.get(0);
+    assertEquals(0, element.getIndex());
+    assertEquals(new Integer(1), element.getValue().getSatznr());
+    assertEquals(0, new BigDecimal("100.50").compareTo(element.getValue().getBetrag()));
+    assertEquals(SHType.HABEN, element.getValue().getSh());
+    assertEquals(new Integer(2013), element.getValue().getYear());
+    assertEquals(new Integer(2), element.getValue().getMonth());
+    assertEquals("text 1", element.getValue().getText());
+    assertNull(element.getValue().getKonto());
+    assertFalse(element.isFaulty());
+    assertFalse(element.isSelected());
+    element = elements.get(1);
+    assertTrue(element.isFaulty());
+    assertEquals("Error properties are restored as strings.", "4711", element.getErrorProperty("konto"));
+    assertEquals(0, buchungssatzStagingDao.load(importId, "2013-04").size());
+
+    sheet.setElements(elements);
+    sheet.selectAll(true, false);
+    buchungssatzStagingDao.update(importId, sheet);
+    elements = buchungssatzStagingDao.load(importId, "2013-03");
+    assertTrue(elements.get(0).isSelected());
+    assertFalse("Faulty elements can't be selected.", elements.get(1).isSelected());
+
+    buchungssatzStagingDao.delete(importId);
+    assertEquals(0, buchungssatzStagingDao.load(importId, "2013-03").size());
+  }
+
+  private ImportedElement<BuchungssatzDO> createElement(final int index, final int satznr, final String betrag)
+  {
+    final ImportedElement<BuchungssatzDO> element = new ImportedElement<BuchungssatzDO>(index, BuchungssatzDO.class,
+        DatevImportDao.BUCHUNGSSATZ_DIFF_PROPERTIES);
+    final BuchungssatzDO satz = new BuchungssatzDO();
+    satz.setYear(2013);
+    satz.setMonth(2);
+    satz.setSatznr(satznr);
+    satz.setBetrag(new BigDecimal(betrag));
+    satz.setSh(SHType.HABEN);
+    satz.setDatum(new Date());
+    satz.setText("text " + satznr);
+    element.setValue(satz);
+    return element;
+  }
+}
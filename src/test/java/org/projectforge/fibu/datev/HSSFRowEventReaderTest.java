@@ -0,0 +1,163 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.datev;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.Test;
+
+public class HSSFRowEventReaderTest
+{
+  @Test
+  public void read() throws Exception
+  {
+    final HSSFWorkbook workbook = new HSSFWorkbook();
+    HSSFSheet sheet = workbook.createSheet("01");
+    HSSFRow row = sheet.createRow(0);
+    row.createCell(0).setCellValue("Betrag");
+    row.createCell(1).setCellValue("SH");
+    row = sheet.createRow(1);
+    row.createCell(0).setCellValue(42.5);
+    row.createCell(1).setCellValue("S");
+    row = sheet.createRow(3); // Row 2 is missing.
+    row.createCell(2).setCellValue(true);
+    sheet = workbook.createSheet("Info");
+    sheet.createRow(0).createCell(0).setCellValue("Text");
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    workbook.write(out);
+
+    final List<String> events = new ArrayList<String>();
+    new HSSFRowEventReader() {
+      @Override
+      protected void startSheet(final int index, final String name)
+      {
+        events.add("start " + index + " " + name);
+      }
+
+      @Override
+      protected void processRow(final int rowIndex, final Object[] values)
+      {
+        events.add(rowIndex + ": " + Arrays.asList(values));
+      }
+
+      @Override
+      protected void endSheet()
+      {
+        events.add("end");
+      }
+    }.read(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(Arrays.asList("start 0 01", "0: [Betrag, SH]", "1: [42.5, S]", "3: [null, null, true]", "end", "start 1 Info",
+        "0: [Text]", "end"), events);
+  }
+
+  @Test
+  public void chartSheet()
+  {
+    final List<String> events = new ArrayList<String>();
+    final HSSFRowEventReader reader = new HSSFRowEventReader() {
+      @Override
+      protected void startSheet(final int index, final String name)
+      {
+        events.add("start " + index + " " + name);
+      }
+
+      @Override
+      protected void processRow(final int rowIndex, final Object[] values)
+      {
+        events.add(rowIndex + ": " + Arrays.asList(values));
+      }
+
+      @Override
+      protected void endSheet()
+      {
+        events.add("end");
+      }
+    };
+    // Workbook globals with the bound sheet records of a chart sheet followed by a work sheet:
+    reader.processRecord(createBOFRecord(BOFRecord.TYPE_WORKBOOK));
+    reader.processRecord(new BoundSheetRecord("Chart"));
+    reader.processRecord(new BoundSheetRecord("01"));
+    reader.processRecord(new EOFRecord());
+    reader.processRecord(createBOFRecord(BOFRecord.TYPE_CHART));
+    reader.processRecord(new EOFRecord());
+    reader.processRecord(createBOFRecord(BOFRecord.TYPE_WORKSHEET));
+    final NumberRecord number = new NumberRecord();
+    number.setRow(0);
+    number.setColumn((short) 0);
+    number.setValue(42);
+    reader.processRecord(number);
+    reader.processRecord(new EOFRecord());
+    assertEquals(Arrays.asList("start 1 01", "0: [42.0]", "end"), events);
+  }
+
+  private BOFRecord createBOFRecord(final int type)
+  {
+    final BOFRecord record = new BOFRecord();
+    record.setType(type);
+    return record;
+  }
+
+  @Test
+  public void emptyWorkbook() throws Exception
+  {
+    final HSSFWorkbook workbook = new HSSFWorkbook();
+    workbook.createSheet("01");
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    workbook.write(out);
+    final String[] sheetName = new String[1];
+    new HSSFRowEventReader() {
+      @Override
+      protected void startSheet(final int index, final String name)
+      {
+        sheetName[0] = name;
+      }
+
+      @Override
+      protected void processRow(final int rowIndex, final Object[] values)
+      {
+        sheetName[0] = null;
+      }
+
+      @Override
+      protected void endSheet()
+      {
+      }
+    }.read(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals("01", sheetName[0]);
+  }
+}
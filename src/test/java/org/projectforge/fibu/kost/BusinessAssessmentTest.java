@@ -64,6 +64,48 @@ public class BusinessAssessmentTest
     assertEquals(new BigDecimal("0.68"), bwa.getRow("relativePerformance").getAmount()); // profit / revenue
   }
 
+  @Test
+  public void rowIndex()
+  {
+    final BusinessAssessmentConfig bwaConfig = BusinessAssessmentConfigTest.getBusinessAssessmentConfig();
+    final BusinessAssessment bwa = new BusinessAssessment(bwaConfig);
+    for (int accountNumber = -1; accountNumber < 10000; accountNumber++) {
+      int expected = -1;
+      for (int i = 0; i < bwa.getRows().size(); i++) {
+        if (bwa.getRows().get(i).doesMatch(accountNumber) == true) {
+          expected = i;
+          break;
+        }
+      }
+      assertEquals("Row of account " + accountNumber, expected, bwaConfig.getRowIndex(accountNumber));
+    }
+    assertEquals(-1, bwaConfig.getRowIndex(Integer.MAX_VALUE));
+    assertEquals(-1, bwaConfig.getRowIndex(Integer.MIN_VALUE));
+  }
+
+  @Test
+  public void monthlyBalances()
+  {
+    final BusinessAssessmentConfig bwaConfig = BusinessAssessmentConfigTest.getBusinessAssessmentConfig();
+    final List<MonthlyBalanceDO> balances = new ArrayList<MonthlyBalanceDO>();
+    balances.add(createBalance("56.56", 4000, 3));
+    balances.add(createBalance("-3.03", 6740, 2));
+    balances.add(createBalance("-15.15", 6800, 4));
+    final BusinessAssessment bwa = new BusinessAssessment(bwaConfig);
+    bwa.setMonthlyBalances(balances);
+    assertEquals(9, bwa.getCounter());
+    assertEquals(new BigDecimal("56.56"), bwa.getRow("umsatzErloese").getAmount());
+    assertEquals(new BigDecimal("-18.18"), bwa.getRow("1280").getAmount()); // Total costs
+    assertEquals(new BigDecimal("38.38"), bwa.getRow("1380").getAmount()); // profit
+  }
+
+  private MonthlyBalanceDO createBalance(final String amount, final int accountNumber, final int recordCount)
+  {
+    final KontoDO konto = new KontoDO();
+    konto.setNummer(accountNumber);
+    return new MonthlyBalanceDO().setKonto(konto).setAmount(new BigDecimal(amount)).setRecordCount(recordCount);
+  }
+
   private BuchungssatzDO createRecord(final double amount, final int accountNumber)
   {
     final BuchungssatzDO record = new BuchungssatzDO();
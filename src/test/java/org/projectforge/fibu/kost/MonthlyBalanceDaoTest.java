@@ -0,0 +1,164 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.kost;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.Test;
+import org.projectforge.common.DateHolder;
+import org.projectforge.fibu.KontoDO;
+import org.projectforge.fibu.KontoDao;
+import org.projectforge.test.TestBase;
+
+public class MonthlyBalanceDaoTest extends TestBase
+{
+  private BuchungssatzDao buchungssatzDao;
+
+  private KontoDao kontoDao;
+
+  private Kost1Dao kost1Dao;
+
+  private Kost2Dao kost2Dao;
+
+  private MonthlyBalanceDao monthlyBalanceDao;
+
+  private int satznr;
+
+  @Test
+  public void updateBalances()
+  {
+    logon(TEST_FINANCE_USER);
+    final KontoDO konto = new KontoDO();
+    konto.setNummer(4711);
+    konto.setBezeichnung("Test account");
+    kontoDao.save(konto);
+    final KontoDO gegenKonto = new KontoDO();
+    gegenKonto.setNummer(4712);
+    gegenKonto.setBezeichnung("Test contra account");
+    kontoDao.save(gegenKonto);
+    final Kost1DO kost1 = new Kost1DO();
+    kost1.setNummernkreis(3);
+    kost1.setBereich(100);
+    kost1.setTeilbereich(1);
+    kost1.setEndziffer(1);
+    kost1Dao.save(kost1);
+    final Kost2DO kost2 = new Kost2DO();
+    kost2.setNummernkreis(6);
+    kost2.setBereich(100);
+    kost2.setTeilbereich(1);
+    kost2Dao.setKost2Art(kost2, 0);
+    kost2Dao.save(kost2);
+
+    final BuchungssatzDO satz1 = createBuchungssatz(konto, gegenKonto, kost1, kost2, "100.00");
+    final BuchungssatzDO satz2 = createBuchungssatz(konto, gegenKonto, kost1, kost2, "-20.50");
+    assertBalance(2013, 2, "79.50", 2);
+
+    // Move satz2 to the next month: both months are re-calculated.
+    satz2.setMonth(3);
+    buchungssatzDao.update(satz2);
+    assertBalance(2013, 2, "100.00", 1);
+    assertBalance(2013, 3, "-20.50", 1);
+
+    // Existing aggregate is updated:
+    satz1.setBetrag(new BigDecimal("50.00"));
+    buchungssatzDao.update(satz1);
+    assertBalance(2013, 2, "50.00", 1);
+
+    // Months without account records have no aggregates:
+    buchungssatzDao.markAsDeleted(satz2);
+    assertEquals(0, monthlyBalanceDao.getBalances(2013, 3, 2013, 3).size());
+
+    monthlyBalanceDao.rebuild();
+    assertBalance(2013, 2, "50.00", 1);
+    assertEquals(1, monthlyBalanceDao.getBalances(2013, 0, 2013, 11).size());
+
+    // Collected months (e. g. of an import) are re-calculated only at the end:
+    monthlyBalanceDao.startCollectingDirtyMonths();
+    try {
+      satz1.setBetrag(new BigDecimal("30.00"));
+      buchungssatzDao.update(satz1);
+      assertBalance(2013, 2, "50.00", 1);
+    } finally {
+      monthlyBalanceDao.recalculateCollectedMonths();
+    }
+    assertBalance(2013, 2, "30.00", 1);
+  }
+
+  private void assertBalance(final int year, final int month, final String amount, final int recordCount)
+  {
+    final List<MonthlyBalanceDO> list = monthlyBalanceDao.getBalances(year, month, year, month);
+    assertEquals(1, list.size());
+    final MonthlyBalanceDO balance = list.get(0);
+    assertEquals(4711, balance.getKonto().getNummer().intValue());
+    assertEquals(0, new BigDecimal(amount).compareTo(balance.getAmount()));
+    assertEquals(recordCount, balance.getRecordCount().intValue());
+  }
+
+  private BuchungssatzDO createBuchungssatz(final KontoDO konto, final KontoDO gegenKonto, final Kost1DO kost1, final Kost2DO kost2,
+      final String betrag)
+  {
+    final BuchungssatzDO satz = new BuchungssatzDO();
+    satz.setYear(2013);
+    satz.setMonth(2);
+    satz.setSatznr(++satznr);
+    satz.setDatum(new DateHolder().setDate(2013, 2, 15).getSQLDate());
+    satz.setBetrag(new BigDecimal(betrag));
+    satz.setSh(SHType.SOLL);
+    satz.setKonto(konto);
+    satz.setGegenKonto(gegenKonto);
+    satz.setKost1(kost1);
+    satz.setKost2(kost2);
+    buchungssatzDao.save(satz);
+    return satz;
+  }
+
+  public void setBuchungssatzDao(final BuchungssatzDao buchungssatzDao)
+  {
+    this.buchungssatzDao = buchungssatzDao;
+  }
+
+  public void setKontoDao(final KontoDao kontoDao)
+  {
+    this.kontoDao = kontoDao;
+  }
+
+  public void setKost1Dao(final Kost1Dao kost1Dao)
+  {
+    this.kost1Dao = kost1Dao;
+  }
+
+  public void setKost2Dao(final Kost2Dao kost2Dao)
+  {
+    this.kost2Dao = kost2Dao;
+  }
+
+  public void setMonthlyBalanceDao(final MonthlyBalanceDao monthlyBalanceDao)
+  {
+    this.monthlyBalanceDao = monthlyBalanceDao;
+  }
+}
@@ -32,6 +32,9 @@ import java.util.List;
 
 import org.junit.Test;
 import org.projectforge.core.Priority;
+import org.projectforge.fibu.kost.BuchungssatzDO;
+import org.projectforge.fibu.kost.Kost1DO;
+import org.projectforge.fibu.kost.MonthlyBalanceDO;
 import org.projectforge.test.TestBase;
 
 
@@ -81,6 +84,100 @@ public class ReportTest extends TestBase
     assertTrue(Priority.MIDDLE.getOrdinal() < Priority.HIGH.getOrdinal());
   }
 
+  @Test
+  public void childs()
+  {
+    logon(TEST_CONTROLLING_USER);
+    final ReportObjective reportObjective = new ReportObjective();
+    reportObjective.setId("root");
+    reportObjective.addKost1ExcludeRegExp("*.99");
+    final ReportObjective child1 = new ReportObjective();
+    child1.setId("child1");
+    child1.addKost1IncludeRegExp("3.100.*");
+    reportObjective.addChildReportObjective(child1);
+    final ReportObjective child2 = new ReportObjective();
+    child2.setId("child2");
+    child2.addKost1IncludeRegExp("3.1*");
+    reportObjective.addChildReportObjective(child2);
+    final List<BuchungssatzDO> list = new ArrayList<BuchungssatzDO>();
+    final BuchungssatzDO satz1 = createBuchungssatz(3, 100, 1, 1);
+    list.add(satz1);
+    final BuchungssatzDO satz2 = createBuchungssatz(3, 110, 1, 1);
+    list.add(satz2);
+    final BuchungssatzDO satz3 = createBuchungssatz(3, 200, 1, 1);
+    list.add(satz3);
+    list.add(createBuchungssatz(3, 100, 1, 99)); // excluded
+    final Report report = new Report(reportObjective);
+    report.select(list);
+    assertEquals(3, report.getBuchungssaetze().size());
+    final List<Report> childs = report.getChilds();
+    assertEquals("child1, child2, other and duplicates expected.", 4, childs.size());
+    assertEquals(1, childs.get(0).getBuchungssaetze().size());
+    assertTrue(childs.get(0).contains(satz1));
+    assertEquals(2, childs.get(1).getBuchungssaetze().size());
+    assertTrue(childs.get(1).contains(satz2));
+    assertEquals(satz3, report.getOther().get(0));
+    assertEquals(1, report.getDuplicates().size());
+    assertEquals(satz1, report.getDuplicates().get(0));
+  }
+
+  @Test
+  public void childBalances()
+  {
+    final ReportObjective reportObjective = new ReportObjective();
+    reportObjective.setId("root");
+    reportObjective.addKost1ExcludeRegExp("*.99");
+    final ReportObjective child1 = new ReportObjective();
+    child1.setId("child1");
+    child1.addKost1IncludeRegExp("3.1*");
+    reportObjective.addChildReportObjective(child1);
+    final ReportObjective child11 = new ReportObjective();
+    child11.setId("child11");
+    child11.addKost1IncludeRegExp("3.100.*");
+    child1.addChildReportObjective(child11);
+    final List<MonthlyBalanceDO> list = new ArrayList<MonthlyBalanceDO>();
+    final MonthlyBalanceDO balance1 = createBalance(3, 100, 1, 1);
+    list.add(balance1);
+    list.add(createBalance(3, 110, 1, 1));
+    list.add(createBalance(3, 200, 1, 1));
+    list.add(createBalance(3, 100, 1, 99)); // excluded
+    final Report report = new Report(reportObjective);
+    report.selectBalances(list);
+    assertTrue(report.isLoad());
+    assertFalse(report.isAccountRecordsLoaded());
+    assertEquals(3, report.getBalances().size());
+    final List<Report> childs = report.getChilds();
+    assertEquals("child1 and other expected.", 2, childs.size());
+    final Report child1Report = childs.get(0);
+    assertEquals("child1", child1Report.getId());
+    assertEquals(2, child1Report.getBalances().size());
+    assertEquals(1, childs.get(1).getBalances().size());
+    final List<Report> grandChilds = child1Report.getChilds();
+    assertEquals("child11 and other expected.", 2, grandChilds.size());
+    assertEquals("Excluded by the root objective.", 1, grandChilds.get(0).getBalances().size());
+    assertEquals(balance1, grandChilds.get(0).getBalances().get(0));
+    assertEquals(1, grandChilds.get(1).getBalances().size());
+    report.select(new ArrayList<BuchungssatzDO>());
+    assertTrue(report.isAccountRecordsLoaded());
+  }
+
+  private MonthlyBalanceDO createBalance(final int nummernkreis, final int bereich, final int teilbereich, final int endziffer)
+  {
+    return new MonthlyBalanceDO().setKost1(createBuchungssatz(nummernkreis, bereich, teilbereich, endziffer).getKost1());
+  }
+
+  private BuchungssatzDO createBuchungssatz(final int nummernkreis, final int bereich, final int teilbereich, final int endziffer)
+  {
+    final Kost1DO kost1 = new Kost1DO();
+    kost1.setNummernkreis(nummernkreis);
+    kost1.setBereich(bereich);
+    kost1.setTeilbereich(teilbereich);
+    kost1.setEndziffer(endziffer);
+    final BuchungssatzDO satz = new BuchungssatzDO();
+    satz.setKost1(kost1);
+    return satz;
+  }
+
   public void setReportDao(ReportDao reportDao)
   {
     this.reportDao = reportDao;
@@ -0,0 +1,161 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+import org.junit.Test;
+import org.projectforge.renderer.PdfBatchJob.OutputFormat;
+import org.projectforge.test.TestBase;
+
+import com.lowagie.text.pdf.PdfReader;
+
+public class PdfBatchRendererTest extends TestBase
+{
+  private static final String STYLESHEET = "fo-styles/test/benchmark-fo.xsl";
+
+  private static final String GROOVY_XML = "fo-styles/test/benchmark2pdf.xml";
+
+  private static final long TIMEOUT_MILLIS = 60 * 1000;
+
+  private PdfRenderer pdfRenderer;
+
+  private PdfBatchRenderer pdfBatchRenderer;
+
+  public void setPdfRenderer(final PdfRenderer pdfRenderer)
+  {
+    this.pdfRenderer = pdfRenderer;
+  }
+
+  public void setPdfBatchRenderer(final PdfBatchRenderer pdfBatchRenderer)
+  {
+    this.pdfBatchRenderer = pdfBatchRenderer;
+  }
+
+  @Test
+  public void renderZip() throws Exception
+  {
+    logon(TEST_USER);
+    final List<PdfBatchJob.Entry> entries = new ArrayList<PdfBatchJob.Entry>();
+    entries.add(createEntry("a.pdf", false));
+    entries.add(createEntry("b.pdf", false));
+    entries.add(createEntry("a.pdf", false)); // Duplicate file name.
+    entries.add(createEntry("failure.pdf", true));
+    final PdfBatchJob job = pdfBatchRenderer.start("test", STYLESHEET, GROOVY_XML, entries, OutputFormat.ZIP);
+    assertSame(job, pdfBatchRenderer.getJob(job.getId()));
+    waitForJob(job);
+    assertEquals(4, job.getProcessed());
+    assertEquals(1, job.getFailed());
+    assertEquals(100, job.getProgress());
+    final File file = job.getFile();
+    assertNotNull(file);
+    final ZipFile zipFile = new ZipFile(file);
+    try {
+      assertEquals(3, zipFile.size());
+      assertNotNull(zipFile.getEntry("a.pdf"));
+      assertNotNull(zipFile.getEntry("b.pdf"));
+      assertNotNull(zipFile.getEntry("3_a.pdf"));
+    } finally {
+      zipFile.close();
+    }
+    logon(TEST_USER2);
+    assertNull("Job is only visible for the user who started the job.", pdfBatchRenderer.getJob(job.getId()));
+  }
+
+  @Test
+  public void renderMergedPdf() throws Exception
+  {
+    logon(TEST_USER);
+    final int pagesPerDocument = new PdfReader(pdfRenderer.render(STYLESHEET, GROOVY_XML, createEntry("a.pdf", false).getData()))
+        .getNumberOfPages();
+    final List<PdfBatchJob.Entry> entries = new ArrayList<PdfBatchJob.Entry>();
+    for (int i = 0; i < 5; i++) {
+      entries.add(createEntry(i + ".pdf", false));
+    }
+    final PdfBatchJob job = pdfBatchRenderer.start("test", STYLESHEET, GROOVY_XML, entries, OutputFormat.MERGED_PDF);
+    waitForJob(job);
+    assertEquals(0, job.getFailed());
+    assertNotNull(job.getFile());
+    assertEquals(5 * pagesPerDocument, new PdfReader(job.getFile().getAbsolutePath()).getNumberOfPages());
+    for (int i = 0; i < 5; i++) {
+      final File part = new File(job.getFile().getParentFile(), job.getFile().getName() + "." + i + ".part");
+      assertFalse("Temporary file should be deleted: " + part.getName(), part.exists());
+    }
+  }
+
+  @Test
+  public void renderEmptyBatch()
+  {
+    logon(TEST_USER);
+    final PdfBatchJob job = pdfBatchRenderer.start("test", STYLESHEET, GROOVY_XML, new ArrayList<PdfBatchJob.Entry>(),
+        OutputFormat.MERGED_PDF);
+    assertTrue(job.isFinished());
+    assertEquals(100, job.getProgress());
+    assertNull(job.getFile());
+  }
+
+  private void waitForJob(final PdfBatchJob job) throws InterruptedException
+  {
+    final long start = System.currentTimeMillis();
+    while (job.isFinished() == false) {
+      assertTrue("Job not finished in time: " + job, System.currentTimeMillis() - start < TIMEOUT_MILLIS);
+      Thread.sleep(100);
+    }
+    assertNull(job.getErrorMessage());
+  }
+
+  private PdfBatchJob.Entry createEntry(final String filename, final boolean failure)
+  {
+    return new PdfBatchJob.Entry() {
+      public String getFilename()
+      {
+        return filename;
+      }
+
+      public Map<String, Object> getData()
+      {
+        if (failure == true) {
+          throw new RuntimeException("Test failure");
+        }
+        final Map<String, Object> data = new HashMap<String, Object>();
+        data.put("title", filename);
+        data.put("rows", 100);
+        return data;
+      }
+    };
+  }
+}
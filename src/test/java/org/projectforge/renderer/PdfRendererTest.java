@@ -0,0 +1,133 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.projectforge.core.ConfigXml;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+
+public class PdfRendererTest extends TestBase
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(PdfRendererTest.class);
+
+  private static final String STYLESHEET = "fo-styles/test/benchmark-fo.xsl";
+
+  private static final String GROOVY_XML = "fo-styles/test/benchmark2pdf.xml";
+
+  private static final int NUMBER_OF_RENDERINGS = 20;
+
+  private static final int NUMBER_OF_THREADS = 4;
+
+  private PdfRenderer pdfRenderer;
+
+  public void setPdfRenderer(final PdfRenderer pdfRenderer)
+  {
+    this.pdfRenderer = pdfRenderer;
+  }
+
+  @Test
+  public void render() throws Exception
+  {
+    logon(TEST_USER);
+    final byte[] pdf = render(pdfRenderer);
+    assertTrue(pdf.length > 0);
+    assertEquals("%PDF", new String(pdf, 0, 4, "US-ASCII"));
+    assertSame("Compiled style sheet is cached.", pdfRenderer.getTemplates(STYLESHEET), pdfRenderer.getTemplates(STYLESHEET));
+  }
+
+  /**
+   * Compares the rendering with a new renderer for every pdf (FopFactory, style sheet and Groovy template are set up every time) with the
+   * rendering via the cached renderer, sequentially and by concurrent threads. The results are logged only.<br/>
+   * The benchmark runs only if the system property "projectforge.benchmark" is set to true (-Dprojectforge.benchmark=true).
+   */
+  @Test
+  public void benchmark() throws Exception
+  {
+    Assume.assumeTrue(Boolean.getBoolean("projectforge.benchmark"));
+    final PFUserDO user = logon(TEST_USER);
+    render(pdfRenderer); // Warm-up.
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < NUMBER_OF_RENDERINGS; i++) {
+      final PdfRenderer renderer = new PdfRenderer();
+      renderer.setConfigXml(ConfigXml.getInstance());
+      render(renderer);
+    }
+    log.info(NUMBER_OF_RENDERINGS + " renderings with new renderers: " + (System.currentTimeMillis() - start) + "ms.");
+    start = System.currentTimeMillis();
+    for (int i = 0; i < NUMBER_OF_RENDERINGS; i++) {
+      render(pdfRenderer);
+    }
+    log.info(NUMBER_OF_RENDERINGS + " renderings with cached renderer: " + (System.currentTimeMillis() - start) + "ms.");
+    final AtomicInteger counter = new AtomicInteger();
+    final Thread[] threads = new Thread[NUMBER_OF_THREADS];
+    for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run()
+        {
+          PFUserContext.setUser(user);
+          try {
+            for (int j = 0; j < NUMBER_OF_RENDERINGS; j++) {
+              if (render(pdfRenderer).length > 0) {
+                counter.incrementAndGet();
+              }
+            }
+          } finally {
+            PFUserContext.setUser(null);
+          }
+        }
+      };
+    }
+    start = System.currentTimeMillis();
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    log.info(NUMBER_OF_THREADS * NUMBER_OF_RENDERINGS + " renderings with cached renderer by " + NUMBER_OF_THREADS + " threads: "
+        + (System.currentTimeMillis() - start) + "ms.");
+    assertEquals(NUMBER_OF_THREADS * NUMBER_OF_RENDERINGS, counter.get());
+  }
+
+  private byte[] render(final PdfRenderer renderer)
+  {
+    final Map<String, Object> data = new HashMap<String, Object>();
+    data.put("title", "Benchmark");
+    data.put("rows", 100);
+    return renderer.render(STYLESHEET, GROOVY_XML, data);
+  }
+}
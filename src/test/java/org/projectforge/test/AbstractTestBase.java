@@ -232,6 +232,8 @@ public class AbstractTestBase
         deleteFrom(hibernateTemplate, "AuftragDO");
         deleteFrom(hibernateTemplate, "BookDO");
         deleteFrom(hibernateTemplate, "BuchungssatzDO");
+        deleteFrom(hibernateTemplate, "BuchungssatzStagingDO");
+        deleteFrom(hibernateTemplate, "MonthlyBalanceDO"); // Before Konto*DO and Kost*DO
         deleteFrom(hibernateTemplate, "ConfigurationDO");
         deleteFrom(hibernateTemplate, "EingangsrechnungsPositionDO");
         deleteFrom(hibernateTemplate, "EingangsrechnungDO");
@@ -26,7 +26,8 @@ package org.projectforge.timesheet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -38,7 +39,9 @@ import org.junit.Test;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.DatePrecision;
 import org.projectforge.core.BaseDao;
-import org.projectforge.core.UserException;
+import org.projectforge.core.HistoryOutboxWriter;
+import org.projectforge.core.MassUpdateExecutor;
+import org.projectforge.core.MassUpdateJob;
 import org.projectforge.fibu.KundeDO;
 import org.projectforge.fibu.KundeDao;
 import org.projectforge.fibu.ProjektDO;
@@ -49,6 +52,8 @@ import org.projectforge.task.TaskDO;
 import org.projectforge.task.TaskDao;
 import org.projectforge.test.TestBase;
 
+import de.micromata.hibernate.history.HistoryEntry;
+
 
 public class TimesheetMassUpdateTest extends TestBase
 {
@@ -64,6 +69,10 @@ public class TimesheetMassUpdateTest extends TestBase
   
   private ProjektDao projektDao;
 
+  private MassUpdateExecutor massUpdateExecutor;
+
+  private HistoryOutboxWriter historyOutboxWriter;
+
   private DateHolder date = new DateHolder(new Date(), DatePrecision.MINUTE_15, Locale.GERMAN);
 
   public void setTimesheetDao(TimesheetDao timesheetDao)
@@ -91,6 +100,16 @@ public class TimesheetMassUpdateTest extends TestBase
     this.projektDao = projektDao;
   }
 
+  public void setMassUpdateExecutor(final MassUpdateExecutor massUpdateExecutor)
+  {
+    this.massUpdateExecutor = massUpdateExecutor;
+  }
+
+  public void setHistoryOutboxWriter(final HistoryOutboxWriter historyOutboxWriter)
+  {
+    this.historyOutboxWriter = historyOutboxWriter;
+  }
+
   @Test
   public void massUpdate()
   {
@@ -309,19 +328,90 @@ public class TimesheetMassUpdateTest extends TestBase
   }
 
   @Test
-  public void checkMaxMassUpdateNumber()
+  public void massUpdateOfMoreThanOneChunk()
+  {
+    final String prefix = "ts-mu60-";
+    getInitTestDB().addTask(prefix + "1", "root");
+    getInitTestDB().addTask(prefix + "2", "root");
+    getInitTestDB().addUser(prefix + "user1");
+    logon(getUser(TEST_FINANCE_USER));
+    final List<TimesheetDO> list = new ArrayList<TimesheetDO>();
+    for (int i = 0; i <= BaseDao.MASS_UPDATE_CHUNK_SIZE; i++) {
+      list.add(createTimesheet(prefix, "1", "user1", 2009, 10, 1 + i / 40, (i % 40) / 4, (i % 4) * 15));
+    }
+    final TimesheetDO master = new TimesheetDO();
+    master.setTask(getInitTestDB().getTask(prefix + "2"));
+    master.setLocation("Headquarter");
+    timesheetDao.massUpdate(list, master);
+    for (final TimesheetDO sheet : list) {
+      assertSheet(timesheetDao.getById(sheet.getId()), master);
+    }
+  }
+
+  @Test
+  public void massUpdateOfLocation()
+  {
+    final String prefix = "ts-mu80-";
+    getInitTestDB().addTask(prefix + "1", "root");
+    getInitTestDB().addUser(prefix + "user1");
+    logon(getUser(TEST_FINANCE_USER));
+    final List<TimesheetDO> list = new ArrayList<TimesheetDO>();
+    for (int i = 0; i < 3; i++) {
+      list.add(createTimesheet(prefix, "1", "user1", 2009, 10, 21, i, 0));
+    }
+    final int numberOfHistoryEntries = timesheetDao.getHistoryEntries(list.get(0)).length;
+    final TimesheetDO master = new TimesheetDO();
+    master.setLocation("Headquarter");
+    // Only a plain column is modified: updated by one statement.
+    timesheetDao.massUpdate(list, master);
+    historyOutboxWriter.writePendingEntries();
+    for (final TimesheetDO sheet : list) {
+      final TimesheetDO dbSheet = timesheetDao.getById(sheet.getId());
+      assertSheet(dbSheet, master);
+      assertEquals(getTask(prefix + "1").getId(), dbSheet.getTaskId());
+    }
+    final HistoryEntry[] historyEntries = timesheetDao.getHistoryEntries(timesheetDao.getById(list.get(0).getId()));
+    assertEquals(numberOfHistoryEntries + 1, historyEntries.length);
+    assertEquals("location", historyEntries[0].getDelta().get(0).getPropertyName());
+    assertEquals("Office", historyEntries[0].getDelta().get(0).getOldValue());
+    assertEquals("Headquarter", historyEntries[0].getDelta().get(0).getNewValue());
+
+    // No modification, no history entry:
+    timesheetDao.massUpdate(list, master);
+    historyOutboxWriter.writePendingEntries();
+    assertEquals(numberOfHistoryEntries + 1, timesheetDao.getHistoryEntries(timesheetDao.getById(list.get(0).getId())).length);
+  }
+
+  @Test
+  public void startMassUpdate() throws InterruptedException
   {
+    final String prefix = "ts-mu70-";
+    getInitTestDB().addTask(prefix + "1", "root");
+    getInitTestDB().addTask(prefix + "2", "root");
+    getInitTestDB().addUser(prefix + "user1");
+    logon(getUser(TEST_FINANCE_USER));
     final List<TimesheetDO> list = new ArrayList<TimesheetDO>();
-    for (int i = 0; i <= BaseDao.MAX_MASS_UPDATE; i++) {
-      list.add(new TimesheetDO());
+    for (int i = 0; i < 3; i++) {
+      list.add(createTimesheet(prefix, "1", "user1", 2009, 10, 21, i, 0));
     }
-    try {
-      timesheetDao.massUpdate(list, new TimesheetDO());
-      fail("Maximum number of allowed mass updates exceeded. Not detected!");
-    } catch (UserException ex) {
-      assertEquals(BaseDao.MAX_MASS_UPDATE_EXCEEDED_EXCEPTION_I18N, ex.getI18nKey());
-      // OK.
+    final TimesheetDO master = new TimesheetDO();
+    master.setTask(getInitTestDB().getTask(prefix + "2"));
+    master.setLocation("Headquarter");
+    final MassUpdateJob<TimesheetDO> job = timesheetDao.startMassUpdate(list, master);
+    assertSame(job, massUpdateExecutor.getJob(job.getId()));
+    for (int i = 0; i < 300 && job.isFinished() == false; i++) {
+      Thread.sleep(100);
     }
+    assertTrue("Mass update not finished.", job.isFinished());
+    assertEquals(3, job.getProcessed());
+    assertEquals(3, job.getUpdated());
+    assertEquals(0, job.getFailed());
+    assertEquals(100, job.getProgress());
+    for (final TimesheetDO sheet : list) {
+      assertSheet(timesheetDao.getById(sheet.getId()), master);
+    }
+    logon(getUser(TEST_USER));
+    assertNull("Job is only visible for the user who started it.", massUpdateExecutor.getJob(job.getId()));
   }
 
   private ProjektDO createProjekt(final KundeDO kunde, final Integer projektNummer, final String projektName, final Integer... kost2ArtIds)
@@ -356,6 +446,17 @@ public class TimesheetMassUpdateTest extends TestBase
     assertEquals(art, (int) kost2.getKost2ArtId());
   }
 
+  /**
+   * Creates a time sheet of 15 minutes.
+   */
+  private TimesheetDO createTimesheet(final String prefix, final String taskName, final String userName, final int year, final int month,
+      final int day, final int fromHour, final int fromMinute)
+  {
+    final int toHour = fromMinute == 45 ? fromHour + 1 : fromHour;
+    return createTimesheet(prefix, taskName, userName, year, month, day, fromHour, fromMinute, toHour, (fromMinute + 15) % 60, "Office",
+        "Mass update test.");
+  }
+
   private TimesheetDO createTimesheet(final String prefix, final String taskName, final String userName, final int year, final int month,
       final int day, final int fromHour, final int fromMinute, final int toHour, final int toMinute, final String location,
       final String description)
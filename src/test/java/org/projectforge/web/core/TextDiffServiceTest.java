@@ -0,0 +1,67 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2013 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.web.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import name.fraser.neil.plaintext.DiffMatchPatch.Diff;
+import name.fraser.neil.plaintext.DiffMatchPatch.Operation;
+
+import org.junit.Test;
+
+public class TextDiffServiceTest
+{
+  @Test
+  public void testLineDiffs()
+  {
+    final TextDiffService service = new TextDiffService();
+    final List<Diff> diffs = service.getLineDiffs("line 1\nline 2\nline 3", "line 1\nline two\nline 3");
+    assertEquals(4, diffs.size());
+    assertDiff(Operation.EQUAL, "line 1\n", diffs.get(0));
+    assertDiff(Operation.DELETE, "line 2\n", diffs.get(1));
+    assertDiff(Operation.INSERT, "line two\n", diffs.get(2));
+    assertDiff(Operation.EQUAL, "line 3", diffs.get(3));
+  }
+
+  @Test
+  public void testCache()
+  {
+    final TextDiffService service = new TextDiffService();
+    final List<Diff> diffs = service.getDiffs("1:text", "Hello world", "Hello ProjectForge");
+    assertSame(diffs, service.getDiffs("1:text", "Hello world", "Hello ProjectForge"));
+    final List<Diff> otherDiffs = service.getDiffs("1:text", "Hello world", "Hello");
+    assertEquals(2, otherDiffs.size());
+    assertDiff(Operation.DELETE, " world", otherDiffs.get(1));
+  }
+
+  private void assertDiff(final Operation operation, final String text, final Diff diff)
+  {
+    assertEquals(operation, diff.operation);
+    assertEquals(text, diff.text);
+  }
+}
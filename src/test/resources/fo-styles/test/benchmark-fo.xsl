@@ -0,0 +1,26 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!-- Minimal style sheet used by PdfRendererTest. -->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform" xmlns:fo="http://www.w3.org/1999/XSL/Format">
+  <xsl:param name="title" select="''" />
+  <xsl:template match="/report">
+    <fo:root>
+      <fo:layout-master-set>
+        <fo:simple-page-master master-name="A4" page-height="297mm" page-width="210mm" margin="20mm">
+          <fo:region-body />
+        </fo:simple-page-master>
+      </fo:layout-master-set>
+      <fo:page-sequence master-reference="A4">
+        <fo:flow flow-name="xsl-region-body">
+          <fo:block font-size="16pt">
+            <xsl:value-of select="$title" />
+          </fo:block>
+          <xsl:for-each select="row">
+            <fo:block>
+              <xsl:value-of select="." />
+            </fo:block>
+          </xsl:for-each>
+        </fo:flow>
+      </fo:page-sequence>
+    </fo:root>
+  </xsl:template>
+</xsl:stylesheet>